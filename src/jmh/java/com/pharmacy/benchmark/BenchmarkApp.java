@@ -0,0 +1,65 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.PharmacyApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试与压测用的应用上下文：local profile，默认库与各租户库全部换成独立的 H2 内存库（MySQL 兼容模式）。
+ * JMH 基准不启动 Web 服务器，每个 fork 是独立 JVM，各自启动一次上下文；压测用 {@link #startWeb} 启动随机端口。
+ */
+public final class BenchmarkApp {
+
+    /** 与 application.yaml 中 spring.tenants 的顺序一致，逐个替换为内存库 */
+    public static final List<String> TENANTS = List.of("bht", "wx", "rzt");
+
+    private BenchmarkApp() {}
+
+    public static ConfigurableApplicationContext start(String name) {
+        return start(name, WebApplicationType.NONE, Map.of());
+    }
+
+    /** 启动内嵌 Web 服务器（随机端口，实际端口见 local.server.port），extra 中的配置覆盖默认值 */
+    public static ConfigurableApplicationContext startWeb(String name, Map<String, Object> extra) {
+        Map<String, Object> props = new HashMap<>(extra);
+        props.putIfAbsent("server.port", 0);
+        return start(name, WebApplicationType.SERVLET, props);
+    }
+
+    private static ConfigurableApplicationContext start(String name, WebApplicationType web, Map<String, Object> extra) {
+        String db = name + "_" + ProcessHandle.current().pid();
+        Map<String, Object> props = new HashMap<>();
+        props.put("spring.datasource.url", h2Url(db));
+        props.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        props.put("spring.datasource.username", "sa");
+        props.put("spring.datasource.password", "");
+        for (int i = 0; i < TENANTS.size(); i++) {
+            String prefix = "spring.tenants[" + i + "].";
+            props.put(prefix + "url", h2Url(db + "_" + TENANTS.get(i)));
+            props.put(prefix + "username", "sa");
+            props.put(prefix + "password", "");
+        }
+        props.put("spring.jpa.hibernate.ddl-auto", "create");
+        props.put("spring.jpa.show-sql", "false");
+        props.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        props.put("spring.main.banner-mode", "off");
+        props.put("logging.level.root", "WARN");
+        props.put("logging.level.com.pharmacy", "WARN");
+        props.putAll(extra);
+        // 以命令行参数传入，优先级高于 application.yaml
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        return new SpringApplicationBuilder(PharmacyApplication.class)
+                .web(web)
+                .profiles("local")
+                .run(args);
+    }
+
+    private static String h2Url(String db) {
+        return "jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1;MODE=MySQL;DATABASE_TO_UPPER=false";
+    }
+}
@@ -0,0 +1,158 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.entity.Member;
+import com.pharmacy.entity.Order;
+import com.pharmacy.entity.OrderItem;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.repository.OrderItemRepository;
+import com.pharmacy.repository.OrderRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试数据生成：固定随机种子，姓名/手机号/卡号/药品名接近门店真实分布，
+ * 同样的参数每次生成同样的数据，便于前后对比。
+ */
+public final class BenchmarkData {
+
+    private static final String SURNAMES = "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐许韩冯邓曹彭曾肖田董袁潘于蒋蔡余杜叶程苏魏吕丁任沈";
+    private static final String GIVEN = "伟芳娜秀英敏静丽强磊军洋勇艳杰娟涛明超秀兰霞平刚桂英华玉萍红娥玲芬燕彬鹏辉建国志文";
+    private static final String[] PHONE_PREFIXES = {"130", "131", "135", "136", "137", "138", "139", "150", "151", "158", "159", "186", "187", "188"};
+    private static final String[] MEDICINES = {"阿莫西林胶囊", "布洛芬缓释胶囊", "对乙酰氨基酚片", "头孢克肟分散片", "蒙脱石散", "板蓝根颗粒",
+            "复方甘草片", "氯雷他定片", "奥美拉唑肠溶胶囊", "维生素C片", "藿香正气水", "感冒灵颗粒", "连花清瘟胶囊", "硝苯地平缓释片",
+            "二甲双胍片", "阿托伐他汀钙片", "健胃消食片", "云南白药气雾剂", "红霉素软膏", "六味地黄丸"};
+    private static final String[] SPECS = {"0.25g*24粒", "0.3g*20粒", "0.5g*12片", "10g*10袋", "100ml", "6粒*2板"};
+
+    private static final int BATCH_SIZE = 500;
+
+    private BenchmarkData() {}
+
+    public static String memberId(int i) {
+        return String.format("M%07d", i);
+    }
+
+    public static String phone(Random r) {
+        return PHONE_PREFIXES[r.nextInt(PHONE_PREFIXES.length)] + String.format("%08d", r.nextInt(100_000_000));
+    }
+
+    public static String name(Random r) {
+        StringBuilder sb = new StringBuilder().append(SURNAMES.charAt(r.nextInt(SURNAMES.length())));
+        int given = r.nextInt(10) < 7 ? 2 : 1;
+        for (int i = 0; i < given; i++) sb.append(GIVEN.charAt(r.nextInt(GIVEN.length())));
+        return sb.toString();
+    }
+
+    public static List<Member> members(int count, long seed) {
+        Random r = new Random(seed);
+        List<Member> list = new ArrayList<>(count);
+        LocalDateTime base = LocalDateTime.now().minusYears(3);
+        for (int i = 1; i <= count; i++) {
+            Member m = new Member(memberId(i), name(r), phone(r));
+            m.setCardNo(String.format("VIP%08d", i));
+            m.setLevel(r.nextInt(4));
+            m.setPoints(r.nextInt(5000));
+            m.setCreateTime(base.plusMinutes(r.nextInt(3 * 365 * 24 * 60)));
+            list.add(m);
+        }
+        return list;
+    }
+
+    public static List<Medicine> medicines(int count, long seed) {
+        Random r = new Random(seed);
+        List<Medicine> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Medicine m = new Medicine();
+            m.setMedicineId(String.format("MED%06d", i));
+            String generic = MEDICINES[i % MEDICINES.length];
+            m.setGenericName(i <= MEDICINES.length ? generic : generic + "(" + (i / MEDICINES.length) + ")");
+            m.setTradeName(generic);
+            m.setSpec(SPECS[r.nextInt(SPECS.length)]);
+            m.setManufacturer("制药厂" + (1 + r.nextInt(40)));
+            m.setApprovalNo(String.format("国药准字H%08d", i));
+            m.setCategoryId(1 + r.nextInt(12));
+            m.setRetailPrice(BigDecimal.valueOf(5 + r.nextInt(9500) / 100.0));
+            m.setUnit("盒");
+            m.setIsRx(r.nextInt(5) == 0);
+            m.setCreateTime(LocalDateTime.now().minusDays(r.nextInt(720)));
+            list.add(m);
+        }
+        return list;
+    }
+
+    /**
+     * 一个药品的库存批次：效期在未来两年内分散，少量批次无效期或已售空，入库时间随机。
+     */
+    public static List<Inventory> batches(String medicineId, int count, Random r) {
+        List<Inventory> list = new ArrayList<>(count);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < count; i++) {
+            LocalDate expiry = r.nextInt(20) == 0 ? null : today.plusDays(30 + r.nextInt(700));
+            int qty = r.nextInt(10) == 0 ? 0 : 10 + r.nextInt(190);
+            Inventory inv = new Inventory(medicineId, "B" + today.getYear() + String.format("%05d", i), qty, expiry);
+            inv.setCreateTime(LocalDateTime.now().minusDays(r.nextInt(365)));
+            inv.setMinStock(10);
+            list.add(inv);
+        }
+        return list;
+    }
+
+    /** 近 90 天的已支付订单，每单 itemsPerOrder 行；memberCount 为 0 时全部是散客 */
+    public static void orders(OrderRepository orderRepository, OrderItemRepository orderItemRepository, List<Medicine> medicines,
+                              int orderCount, int itemsPerOrder, int memberCount, long seed) {
+        Random r = new Random(seed);
+        List<Order> orders = new ArrayList<>(BATCH_SIZE);
+        List<OrderItem> items = new ArrayList<>(BATCH_SIZE * itemsPerOrder);
+        for (int i = 1; i <= orderCount; i++) {
+            Order o = new Order();
+            o.setOrderId(String.format("ORD%09d", i));
+            if (memberCount > 0 && r.nextInt(10) < 6) o.setMemberId(memberId(1 + r.nextInt(memberCount)));
+            o.setCustomerName(o.getMemberId() == null ? "散客" : "会员");
+            o.setCashierId(1 + r.nextInt(5));
+            o.setOrderTime(LocalDateTime.now().minusMinutes(r.nextInt(90 * 24 * 60)));
+            o.setPayTime(o.getOrderTime());
+            o.setPaymentType(1 + r.nextInt(3));
+            o.setPaymentStatus(1);
+            double total = 0;
+            for (int j = 0; j < itemsPerOrder; j++) {
+                Medicine m = medicines.get(r.nextInt(medicines.size()));
+                OrderItem item = new OrderItem();
+                item.setOrderId(o.getOrderId());
+                item.setMedicineId(m.getMedicineId());
+                item.setQuantity(1 + r.nextInt(3));
+                item.setUnitPrice(m.getRetailPrice().doubleValue());
+                item.setSubtotal(item.getUnitPrice() * item.getQuantity());
+                total += item.getSubtotal();
+                items.add(item);
+            }
+            o.setTotalAmount(total);
+            o.setActualPayment(total);
+            orders.add(o);
+            if (orders.size() == BATCH_SIZE || i == orderCount) {
+                orderRepository.saveAll(orders);
+                orderItemRepository.saveAll(items);
+                orders.clear();
+                items.clear();
+            }
+        }
+    }
+
+    public static void saveMembers(MemberRepository repository, List<Member> members) {
+        for (int i = 0; i < members.size(); i += BATCH_SIZE) {
+            repository.saveAll(members.subList(i, Math.min(members.size(), i + BATCH_SIZE)));
+        }
+    }
+
+    public static void saveMedicines(MedicineRepository repository, List<Medicine> medicines) {
+        for (int i = 0; i < medicines.size(); i += BATCH_SIZE) {
+            repository.saveAll(medicines.subList(i, Math.min(medicines.size(), i + BATCH_SIZE)));
+        }
+    }
+}
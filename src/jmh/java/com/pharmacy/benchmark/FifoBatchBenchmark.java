@@ -0,0 +1,55 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.util.FifoBatchAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结账扣减库存时的 FIFO 批次选择（updateStockForOrder 中对每个药品调用 {@link FifoBatchAllocator#allocate}）。
+ * 纯内存部分，不含批次读取与落库；需求量取可用库存的一半，保证会跨多个批次。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FifoBatchBenchmark {
+
+    @Param({"3", "20", "200"})
+    private int batches;
+
+    private List<Inventory> stock;
+    private int demand;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stock = BenchmarkData.batches("MED000001", batches, new Random(42));
+        demand = Math.max(1, FifoBatchAllocator.available(stock) / 2);
+    }
+
+    @Benchmark
+    public List<FifoBatchAllocator.Allocation> allocate() {
+        return FifoBatchAllocator.allocate(stock, demand);
+    }
+
+    @Benchmark
+    public int available() {
+        return FifoBatchAllocator.available(stock);
+    }
+}
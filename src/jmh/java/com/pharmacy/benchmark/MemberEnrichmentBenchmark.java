@@ -0,0 +1,85 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.controller.MemberController;
+import com.pharmacy.dto.MemberDTO;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.entity.Member;
+import com.pharmacy.multitenant.TenantRegistry;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.repository.OrderItemRepository;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.impl.MemberConsumptionUpdater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会员列表补充消费统计 MemberController.enrichMembersWithConsumption：
+ * warm 为消费统计缓存全部命中，cold 为每次先清空租户缓存、走批量聚合查询。
+ * 预置 5000 个会员与 20000 笔订单（约六成为会员订单）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberEnrichmentBenchmark {
+
+    private static final int MEMBERS = 5000;
+    private static final int ORDERS = 20000;
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext ctx;
+    private Object controller;
+    private MemberConsumptionUpdater updater;
+    private List<Member> page;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ctx = BenchmarkApp.start("member_enrich");
+        List<Member> members = BenchmarkData.members(MEMBERS, 13);
+        BenchmarkData.saveMembers(ctx.getBean(MemberRepository.class), members);
+        List<Medicine> medicines = BenchmarkData.medicines(300, 5);
+        BenchmarkData.saveMedicines(ctx.getBean(MedicineRepository.class), medicines);
+        BenchmarkData.orders(ctx.getBean(OrderRepository.class), ctx.getBean(OrderItemRepository.class), medicines, ORDERS, 2, MEMBERS, 17);
+        page = members.subList(0, pageSize);
+        controller = AopTestUtils.getUltimateTargetObject(ctx.getBean(MemberController.class));
+        updater = ctx.getBean(MemberConsumptionUpdater.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public List<MemberDTO> warm() {
+        return ReflectionTestUtils.invokeMethod(controller, "enrichMembersWithConsumption", page);
+    }
+
+    @Benchmark
+    public List<MemberDTO> cold() {
+        updater.evict(TenantRegistry.DEFAULT_TENANT);
+        return ReflectionTestUtils.invokeMethod(controller, "enrichMembersWithConsumption", page);
+    }
+}
@@ -0,0 +1,92 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.service.MemberService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 收银台会员关键词搜索：quickSearch（逐键联想）与 searchMembers（回车精确+模糊）。
+ * 关键词轮换姓氏、完整姓名、手机号片段、完整手机号与卡号，H2 中预置 members 个会员。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberSearchBenchmark {
+
+    @Param({"5000", "50000"})
+    private int members;
+
+    private ConfigurableApplicationContext ctx;
+    private MemberService memberService;
+    private String[] keywords;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ctx = BenchmarkApp.start("member_search");
+        memberService = ctx.getBean(MemberService.class);
+        List<Member> data = BenchmarkData.members(members, 11);
+        BenchmarkData.saveMembers(ctx.getBean(MemberRepository.class), data);
+
+        Random r = new Random(3);
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Member m = data.get(r.nextInt(data.size()));
+            list.add(m.getName().substring(0, 1));
+            list.add(m.getName());
+            list.add(m.getPhone().substring(7));
+            list.add(m.getPhone());
+            list.add(m.getCardNo());
+        }
+        keywords = list.toArray(new String[0]);
+        // 首次查询加载内存索引，不计入测量
+        memberService.quickSearch(keywords[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    private String next(Cursor c) {
+        String k = keywords[c.next];
+        c.next = (c.next + 1) % keywords.length;
+        return k;
+    }
+
+    @Benchmark
+    public List<Member> quickSearch(Cursor c) {
+        return memberService.quickSearch(next(c));
+    }
+
+    @Benchmark
+    public List<Member> searchMembers(Cursor c) {
+        return memberService.searchMembers(next(c));
+    }
+}
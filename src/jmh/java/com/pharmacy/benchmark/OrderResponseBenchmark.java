@@ -0,0 +1,78 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.dto.OrderResponse;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.entity.Order;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.OrderItemRepository;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单响应组装 OrderServiceImpl.convertToOrderResponse：按订单号取明细、批量取药品名、拼装 DTO。
+ * 该方法是私有的，这里对代理背后的实现对象反射调用，反射本身的开销相对两次查询可以忽略。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderResponseBenchmark {
+
+    private static final int ORDERS = 2000;
+
+    @Param({"3", "10", "30"})
+    private int itemsPerOrder;
+
+    private ConfigurableApplicationContext ctx;
+    private Object orderService;
+    private Order[] orders;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ctx = BenchmarkApp.start("order_response");
+        List<Medicine> medicines = BenchmarkData.medicines(800, 5);
+        BenchmarkData.saveMedicines(ctx.getBean(MedicineRepository.class), medicines);
+        OrderRepository orderRepository = ctx.getBean(OrderRepository.class);
+        BenchmarkData.orders(orderRepository, ctx.getBean(OrderItemRepository.class), medicines, ORDERS, itemsPerOrder, 0, 9);
+        orders = orderRepository.findAll().toArray(new Order[0]);
+        orderService = AopTestUtils.getUltimateTargetObject(ctx.getBean(OrderService.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public OrderResponse convertToOrderResponse(Cursor c) {
+        Order order = orders[c.next];
+        c.next = (c.next + 1) % orders.length;
+        return ReflectionTestUtils.invokeMethod(orderService, "convertToOrderResponse", order);
+    }
+}
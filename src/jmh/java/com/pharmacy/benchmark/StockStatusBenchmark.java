@@ -0,0 +1,78 @@
+package com.pharmacy.benchmark;
+
+import com.pharmacy.util.StockStatusUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存状态与效期状态计算（药品列表每行调用一次）。结果按单行计时，
+ * 数据覆盖缺货、各档库存比例、无效期、已过期、近效期与正常效期。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockStatusBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private Integer[] stock;
+    private Integer[] safety;
+    private LocalDate[] expiry;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(7);
+        stock = new Integer[ROWS];
+        safety = new Integer[ROWS];
+        expiry = new LocalDate[ROWS];
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < ROWS; i++) {
+            stock[i] = r.nextInt(12) == 0 ? 0 : r.nextInt(300);
+            safety[i] = r.nextInt(20) == 0 ? null : 10 + r.nextInt(90);
+            expiry[i] = r.nextInt(15) == 0 ? null : today.plusDays(r.nextInt(800) - 60);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void stockStatus(Blackhole bh) {
+        for (int i = 0; i < ROWS; i++) bh.consume(StockStatusUtil.calcStockStatus(stock[i], safety[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void expiryStatus(Blackhole bh) {
+        for (int i = 0; i < ROWS; i++) bh.consume(StockStatusUtil.calcExpiryStatus(expiry[i]));
+    }
+
+    /** 药品列表一行的完整计算：两种状态 + 合并批次最早效期 */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public LocalDate listRow(Blackhole bh) {
+        LocalDate earliest = null;
+        for (int i = 0; i < ROWS; i++) {
+            bh.consume(StockStatusUtil.calcStockStatusEnum(stock[i], safety[i]));
+            bh.consume(StockStatusUtil.calcExpiryStatusEnum(expiry[i]));
+            earliest = StockStatusUtil.mergeEarliest(earliest, expiry[i]);
+        }
+        return earliest;
+    }
+}
@@ -0,0 +1,401 @@
+package com.pharmacy.benchmark.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.benchmark.BenchmarkApp;
+import com.pharmacy.benchmark.BenchmarkData;
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.entity.Member;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantRegistry;
+import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.util.WorkerThreads;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 收银高峰压测：以 local profile 启动应用（默认库 + bht/wx/rzt 三个租户，全部为 H2 内存库），
+ * 为每个门店生成药品目录、库存批次与会员，然后由 threads 个收银台线程按配置的比例持续发起
+ * 结账、退单、会员快速搜索、药品搜索与控制台统计请求，请求通过 X-Shop-Id 分散到各门店。
+ * 结束后按接口输出吞吐、p50/p90/p99 延迟与错误率（附一条错误示例便于定位），并按门店汇总请求数与错误数。
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@loadtest -Dload.args="duration=120 threads=48"
+ * </pre>
+ * 参数（key=value）：
+ * duration 测量秒数(60)、warmup 预热秒数(10)、threads 并发收银台(32)、
+ * mix 各操作权重(checkout:40,refund:5,member:25,medicine:20,dashboard:10)、
+ * tenants 参与的门店(default,bht,wx,rzt)、members 每店会员数(5000)、medicines 每店药品数(800)、
+ * batches 每个药品批次数(3)、virtual 服务端是否启用虚拟线程(false，需 JDK 21+)、
+ * report 结果另存为 JSON 的路径、appLogs 是否保留应用控制台输出(false)。
+ */
+public final class PosLoadGenerator {
+
+    enum Op { CHECKOUT, REFUND, MEMBER, MEDICINE, DASHBOARD }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Map<String, String> cfg;
+    private final List<String> tenants;
+    private final Map<Op, Integer> mix;
+    private final Map<String, Store> stores = new LinkedHashMap<>();
+    private HttpClient http;
+    private String baseUrl;
+
+    /** 一个门店的压测素材：可售药品、会员搜索词、已完成可退的订单 */
+    private static final class Store {
+        final List<Medicine> medicines = new ArrayList<>();
+        final List<String> memberIds = new ArrayList<>();
+        final List<String> memberKeywords = new ArrayList<>();
+        final List<String> medicineKeywords = new ArrayList<>();
+        final ConcurrentLinkedQueue<String> refundable = new ConcurrentLinkedQueue<>();
+    }
+
+    /** 单个线程的延迟样本，结束后合并，避免记录时加锁 */
+    private static final class Samples {
+        long[] nanos = new long[1024];
+        int size;
+        long errors;
+        String firstError;
+
+        void add(long v) {
+            if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = v;
+        }
+
+        void addAll(Samples o) {
+            for (int i = 0; i < o.size; i++) add(o.nanos[i]);
+            errors += o.errors;
+            if (firstError == null) firstError = o.firstError;
+        }
+    }
+
+    private PosLoadGenerator(Map<String, String> cfg) {
+        this.cfg = cfg;
+        this.tenants = List.of(cfg.getOrDefault("tenants", "default,bht,wx,rzt").split(","));
+        this.mix = parseMix(cfg.getOrDefault("mix", "checkout:40,refund:5,member:25,medicine:20,dashboard:10"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> cfg = new HashMap<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq > 0) cfg.put(a.substring(0, eq).trim(), a.substring(eq + 1).trim());
+        }
+        new PosLoadGenerator(cfg).run();
+        System.exit(0);
+    }
+
+    private int intCfg(String key, int def) {
+        return Integer.parseInt(cfg.getOrDefault(key, String.valueOf(def)));
+    }
+
+    private void run() throws Exception {
+        PrintStream console = System.out;
+        boolean virtual = Boolean.parseBoolean(cfg.getOrDefault("virtual", "false"));
+        if (!Boolean.parseBoolean(cfg.getOrDefault("appLogs", "false"))) {
+            // 应用各处直接打印到控制台，压测期间会淹没结果并拖慢请求
+            PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(sink);
+            System.setErr(sink);
+        }
+        console.println("[LoadTest] 启动应用，服务端线程模式: " + (virtual
+                ? (WorkerThreads.virtualThreadsSupported() ? "虚拟线程" : "虚拟线程(当前 JDK " + Runtime.version().feature() + " 不支持，实际为平台线程)")
+                : "平台线程"));
+        Map<String, Object> extra = new HashMap<>();
+        extra.put("spring.threads.virtual.enabled", virtual);
+        ConfigurableApplicationContext ctx = BenchmarkApp.startWeb("loadtest", extra);
+        try {
+            baseUrl = "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port");
+            long seedStart = System.nanoTime();
+            for (String tenant : tenants) stores.put(tenant, TenantContext.callAs(tenant, () -> seed(ctx, tenant)));
+            console.printf("[LoadTest] 门店 %s 数据准备完成，用时 %.1fs%n", tenants, (System.nanoTime() - seedStart) / 1e9);
+
+            int threads = intCfg("threads", 32);
+            http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            Map<Op, Map<String, Samples>> results = drive(threads, intCfg("warmup", 10), intCfg("duration", 60), console);
+            report(results, threads, intCfg("duration", 60), virtual, console);
+        } finally {
+            ctx.close();
+            System.setOut(console);
+        }
+    }
+
+    // ===== 数据准备 =====
+
+    private Store seed(ConfigurableApplicationContext ctx, String tenant) {
+        long seed = tenant.hashCode();
+        Store store = new Store();
+        List<Medicine> medicines = BenchmarkData.medicines(intCfg("medicines", 800), seed);
+        BenchmarkData.saveMedicines(ctx.getBean(MedicineRepository.class), medicines);
+        store.medicines.addAll(medicines);
+
+        // 高峰前备货充足：批次数量放大，避免压测中途缺货把结账变成错误
+        Random r = new Random(seed);
+        List<Inventory> stock = new ArrayList<>();
+        for (Medicine m : medicines) {
+            for (Inventory inv : BenchmarkData.batches(m.getMedicineId(), intCfg("batches", 3), r)) {
+                inv.setStockQuantity(inv.getStockQuantity() * 100 + 1000);
+                stock.add(inv);
+            }
+        }
+        ctx.getBean(InventoryRepository.class).saveAll(stock);
+
+        List<Member> members = BenchmarkData.members(intCfg("members", 5000), seed);
+        BenchmarkData.saveMembers(ctx.getBean(MemberRepository.class), members);
+        for (Member m : members) store.memberIds.add(m.getMemberId());
+        for (int i = 0; i < 200; i++) {
+            Member m = members.get(r.nextInt(members.size()));
+            store.memberKeywords.add(i % 2 == 0 ? m.getName().substring(0, Math.min(2, m.getName().length())) : m.getPhone().substring(7));
+            Medicine med = medicines.get(r.nextInt(medicines.size()));
+            store.medicineKeywords.add(med.getGenericName().substring(0, 2));
+        }
+        return store;
+    }
+
+    // ===== 施压 =====
+
+    private Map<Op, Map<String, Samples>> drive(int threads, int warmupSeconds, int durationSeconds, PrintStream console) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        long stopAt = measureFrom + durationSeconds * 1_000_000_000L;
+        List<Map<Op, Map<String, Samples>>> perThread = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (int t = 0; t < threads; t++) {
+            Map<Op, Map<String, Samples>> mine = new HashMap<>();
+            perThread.add(mine);
+            Thread worker = new Thread(() -> {
+                try {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    long now;
+                    while ((now = System.nanoTime()) < stopAt) {
+                        String tenant = tenants.get(rnd.nextInt(tenants.size()));
+                        Op op = pick(rnd.nextInt(totalWeight));
+                        String error;
+                        long start = System.nanoTime();
+                        try {
+                            error = execute(op, tenant, stores.get(tenant), rnd);
+                        } catch (Exception e) {
+                            error = e.toString();
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        if (now >= measureFrom) {
+                            Samples s = mine.computeIfAbsent(op, k -> new HashMap<>()).computeIfAbsent(tenant, k -> new Samples());
+                            s.add(elapsed);
+                            if (error != null) {
+                                s.errors++;
+                                if (s.firstError == null) s.firstError = tenant + ": " + error;
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "pos-till-" + t);
+            worker.start();
+        }
+        console.printf("[LoadTest] %d 个收银台线程，预热 %ds，测量 %ds ...%n", threads, warmupSeconds, durationSeconds);
+        done.await();
+        Map<Op, Map<String, Samples>> merged = new LinkedHashMap<>();
+        for (Op op : Op.values()) {
+            for (Map<Op, Map<String, Samples>> m : perThread) {
+                m.getOrDefault(op, Map.of()).forEach((tenant, s) ->
+                        merged.computeIfAbsent(op, k -> new LinkedHashMap<>()).computeIfAbsent(tenant, k -> new Samples()).addAll(s));
+            }
+        }
+        return merged;
+    }
+
+    private Op pick(int roll) {
+        for (Map.Entry<Op, Integer> e : mix.entrySet()) {
+            roll -= e.getValue();
+            if (roll < 0) return e.getKey();
+        }
+        return Op.CHECKOUT;
+    }
+
+    /** 发起一次请求，成功（HTTP 2xx 且响应体 code 不是错误码）返回 null，否则返回错误摘要 */
+    private String execute(Op op, String tenant, Store store, ThreadLocalRandom rnd) throws Exception {
+        switch (op) {
+            case REFUND -> {
+                String orderId = store.refundable.poll();
+                if (orderId == null) return checkout(tenant, store, rnd); // 还没有可退的订单
+                return failure(send(tenant, post("/api/orders/" + orderId + "/refund", "{\"reason\":\"压测退单\"}")));
+            }
+            case MEMBER -> {
+                return failure(send(tenant, get("/api/members/quick-search?keyword=" + enc(pickOne(store.memberKeywords, rnd)))));
+            }
+            case MEDICINE -> {
+                return failure(send(tenant, get("/api/medicines/search?page=1&size=20&keyword=" + enc(pickOne(store.medicineKeywords, rnd)))));
+            }
+            case DASHBOARD -> {
+                return failure(send(tenant, get("/api/dashboard/metrics")));
+            }
+            default -> {
+                return checkout(tenant, store, rnd);
+            }
+        }
+    }
+
+    private String checkout(String tenant, Store store, ThreadLocalRandom rnd) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (rnd.nextInt(10) < 6) body.put("memberId", pickOne(store.memberIds, rnd));
+        body.put("paymentMethod", rnd.nextBoolean() ? "WECHAT" : "ALIPAY");
+        List<Map<String, Object>> items = new ArrayList<>();
+        double total = 0;
+        int lines = 1 + rnd.nextInt(4);
+        for (int i = 0; i < lines; i++) {
+            Medicine m = pickOne(store.medicines, rnd);
+            int qty = 1 + rnd.nextInt(2);
+            items.add(Map.of("productId", m.getMedicineId(), "quantity", qty, "unitPrice", m.getRetailPrice()));
+            total += m.getRetailPrice().doubleValue() * qty;
+        }
+        body.put("items", items);
+        body.put("totalAmount", total);
+        body.put("originalAmount", total);
+        HttpResponse<String> resp = send(tenant, post("/api/orders", JSON.writeValueAsString(body)));
+        String error = failure(resp);
+        if (error != null) return error;
+        JsonNode orderId = JSON.readTree(resp.body()).get("orderId");
+        if (orderId != null && rnd.nextInt(4) == 0) store.refundable.add(orderId.asText());
+        return null;
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+    }
+
+    private HttpRequest.Builder post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<String> send(String tenant, HttpRequest.Builder req) throws Exception {
+        if (!TenantRegistry.DEFAULT_TENANT.equals(tenant)) req.header("X-Shop-Id", tenant);
+        return http.send(req.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private static String failure(HttpResponse<String> resp) {
+        String body = resp.body() == null ? "" : resp.body();
+        if (resp.statusCode() / 100 == 2 && !body.contains("\"code\":500") && !body.contains("\"code\":400")) return null;
+        return "HTTP " + resp.statusCode() + " " + body.substring(0, Math.min(200, body.length()));
+    }
+
+    private static <T> T pickOne(List<T> list, ThreadLocalRandom rnd) {
+        return list.get(rnd.nextInt(list.size()));
+    }
+
+    private static String enc(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static Map<Op, Integer> parseMix(String spec) {
+        Map<Op, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.split(":");
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) mix.put(Op.valueOf(kv[0].trim().toUpperCase()), weight);
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("mix 至少需要一个权重大于 0 的操作: " + spec);
+        return mix;
+    }
+
+    // ===== 报告 =====
+
+    private void report(Map<Op, Map<String, Samples>> results, int threads, int durationSeconds, boolean virtual, PrintStream out) throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        out.println();
+        out.printf("%-10s %9s %8s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "err%", "req/s", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)");
+        Samples all = new Samples();
+        for (Map.Entry<Op, Map<String, Samples>> e : results.entrySet()) {
+            Samples s = new Samples();
+            e.getValue().values().forEach(s::addAll);
+            all.addAll(s);
+            rows.add(printRow(e.getKey().name().toLowerCase(), s, durationSeconds, out));
+        }
+        rows.add(printRow("total", all, durationSeconds, out));
+        results.forEach((op, byTenant) -> byTenant.values().stream()
+                .map(t -> t.firstError).filter(Objects::nonNull).findFirst()
+                .ifPresent(err -> out.printf("  %s 错误示例 -> %s%n", op.name().toLowerCase(), err)));
+
+        out.println();
+        out.printf("%-10s %9s %8s %9s %9s%n", "store", "requests", "errors", "req/s", "p99(ms)");
+        Map<String, Object> byStore = new LinkedHashMap<>();
+        for (String tenant : tenants) {
+            Samples s = new Samples();
+            results.values().forEach(m -> { Samples t = m.get(tenant); if (t != null) s.addAll(t); });
+            long[] sorted = Arrays.copyOf(s.nanos, s.size);
+            Arrays.sort(sorted);
+            out.printf("%-10s %9d %8d %9.1f %9.1f%n", tenant, s.size, s.errors, s.size / (double) durationSeconds, pct(sorted, 0.99));
+            byStore.put(tenant, Map.of("requests", s.size, "errors", s.errors));
+        }
+
+        String reportPath = cfg.get("report");
+        if (reportPath != null) {
+            Map<String, Object> doc = new LinkedHashMap<>();
+            doc.put("threads", threads);
+            doc.put("durationSeconds", durationSeconds);
+            doc.put("virtualThreads", virtual && WorkerThreads.virtualThreadsSupported());
+            doc.put("jdk", Runtime.version().toString());
+            doc.put("mix", mix);
+            doc.put("endpoints", rows);
+            doc.put("stores", byStore);
+            Files.writeString(Path.of(reportPath), JSON.writerWithDefaultPrettyPrinter().writeValueAsString(doc));
+            out.println("[LoadTest] 结果已写入 " + reportPath);
+        }
+    }
+
+    private static Map<String, Object> printRow(String name, Samples s, int durationSeconds, PrintStream out) {
+        long[] sorted = Arrays.copyOf(s.nanos, s.size);
+        Arrays.sort(sorted);
+        double errPct = s.size == 0 ? 0 : s.errors * 100.0 / s.size;
+        double rps = s.size / (double) durationSeconds;
+        out.printf("%-10s %9d %8d %6.2f%% %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, s.size, s.errors, errPct, rps,
+                pct(sorted, 0.50), pct(sorted, 0.90), pct(sorted, 0.99), pct(sorted, 1.0));
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("endpoint", name);
+        row.put("requests", s.size);
+        row.put("errors", s.errors);
+        row.put("errorRate", errPct / 100);
+        row.put("throughput", rps);
+        row.put("p50Ms", pct(sorted, 0.50));
+        row.put("p90Ms", pct(sorted, 0.90));
+        row.put("p99Ms", pct(sorted, 0.99));
+        row.put("maxMs", pct(sorted, 1.0));
+        return row;
+    }
+
+    /** 最近秩法取百分位，单位毫秒 */
+    private static double pct(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))] / 1e6;
+    }
+}
@@ -0,0 +1,39 @@
+package com.pharmacy.config;
+
+import com.pharmacy.multitenant.TenantTaskDecorator;
+import com.pharmacy.util.WorkerThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 异步执行配置：启用 @Async，并为 Spring Boot 自动配置的执行器挂上租户传播装饰器。
+ * 线程模型由 spring.threads.virtual.enabled 统一切换（Tomcat 请求线程、@Async 执行器、定时任务、
+ * 会员统计刷新等后台池），仅在 JDK 21+ 生效；低版本 JDK 上保持平台线程。
+ */
+@Configuration
+@EnableAsync
+public class AsyncExecutionConfig {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean
+    public TaskDecorator tenantTaskDecorator() {
+        return new TenantTaskDecorator();
+    }
+
+    @PostConstruct
+    public void logMode() {
+        if (!virtualThreads) return;
+        if (WorkerThreads.virtualThreadsSupported()) {
+            System.out.println("[Async] 已启用虚拟线程执行模式");
+        } else {
+            System.out.println("[Async] 已配置虚拟线程，但当前 JDK " + Runtime.version().feature() + " 不支持，继续使用平台线程");
+        }
+    }
+}
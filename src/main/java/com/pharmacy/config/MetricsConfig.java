@@ -0,0 +1,86 @@
+package com.pharmacy.config;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantFilter;
+import com.pharmacy.multitenant.TenantMetrics;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.metrics.data.DefaultRepositoryTagsProvider;
+import org.springframework.boot.actuate.metrics.data.RepositoryTagsProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+
+import java.util.function.Function;
+
+/**
+ * 指标配置：各类指标统一带 tenant 标签，按门店定位瓶颈。
+ * <ul>
+ *   <li>http.server.requests：接口耗时，tenant 取自请求头 X-Shop-Id / 参数 shopId</li>
+ *   <li>pharmacy.operation：@Timed 标注的结账、退款、入库、会员搜索、控制台统计，op 标签区分</li>
+ *   <li>spring.data.repository.invocations：每个仓库方法的调用次数与耗时</li>
+ *   <li>hikaricp.*：每个租户连接池的活跃/空闲/等待连接数与取连接耗时</li>
+ *   <li>pharmacy.cache.requests：见 {@link TenantMetrics}</li>
+ * </ul>
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final String POOL_NAME_PREFIX = "DS-";
+
+    /** @Timed 切面，附加当前租户标签 */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry, TenantMetrics tenantMetrics) {
+        Function<ProceedingJoinPoint, Iterable<Tag>> tenantTags = pjp -> Tags.of("tenant", tenantMetrics.currentTenantTag());
+        return new TimedAspect(registry, tenantTags);
+    }
+
+    /** 仓库方法指标附加租户标签（在调用线程上取值，此时 TenantContext 仍有效） */
+    @Bean
+    public RepositoryTagsProvider tenantRepositoryTagsProvider(TenantMetrics tenantMetrics) {
+        DefaultRepositoryTagsProvider defaults = new DefaultRepositoryTagsProvider();
+        return invocation -> Tags.of(defaults.repositoryTags(invocation)).and("tenant", tenantMetrics.currentTenantTag());
+    }
+
+    /** 接口指标在请求结束后才打标签，TenantFilter 已清除上下文，直接从请求解析店铺 */
+    @Bean
+    public ServerRequestObservationConvention tenantServerRequestObservationConvention(TenantMetrics tenantMetrics) {
+        return new DefaultServerRequestObservationConvention() {
+            @Override
+            public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+                return super.getLowCardinalityKeyValues(context)
+                        .and("tenant", tenantMetrics.tenantTag(TenantFilter.resolveShopId(context.getCarrier())));
+            }
+        };
+    }
+
+    /** 连接池名为 DS-租户ID，补一个 tenant 标签与其它指标对齐 */
+    @Bean
+    public MeterFilter hikariTenantTagFilter() {
+        return new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                String pool = id.getTag("pool");
+                if (!id.getName().startsWith("hikaricp.") || pool == null || !pool.startsWith(POOL_NAME_PREFIX)) return id;
+                return id.withTag(Tag.of("tenant", pool.substring(POOL_NAME_PREFIX.length())));
+            }
+        };
+    }
+
+    /** 租户连接池不是 Spring Bean，注册表就绪后手动挂上 Hikari 的 Micrometer 指标 */
+    @Bean
+    public MeterBinder tenantPoolMetrics(ObjectProvider<MultiTenantDataSourceConfig> multiTenantConfig) {
+        return registry -> multiTenantConfig.ifAvailable(c -> c.bindPoolMetrics(new MicrometerMetricsTrackerFactory(registry)));
+    }
+}
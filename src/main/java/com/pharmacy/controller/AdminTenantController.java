@@ -2,7 +2,26 @@ package com.pharmacy.controller;
 
 import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantAdminGuard;
+import com.pharmacy.multitenant.TenantProvisioner;
+import com.pharmacy.multitenant.TenantSchemaInspector;
+import com.pharmacy.service.SalesRollupService;
+import com.pharmacy.service.ChainReportService;
+import com.pharmacy.service.DocumentNumberService;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.service.impl.MedicineSearchIndex;
+import com.pharmacy.service.impl.MemberConsumptionUpdater;
+import com.pharmacy.service.impl.MemberSearchIndex;
+import com.pharmacy.service.impl.StockAlertEngine;
+import com.pharmacy.service.impl.StockLedger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -22,10 +41,40 @@ public class AdminTenantController {
     private final MultiTenantDataSourceConfig config;
     private final javax.sql.DataSource routingDataSource;
     private final com.pharmacy.repository.EmployeeRepository employeeRepository; // 当前租户视角注入
-    public AdminTenantController(MultiTenantDataSourceConfig config, DataSource routingDataSource, com.pharmacy.repository.EmployeeRepository employeeRepository){
+    private final TenantProvisioner provisioner;
+    private final StockLedger stockLedger;
+    private final SalesRollupService salesRollupService;
+    private final MemberSearchIndex memberSearchIndex;
+    private final MemberConsumptionUpdater memberConsumptionUpdater;
+    private final MedicineSearchIndex medicineSearchIndex;
+    private final DocumentNumberService documentNumberService;
+    private final OutboxService outboxService;
+    private final StockAlertEngine stockAlertEngine;
+    private final TenantSchemaInspector schemaInspector;
+    private final ChainReportService chainReportService;
+    private final TenantAdminGuard adminGuard;
+    public AdminTenantController(MultiTenantDataSourceConfig config, DataSource routingDataSource, com.pharmacy.repository.EmployeeRepository employeeRepository,
+                                 TenantProvisioner provisioner, StockLedger stockLedger, SalesRollupService salesRollupService,
+                                 MemberSearchIndex memberSearchIndex, MemberConsumptionUpdater memberConsumptionUpdater,
+                                 MedicineSearchIndex medicineSearchIndex, DocumentNumberService documentNumberService,
+                                 OutboxService outboxService, StockAlertEngine stockAlertEngine,
+                                 TenantSchemaInspector schemaInspector, ChainReportService chainReportService,
+                                 TenantAdminGuard adminGuard){
         this.config = config;
         this.routingDataSource = routingDataSource;
         this.employeeRepository = employeeRepository;
+        this.provisioner = provisioner;
+        this.stockLedger = stockLedger;
+        this.salesRollupService = salesRollupService;
+        this.memberSearchIndex = memberSearchIndex;
+        this.memberConsumptionUpdater = memberConsumptionUpdater;
+        this.medicineSearchIndex = medicineSearchIndex;
+        this.documentNumberService = documentNumberService;
+        this.outboxService = outboxService;
+        this.stockAlertEngine = stockAlertEngine;
+        this.schemaInspector = schemaInspector;
+        this.chainReportService = chainReportService;
+        this.adminGuard = adminGuard;
     }
 
     @GetMapping("/tenant-info")
@@ -35,10 +84,98 @@ public class AdminTenantController {
         resp.put("currentTenant", current == null ? "default" : current);
         resp.put("tenants", config.getTenantIds());
         resp.put("routingKeys", config.getTenantIds());
+        resp.put("pools", config.describePools());
         resp.put("message", "OK");
         return resp;
     }
 
+    /**
+     * 运行期新增门店：登记数据源 -> 连通性校验（首次建池回调补齐表结构与初始账号），无需重启。
+     * 需开启 tenant.admin.enabled 并携带 X-Admin-Token；url 仅接受白名单内的主机，不允许额外驱动参数。
+     * body: id, url, username, password, maxPoolSize(可选), minIdle(可选)
+     */
+    @PostMapping("/tenant")
+    public ResponseEntity<Map<String,Object>> addTenant(@RequestHeader(value = TenantAdminGuard.HEADER, required = false) String token,
+                                                        @RequestBody Map<String,Object> body){
+        ResponseEntity<Map<String,Object>> denied = checkAdmin(token);
+        if (denied != null) return denied;
+        Map<String,Object> resp = new HashMap<>();
+        String id = body.get("id") == null ? null : String.valueOf(body.get("id")).trim();
+        String url = body.get("url") == null ? null : String.valueOf(body.get("url")).trim();
+        String username = body.get("username") == null ? null : String.valueOf(body.get("username")).trim();
+        String password = body.get("password") == null ? "" : String.valueOf(body.get("password"));
+        try {
+            Map<String,Object> result = provisioner.addTenant(id, url, username, password,
+                    intValue(body.get("maxPoolSize")), intValue(body.get("minIdle")));
+            resp.putAll(result);
+            chainReportService.evictCache();
+            resp.put("tenants", config.getTenantIds());
+            resp.put("message", "tenant added");
+            return ResponseEntity.ok(resp);
+        } catch (IllegalArgumentException e) {
+            resp.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(resp);
+        } catch (IllegalStateException e) {
+            resp.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(resp);
+        }
+    }
+
+    private ResponseEntity<Map<String,Object>> checkAdmin(String token){
+        Map<String,Object> resp = new HashMap<>();
+        if (!adminGuard.isEnabled()) {
+            resp.put("error", "tenant admin disabled");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(resp);
+        }
+        if (!adminGuard.accepts(token)) {
+            resp.put("error", "invalid admin token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(resp);
+        }
+        return null;
+    }
+
+    /**
+     * 下线门店：从注册表移除并关闭连接池，同时丢弃该门店的内存状态；其它门店不受影响
+     */
+    @DeleteMapping("/tenant/{id}")
+    public ResponseEntity<Map<String,Object>> removeTenant(@RequestHeader(value = TenantAdminGuard.HEADER, required = false) String token,
+                                                           @PathVariable("id") String id){
+        ResponseEntity<Map<String,Object>> denied = checkAdmin(token);
+        if (denied != null) return denied;
+        Map<String,Object> resp = new HashMap<>();
+        try {
+            if (!provisioner.removeTenant(id)) {
+                resp.put("error", "tenant not found: " + id);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(resp);
+            }
+        } catch (IllegalArgumentException e) {
+            resp.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(resp);
+        }
+        stockLedger.evict(id);
+        salesRollupService.evictTenant(id);
+        memberSearchIndex.evict(id);
+        memberConsumptionUpdater.evict(id);
+        medicineSearchIndex.evict(id);
+        documentNumberService.evict(id);
+        outboxService.evict(id);
+        stockAlertEngine.evict(id);
+        schemaInspector.evict(id);
+        chainReportService.evictCache();
+        resp.put("id", id);
+        resp.put("tenants", config.getTenantIds());
+        resp.put("message", "tenant removed");
+        return ResponseEntity.ok(resp);
+    }
+
+    private static Integer intValue(Object v){
+        if (v == null) return null;
+        if (v instanceof Number n) return n.intValue();
+        String s = String.valueOf(v).trim();
+        if (s.isEmpty()) return null;
+        try { return Integer.parseInt(s); } catch (NumberFormatException e) { throw new IllegalArgumentException("invalid number: " + s); }
+    }
+
     @GetMapping("/tenant-connection")
     public Map<String,Object> tenantConnection() {
         Map<String,Object> resp = new HashMap<>();
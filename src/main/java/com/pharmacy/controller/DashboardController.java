@@ -110,6 +110,10 @@ public class DashboardController {
                 results = results.subList(0, limit);
             }
 
+            List<String> ids = new ArrayList<>();
+            for(Object[] row : results){ ids.add(String.valueOf(row[0])); }
+            Map<String, InventoryService.StockSummary> stocks = inventoryService.summarizeStock(ids);
+
             List<Map<String,Object>> list = new ArrayList<>();
             for(Object[] row : results){
                 Map<String,Object> map = new HashMap<>();
@@ -120,14 +124,9 @@ public class DashboardController {
                 map.put("retailPrice", row[4]);
                 map.put("quantity", row[5]);
                 map.put("totalRevenue", row[6]);
-                // 补充库存信息
-                try {
-                    String mid = String.valueOf(row[0]);
-                    Integer stock = inventoryService.getCurrentStock(mid);
-                    map.put("currentStock", stock);
-                } catch (Exception e) {
-                    map.put("currentStock", 0);
-                }
+                // 补充库存信息（整批一次查询）
+                InventoryService.StockSummary stock = stocks.get(String.valueOf(row[0]));
+                map.put("currentStock", stock == null ? 0 : stock.stockQuantity());
                 list.add(map);
             }
 
@@ -145,9 +144,11 @@ public class DashboardController {
         // 取前 300 条药品分页（避免全量过大）
         var page = medicineService.getAllMedicines(org.springframework.data.domain.PageRequest.of(0,300));
         LocalDate today = LocalDate.now();
+        Map<String, InventoryService.StockSummary> stocks = inventoryService.summarizeStock(
+                page.getContent().stream().map(Medicine::getMedicineId).toList());
         for(Medicine m: page.getContent()){
-            Integer stock = null;
-            try { stock = inventoryService.getCurrentStock(m.getMedicineId()); } catch(Exception ignored){}
+            InventoryService.StockSummary summary = stocks.get(m.getMedicineId());
+            Integer stock = summary == null ? 0 : summary.stockQuantity();
             LocalDate expiry = m.getExpiryDate();
             String type = null;
             if(stock == null || stock == 0){ type = "OUT_OF_STOCK"; }
@@ -1,12 +1,18 @@
 package com.pharmacy.controller;
 
+import com.pharmacy.multitenant.TenantFanOut;
+import com.pharmacy.multitenant.TenantSchemaInspector;
+import com.pharmacy.multitenant.TenantSchemaInspector.TenantSchema;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
 import java.util.*;
 
 @RestController
@@ -19,11 +25,18 @@ public class HealthController {
     @Autowired
     private com.pharmacy.multitenant.MultiTenantDataSourceConfig multiTenantDataSourceConfig;
 
-    private static final long DEFAULT_TTL_MS = 30_000L; // 30s
-    private volatile Map<String,Object> cachedSchemaResult;
-    private volatile long cachedSchemaAt = 0L;
-    private volatile Map<String,Object> cachedDiffResult;
-    private volatile long cachedDiffAt = 0L;
+    @Autowired
+    private TenantSchemaInspector schemaInspector;
+
+    @Autowired
+    private TenantFanOut tenantFanOut;
+
+    @Value("${health.fanout.tenant-timeout-ms:3000}")
+    private long tenantTimeoutMs;
+
+    // tenant -> 上次比对结果及其依据的结构指纹
+    private record DiffEntry(String baseFingerprint, String fingerprint, List<Map<String, Object>> tables) {}
+    private final Map<String, DiffEntry> diffCache = new java.util.concurrent.ConcurrentHashMap<>();
 
     // 基础健康检查（保持路径 /api/health）
     @GetMapping
@@ -48,118 +61,112 @@ public class HealthController {
         }
     }
 
-    // 多租户 Schema 深度检查 /api/health/schema
+    // 多租户 Schema 深度检查 /api/health/schema（各租户并行读取，按租户缓存；refresh=true 忽略缓存）
     @GetMapping("/schema")
-    public ResponseEntity<Map<String, Object>> schemaHealth() {
-        long ttl = DEFAULT_TTL_MS;
-        if (System.currentTimeMillis() - cachedSchemaAt < ttl && cachedSchemaResult != null) {
-            return ResponseEntity.ok(cachedSchemaResult);
-        }
-        Map<String, Object> result = new HashMap<>();
-        List<String> required = Arrays.asList("member", "category", "role", "employee", "medicine", "inventory", "order", "order_item", "supplier", "stock_in", "stock_in_item");
-        Map<String, javax.sql.DataSource> dsMap = multiTenantDataSourceConfig.getDataSourceMap();
+    public ResponseEntity<Map<String, Object>> schemaHealth(@RequestParam(defaultValue = "false") boolean refresh) {
+        Map<String, Object> result = new LinkedHashMap<>();
         Map<String, Object> tenants = new LinkedHashMap<>();
-        for (var entry : dsMap.entrySet()) {
-            String tenantId = entry.getKey();
-            javax.sql.DataSource ds = entry.getValue();
+        boolean allOk = true;
+        for (var entry : probeSchemas(refresh).entrySet()) {
+            Probe probe = entry.getValue();
             Map<String, Object> tenantInfo = new LinkedHashMap<>();
-            List<String> missing = new ArrayList<>();
-            try (java.sql.Connection conn = ds.getConnection()) {
-                String catalog = conn.getCatalog();
-                for (String tbl : required) {
-                    if (!tableExists(conn, catalog, tbl)) missing.add(tbl);
-                }
-                tenantInfo.put("catalog", catalog);
+            if (probe.schema() != null) {
+                List<String> missing = probe.schema().missingTables();
+                tenantInfo.put("catalog", probe.schema().catalog());
                 tenantInfo.put("missingTables", missing);
+                tenantInfo.put("fingerprint", probe.schema().fingerprint());
                 tenantInfo.put("status", missing.isEmpty() ? "OK" : "INCOMPLETE");
-            } catch (Exception ex) {
-                tenantInfo.put("error", ex.getMessage());
+            } else {
                 tenantInfo.put("status", "ERROR");
             }
-            tenants.put(tenantId, tenantInfo);
+            putProbeMeta(tenantInfo, probe);
+            allOk &= "OK".equals(tenantInfo.get("status")) && probe.error() == null;
+            tenants.put(entry.getKey(), tenantInfo);
         }
         result.put("tenants", tenants);
-        boolean allOk = tenants.values().stream().allMatch(v -> "OK".equals(((Map<?, ?>) v).get("status")));
         result.put("overall", allOk ? "UP" : "DEGRADED");
         result.put("timestamp", java.time.LocalDateTime.now().toString());
-        cachedSchemaResult = result;
-        cachedSchemaAt = System.currentTimeMillis();
         return ResponseEntity.ok(result);
     }
 
     @GetMapping("/diff")
-    public ResponseEntity<Map<String,Object>> schemaDiff(){
-        long ttl = DEFAULT_TTL_MS;
-        if (System.currentTimeMillis() - cachedDiffAt < ttl && cachedDiffResult != null) {
-            return ResponseEntity.ok(cachedDiffResult);
-        }
+    public ResponseEntity<Map<String,Object>> schemaDiff(@RequestParam(defaultValue = "false") boolean refresh){
         Map<String,Object> out = new LinkedHashMap<>();
-        Map<String, javax.sql.DataSource> dsMap = multiTenantDataSourceConfig.getDataSourceMap();
-        String baseTenant = dsMap.containsKey("rzt")?"rzt":"default";
-        javax.sql.DataSource baseDs = dsMap.get(baseTenant);
-        List<String> tables = Arrays.asList("member","category","role","employee","medicine","inventory","order","order_item","supplier","stock_in","stock_in_item");
-        Map<String,Map<String,Object>> diffPerTenant = new LinkedHashMap<>();
-        Map<String,Map<String,String>> baseTableCols = new HashMap<>();
-        try(java.sql.Connection baseConn = baseDs.getConnection()){
-            String baseCatalog = baseConn.getCatalog();
-            for(String t: tables){
-                baseTableCols.put(t, fetchColumns(baseConn, baseCatalog, t));
-            }
-        } catch(Exception ex){
-            out.put("error","Base tenant read failed: "+ex.getMessage());
+        Map<String, Probe> probes = probeSchemas(refresh);
+        String baseTenant = probes.containsKey("rzt")?"rzt":"default";
+        Probe base = probes.get(baseTenant);
+        TenantSchema baseSchema = base != null ? base.schema() : null;
+        if (baseSchema == null) {
+            out.put("error", "Base tenant read failed: " + (base != null ? base.error() : "not configured"));
         }
-        for(var e: dsMap.entrySet()){
+        Map<String,Map<String,Object>> diffPerTenant = new LinkedHashMap<>();
+        for(var e: probes.entrySet()){
             String tenantId = e.getKey();
-            javax.sql.DataSource ds = e.getValue();
             if(tenantId.equals(baseTenant)) continue;
+            Probe probe = e.getValue();
             Map<String,Object> tInfo = new LinkedHashMap<>();
-            List<Map<String,Object>> tableDiffs = new ArrayList<>();
-            try(java.sql.Connection c = ds.getConnection()){
-                String catalog = c.getCatalog();
-                for(String t: tables){
-                    Map<String,String> baseCols = baseTableCols.getOrDefault(t, Collections.emptyMap());
-                    Map<String,String> cols = fetchColumns(c, catalog, t);
-                    if(cols.isEmpty()){
-                        tableDiffs.add(Map.of("table",t,"status","MISSING"));
-                        continue;
-                    }
-                    List<String> missing = new ArrayList<>();
-                    List<String> typeMismatch = new ArrayList<>();
-                    for(var bc: baseCols.entrySet()){
-                        String col = bc.getKey();
-                        String bType = bc.getValue();
-                        String tType = cols.get(col);
-                        if(tType==null) missing.add(col); else if(!normalizeType(bType).equals(normalizeType(tType))) typeMismatch.add(col+":"+tType+"!="+bType);
-                    }
-                    Map<String,Object> one = new LinkedHashMap<>();
-                    one.put("table", t);
-                    one.put("missingColumns", missing);
-                    one.put("typeMismatch", typeMismatch);
-                    one.put("status", missing.isEmpty()&&typeMismatch.isEmpty()?"OK":"DIFF");
-                    tableDiffs.add(one);
-                }
-            } catch(Exception ex){
-                tInfo.put("error", ex.getMessage());
+            List<Map<String,Object>> tableDiffs = List.of();
+            if (baseSchema != null && probe.schema() != null) {
+                tableDiffs = diffAgainstBase(tenantId, baseSchema, probe.schema());
             }
             tInfo.put("tables", tableDiffs);
+            putProbeMeta(tInfo, probe);
             diffPerTenant.put(tenantId, tInfo);
         }
         out.put("base", baseTenant);
         out.put("diff", diffPerTenant);
         out.put("timestamp", java.time.LocalDateTime.now().toString());
-        cachedDiffResult = out; cachedDiffAt = System.currentTimeMillis();
         return ResponseEntity.ok(out);
     }
 
-    private Map<String,String> fetchColumns(java.sql.Connection conn,String catalog,String table){
-        Map<String,String> map = new LinkedHashMap<>();
-        try(java.sql.Statement st = conn.createStatement(); java.sql.ResultSet rs = st.executeQuery("SELECT COLUMN_NAME, COLUMN_TYPE FROM information_schema.COLUMNS WHERE TABLE_SCHEMA='"+catalog+"' AND TABLE_NAME='"+table+"'")){
-            while(rs.next()){ map.put(rs.getString(1), rs.getString(2)); }
-        } catch(Exception ignored){}
-        return map;
+    /** 单个租户的表结构读取结果：source 为 cache / live / stale（读取失败，沿用上次结果）/ none */
+    private record Probe(TenantSchema schema, String source, String error, boolean timedOut, long elapsedMillis) {}
+
+    /** 缓存已过期的租户并行读取，每个租户独立截止时间；失败或超时的租户回落到上一次结果 */
+    private Map<String, Probe> probeSchemas(boolean refresh) {
+        Map<String, javax.sql.DataSource> dsMap = multiTenantDataSourceConfig.getDataSourceMap();
+        Map<String, Probe> probes = new LinkedHashMap<>();
+        Map<String, javax.sql.DataSource> toInspect = new LinkedHashMap<>();
+        for (var e : dsMap.entrySet()) {
+            TenantSchema cached = refresh ? null : schemaInspector.fresh(e.getKey());
+            probes.put(e.getKey(), cached != null ? new Probe(cached, "cache", null, false, 0) : null);
+            if (cached == null) toInspect.put(e.getKey(), e.getValue());
+        }
+        Map<String, TenantFanOut.Outcome<TenantSchema>> live = tenantFanOut.run(toInspect, (tenant, ds) -> {
+            try {
+                return schemaInspector.inspect(tenant, ds);
+            } catch (java.sql.SQLException ex) {
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }, Duration.ofMillis(tenantTimeoutMs));
+        for (var e : live.entrySet()) {
+            TenantFanOut.Outcome<TenantSchema> o = e.getValue();
+            if (o.ok()) {
+                probes.put(e.getKey(), new Probe(o.value(), "live", null, false, o.elapsedMillis()));
+            } else {
+                TenantSchema stale = schemaInspector.lastKnown(e.getKey());
+                probes.put(e.getKey(), new Probe(stale, stale != null ? "stale" : "none", o.error(), o.timedOut(), o.elapsedMillis()));
+            }
+        }
+        return probes;
     }
-    private String normalizeType(String t){
-        if(t==null) return ""; return t.toLowerCase().replace(" unsigned"," ").trim();
+
+    private void putProbeMeta(Map<String, Object> info, Probe probe) {
+        info.put("source", probe.source());
+        info.put("elapsedMs", probe.elapsedMillis());
+        if (probe.timedOut()) info.put("timedOut", true);
+        if (probe.error() != null) info.put("error", probe.error());
+    }
+
+    /** 基准与租户的结构指纹都未变化时直接复用上次的比对结果 */
+    private List<Map<String, Object>> diffAgainstBase(String tenantId, TenantSchema base, TenantSchema target) {
+        DiffEntry cached = diffCache.get(tenantId);
+        if (cached != null && cached.baseFingerprint().equals(base.fingerprint()) && cached.fingerprint().equals(target.fingerprint())) {
+            return cached.tables();
+        }
+        List<Map<String, Object>> tables = TenantSchemaInspector.diff(base, target, TenantSchemaInspector.CORE_TABLES);
+        diffCache.put(tenantId, new DiffEntry(base.fingerprint(), target.fingerprint(), tables));
+        return tables;
     }
 
     private Map<String, String> checkCoreTablesCurrent() {
@@ -179,13 +186,4 @@ public class HealthController {
             return false;
         }
     }
-
-    private boolean tableExists(java.sql.Connection conn, String catalog, String table) {
-        try (java.sql.ResultSet rs = conn.getMetaData().getTables(catalog, null, table, null)) {
-            return rs.next();
-        } catch (Exception e) {
-            return false;
-        }
-    }
 }
-
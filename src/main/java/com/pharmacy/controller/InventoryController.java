@@ -3,12 +3,15 @@ package com.pharmacy.controller;
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.dto.InventoryDTO;
 import com.pharmacy.dto.CurrentStockDTO;
+import com.pharmacy.repository.InventoryRepositoryCustom;
 import com.pharmacy.service.InventoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +62,45 @@ public class InventoryController {
         }
     }
 
+    // 库存列表分页（数据库过滤/排序/分页；传 afterId(+afterKey) 时走键集分页，不再返回总数）
+    @GetMapping("/page")
+    public ResponseEntity<?> getInventoryPage(@RequestParam(required = false) String keyword,
+                                              @RequestParam(required = false) Integer categoryId,
+                                              @RequestParam(required = false) String stockStatus,
+                                              @RequestParam(required = false) String expiryStatus,
+                                              @RequestParam(required = false) String supplier,
+                                              @RequestParam(required = false) String sort,
+                                              @RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "20") int size,
+                                              @RequestParam(required = false) Long afterId,
+                                              @RequestParam(required = false) String afterKey) {
+        try {
+            if (page < 0) page = 0; if (size < 1) size = 20; if (size > 200) size = 200;
+            InventoryRepositoryCustom.ListCriteria criteria = new InventoryRepositoryCustom.ListCriteria(
+                    keyword, categoryId, stockStatus, expiryStatus, supplier, LocalDate.now());
+            List<InventoryDTO> data = inventoryService.pageInventory(criteria, sort, afterId, afterKey, page * size, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", data);
+            response.put("currentPage", page);
+            if (afterId == null) {
+                long total = inventoryService.countInventory(criteria);
+                response.put("totalItems", total);
+                response.put("totalPages", (total + size - 1) / size);
+            }
+            InventoryDTO last = data.size() == size ? data.get(data.size() - 1) : null;
+            response.put("nextAfterId", last != null ? last.getInventoryId() : null);
+            response.put("nextAfterKey", last != null ? inventoryService.pageCursorKey(sort, last) : null);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | InvalidDataAccessApiUsageException e) {
+            // 仓储层的参数异常会被翻译为 InvalidDataAccessApiUsageException，游标不合法按 400 返回
+            return ResponseEntity.badRequest().body(Map.of("code", 400, "message", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of("code", 500, "message", "分页获取库存失败: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/low-stock")
     public ResponseEntity<?> getLowStock() {
         try {
@@ -282,28 +324,17 @@ public class InventoryController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<?> searchInventory(@RequestParam(required=false) String keyword) {
+    public ResponseEntity<?> searchInventory(@RequestParam(required=false) String keyword,
+                                             @RequestParam(defaultValue="0") int page,
+                                             @RequestParam(defaultValue="100") int size) {
         try {
-            String kw = keyword == null ? "" : keyword.trim();
-            List<InventoryDTO> all = inventoryService.findAllWithMedicineDTO();
-            if (kw.isEmpty()) {
-                return ResponseEntity.ok(Map.of("code",200,"message","success","data", all, "total", all.size()));
-            }
-            String low = kw.toLowerCase();
-            List<InventoryDTO> filtered = all.stream().filter(dto -> {
-                String bno = dto.getBatchNo();
-                String gn = dto.getMedicineGenericName();
-                String tn = dto.getMedicineTradeName();
-                String spec = dto.getMedicineSpec();
-                String mfr = null; // InventoryDTO 目前没有厂家字段
-                String ap = null;  // InventoryDTO 目前没有批准文号字段
-                String bc = null;  // InventoryDTO 目前没有条码字段
-                return (bno!=null && bno.toLowerCase().contains(low))
-                        || (gn!=null && gn.toLowerCase().contains(low))
-                        || (tn!=null && tn.toLowerCase().contains(low))
-                        || (spec!=null && spec.toLowerCase().contains(low));
-            }).toList();
-            return ResponseEntity.ok(Map.of("code",200,"message","success","data", filtered, "total", filtered.size()));
+            if (page < 0) page = 0; if (size < 1) size = 100; if (size > 500) size = 500;
+            // 关键字覆盖批号/通用名/商品名/规格/厂家/条码/批准文号，匹配与分页都在数据库完成
+            InventoryRepositoryCustom.ListCriteria criteria = new InventoryRepositoryCustom.ListCriteria(
+                    keyword, null, null, null, null, LocalDate.now());
+            List<InventoryDTO> data = inventoryService.pageInventory(criteria, null, null, null, page * size, size);
+            long total = inventoryService.countInventory(criteria);
+            return ResponseEntity.ok(Map.of("code",200,"message","success","data", data, "total", total));
         } catch(Exception e){
             return ResponseEntity.internalServerError().body(Map.of("code",500,"message","库存关键字搜索失败: "+e.getMessage(), "data", java.util.List.of()));
         }
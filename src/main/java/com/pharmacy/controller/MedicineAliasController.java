@@ -2,6 +2,7 @@ package com.pharmacy.controller;
 
 import com.pharmacy.entity.Medicine;
 import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.service.MedicineService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,6 +18,8 @@ import java.util.Map;
 public class MedicineAliasController {
     @Autowired
     private MedicineRepository medicineRepository;
+    @Autowired
+    private MedicineService medicineService;
 
     @GetMapping("/search")
     public ResponseEntity<?> search(@RequestParam(required=false) String keyword){
@@ -25,7 +28,8 @@ public class MedicineAliasController {
                 List<Medicine> all = medicineRepository.findAllActive(org.springframework.data.domain.PageRequest.of(0,100)).getContent();
                 return ResponseEntity.ok(all.stream().map(this::simple).toList());
             }
-            List<Medicine> list = medicineRepository.searchActiveByKeyword(keyword.trim());
+            // 与空关键词一致最多返回 100 条，按相关度排序
+            List<Medicine> list = medicineService.searchMedicines(keyword.trim(), null, 1, 100).getContent();
             return ResponseEntity.ok(list.stream().map(this::simple).toList());
         } catch(Exception e){
             return ResponseEntity.internalServerError().body(Map.of("code",500,"message","搜索失败: "+e.getMessage()));
@@ -5,6 +5,7 @@ import com.pharmacy.dto.MedicineWithStockDTO;
 import com.pharmacy.entity.Medicine;
 import com.pharmacy.service.MedicineService;
 import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.DocumentNumberService;
 import com.pharmacy.util.StockStatusUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -29,6 +30,9 @@ public class MedicineController {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private DocumentNumberService documentNumberService;
+
     @Autowired
     private com.pharmacy.repository.OrderItemRepository orderItemRepository;
 
@@ -118,7 +122,7 @@ public class MedicineController {
             }
             // 补必填字段
             if (medicine.getMedicineId() == null || medicine.getMedicineId().trim().isEmpty()) {
-                medicine.setMedicineId("M" + System.currentTimeMillis());
+                medicine.setMedicineId(documentNumberService.nextMedicineId());
             }
             if (medicine.getGenericName() == null || medicine.getGenericName().trim().isEmpty()) {
                 medicine.setGenericName(medicine.getTradeName() != null ? medicine.getTradeName() : "手动添加药品");
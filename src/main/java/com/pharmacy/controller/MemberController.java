@@ -3,18 +3,28 @@ package com.pharmacy.controller;
 import com.pharmacy.dto.MemberDTO;
 import com.pharmacy.dto.MemberStatsDTO;
 import com.pharmacy.entity.Member;
+import com.pharmacy.repository.MemberRepositoryCustom;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.service.MemberService;
 import com.pharmacy.service.impl.MemberConsumptionUpdater;
 import com.pharmacy.multitenant.TenantContext; // 新增导入
+import com.pharmacy.multitenant.TenantRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import java.io.ByteArrayOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 
@@ -309,25 +319,30 @@ public class MemberController {
         }
     }
 
-    // 获取所有会员（分页版本）
+    // 获取所有会员（分页版本，数据库分页；传 afterId 时走键集分页）
     @GetMapping("/page")
     public ResponseEntity<Map<String, Object>> getMembersPage(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String afterId) {
 
         try {
-            List<Member> allMembers = memberService.findAll();
-            int total = allMembers.size();
-            int start = Math.min(page * size, total);
-            int end = Math.min(start + size, total);
-            List<Member> pageMembers = start < end ? allMembers.subList(start, end) : java.util.Collections.emptyList();
+            if (page < 0) page = 0; if (size < 1) size = 10; if (size > 200) size = 200;
+            Map<String, Object> response = new HashMap<>();
+            List<Member> pageMembers;
+            if (afterId != null && !afterId.isBlank()) {
+                pageMembers = memberService.findPageAfter(afterId, size);
+            } else {
+                org.springframework.data.domain.Page<Member> result = memberService.findPage(page, size);
+                pageMembers = result.getContent();
+                response.put("totalItems", result.getTotalElements());
+                response.put("totalPages", result.getTotalPages());
+            }
             List<MemberDTO> dtoPage = enrichMembersWithConsumption(pageMembers);
 
-            Map<String, Object> response = new HashMap<>();
             response.put("data", dtoPage);
             response.put("currentPage", page);
-            response.put("totalItems", total);
-            response.put("totalPages", (int) Math.ceil((double) total / size));
+            response.put("nextAfterId", pageMembers.size() == size ? pageMembers.get(pageMembers.size() - 1).getMemberId() : null);
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -345,12 +360,20 @@ public class MemberController {
         return ResponseEntity.ok(Map.of(
                 "code", 200,
                 "message", "success",
-                "tenant", tenant,
+                "tenant", tenant == null ? TenantRegistry.DEFAULT_TENANT : tenant, // 未带 X-Shop-Id 时为默认库，Map.of 不接受 null
                 "data", dto,
                 "total", dto.size()
         ));
     }
 
+    // 会员消费统计缓存命中情况（按租户）
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("tenants", memberConsumptionUpdater == null ? Map.of() : memberConsumptionUpdater.cacheStats());
+        return ResponseEntity.ok(resp);
+    }
+
     // 调试端点：获取当前租户的所有会员及其原始名称
     @GetMapping("/debug-all")
     public ResponseEntity<Map<String,Object>> debugAll(){
@@ -408,16 +431,15 @@ public class MemberController {
             // 批量数据库聚合填充缺失项并更新缓存
             if(!missingForBatch.isEmpty()){
                 try {
-                    memberConsumptionUpdater.refreshMembersBatch(missingForBatch); // 刷新缓存
+                    java.util.Map<String, MemberConsumptionUpdater.MemberStatsSnapshot> refreshed = memberConsumptionUpdater.refreshMembersBatch(missingForBatch); // 刷新缓存
                     for(String mid: missingForBatch){
-                        MemberConsumptionUpdater.MemberStatsSnapshot snap2 = memberConsumptionUpdater.getCachedStats(mid);
+                        MemberConsumptionUpdater.MemberStatsSnapshot snap2 = refreshed.get(mid);
+                        MemberDTO dto = map.get(mid);
                         if(snap2!=null){
-                            MemberDTO dto = map.get(mid);
                             dto.setConsumptionCount(snap2.consumptionCount);
                             dto.setLastConsumptionDate(snap2.lastConsumptionDate);
                         } else {
-                            // 缓存仍无，置默认值
-                            MemberDTO dto = map.get(mid);
+                            // 刷新失败，置默认值
                             dto.setConsumptionCount(0);
                         }
                     }
@@ -467,73 +489,14 @@ public class MemberController {
         Map<String,Object> res = new HashMap<>();
         try {
             if(page < 1) page = 1; if(size < 1) size = 10; if(size > 200) size = 200; // 简单约束
-            List<MemberDTO> all = enrichMembersWithConsumption(memberService.findAll());
-            long nowMillis = System.currentTimeMillis();
-            long activeThreshold = nowMillis - 30L*24*3600*1000; // 最近30天
-            long sleepThreshold  = nowMillis - 90L*24*3600*1000; // 超过90天视为沉睡
-            // 基础过滤
-            List<MemberDTO> filtered = new ArrayList<>();
-            for(MemberDTO m : all){
-                if(name != null && !name.isBlank() && (m.getName()==null || !m.getName().contains(name.trim()))) continue;
-                if(phone != null && !phone.isBlank() && (m.getPhone()==null || !m.getPhone().contains(phone.trim()))) continue;
-                if(pointsMin != null && (m.getPoints()==null || m.getPoints() < pointsMin)) continue;
-                if(pointsMax != null && (m.getPoints()==null || m.getPoints() > pointsMax)) continue;
-                if(consumptionMin != null && (m.getConsumptionCount()==null || m.getConsumptionCount() < consumptionMin)) continue;
-                if(consumptionMax != null && (m.getConsumptionCount()==null || m.getConsumptionCount() > consumptionMax)) continue;
-                // segment 分组筛选
-                if(segment != null && !segment.isBlank()){
-                    boolean keep = true;
-                    switch(segment){
-                        case "vip": keep = m.getLevel()!=null && m.getLevel() >= 4; break;
-                        case "new30": keep = m.getCreateTime()!=null && m.getCreateTime().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli() >= activeThreshold; break;
-                        case "sleep": {
-                            java.time.LocalDateTime last = m.getLastConsumptionDate();
-                            long lastMs = (last==null)?0:last.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                            keep = lastMs == 0 || lastMs < sleepThreshold; break; }
-                        case "highPoints": keep = m.getPoints()!=null && m.getPoints() >= 1000; break;
-                        default: break; // all
-                    }
-                    if(!keep) continue;
-                }
-                filtered.add(m);
-            }
-            // 排序
-            if(sort != null && !sort.isBlank()){
-                String[] parts = sort.split("_");
-                if(parts.length == 2){
-                    String field = parts[0]; String dir = parts[1];
-                    java.util.Comparator<MemberDTO> cmp = java.util.Comparator.comparingInt(a->0); // 默认
-                    switch(field){
-                        case "createTime": cmp = java.util.Comparator.comparing(a-> a.getCreateTime()==null? java.time.LocalDateTime.MIN : a.getCreateTime()); break;
-                        case "points": cmp = java.util.Comparator.comparing(a-> a.getPoints()==null?0:a.getPoints()); break;
-                        case "consumption": cmp = java.util.Comparator.comparing(a-> a.getConsumptionCount()==null?0:a.getConsumptionCount()); break;
-                        case "level": cmp = java.util.Comparator.comparing(a-> a.getLevel()==null?0:a.getLevel()); break;
-                    }
-                    if("desc".equalsIgnoreCase(dir)) cmp = cmp.reversed();
-                    filtered.sort(cmp);
-                }
-            }
-            // 全局聚合指标（基于筛选后的完整集合，不是当前页）
-            int total = filtered.size();
-            double avgPoints = 0.0; int activeCount = 0; int churnCount = 0; long now = System.currentTimeMillis();
-            if(total > 0){
-                for(MemberDTO m: filtered){
-                    avgPoints += (m.getPoints()==null?0:m.getPoints());
-                    Long lastMs = null;
-                    if(m.getLastConsumptionDate()!=null){
-                        lastMs = m.getLastConsumptionDate().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    }
-                    if(lastMs!=null && (now - lastMs) < 30L*24*3600*1000) activeCount++;
-                    if(lastMs==null || (now - lastMs) > 90L*24*3600*1000) churnCount++;
-                }
-                avgPoints = avgPoints / total;
-            }
-            double activeRate = total==0?0.0: (activeCount * 100.0 / total);
-            // 分页切片
-            int start = (page-1)*size;
-            if(start > total) start = total;
-            int end = Math.min(start + size, total);
-            List<MemberDTO> pageList = filtered.subList(start, end);
+            // 过滤、排序、分页与汇总指标均在数据库完成
+            MemberRepositoryCustom.AdvancedCriteria criteria = new MemberRepositoryCustom.AdvancedCriteria(
+                    segment, pointsMin, pointsMax, consumptionMin, consumptionMax, name, phone, LocalDateTime.now());
+            MemberRepositoryCustom.AdvancedSummary summary = memberService.summarizeAdvanced(criteria);
+            long total = summary.total();
+            List<MemberDTO> pageList = total == 0 ? java.util.Collections.emptyList()
+                    : memberService.findAdvancedPage(criteria, sort, (page-1)*size, size);
+            double activeRate = total==0?0.0: (summary.activeCount() * 100.0 / total);
             res.put("code", 200);
             res.put("message", "success");
             res.put("currentPage", page);
@@ -541,9 +504,9 @@ public class MemberController {
             res.put("totalItems", total);
             res.put("totalPages", (int)Math.ceil(total/(double)size));
             res.put("data", pageList);
-            res.put("avgPoints", Math.round(avgPoints));
+            res.put("avgPoints", Math.round(summary.avgPoints()));
             res.put("activeRate", String.format(java.util.Locale.ROOT, "%.1f%%", activeRate));
-            res.put("churnCount", churnCount);
+            res.put("churnCount", summary.churnCount());
             return ResponseEntity.ok(res);
         } catch(Exception e){
             res.put("code", 500);
@@ -555,44 +518,109 @@ public class MemberController {
 
     // 导出会员
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportMembers() {
-        try (Workbook workbook = new XSSFWorkbook()) {
+    public void exportMembers(@RequestParam(defaultValue = "xlsx") String format, HttpServletResponse response) throws IOException {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        response.setContentType(csv ? "text/csv;charset=UTF-8" : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"members." + (csv ? "csv" : "xlsx") + "\"");
+        long start = System.currentTimeMillis();
+        try {
+            OutputStream out = response.getOutputStream();
+            int rows = csv ? writeMembersCsv(out) : writeMembersXlsx(out);
+            out.flush();
+            System.out.println("[MemberExport] 租户=" + TenantContext.getTenant() + " format=" + (csv ? "csv" : "xlsx")
+                    + " rows=" + rows + " 耗时=" + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+            // 已开始输出时无法再改状态码，只能中断连接
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    private static final String[] EXPORT_COLUMNS = {"ID", "姓名", "手机号", "会员卡号", "等级", "积分", "过敏史", "医保卡号", "注册时间"};
+
+    // SXSSF 只在内存保留滑动窗口内的行，其余行落到临时文件，内存与会员数无关
+    private int writeMembersXlsx(OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+        workbook.setCompressTempFiles(true);
+        try {
             Sheet sheet = workbook.createSheet("Members");
             Row header = sheet.createRow(0);
-            String[] columns = {"ID", "姓名", "手机号", "会员卡号", "等级", "积分", "过敏史", "医保卡号", "注册时间"};
-            for (int i = 0; i < columns.length; i++) {
-                header.createCell(i).setCellValue(columns[i]);
+            for (int i = 0; i < EXPORT_COLUMNS.length; i++) {
+                header.createCell(i).setCellValue(EXPORT_COLUMNS[i]);
             }
-
-            List<Member> members = memberService.findAll();
-            int rowNum = 1;
-            for (Member member : members) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(member.getMemberId());
-                row.createCell(1).setCellValue(member.getName());
-                row.createCell(2).setCellValue(member.getPhone());
-                row.createCell(3).setCellValue(member.getCardNo());
+            int[] rowNum = {1};
+            memberService.forEachMemberForExport(member -> {
+                Row row = sheet.createRow(rowNum[0]++);
+                row.createCell(0).setCellValue(spreadsheetText(member.getMemberId()));
+                row.createCell(1).setCellValue(spreadsheetText(member.getName()));
+                row.createCell(2).setCellValue(spreadsheetText(member.getPhone()));
+                row.createCell(3).setCellValue(spreadsheetText(member.getCardNo()));
                 row.createCell(4).setCellValue(member.getLevel() != null ? member.getLevel() : 0);
                 row.createCell(5).setCellValue(member.getPoints() != null ? member.getPoints() : 0);
-                row.createCell(6).setCellValue(member.getAllergicHistory());
-                row.createCell(7).setCellValue(member.getMedicalCardNo());
+                row.createCell(6).setCellValue(spreadsheetText(member.getAllergicHistory()));
+                row.createCell(7).setCellValue(spreadsheetText(member.getMedicalCardNo()));
                 row.createCell(8).setCellValue(member.getCreateTime() != null ? member.getCreateTime().toString() : "");
-            }
-
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            });
             workbook.write(out);
+            return rowNum[0] - 1;
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "members.xlsx");
+    // CSV 边读边写，每 500 行刷新一次，首字节立即到达客户端
+    private int writeMembersCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        writer.write('\uFEFF'); // BOM，Excel 直接打开不乱码
+        writer.write(String.join(",", EXPORT_COLUMNS));
+        writer.write("\r\n");
+        writer.flush();
+        int[] count = {0};
+        try {
+            memberService.forEachMemberForExport(member -> {
+                try {
+                    writer.write(csvLine(spreadsheetText(member.getMemberId()), spreadsheetText(member.getName()),
+                            spreadsheetText(member.getPhone()), spreadsheetText(member.getCardNo()),
+                            String.valueOf(member.getLevel() != null ? member.getLevel() : 0),
+                            String.valueOf(member.getPoints() != null ? member.getPoints() : 0),
+                            spreadsheetText(member.getAllergicHistory()), spreadsheetText(member.getMedicalCardNo()),
+                            member.getCreateTime() != null ? member.getCreateTime().toString() : ""));
+                    if (++count[0] % 500 == 0) writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return count[0];
+    }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(out.toByteArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+    // 以 = + - @ 开头的内容在 Excel/WPS 中会被当作公式执行（CSV/公式注入），前置单引号按文本显示
+    private static String spreadsheetText(String v) {
+        if (v == null || v.isEmpty()) return v;
+        char c = v.charAt(0);
+        return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t' || c == '\r' ? "'" + v : v;
+    }
+
+    private static String csvLine(String... values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            String v = values[i];
+            if (v == null) continue;
+            if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0) {
+                sb.append('"').append(v.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(v);
+            }
         }
+        return sb.append("\r\n").toString();
     }
 
     // 导入会员
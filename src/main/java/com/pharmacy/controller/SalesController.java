@@ -1,12 +1,13 @@
 package com.pharmacy.controller;
 
-import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.entity.SalesRollupMetrics;
+import com.pharmacy.service.SalesRollupService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
 
 @RestController
@@ -14,7 +15,7 @@ import java.util.*;
 public class SalesController {
 
     @Autowired
-    private OrderRepository orderRepository;
+    private SalesRollupService salesRollupService;
 
     @GetMapping("/trend")
     public ResponseEntity<Map<String,Object>> trend(@RequestParam(defaultValue = "14") int days){
@@ -22,14 +23,11 @@ public class SalesController {
         List<String> labels = new ArrayList<>();
         List<Double> values = new ArrayList<>();
         LocalDate today = LocalDate.now();
-        for(int i = days - 1; i >= 0; i--){
-            LocalDate d = today.minusDays(i);
-            LocalDateTime start = d.atStartOfDay();
-            LocalDateTime end = d.plusDays(1).atStartOfDay();
-            Double paid = safe(orderRepository.getPaidSalesBetween(start, end));
-            Double refunded = safe(orderRepository.getRefundedAmountBetween(start, end));
-            double net = Math.max(0.0, paid - refunded);
-            labels.add(d.toString());
+        // 直接读取日汇总：已支付金额(按下单时间) - 退款金额(按退款时间)
+        Map<LocalDate, SalesRollupMetrics> daily = salesRollupService.byDay(today.minusDays(days - 1L).atStartOfDay(), today.plusDays(1).atStartOfDay());
+        for(Map.Entry<LocalDate, SalesRollupMetrics> e : daily.entrySet()){
+            double net = Math.max(0.0, e.getValue().getPaidAmount() - e.getValue().getRefundAmount());
+            labels.add(e.getKey().toString());
             values.add(net);
         }
         Map<String,Object> resp = new HashMap<>();
@@ -37,6 +35,23 @@ public class SalesController {
         return ResponseEntity.ok(resp);
     }
 
-    private Double safe(Double d){ return d == null? 0.0: d; }
+    /**
+     * 按订单表重建指定日期范围（含首尾）的销售汇总
+     */
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<Map<String,Object>> rebuildRollup(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to){
+        Map<String,Object> resp = new HashMap<>();
+        if(from.isAfter(to)){
+            resp.put("code", 400);
+            resp.put("message", "开始日期不能晚于结束日期");
+            return ResponseEntity.badRequest().body(resp);
+        }
+        int rebuilt = salesRollupService.rebuild(from, to);
+        resp.put("code", 200);
+        resp.put("message", "销售汇总重建完成");
+        resp.put("data", Map.of("days", rebuilt));
+        return ResponseEntity.ok(resp);
+    }
 }
-
@@ -1,5 +1,6 @@
 package com.pharmacy.controller;
 
+import com.pharmacy.service.ChainReportService;
 import com.pharmacy.service.StatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -18,6 +19,9 @@ public class StatsController {
     @Autowired
     private StatsService statsService;
 
+    @Autowired
+    private ChainReportService chainReportService;
+
     // 现有接口保持不变...
     @GetMapping("/sales")
     public ResponseEntity<Map<String, Object>> getSalesStats(
@@ -40,6 +44,30 @@ public class StatsController {
         }
     }
 
+    // 连锁汇总：所有门店并行统计后合并（合计、按日合并、商品排行前 topK、分门店明细）
+    @GetMapping("/chain")
+    public ResponseEntity<Map<String, Object>> getChainReport(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "10") int topK,
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            Map<String, Object> report = chainReportService.consolidated(startDate, endDate, Math.min(topK, 100), refresh);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", Boolean.TRUE.equals(report.get("complete")) ? "获取连锁汇总成功" : "部分门店统计失败，结果不完整");
+            response.put("data", report);
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("code", 500);
+            errorResponse.put("message", "获取连锁汇总失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(errorResponse);
+        }
+    }
+
     // 其他现有接口...
 
     // 新增接口：获取所有商品排行（不按时间范围）
@@ -1,6 +1,9 @@
 package com.pharmacy.controller;
 
 import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantAdminGuard;
+import com.pharmacy.multitenant.TenantProvisioner;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,8 +15,12 @@ import java.util.Set;
 public class TenantAdminController {
 
     private final MultiTenantDataSourceConfig multiTenantConfig;
-    public TenantAdminController(MultiTenantDataSourceConfig multiTenantConfig){
+    private final TenantProvisioner provisioner;
+    private final TenantAdminGuard adminGuard;
+    public TenantAdminController(MultiTenantDataSourceConfig multiTenantConfig, TenantProvisioner provisioner, TenantAdminGuard adminGuard){
         this.multiTenantConfig = multiTenantConfig;
+        this.provisioner = provisioner;
+        this.adminGuard = adminGuard;
     }
 
     @GetMapping
@@ -23,15 +30,29 @@ public class TenantAdminController {
     }
 
     @PostMapping
-    public ResponseEntity<?> add(@RequestBody Map<String,String> body){
+    public ResponseEntity<?> add(@RequestHeader(value = TenantAdminGuard.HEADER, required = false) String token,
+                                 @RequestBody Map<String,String> body){
+        // 与 /api/admin/tenant 使用同一口令，默认关闭
+        if(!adminGuard.isEnabled()){
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error","tenant admin disabled"));
+        }
+        if(!adminGuard.accepts(token)){
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error","invalid admin token"));
+        }
         String id = body.get("id");
         String url = body.get("url");
-        String username = body.getOrDefault("username", "root");
-        String password = body.getOrDefault("password", "123456");
-        if(id==null || url==null){
-            return ResponseEntity.badRequest().body(Map.of("error","id and url required"));
+        String username = body.get("username");
+        String password = body.getOrDefault("password", "");
+        if(id==null || url==null || username==null){
+            return ResponseEntity.badRequest().body(Map.of("error","id, url and username required"));
+        }
+        try {
+            provisioner.addTenant(id, url, username, password, null, null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
         }
-        multiTenantConfig.addTenant(id,url,username,password);
         return ResponseEntity.ok(Map.of("message","tenant added","id",id));
     }
 }
@@ -0,0 +1,26 @@
+package com.pharmacy.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * 库内序号（目前只有会员号 member），由 DocumentNumberServiceImpl 行锁取号。
+ * 映射为实体只为默认库随 Hibernate 建表，读写都走 JdbcTemplate。
+ */
+@Entity
+@Table(name = "doc_sequence")
+public class DocSequence {
+    @Id
+    @Column(name = "seq_name", length = 32)
+    private String seqName;
+
+    @Column(name = "seq_value", nullable = false)
+    private Long seqValue;
+
+    public DocSequence() {}
+
+    public String getSeqName() { return seqName; }
+    public void setSeqName(String seqName) { this.seqName = seqName; }
+
+    public Long getSeqValue() { return seqValue; }
+    public void setSeqValue(Long seqValue) { this.seqValue = seqValue; }
+}
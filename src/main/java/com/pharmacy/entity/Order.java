@@ -1,10 +1,12 @@
 package com.pharmacy.entity;
 
+import com.pharmacy.entity.listener.OrderRollupListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "`order`") // 使用反引号，因为order是SQL关键字
+@EntityListeners(OrderRollupListener.class) // 订单写入/状态变更时增量维护销售汇总
 public class Order {
     @Id
     @Column(name = "order_id", length = 32)
@@ -56,6 +58,14 @@ public class Order {
     @Column(name = "remark")
     private String remark;
 
+    // 加载/写入时的销售口径快照，用于计算状态变更前后的汇总差量（不持久化）
+    @Transient
+    private SalesSnapshot loadedSalesSnapshot;
+
+    /** 影响销售汇总的字段快照 */
+    public record SalesSnapshot(LocalDateTime orderTime, LocalDateTime refundTime, int paymentStatus,
+                                double totalAmount, double actualPayment, String memberId) {}
+
     // 构造方法
     public Order() {}
 
@@ -109,6 +119,18 @@ public class Order {
     public String getRemark() { return remark; }
     public void setRemark(String remark) { this.remark = remark; }
 
+    public SalesSnapshot salesSnapshot() {
+        return new SalesSnapshot(orderTime, refundTime,
+                paymentStatus == null ? 0 : paymentStatus,
+                totalAmount == null ? 0.0 : totalAmount,
+                actualPayment == null ? 0.0 : actualPayment,
+                memberId);
+    }
+
+    // 非 getter/setter 命名，避免被 JSON 序列化
+    public SalesSnapshot loadedSalesSnapshot() { return loadedSalesSnapshot; }
+    public void rememberSalesSnapshot(SalesSnapshot snapshot) { this.loadedSalesSnapshot = snapshot; }
+
     @PrePersist
     public void prePersist() {
         if (this.orderTime == null) {
@@ -0,0 +1,22 @@
+package com.pharmacy.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * 按天的销售汇总；会员数为当天去重值，不能由小时桶相加得到，因此单独维护。
+ */
+@Entity
+@Table(name = "sales_rollup_daily")
+public class SalesRollupDaily extends SalesRollupMetrics {
+    @Id
+    @Column(name = "bucket_date")
+    private LocalDate bucketDate;
+
+    public SalesRollupDaily() {}
+
+    public SalesRollupDaily(LocalDate bucketDate) { this.bucketDate = bucketDate; }
+
+    public LocalDate getBucketDate() { return bucketDate; }
+    public void setBucketDate(LocalDate bucketDate) { this.bucketDate = bucketDate; }
+}
@@ -0,0 +1,22 @@
+package com.pharmacy.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 按小时的销售汇总，bucket_start 为整点时间。
+ */
+@Entity
+@Table(name = "sales_rollup_hourly")
+public class SalesRollupHourly extends SalesRollupMetrics {
+    @Id
+    @Column(name = "bucket_start")
+    private LocalDateTime bucketStart;
+
+    public SalesRollupHourly() {}
+
+    public SalesRollupHourly(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public void setBucketStart(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+}
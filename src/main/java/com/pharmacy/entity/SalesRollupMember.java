@@ -0,0 +1,27 @@
+package com.pharmacy.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * 汇总桶内已出现的会员（用于增量维护去重会员数）。
+ * rollup_key 形如 H|2025-01-01T09:00|M001 或 D|2025-01-01|M001。
+ */
+@Entity
+@Table(name = "sales_rollup_member", indexes = @Index(name = "idx_rollup_member_date", columnList = "bucket_date"))
+public class SalesRollupMember {
+    @Id
+    @Column(name = "rollup_key", length = 96)
+    private String rollupKey;
+
+    @Column(name = "bucket_date", nullable = false)
+    private LocalDate bucketDate;
+
+    public SalesRollupMember() {}
+
+    public String getRollupKey() { return rollupKey; }
+    public void setRollupKey(String rollupKey) { this.rollupKey = rollupKey; }
+
+    public LocalDate getBucketDate() { return bucketDate; }
+    public void setBucketDate(LocalDate bucketDate) { this.bucketDate = bucketDate; }
+}
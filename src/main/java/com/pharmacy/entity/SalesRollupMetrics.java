@@ -0,0 +1,83 @@
+package com.pharmacy.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.MappedSuperclass;
+import java.time.LocalDateTime;
+
+/**
+ * 销售汇总指标（小时/日汇总表共用列）。
+ * 金额口径与原订单查询一致：orderAmount=全部订单 totalAmount，paidAmount=已支付 actualPayment，
+ * paidTotal=已支付 totalAmount，refundAmount=按退款时间计的已退款 actualPayment。
+ */
+@MappedSuperclass
+public class SalesRollupMetrics {
+
+    @Column(name = "order_count", nullable = false)
+    private Integer orderCount = 0;
+
+    @Column(name = "order_amount", nullable = false)
+    private Double orderAmount = 0.0;
+
+    @Column(name = "paid_count", nullable = false)
+    private Integer paidCount = 0;
+
+    @Column(name = "paid_amount", nullable = false)
+    private Double paidAmount = 0.0;
+
+    @Column(name = "paid_total", nullable = false)
+    private Double paidTotal = 0.0;
+
+    @Column(name = "refund_count", nullable = false)
+    private Integer refundCount = 0;
+
+    @Column(name = "refund_amount", nullable = false)
+    private Double refundAmount = 0.0;
+
+    @Column(name = "member_count", nullable = false)
+    private Integer memberCount = 0; // 已支付订单的去重会员数（仅对本桶有效，跨桶不可相加）
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    public SalesRollupMetrics() {}
+
+    /** 累加另一个桶；会员数按桶简单相加，仅作近似 */
+    public SalesRollupMetrics add(SalesRollupMetrics o) {
+        orderCount += o.orderCount;
+        orderAmount += o.orderAmount;
+        paidCount += o.paidCount;
+        paidAmount += o.paidAmount;
+        paidTotal += o.paidTotal;
+        refundCount += o.refundCount;
+        refundAmount += o.refundAmount;
+        memberCount += o.memberCount;
+        return this;
+    }
+
+    public Integer getOrderCount() { return orderCount; }
+    public void setOrderCount(Integer orderCount) { this.orderCount = orderCount; }
+
+    public Double getOrderAmount() { return orderAmount; }
+    public void setOrderAmount(Double orderAmount) { this.orderAmount = orderAmount; }
+
+    public Integer getPaidCount() { return paidCount; }
+    public void setPaidCount(Integer paidCount) { this.paidCount = paidCount; }
+
+    public Double getPaidAmount() { return paidAmount; }
+    public void setPaidAmount(Double paidAmount) { this.paidAmount = paidAmount; }
+
+    public Double getPaidTotal() { return paidTotal; }
+    public void setPaidTotal(Double paidTotal) { this.paidTotal = paidTotal; }
+
+    public Integer getRefundCount() { return refundCount; }
+    public void setRefundCount(Integer refundCount) { this.refundCount = refundCount; }
+
+    public Double getRefundAmount() { return refundAmount; }
+    public void setRefundAmount(Double refundAmount) { this.refundAmount = refundAmount; }
+
+    public Integer getMemberCount() { return memberCount; }
+    public void setMemberCount(Integer memberCount) { this.memberCount = memberCount; }
+
+    public LocalDateTime getUpdateTime() { return updateTime; }
+    public void setUpdateTime(LocalDateTime updateTime) { this.updateTime = updateTime; }
+}
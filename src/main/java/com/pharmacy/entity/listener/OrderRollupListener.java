@@ -0,0 +1,53 @@
+package com.pharmacy.entity.listener;
+
+import com.pharmacy.entity.Order;
+import com.pharmacy.service.SalesRollupService;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单实体生命周期监听：在 flush 时把订单变化前后的快照交给汇总服务，由其写入发件箱、提交后异步汇总。
+ * 通过 Hibernate 的 Spring BeanContainer 注入；只依赖汇总服务接口，实现延迟获取，避免与 EntityManagerFactory 循环依赖。
+ */
+@Component
+public class OrderRollupListener {
+
+    private final ObjectProvider<SalesRollupService> salesRollupService;
+
+    public OrderRollupListener(ObjectProvider<SalesRollupService> salesRollupService) {
+        this.salesRollupService = salesRollupService;
+    }
+
+    @PostLoad
+    public void onLoad(Order order) {
+        order.rememberSalesSnapshot(order.salesSnapshot());
+    }
+
+    @PostPersist
+    public void onPersist(Order order) {
+        Order.SalesSnapshot after = order.salesSnapshot();
+        apply(order.getOrderId(), null, after);
+        order.rememberSalesSnapshot(after);
+    }
+
+    @PostUpdate
+    public void onUpdate(Order order) {
+        Order.SalesSnapshot after = order.salesSnapshot();
+        apply(order.getOrderId(), order.loadedSalesSnapshot(), after);
+        order.rememberSalesSnapshot(after);
+    }
+
+    @PostRemove
+    public void onRemove(Order order) {
+        apply(order.getOrderId(), order.loadedSalesSnapshot(), null);
+    }
+
+    private void apply(String orderId, Order.SalesSnapshot before, Order.SalesSnapshot after) {
+        SalesRollupService service = salesRollupService.getIfAvailable();
+        if (service != null) service.onOrderChanged(orderId, before, after);
+    }
+}
@@ -0,0 +1,186 @@
+package com.pharmacy.multitenant;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 租户数据源的延迟包装：
+ * 1. 首次取连接时才创建 Hikari 连接池，空闲超时后由 {@link #evictIfIdle(long)} 关闭
+ * 2. 熔断：连续失败达到阈值后在冷却期内直接拒绝，冷却结束放行一次试探（半开）
+ * 建池只尝试一次，不再阻塞重试，数据库不可用时由熔断兜底。
+ * 首次建池成功后、对外可用前执行一次初始化回调（建表、种子数据等），启动时不必为此打开所有租户的连接池。
+ */
+public class LazyTenantDataSource extends AbstractDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(LazyTenantDataSource.class);
+
+    private final String tenantId;
+    private final HikariConfig config;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private volatile HikariDataSource pool;
+    private volatile long lastUsed;
+    private int consecutiveFailures;
+    private volatile long openUntil;
+    private volatile String lastError;
+    private volatile Consumer<DataSource> poolInitializer;
+    private boolean initialized;
+
+    public LazyTenantDataSource(String tenantId, HikariConfig config, int failureThreshold, long openMillis) {
+        this.tenantId = tenantId;
+        this.config = config;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long now = System.currentTimeMillis();
+        if (now < openUntil) {
+            throw new SQLTransientConnectionException("租户 " + tenantId + " 数据源熔断中，" + (openUntil - now) / 1000 + "s 后重试: " + lastError);
+        }
+        lastUsed = now;
+        try {
+            Connection conn = obtainPool().getConnection();
+            recordSuccess();
+            return conn;
+        } catch (SQLException | RuntimeException ex) {
+            // 池内仍有存活连接说明只是连接被借完（高峰排队超时），不计入熔断
+            if (!hasLiveConnections()) recordFailure(ex);
+            throw ex;
+        }
+    }
+
+    private boolean hasLiveConnections() {
+        HikariDataSource ds = pool;
+        HikariPoolMXBean mx = ds == null ? null : ds.getHikariPoolMXBean();
+        return mx != null && mx.getTotalConnections() > 0;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("租户数据源不支持指定账号取连接");
+    }
+
+    private HikariDataSource obtainPool() {
+        HikariDataSource ds = pool;
+        if (ds != null) return ds;
+        synchronized (this) {
+            if (pool == null) {
+                log.info("按需创建租户 {} 连接池 -> {}", tenantId, config.getJdbcUrl());
+                HikariDataSource created = new HikariDataSource(config);
+                initializeOnce(created);
+                pool = created;
+            }
+            return pool;
+        }
+    }
+
+    /** 回调拿到的是裸连接池，并发的取连接请求在锁外等待，初始化完成后才看到新池 */
+    private void initializeOnce(HikariDataSource created) {
+        Consumer<DataSource> initializer = poolInitializer;
+        if (initialized || initializer == null) return;
+        try {
+            initializer.accept(created);
+            initialized = true;
+        } catch (RuntimeException ex) {
+            // 初始化失败不影响取连接，下次重建连接池时再试
+            log.warn("租户 {} 连接池初始化失败: {}", tenantId, ex.getMessage());
+        }
+    }
+
+    /** 设置首次建池后的初始化回调；连接池已建立时视为已初始化（由调用方自行处理） */
+    public synchronized void setPoolInitializer(Consumer<DataSource> initializer) {
+        this.poolInitializer = initializer;
+        if (pool != null) initialized = true;
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    private synchronized void recordFailure(Exception ex) {
+        lastError = ex.getMessage();
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            log.warn("租户 {} 连续失败 {} 次，熔断 {}s: {}", tenantId, consecutiveFailures, openMillis / 1000, lastError);
+            // 熔断期间不保留可能已损坏的连接池
+            closePool();
+        }
+    }
+
+    /**
+     * 连接池空闲超过 idleMillis 且没有借出中的连接时关闭，返回是否关闭
+     */
+    public synchronized boolean evictIfIdle(long idleMillis) {
+        HikariDataSource ds = pool;
+        if (ds == null || System.currentTimeMillis() - lastUsed < idleMillis) return false;
+        HikariPoolMXBean mx = ds.getHikariPoolMXBean();
+        if (mx != null && mx.getActiveConnections() > 0) return false;
+        closePool();
+        log.info("租户 {} 连接池空闲已回收", tenantId);
+        return true;
+    }
+
+    /** 挂上连接池指标：已建立的连接池立即生效，回收后重建的连接池沿用同一配置 */
+    public synchronized void setMetricsTrackerFactory(MetricsTrackerFactory factory) {
+        if (factory == null || config.getMetricsTrackerFactory() != null) return;
+        config.setMetricsTrackerFactory(factory);
+        HikariDataSource ds = pool;
+        if (ds != null && ds.getMetricsTrackerFactory() == null) ds.setMetricsTrackerFactory(factory);
+    }
+
+    public synchronized void close() {
+        closePool();
+    }
+
+    private void closePool() {
+        HikariDataSource ds = pool;
+        pool = null;
+        if (ds != null) ds.close();
+    }
+
+    public String getTenantId() { return tenantId; }
+
+    public String getJdbcUrl() { return config.getJdbcUrl(); }
+
+    public boolean isPoolActive() { return pool != null; }
+
+    /** 初始化回调是否已成功执行 */
+    public synchronized boolean isInitialized() { return initialized; }
+
+    /** 连接池与熔断状态（管理接口展示用） */
+    public Map<String, Object> describe() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        HikariDataSource ds = pool;
+        long now = System.currentTimeMillis();
+        m.put("state", now < openUntil ? "OPEN" : (ds == null ? "IDLE" : "ACTIVE"));
+        m.put("maxPoolSize", config.getMaximumPoolSize());
+        m.put("minIdle", config.getMinimumIdle());
+        if (ds != null && ds.getHikariPoolMXBean() != null) {
+            HikariPoolMXBean mx = ds.getHikariPoolMXBean();
+            m.put("activeConnections", mx.getActiveConnections());
+            m.put("idleConnections", mx.getIdleConnections());
+        }
+        if (lastUsed > 0) m.put("idleSeconds", (now - lastUsed) / 1000);
+        if (lastError != null) m.put("lastError", lastError);
+        return m;
+    }
+}
@@ -2,7 +2,9 @@ package com.pharmacy.multitenant;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -11,23 +13,40 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import jakarta.annotation.PreDestroy;
+
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 /**
  * 动态多数据源配置：默认数据源 + tenants 列表，路由至对应店铺库。
+ * 默认数据源启动时建立；租户数据源为 {@link LazyTenantDataSource}，首次访问才建池，空闲后回收。
  */
 @Configuration
 @ConditionalOnProperty(prefix = "spring", name = "datasource.url")
 public class MultiTenantDataSourceConfig implements InitializingBean {
 
+    private static final java.util.regex.Pattern TENANT_ID_PATTERN = java.util.regex.Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
     private final Environment env;
     public MultiTenantDataSourceConfig(Environment env){ this.env = env; }
 
-    private Map<String, DataSource> dataSourceMap = new HashMap<>();
+    // 运行期租户注册表，路由数据源直接从中解析
+    private final TenantRegistry registry = new TenantRegistry();
+
+    // 租户连接池首次建立时的初始化回调（建表、种子数据等），按注册顺序执行
+    private final List<BiConsumer<String, DataSource>> poolOpenedListeners = new CopyOnWriteArrayList<>();
+
+    // 连接池指标工厂，指标注册表就绪后由 MetricsConfig 设置
+    private volatile MetricsTrackerFactory poolMetrics;
 
     @Value("${spring.datasource.url}")
     private String defaultUrl;
@@ -39,10 +58,11 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
     @Bean
     @Primary
     public DataSource routingDataSource(){
-        StoreRoutingDataSource routing = new StoreRoutingDataSource();
+        StoreRoutingDataSource routing = new StoreRoutingDataSource(registry);
         // 默认数据源（基础租户）
-        DataSource defaultDs = buildHikari(defaultUrl, defaultUser, defaultPwd, "default");
-        dataSourceMap.put("default", defaultDs);
+        DataSource defaultDs = buildHikari(defaultUrl, defaultUser, defaultPwd, TenantRegistry.DEFAULT_TENANT);
+        registry.register(TenantRegistry.DEFAULT_TENANT, defaultDs);
+        applyPoolMetrics(defaultDs);
 
         // 解析租户列表（spring.tenants[n].id 结构）
         List<Map<String,Object>> tenants = loadTenantsFromEnv();
@@ -58,21 +78,17 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
                     System.err.println("[MultiTenant] 跳过无效租户配置: " + t);
                     continue;
                 }
-                if(dataSourceMap.containsKey(id)){
+                LazyTenantDataSource ds = buildTenantDataSource(id, url, user, pwd, t);
+                if(registry.register(id, ds)){
+                    applyPoolMetrics(ds);
+                } else {
                     System.out.println("[MultiTenant] 租户重复忽略: " + id);
-                    continue;
                 }
-                DataSource tenantDs = buildHikari(url,user,pwd,id);
-                dataSourceMap.put(id, tenantDs);
             }
         }
         routing.setDefaultTargetDataSource(defaultDs);
-        // 使用显式 Map<Object,Object> 传入，避免泛型不匹配
-        Map<Object,Object> targetMap = new HashMap<>();
-        targetMap.putAll(dataSourceMap);
-        routing.setTargetDataSources(targetMap);
         routing.afterPropertiesSet();
-        System.out.println("[MultiTenant] DataSources 初始化完成: " + dataSourceMap.keySet());
+        System.out.println("[MultiTenant] DataSources 初始化完成: " + registry.ids());
         return routing;
     }
 
@@ -89,25 +105,61 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
             item.put("url", env.getProperty(prefix+".url"));
             item.put("username", env.getProperty(prefix+".username"));
             item.put("password", env.getProperty(prefix+".password"));
+            // 可选：单租户连接池大小，未配置时使用 tenant.pool.* 默认值
+            item.put("max-pool-size", env.getProperty(prefix+".max-pool-size"));
+            item.put("min-idle", env.getProperty(prefix+".min-idle"));
             list.add(item);
             idx++;
         }
         return list;
     }
 
-    private DataSource buildHikari(String url,String user,String pwd,String poolName){
+    private HikariConfig hikariConfig(String url,String user,String pwd,String poolName,int maxPoolSize,int minIdle){
         HikariConfig cfg = new HikariConfig();
         cfg.setJdbcUrl(url);
         cfg.setUsername(user);
         cfg.setPassword(pwd);
-        cfg.setMaximumPoolSize(5);
+        cfg.setMaximumPoolSize(maxPoolSize);
+        cfg.setMinimumIdle(Math.min(minIdle, maxPoolSize));
+        cfg.setConnectionTimeout(env.getProperty("tenant.pool.connection-timeout-ms", Long.class, 5000L));
         cfg.setPoolName("DS-"+poolName);
         cfg.setConnectionTestQuery("SELECT 1");
         cfg.addDataSourceProperty("cachePrepStmts", "true");
         cfg.addDataSourceProperty("prepStmtCacheSize", "250");
         cfg.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        cfg.addDataSourceProperty("rewriteBatchedStatements", "true"); // 结账批量写入合并为多值语句
+        return cfg;
+    }
 
-        int maxRetry = 10; // 调高重试次数，容忍 MySQL 初始化较慢情况
+    /**
+     * 租户数据源：只保存配置，首次取连接时建池；失败进入熔断而不是阻塞重试。
+     */
+    private LazyTenantDataSource buildTenantDataSource(String id, String url, String user, String pwd, Map<String,Object> tenant){
+        int maxPoolSize = intOr(tenant.get("max-pool-size"), env.getProperty("tenant.pool.max-size", Integer.class, 5));
+        int minIdle = intOr(tenant.get("min-idle"), env.getProperty("tenant.pool.min-idle", Integer.class, 1));
+        HikariConfig cfg = hikariConfig(url, user, pwd, id, maxPoolSize, minIdle);
+        int threshold = env.getProperty("tenant.pool.breaker-failure-threshold", Integer.class, 3);
+        long openSeconds = env.getProperty("tenant.pool.breaker-open-seconds", Long.class, 30L);
+        LazyTenantDataSource ds = new LazyTenantDataSource(id, cfg, threshold, openSeconds * 1000);
+        ds.setPoolInitializer(raw -> {
+            for(BiConsumer<String, DataSource> listener : poolOpenedListeners){
+                listener.accept(id, raw);
+            }
+        });
+        return ds;
+    }
+
+    private static int intOr(Object value, int fallback){
+        if(value == null) return fallback;
+        try { return Integer.parseInt(value.toString().trim()); } catch (NumberFormatException e){ return fallback; }
+    }
+
+    /**
+     * 默认数据源：JPA 启动依赖它，保留启动重试以容忍 MySQL 初始化较慢的情况。
+     */
+    private DataSource buildHikari(String url,String user,String pwd,String poolName){
+        HikariConfig cfg = hikariConfig(url, user, pwd, poolName, 5, 5);
+        int maxRetry = env.getProperty("tenant.pool.default-startup-retries", Integer.class, 10);
         long backoffMs = 3000L; // 每次重试间隔加大
         Exception last = null;
         for(int attempt=1; attempt<=maxRetry; attempt++){
@@ -130,7 +182,7 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
     }
 
     @Bean
-    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource routingDataSource){
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource routingDataSource, ConfigurableListableBeanFactory beanFactory){
         LocalContainerEntityManagerFactoryBean emf = new LocalContainerEntityManagerFactoryBean();
         emf.setDataSource(routingDataSource);
         emf.setPackagesToScan("com.pharmacy.entity");
@@ -140,6 +192,8 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
         props.put("hibernate.show_sql", env.getProperty("spring.jpa.show-sql","false"));
         props.put("hibernate.format_sql", env.getProperty("spring.jpa.properties.hibernate.format_sql","true"));
         props.put("hibernate.dialect", env.getProperty("spring.jpa.properties.hibernate.dialect","org.hibernate.dialect.MySQLDialect"));
+        // 实体监听器（如订单销售汇总）由 Spring 容器创建，可注入 Bean
+        props.put("hibernate.resource.beans.container", new SpringBeanContainer(beanFactory));
         emf.setJpaPropertyMap(props);
         return emf;
     }
@@ -150,23 +204,133 @@ public class MultiTenantDataSourceConfig implements InitializingBean {
     }
 
     /**
-     * 动态添加新租户数据源（可在管理接口调用）。
+     * 动态添加新租户数据源（可在管理接口调用）：只创建该租户一个连接池，先登记到注册表再做连通性校验，
+     * 首次建池回调（建表、补种、发件箱恢复等）执行时该租户已可路由；校验失败则摘除并关闭连接池。
+     * 不影响其它租户的连接池与进行中的请求。
+     * @throws IllegalArgumentException 参数非法或租户已存在
+     * @throws IllegalStateException 数据库无法连接
      */
-    public synchronized void addTenant(String id, String url, String user, String pwd){
-        if(dataSourceMap.containsKey(id)) return;
-        DataSource ds = buildHikari(url,user,pwd,id);
-        dataSourceMap.put(id, ds);
-        StoreRoutingDataSource routing = (StoreRoutingDataSource) routingDataSource();
-        Map<Object,Object> targetMap = new HashMap<>(dataSourceMap);
-        routing.setTargetDataSources(targetMap);
-        routing.afterPropertiesSet();
+    public LazyTenantDataSource addTenant(String id, String url, String user, String pwd, Integer maxPoolSize, Integer minIdle){
+        if(id == null || !TENANT_ID_PATTERN.matcher(id).matches()){
+            throw new IllegalArgumentException("租户ID非法(仅允许字母、数字、下划线、中划线): " + id);
+        }
+        if(url == null || url.isBlank()){
+            throw new IllegalArgumentException("租户数据库 url 不能为空");
+        }
+        if(user == null || user.isBlank()){
+            throw new IllegalArgumentException("租户数据库 username 不能为空");
+        }
+        Map<String,Object> spec = new HashMap<>();
+        spec.put("max-pool-size", maxPoolSize);
+        spec.put("min-idle", minIdle);
+        LazyTenantDataSource ds = buildTenantDataSource(id, url, user, pwd == null ? "" : pwd, spec);
+        if(!registry.register(id, ds)){
+            throw new IllegalArgumentException("租户已存在: " + id);
+        }
+        applyPoolMetrics(ds);
+        try(Connection c = ds.getConnection()){ /* 连接测试，同时建立该租户连接池并触发初始化回调 */ }
+        catch (SQLException | RuntimeException ex){
+            // 建池失败时 Hikari 抛出的是运行时异常，同样要摘除登记
+            registry.remove(id, ds);
+            ds.close();
+            throw new IllegalStateException("租户 " + id + " 数据库连接失败: " + ex.getMessage(), ex);
+        }
+        System.out.println("[MultiTenant] 运行期新增租户 " + id + " -> " + url);
+        return ds;
+    }
+
+    public LazyTenantDataSource addTenant(String id, String url, String user, String pwd){
+        return addTenant(id, url, user, pwd, null, null);
+    }
+
+    /**
+     * 移除运行期租户：先从注册表摘除（之后带该店铺标识的请求返回 404），再关闭其连接池。
+     * @return 是否存在并已移除
+     */
+    public boolean removeTenant(String id){
+        if(TenantRegistry.DEFAULT_TENANT.equals(id)){
+            throw new IllegalArgumentException("默认数据源不可移除");
+        }
+        DataSource ds = registry.remove(id);
+        if(ds == null) return false;
+        if(ds instanceof LazyTenantDataSource lazy) lazy.close();
+        System.out.println("[MultiTenant] 已移除租户 " + id);
+        return true;
+    }
+
+    public TenantRegistry getRegistry(){
+        return registry;
     }
 
     public Set<String> getTenantIds(){
-        return new LinkedHashSet<>(dataSourceMap.keySet());
+        return registry.ids();
     }
     public Map<String, DataSource> getDataSourceMap(){
-        return Collections.unmodifiableMap(dataSourceMap);
+        return registry.view();
+    }
+
+    /**
+     * 连接池已建立的租户（含 default）：启动任务与定时任务只处理这些租户，不为此唤醒空闲租户的连接池
+     */
+    public Set<String> getLiveTenantIds(){
+        Set<String> live = new LinkedHashSet<>();
+        for(Map.Entry<String, DataSource> e : registry.view().entrySet()){
+            if(!(e.getValue() instanceof LazyTenantDataSource lazy) || lazy.isPoolActive()){
+                live.add(e.getKey());
+            }
+        }
+        return live;
+    }
+
+    /**
+     * 注册租户连接池首次建立时的回调，参数为租户ID与裸连接池（不经路由，回调内不要再通过路由数据源访问该租户）。
+     * 回调在连接池对外可用前同步执行，抛出异常时该连接池下次重建会再次回调。
+     */
+    public void onTenantPoolOpened(BiConsumer<String, DataSource> listener){
+        poolOpenedListeners.add(listener);
+    }
+
+    /**
+     * 回收空闲超过 idleMillis 的租户连接池，返回回收数量
+     */
+    public int evictIdlePools(long idleMillis){
+        int evicted = 0;
+        for(DataSource ds : registry.view().values()){
+            if(ds instanceof LazyTenantDataSource lazy && lazy.evictIfIdle(idleMillis)) evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * 为全部租户连接池挂上 Micrometer 指标（hikaricp.*，pool 标签为 DS-租户ID），之后新增的租户同样生效
+     */
+    public void bindPoolMetrics(MetricsTrackerFactory factory){
+        this.poolMetrics = factory;
+        for(DataSource ds : registry.view().values()) applyPoolMetrics(ds);
+    }
+
+    private synchronized void applyPoolMetrics(DataSource ds){
+        MetricsTrackerFactory factory = poolMetrics;
+        if(factory == null) return;
+        if(ds instanceof LazyTenantDataSource lazy) lazy.setMetricsTrackerFactory(factory);
+        else if(ds instanceof HikariDataSource hikari && hikari.getMetricsTrackerFactory() == null) hikari.setMetricsTrackerFactory(factory);
+    }
+
+    /** 各租户连接池状态 */
+    public Map<String, Object> describePools(){
+        Map<String, Object> result = new LinkedHashMap<>();
+        for(Map.Entry<String, DataSource> e : registry.view().entrySet()){
+            if(e.getValue() instanceof LazyTenantDataSource lazy) result.put(e.getKey(), lazy.describe());
+            else result.put(e.getKey(), Map.of("state", "EAGER"));
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void closeTenantPools(){
+        for(DataSource ds : registry.view().values()){
+            if(ds instanceof LazyTenantDataSource lazy) lazy.close();
+        }
     }
 
     @Override
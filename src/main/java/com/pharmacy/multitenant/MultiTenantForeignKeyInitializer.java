@@ -3,6 +3,7 @@ package com.pharmacy.multitenant;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 
 import javax.sql.DataSource;
 import java.sql.*;
@@ -18,6 +19,7 @@ public class MultiTenantForeignKeyInitializer {
     }
 
     @Bean
+    @Order(4)
     public ApplicationRunner foreignKeyRunner(MultiTenantDataSourceConfig dsConfig){
         return args -> {
             System.out.println("[FKInit] 开始检测并补充外键...");
@@ -29,42 +31,47 @@ public class MultiTenantForeignKeyInitializer {
                     new FKSpec("stock_in_item","fk_stock_item_stock_in","stock_in_id","stock_in","stock_in_id","CASCADE", true),
                     new FKSpec("stock_in_item","fk_stock_item_medicine","medicine_id","medicine","medicine_id","RESTRICT", true)
             );
+            // 启动时只处理已连接的租户，延迟租户在首次建池时补充
+            dsConfig.onTenantPoolOpened((tenantId, ds) -> applyForeignKeys(tenantId, ds, specs));
             Map<String, DataSource> map = dsConfig.getDataSourceMap();
-            for(var entry : map.entrySet()){
-                String tenantId = entry.getKey();
-                try(Connection conn = entry.getValue().getConnection()){
-                    String catalog = conn.getCatalog();
-                    for(FKSpec fk : specs){
-                        if(!tableExists(conn, catalog, fk.table) || !tableExists(conn, catalog, fk.refTable)) continue;
-                        if(foreignKeyExists(conn, catalog, fk.table, fk.name)) continue; // already exists
-                        if(hasOrphans(conn, catalog, fk)){
-                            System.err.println("[FKInit] 跳过外键 "+fk.name+" (租户="+tenantId+") 因存在孤儿记录");
-                            continue;
-                        }
-                        if(fk.createIndex && !indexExists(conn, catalog, fk.table, fk.column)){
-                            try(Statement st = conn.createStatement()){
-                                st.executeUpdate("CREATE INDEX idx_"+fk.table+"_"+fk.column+" ON "+quote(fk.table)+"("+fk.column+")");
-                                System.out.println("[FKInit] 已创建索引 idx_"+fk.table+"_"+fk.column+" (租户="+tenantId+")");
-                            } catch(SQLException ex){
-                                System.err.println("[FKInit] 创建索引失败 "+fk.table+"."+fk.column+" 租户="+tenantId+" msg="+ex.getMessage());
-                            }
-                        }
-                        String ddl = "ALTER TABLE "+quote(fk.table)+" ADD CONSTRAINT "+fk.name+" FOREIGN KEY ("+fk.column+") REFERENCES "+quote(fk.refTable)+"("+fk.refColumn+") ON DELETE "+fk.onDelete;
-                        try(Statement st = conn.createStatement()){
-                            st.executeUpdate(ddl);
-                            System.out.println("[FKInit] 已添加外键 "+fk.name+" (租户="+tenantId+")");
-                        } catch(SQLException ex){
-                            System.err.println("[FKInit] 添加外键失败 "+fk.name+" (租户="+tenantId+") msg="+ex.getMessage());
-                        }
-                    }
-                } catch(Exception ex){
-                    System.err.println("[FKInit] 租户="+tenantId+" 外键初始化失败: "+ex.getMessage());
-                }
+            for(String tenantId : dsConfig.getLiveTenantIds()){
+                applyForeignKeys(tenantId, map.get(tenantId), specs);
             }
             System.out.println("[FKInit] 外键检测与补充完成");
         };
     }
 
+    private void applyForeignKeys(String tenantId, DataSource ds, List<FKSpec> specs){
+        try(Connection conn = ds.getConnection()){
+            String catalog = conn.getCatalog();
+            for(FKSpec fk : specs){
+                if(!tableExists(conn, catalog, fk.table) || !tableExists(conn, catalog, fk.refTable)) continue;
+                if(foreignKeyExists(conn, catalog, fk.table, fk.name)) continue; // already exists
+                if(hasOrphans(conn, catalog, fk)){
+                    System.err.println("[FKInit] 跳过外键 "+fk.name+" (租户="+tenantId+") 因存在孤儿记录");
+                    continue;
+                }
+                if(fk.createIndex && !indexExists(conn, catalog, fk.table, fk.column)){
+                    try(Statement st = conn.createStatement()){
+                        st.executeUpdate("CREATE INDEX idx_"+fk.table+"_"+fk.column+" ON "+quote(fk.table)+"("+fk.column+")");
+                        System.out.println("[FKInit] 已创建索引 idx_"+fk.table+"_"+fk.column+" (租户="+tenantId+")");
+                    } catch(SQLException ex){
+                        System.err.println("[FKInit] 创建索引失败 "+fk.table+"."+fk.column+" 租户="+tenantId+" msg="+ex.getMessage());
+                    }
+                }
+                String ddl = "ALTER TABLE "+quote(fk.table)+" ADD CONSTRAINT "+fk.name+" FOREIGN KEY ("+fk.column+") REFERENCES "+quote(fk.refTable)+"("+fk.refColumn+") ON DELETE "+fk.onDelete;
+                try(Statement st = conn.createStatement()){
+                    st.executeUpdate(ddl);
+                    System.out.println("[FKInit] 已添加外键 "+fk.name+" (租户="+tenantId+")");
+                } catch(SQLException ex){
+                    System.err.println("[FKInit] 添加外键失败 "+fk.name+" (租户="+tenantId+") msg="+ex.getMessage());
+                }
+            }
+        } catch(Exception ex){
+            System.err.println("[FKInit] 租户="+tenantId+" 外键初始化失败: "+ex.getMessage());
+        }
+    }
+
     private boolean tableExists(Connection conn,String catalog,String table) throws SQLException {
         try(ResultSet rs = conn.getMetaData().getTables(catalog,null,table,null)){ return rs.next(); }
     }
@@ -3,6 +3,7 @@ package com.pharmacy.multitenant;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 
 import javax.sql.DataSource;
 import java.sql.*;
@@ -12,81 +13,112 @@ import java.util.*;
 @Configuration
 public class MultiTenantSchemaInitializer {
 
+    private static final String BASE_TENANT = "rzt";
+
+    /**
+     * 启动时只处理连接池已建立的租户；其余延迟租户在首次建池时补齐表结构，启动不再逐个打开租户连接池。
+     * 顺序：建表 -> 补种 -> 外键，首次建池回调按同样顺序注册。
+     */
     @Bean
+    @Order(2)
     public ApplicationRunner stockInTablesInitializer(MultiTenantDataSourceConfig dataSourceConfig) {
         return args -> {
             System.out.println("[SchemaInit] 开始检测并补齐各租户的入库/供应商相关表...");
             Map<String, DataSource> dsMap = dataSourceConfig.getDataSourceMap();
-            // 先对每个租户确保关键表
-            for (String tenantId : dsMap.keySet()) {
-                DataSource ds = dsMap.get(tenantId);
-                try (Connection conn = ds.getConnection()) {
-                    String catalog = conn.getCatalog();
-                    System.out.println("[SchemaInit] 租户=" + tenantId + " 库=" + catalog);
-                    // 新增：保证核心业务表存在（避免 member / category 不存在导致 1146 错误）
-                    ensureCategoryTable(conn, catalog);
-                    ensureRoleTable(conn, catalog);
-                    ensureMemberTable(conn, catalog);
-                    ensureEmployeeTable(conn, catalog);
-                    ensureMedicineTable(conn, catalog);
-                    ensureInventoryTable(conn, catalog);
-                    ensureOrderTable(conn, catalog);
-                    ensureOrderItemTable(conn, catalog);
-                    ensureHangOrderTable(conn, catalog);
-                    ensurePointRewardTable(conn, catalog);
-                    // 已有：供应商与入库相关
-                    ensureSupplierTable(conn, catalog);
-                    ensureStockInTable(conn, catalog);
-                    ensureStockInItemTable(conn, catalog);
-                } catch (Exception ex) {
-                    System.err.println("[SchemaInit] 租户="+tenantId+" 初始化入库/供应商表失败: " + ex.getMessage());
+            dataSourceConfig.onTenantPoolOpened((tenantId, ds) -> {
+                ensureTenantTables(tenantId, ds);
+                DataSource base = dsMap.get(BASE_TENANT);
+                if (!BASE_TENANT.equals(tenantId) && base != null && dataSourceConfig.getLiveTenantIds().contains(BASE_TENANT)) {
+                    syncFromBaseTenant(base, tenantId, ds);
                 }
+            });
+            Set<String> live = dataSourceConfig.getLiveTenantIds();
+            // 先对每个租户确保关键表
+            for (String tenantId : live) {
+                ensureTenantTables(tenantId, dsMap.get(tenantId));
             }
-            // 基准租户表结构复制（rzt 作为基准，如果存在）
-            if (dsMap.containsKey("rzt")) {
+            // 基准租户表结构复制（rzt 作为基准，如果存在且已连接；未连接的租户在首次建池时同步）
+            if (live.contains(BASE_TENANT)) {
                 System.out.println("[SchemaInit] 发现基准租户 rzt，开始同步其表结构到其它租户...");
-                try (Connection baseConn = dsMap.get("rzt").getConnection()) {
-                    String baseCatalog = baseConn.getCatalog();
-                    Set<String> baseTables = listTables(baseConn, baseCatalog);
-                    // 需要跳过的表（如 flyway、临时表等）
-                    Set<String> skip = new HashSet<>(Arrays.asList("flyway_schema_history"));
-                    for (String tenantId : dsMap.keySet()) {
-                        if ("rzt".equals(tenantId)) continue; // 跳过自己
-                        DataSource targetDs = dsMap.get(tenantId);
-                        try (Connection targetConn = targetDs.getConnection()) {
-                            String targetCatalog = targetConn.getCatalog();
-                            Set<String> targetTables = listTables(targetConn, targetCatalog);
-                            for (String table : baseTables) {
-                                if (skip.contains(table)) continue;
-                                if (!targetTables.contains(table)) {
-                                    // 复制结构
-                                    String ddl = fetchCreateTableDDL(baseConn, baseCatalog, table);
-                                    if (ddl != null) {
-                                        // 替换可能包含的基准库名（防止跨库引用）
-                                        ddl = ddl.replace("`"+baseCatalog+"`.", "");
-                                        try (Statement st = targetConn.createStatement()) {
-                                            st.executeUpdate(ddl);
-                                            System.out.println("[SchemaInit] 已为租户="+tenantId+" 创建缺失表 " + table);
-                                        } catch (SQLException ce) {
-                                            System.err.println("[SchemaInit] 创建表 " + table + " 失败(租户="+tenantId+"): " + ce.getMessage());
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception te) {
-                            System.err.println("[SchemaInit] 同步到租户="+tenantId+" 失败: "+te.getMessage());
-                        }
-                    }
-                } catch (Exception be) {
-                    System.err.println("[SchemaInit] 基准租户 rzt 同步过程失败: "+be.getMessage());
+                for (String tenantId : live) {
+                    if (BASE_TENANT.equals(tenantId)) continue; // 跳过自己
+                    syncFromBaseTenant(dsMap.get(BASE_TENANT), tenantId, dsMap.get(tenantId));
                 }
             } else {
-                System.out.println("[SchemaInit] 未找到基准租户 rzt，跳过跨租户表结构同步");
+                System.out.println("[SchemaInit] 基准租户 rzt 未配置或未连接，跳过跨租户表结构同步");
             }
             System.out.println("[SchemaInit] 入库 & 供应商相关表检测及同步完成: " + LocalDateTime.now());
         };
     }
 
+    /**
+     * 把基准租户有而目标租户缺失的表按基准 DDL 建出来
+     */
+    private void syncFromBaseTenant(DataSource baseDs, String tenantId, DataSource targetDs) {
+        // 需要跳过的表（如 flyway、临时表等）
+        Set<String> skip = new HashSet<>(Arrays.asList("flyway_schema_history"));
+        try (Connection baseConn = baseDs.getConnection(); Connection targetConn = targetDs.getConnection()) {
+            String baseCatalog = baseConn.getCatalog();
+            Set<String> baseTables = listTables(baseConn, baseCatalog);
+            String targetCatalog = targetConn.getCatalog();
+            Set<String> targetTables = listTables(targetConn, targetCatalog);
+            for (String table : baseTables) {
+                if (skip.contains(table)) continue;
+                if (!targetTables.contains(table)) {
+                    // 复制结构
+                    String ddl = fetchCreateTableDDL(baseConn, baseCatalog, table);
+                    if (ddl != null) {
+                        // 替换可能包含的基准库名（防止跨库引用）
+                        ddl = ddl.replace("`"+baseCatalog+"`.", "");
+                        try (Statement st = targetConn.createStatement()) {
+                            st.executeUpdate(ddl);
+                            System.out.println("[SchemaInit] 已为租户="+tenantId+" 创建缺失表 " + table);
+                        } catch (SQLException ce) {
+                            System.err.println("[SchemaInit] 创建表 " + table + " 失败(租户="+tenantId+"): " + ce.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (Exception te) {
+            System.err.println("[SchemaInit] 同步到租户="+tenantId+" 失败: "+te.getMessage());
+        }
+    }
+
+    /**
+     * 确保单个租户库的业务表齐全（启动时对已连接租户调用，延迟租户首次建池及运行期新增租户时也会调用）
+     */
+    public void ensureTenantTables(String tenantId, DataSource ds) {
+        try (Connection conn = ds.getConnection()) {
+            String catalog = conn.getCatalog();
+            System.out.println("[SchemaInit] 租户=" + tenantId + " 库=" + catalog);
+            // 新增：保证核心业务表存在（避免 member / category 不存在导致 1146 错误）
+            ensureCategoryTable(conn, catalog);
+            ensureRoleTable(conn, catalog);
+            ensureMemberTable(conn, catalog);
+            ensureEmployeeTable(conn, catalog);
+            ensureMedicineTable(conn, catalog);
+            ensureInventoryTable(conn, catalog);
+            ensureOrderTable(conn, catalog);
+            ensureOrderItemTable(conn, catalog);
+            ensureHangOrderTable(conn, catalog);
+            ensurePointRewardTable(conn, catalog);
+            // 已有：供应商与入库相关
+            ensureSupplierTable(conn, catalog);
+            ensureStockInTable(conn, catalog);
+            ensureStockInItemTable(conn, catalog);
+            // 库存预警（由库存变动事件增量写入）
+            ensureStockAlertTable(conn, catalog);
+            // 销售汇总表
+            ensureSalesRollupTables(conn, catalog);
+            // 事务发件箱
+            ensureOutboxTable(conn, catalog);
+            // 会员号等库内序号
+            ensureDocSequenceTable(conn, catalog);
+        } catch (Exception ex) {
+            System.err.println("[SchemaInit] 租户="+tenantId+" 初始化入库/供应商表失败: " + ex.getMessage());
+        }
+    }
+
     private Set<String> listTables(Connection conn, String catalog) throws SQLException {
         Set<String> set = new HashSet<>();
         try (ResultSet rs = conn.getMetaData().getTables(catalog, null, "%", new String[]{"TABLE"})) {
@@ -352,16 +384,47 @@ public class MultiTenantSchemaInitializer {
     private void ensureOrderItemTable(Connection conn, String catalog) throws SQLException {
         if (!tableExists(conn, catalog, "order_item")) {
             String ddl = "CREATE TABLE order_item (" +
-                    "id INT PRIMARY KEY AUTO_INCREMENT, " +
+                    "item_id BIGINT PRIMARY KEY AUTO_INCREMENT, " +
                     "order_id VARCHAR(32) NOT NULL, " +
                     "medicine_id VARCHAR(32) NOT NULL, " +
                     "quantity INT NOT NULL, " +
                     "unit_price DECIMAL(10,2) NOT NULL, " +
                     "subtotal DECIMAL(10,2) NOT NULL, " +
-                    "KEY idx_order(order_id), " +
-                    "KEY idx_med(medicine_id)" +
+                    "prescription_id VARCHAR(32) NULL, " +
+                    "KEY idx_order_item_order(order_id), " +
+                    "KEY idx_order_item_med(medicine_id)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 order_item"); }
+        } else {
+            migrateOrderItemKey(conn, catalog);
+            // 结账批量写明细时带处方号，旧库补列
+            addColumnIfMissing(conn, "order_item", "prescription_id", "VARCHAR(32) NULL");
+        }
+    }
+
+    /**
+     * 旧库 order_item 主键为 id，实体与退款按 item_id 读写：主键是 id 时改名为 item_id，
+     * 没有主键时补自增主键 item_id；主键是其它列时不动，只打印告警。
+     */
+    private void migrateOrderItemKey(Connection conn, String catalog) {
+        try {
+            if (columnExists(conn, catalog, "order_item", "item_id")) return;
+            List<String> pk = primaryKeyColumns(conn, catalog, "order_item");
+            String ddl;
+            if (pk.equals(List.of("id"))) {
+                ddl = "ALTER TABLE order_item CHANGE COLUMN id item_id BIGINT NOT NULL AUTO_INCREMENT";
+            } else if (pk.isEmpty()) {
+                ddl = "ALTER TABLE order_item ADD COLUMN item_id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY FIRST";
+            } else {
+                System.err.println("[SchemaInit] order_item 主键为 " + pk + "，缺少 item_id 列，需手工迁移");
+                return;
+            }
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate(ddl);
+                System.out.println("[SchemaInit] 表 order_item 主键已迁移为 item_id");
+            }
+        } catch (SQLException e) {
+            System.err.println("[SchemaInit] 迁移 order_item 主键失败 msg=" + e.getMessage());
         }
     }
 
@@ -404,6 +467,90 @@ public class MultiTenantSchemaInitializer {
         }
     }
 
+    private void ensureSalesRollupTables(Connection conn, String catalog) throws SQLException {
+        String metrics = "order_count INT NOT NULL DEFAULT 0, " +
+                "order_amount DOUBLE NOT NULL DEFAULT 0, " +
+                "paid_count INT NOT NULL DEFAULT 0, " +
+                "paid_amount DOUBLE NOT NULL DEFAULT 0, " +
+                "paid_total DOUBLE NOT NULL DEFAULT 0, " +
+                "refund_count INT NOT NULL DEFAULT 0, " +
+                "refund_amount DOUBLE NOT NULL DEFAULT 0, " +
+                "member_count INT NOT NULL DEFAULT 0, " +
+                "update_time DATETIME NULL";
+        String suffix = ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+        if (!tableExists(conn, catalog, "sales_rollup_hourly")) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("CREATE TABLE sales_rollup_hourly (bucket_start DATETIME NOT NULL PRIMARY KEY, " + metrics + suffix);
+                System.out.println("[SchemaInit] 已创建表 sales_rollup_hourly");
+            }
+        }
+        if (!tableExists(conn, catalog, "sales_rollup_daily")) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("CREATE TABLE sales_rollup_daily (bucket_date DATE NOT NULL PRIMARY KEY, " + metrics + suffix);
+                System.out.println("[SchemaInit] 已创建表 sales_rollup_daily");
+            }
+        }
+        if (!tableExists(conn, catalog, "sales_rollup_member")) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("CREATE TABLE sales_rollup_member (" +
+                        "rollup_key VARCHAR(96) NOT NULL PRIMARY KEY, " +
+                        "bucket_date DATE NOT NULL, " +
+                        "INDEX idx_rollup_member_date(bucket_date)" + suffix);
+                System.out.println("[SchemaInit] 已创建表 sales_rollup_member");
+            }
+        }
+    }
+
+    private void ensureOutboxTable(Connection conn, String catalog) throws SQLException {
+        if (!tableExists(conn, catalog, "outbox_event")) {
+            String ddl = "CREATE TABLE outbox_event (" +
+                    "event_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "event_type VARCHAR(40) NOT NULL, " +
+                    "aggregate_id VARCHAR(64) NULL, " +
+                    "payload TEXT NULL, " +
+                    "status TINYINT NOT NULL DEFAULT 0, " +
+                    "attempts INT NOT NULL DEFAULT 0, " +
+                    "next_attempt_at DATETIME NOT NULL, " +
+                    "claim_token VARCHAR(36) NULL, " +
+                    "claimed_at DATETIME NULL, " +
+                    "last_error VARCHAR(500) NULL, " +
+                    "create_time DATETIME NOT NULL, " +
+                    "processed_time DATETIME NULL, " +
+                    "INDEX idx_outbox_status_due(status, next_attempt_at), " +
+                    "INDEX idx_outbox_claim(claim_token)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 outbox_event"); }
+        }
+    }
+
+    private void ensureDocSequenceTable(Connection conn, String catalog) throws SQLException {
+        if (!tableExists(conn, catalog, "doc_sequence")) {
+            String ddl = "CREATE TABLE doc_sequence (" +
+                    "seq_name VARCHAR(32) NOT NULL PRIMARY KEY, " +
+                    "seq_value BIGINT NOT NULL" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 doc_sequence"); }
+        }
+    }
+
+    private void ensureStockAlertTable(Connection conn, String catalog) throws SQLException {
+        if (!tableExists(conn, catalog, "stock_alert")) {
+            String ddl = "CREATE TABLE stock_alert (" +
+                    "alert_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "medicine_id VARCHAR(64) NOT NULL, " +
+                    "alert_type INT NOT NULL, " +
+                    "current_stock INT NULL, " +
+                    "min_stock INT NULL, " +
+                    "expiry_date DATETIME NULL, " +
+                    "alert_message VARCHAR(255) NULL, " +
+                    "is_handled TINYINT(1) NOT NULL DEFAULT 0, " +
+                    "create_time DATETIME NULL, " +
+                    "INDEX idx_stock_alert_open(is_handled, medicine_id, alert_type)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 stock_alert"); }
+        }
+    }
+
     private boolean tableExists(Connection conn, String catalog, String table) {
         try (ResultSet rs = conn.getMetaData().getTables(catalog, null, table, null)) {
             return rs.next();
@@ -413,6 +560,20 @@ public class MultiTenantSchemaInitializer {
         }
     }
 
+    private boolean columnExists(Connection conn, String catalog, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(catalog, null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    private List<String> primaryKeyColumns(Connection conn, String catalog, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (ResultSet rs = conn.getMetaData().getPrimaryKeys(catalog, null, table)) {
+            while (rs.next()) columns.add(rs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+        }
+        return columns;
+    }
+
     private void addColumnIfMissing(Connection conn, String table, String column, String definition) {
         try {
             String sqlCheck = "SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA='" + escape(conn.getCatalog()) + "' AND TABLE_NAME='" + table + "' AND COLUMN_NAME='" + column + "'";
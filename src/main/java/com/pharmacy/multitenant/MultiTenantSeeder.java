@@ -3,6 +3,7 @@ package com.pharmacy.multitenant;
 import com.pharmacy.multitenant.TenantContext;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -11,48 +12,59 @@ import javax.sql.DataSource;
 import java.util.*;
 
 /**
- * 在应用启动后对所有租户进行最小化的表与初始账号/角色校验与补种。
+ * 在应用启动后对已连接的租户进行最小化的表与初始账号/角色校验与补种，延迟租户在首次建池时补种。
  * 解决多数据库尚未手工导入完整 schema 时无法登录的问题。
  * 如果目标库已存在这些表与数据，将保持不变（幂等）。
  */
 @Component
+@Order(3)
 public class MultiTenantSeeder implements ApplicationRunner {
 
-    private final DataSource routingDataSource;
+    private final MultiTenantDataSourceConfig dataSourceConfig;
 
-    public MultiTenantSeeder(DataSource routingDataSource) {
-        this.routingDataSource = routingDataSource;
+    public MultiTenantSeeder(MultiTenantDataSourceConfig dataSourceConfig) {
+        this.dataSourceConfig = dataSourceConfig;
     }
 
     @Override
     @Transactional
     public void run(ApplicationArguments args) throws Exception {
-        Map<Object,Object> dataSources = extractTargetDataSources(routingDataSource);
+        dataSourceConfig.onTenantPoolOpened(this::provision);
         List<String> tenantIds = new ArrayList<>();
         tenantIds.add("default");
-        for(Object key : dataSources.keySet()){
-            String id = String.valueOf(key);
+        for(String id : dataSourceConfig.getLiveTenantIds()){
             if(!tenantIds.contains(id)) tenantIds.add(id);
         }
         System.out.println("[Seeder] Begin provisioning tenants: " + tenantIds);
         for(String tenant : tenantIds){
-            Object dsObj = dataSources.get(tenant);
-            if(!(dsObj instanceof DataSource)) {
-                System.err.println("[Seeder] Skip tenant="+tenant+" (no DataSource)");
-                continue;
-            }
-            TenantContext.setTenant(tenant);
-            try {
-                provisionTenant(tenant, (DataSource) dsObj);
-            } catch (Exception ex){
-                System.err.println("[Seeder] Provision failed tenant="+tenant+" error="+ex.getMessage());
-            } finally {
-                TenantContext.clear();
-            }
+            provision(tenant);
         }
         System.out.println("[Seeder] Provision finished.");
     }
 
+    /**
+     * 为单个租户补齐基础表、角色与初始账号（运行期新增租户时也会调用），返回是否成功
+     */
+    public boolean provision(String tenant){
+        DataSource ds = dataSourceConfig.getDataSourceMap().get(tenant);
+        if(ds == null) {
+            System.err.println("[Seeder] Skip tenant="+tenant+" (no DataSource)");
+            return false;
+        }
+        return provision(tenant, ds);
+    }
+
+    /** 按给定数据源补种（首次建池回调传入的是裸连接池） */
+    public boolean provision(String tenant, DataSource ds){
+        try {
+            TenantContext.runAs(tenant, () -> provisionTenant(tenant, ds));
+            return true;
+        } catch (Exception ex){
+            System.err.println("[Seeder] Provision failed tenant="+tenant+" error="+ex.getMessage());
+            return false;
+        }
+    }
+
     private void provisionTenant(String tenant, DataSource ds){
         JdbcTemplate jdbc = new JdbcTemplate(ds);
         // 确认 role 表是否存在
@@ -115,7 +127,8 @@ public class MultiTenantSeeder implements ApplicationRunner {
         tenantUsers.put("rzt", Arrays.asList("adminrzt:管理员", "rzt01:收银员", "rzt02:库管员"));
         tenantUsers.put("default", Arrays.asList("admindef:管理员"));
 
-        List<String> users = tenantUsers.getOrDefault(tenant, Collections.emptyList());
+        // 未预置的新门店默认生成 admin+租户ID 管理员账号
+        List<String> users = tenantUsers.getOrDefault(tenant, List.of("admin" + tenant + ":管理员"));
         for(String spec : users){
             String[] parts = spec.split(":");
             String username = parts[0];
@@ -161,15 +174,4 @@ public class MultiTenantSeeder implements ApplicationRunner {
     private String randomPhone(){
         return "13" + (int)(Math.random()*8+1) + String.valueOf(System.currentTimeMillis()).substring(7,11);
     }
-
-    @SuppressWarnings("unchecked")
-    private Map<Object,Object> extractTargetDataSources(DataSource routing){
-        try {
-            java.lang.reflect.Field f = routing.getClass().getSuperclass().getDeclaredField("targetDataSources");
-            f.setAccessible(true);
-            return (Map<Object,Object>) f.get(routing);
-        } catch (Exception e){
-            throw new IllegalStateException("Cannot extract targetDataSources from routingDataSource", e);
-        }
-    }
 }
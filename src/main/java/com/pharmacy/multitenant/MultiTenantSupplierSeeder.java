@@ -15,30 +15,32 @@ public class MultiTenantSupplierSeeder {
     public ApplicationRunner supplierDefaultSeeder(MultiTenantDataSourceConfig dsConfig, SupplierRepository supplierRepository) {
         return args -> {
             System.out.println("[SupplierSeeder] 开始检测多租户默认供应商...");
-            // 使用 entrySet 显式类型，避免类型擦除导致 Map.Entry<String,DataSource> 转换为原始 Entry<Object,Object>
-            for (java.util.Map.Entry<String, javax.sql.DataSource> entry : dsConfig.getDataSourceMap().entrySet()) {
-                String tenantId = entry.getKey();
+            // 只处理已连接的租户；延迟租户首次建池时由 MultiTenantSeeder 补种默认供应商
+            for (String tenantId : dsConfig.getLiveTenantIds()) {
                 if ("default".equals(tenantId)) continue;
-                TenantContext.setTenant(tenantId);
-                try {
-                    long count = supplierRepository.count();
-                    boolean needCreate = (count == 0) || supplierRepository.findBySupplierName("默认供应商").isEmpty();
-                    if (needCreate) {
-                        Supplier s = new Supplier();
-                        s.setSupplierName("默认供应商");
-                        s.setContactPerson("系统");
-                        s.setPhone("13800000000");
-                        s.setAddress("系统自动创建");
-                        supplierRepository.save(s);
-                        System.out.println("[SupplierSeeder] 租户="+tenantId+" 已创建默认供应商");
-                    } else {
-                        System.out.println("[SupplierSeeder] 租户="+tenantId+" 默认供应商已存在");
-                    }
-                } catch (Exception ex) {
-                    System.err.println("[SupplierSeeder] 租户="+tenantId+" 创建默认供应商失败: "+ex.getMessage());
-                } finally { TenantContext.clear(); }
+                TenantContext.runAs(tenantId, () -> seedDefaultSupplier(tenantId, supplierRepository));
             }
             System.out.println("[SupplierSeeder] 默认供应商检测完成");
         };
     }
+
+    private void seedDefaultSupplier(String tenantId, SupplierRepository supplierRepository) {
+        try {
+            long count = supplierRepository.count();
+            boolean needCreate = (count == 0) || supplierRepository.findBySupplierName("默认供应商").isEmpty();
+            if (needCreate) {
+                Supplier s = new Supplier();
+                s.setSupplierName("默认供应商");
+                s.setContactPerson("系统");
+                s.setPhone("13800000000");
+                s.setAddress("系统自动创建");
+                supplierRepository.save(s);
+                System.out.println("[SupplierSeeder] 租户="+tenantId+" 已创建默认供应商");
+            } else {
+                System.out.println("[SupplierSeeder] 租户="+tenantId+" 默认供应商已存在");
+            }
+        } catch (Exception ex) {
+            System.err.println("[SupplierSeeder] 租户="+tenantId+" 创建默认供应商失败: "+ex.getMessage());
+        }
+    }
 }
@@ -2,14 +2,36 @@ package com.pharmacy.multitenant;
 
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
+import javax.sql.DataSource;
+import java.util.HashMap;
+
 /**
  * 根据当前线程保存的租户ID返回对应数据源 key。
+ * 数据源直接从 {@link TenantRegistry} 解析，运行期新增/移除的租户无需重新初始化路由。
+ * 未设置租户时走默认库；设置了但未注册的租户直接报错（HTTP 请求已由 {@link TenantFilter} 拦截）。
  */
 public class StoreRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final TenantRegistry registry;
+
+    public StoreRoutingDataSource(TenantRegistry registry) {
+        this.registry = registry;
+        // 父类要求 targetDataSources 非空；实际解析走 determineTargetDataSource
+        setTargetDataSources(new HashMap<>());
+    }
+
     @Override
     protected Object determineCurrentLookupKey() {
         String tenant = TenantContext.getTenant();
-        return tenant == null || tenant.isBlank() ? "default" : tenant;
+        return tenant == null || tenant.isBlank() ? TenantRegistry.DEFAULT_TENANT : tenant;
     }
-}
 
+    @Override
+    protected DataSource determineTargetDataSource() {
+        Object key = determineCurrentLookupKey();
+        DataSource ds = registry.get((String) key);
+        // 未注册或已移除的租户不回落默认库，避免把该租户的读写落到别的门店
+        if (ds == null) throw new IllegalStateException("Cannot determine target DataSource for lookup key [" + key + "]");
+        return ds;
+    }
+}
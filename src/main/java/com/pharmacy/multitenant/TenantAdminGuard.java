@@ -0,0 +1,37 @@
+package com.pharmacy.multitenant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 运行期门店增删接口的访问口令：默认关闭，开启后请求头 X-Admin-Token 须与 tenant.admin.token 一致。
+ * 系统没有统一的认证层，这两个接口会让服务端连接外部数据库，必须单独把关。
+ */
+@Component
+public class TenantAdminGuard {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    private final boolean enabled;
+    private final byte[] token;
+
+    public TenantAdminGuard(@Value("${tenant.admin.enabled:false}") boolean enabled,
+                            @Value("${tenant.admin.token:}") String token) {
+        // 未配置口令时即使打开开关也视为关闭
+        this.enabled = enabled && token != null && !token.isBlank();
+        this.token = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 口令比对使用定长比较，避免按耗时逐位猜测 */
+    public boolean accepts(String presented) {
+        return enabled && presented != null
+                && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
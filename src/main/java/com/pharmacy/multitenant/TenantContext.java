@@ -1,7 +1,11 @@
 package com.pharmacy.multitenant;
 
+import java.util.function.Supplier;
+
 /**
  * 保存当前请求的店铺/租户ID，通过 ThreadLocal 实现每个请求独立。
+ * 任务交给其它线程（线程池、异步执行器、虚拟线程）时用 {@link #wrap} 或 {@link #runAs} 显式携带租户，
+ * 执行完恢复线程原有的租户，避免池化线程残留上一个任务的租户。
  */
 public final class TenantContext {
     private static final ThreadLocal<String> TENANT_HOLDER = new ThreadLocal<>();
@@ -21,4 +25,32 @@ public final class TenantContext {
     public static String getCurrentTenant(){
         return getTenant();
     }
+
+    /** 以指定租户执行，结束后恢复当前线程原来的租户 */
+    public static void runAs(String tenant, Runnable task){
+        callAs(tenant, () -> { task.run(); return null; });
+    }
+
+    /** 以指定租户执行并返回结果，结束后恢复当前线程原来的租户 */
+    public static <T> T callAs(String tenant, Supplier<T> task){
+        String previous = TENANT_HOLDER.get();
+        if (tenant == null) TENANT_HOLDER.remove(); else TENANT_HOLDER.set(tenant);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) TENANT_HOLDER.remove(); else TENANT_HOLDER.set(previous);
+        }
+    }
+
+    /** 捕获提交时的租户，在执行线程上还原 */
+    public static Runnable wrap(Runnable task){
+        String tenant = TENANT_HOLDER.get();
+        return () -> runAs(tenant, task);
+    }
+
+    /** 捕获提交时的租户，在执行线程上还原 */
+    public static <T> Supplier<T> wrap(Supplier<T> task){
+        String tenant = TENANT_HOLDER.get();
+        return () -> callAs(tenant, task);
+    }
 }
@@ -0,0 +1,106 @@
+package com.pharmacy.multitenant;
+
+import com.pharmacy.util.WorkerThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+/**
+ * 跨租户并行执行器：健康检查、表结构比对、连锁汇总报表等按租户逐个访问数据库的任务在这里并发执行，
+ * 每个租户有独立的截止时间，慢租户超时后单独返回超时结果，不拖慢其它租户。
+ * 线程池有界，队列满时该租户直接返回繁忙，不在调用线程上执行。
+ */
+@Component
+public class TenantFanOut {
+
+    /** 单个租户的执行结果：成功时 value 非空；失败或超时时 error 说明原因 */
+    public record Outcome<T>(T value, String error, boolean timedOut, long elapsedMillis) {
+        public boolean ok() { return error == null; }
+    }
+
+    private record Done<T>(T value, long finishedNanos) {}
+
+    @Value("${health.fanout.threads:8}")
+    private int threads;
+
+    @Value("${health.fanout.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private ThreadPoolExecutor pool;
+
+    @PostConstruct
+    public void init() {
+        int n = Math.max(1, threads);
+        pool = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                WorkerThreads.factory("tenant-fanout", virtualThreads), new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 对每个租户并发执行 task（执行线程上已设置该租户的 TenantContext），按输入顺序返回结果。
+     * 所有租户同时开始计时，超过 perTenantTimeout 未完成的租户直接标记超时、放弃其结果；
+     * CompletableFuture 取消不会中断执行中的 JDBC 调用，任务内部应自行设置语句超时。
+     */
+    public <S, T> Map<String, Outcome<T>> run(Map<String, S> tenants, BiFunction<String, S, T> task, Duration perTenantTimeout) {
+        long started = System.nanoTime();
+        long deadline = started + perTenantTimeout.toNanos();
+        Map<String, CompletableFuture<Done<T>>> futures = new LinkedHashMap<>();
+        Map<String, Outcome<T>> out = new LinkedHashMap<>();
+        for (Map.Entry<String, S> e : tenants.entrySet()) {
+            String tenant = e.getKey();
+            S source = e.getValue();
+            try {
+                futures.put(tenant, CompletableFuture.supplyAsync(
+                        () -> new Done<>(TenantContext.callAs(tenant, () -> task.apply(tenant, source)), System.nanoTime()), pool));
+            } catch (RejectedExecutionException ex) {
+                out.put(tenant, new Outcome<>(null, "检查线程繁忙，稍后重试", false, 0));
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<Done<T>>> e : futures.entrySet()) {
+            CompletableFuture<Done<T>> f = e.getValue();
+            try {
+                Done<T> done = f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                out.put(e.getKey(), new Outcome<>(done.value(), null, false, TimeUnit.NANOSECONDS.toMillis(done.finishedNanos() - started)));
+            } catch (TimeoutException ex) {
+                f.cancel(true);
+                out.put(e.getKey(), new Outcome<>(null, "超过 " + perTenantTimeout.toMillis() + "ms 未完成", true, elapsedMillis(started)));
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                out.put(e.getKey(), new Outcome<>(null, String.valueOf(cause.getMessage()), false, elapsedMillis(started)));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                f.cancel(true);
+                out.put(e.getKey(), new Outcome<>(null, "检查被中断", false, elapsedMillis(started)));
+            }
+        }
+        // 按输入顺序输出（被拒绝的租户已提前写入）
+        Map<String, Outcome<T>> ordered = new LinkedHashMap<>();
+        for (String tenant : tenants.keySet()) ordered.put(tenant, out.get(tenant));
+        return ordered;
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
@@ -1,24 +1,44 @@
 package com.pharmacy.multitenant;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 /**
  * 每个 HTTP 请求开始时解析店铺标识写入 TenantContext，完成后清除。
  * 解析顺序：Header X-Shop-Id > 请求参数 shopId > 默认 default。
+ * 未注册（或已被移除）的店铺直接返回 404，不回落默认库：各租户缓存以 TenantContext 为 key，
+ * 回落会让每个伪造的店铺标识在默认库上各建一份缓存。
  */
 @Component
 public class TenantFilter extends OncePerRequestFilter {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final MultiTenantDataSourceConfig dataSourceConfig;
+
+    public TenantFilter(MultiTenantDataSourceConfig dataSourceConfig) {
+        this.dataSourceConfig = dataSourceConfig;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String shopId = resolveShopId(request);
+        if(shopId != null && !dataSourceConfig.getRegistry().contains(shopId)) {
+            reject(response, shopId);
+            return;
+        }
         try {
-            String shopId = resolveShopId(request);
             if(shopId != null) {
                 TenantContext.setTenant(shopId);
             }
@@ -28,7 +48,15 @@ public class TenantFilter extends OncePerRequestFilter {
         }
     }
 
-    private String resolveShopId(HttpServletRequest request){
+    private void reject(HttpServletResponse response, String shopId) throws IOException {
+        response.setStatus(HttpStatus.NOT_FOUND.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSON.writeValueAsString(Map.of("code", 404, "message", "未知门店: " + shopId)));
+    }
+
+    /** 请求指定的店铺标识，未指定返回 null（指标打标签时也用它，因为此时 TenantContext 可能已清除） */
+    public static String resolveShopId(HttpServletRequest request){
         String header = request.getHeader("X-Shop-Id");
         if(header != null && !header.isBlank()) return header.trim();
         String param = request.getParameter("shopId");
@@ -36,4 +64,3 @@ public class TenantFilter extends OncePerRequestFilter {
         return null; // 让路由数据源使用 default
     }
 }
-
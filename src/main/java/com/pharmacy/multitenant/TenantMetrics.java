@@ -0,0 +1,41 @@
+package com.pharmacy.multitenant;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按租户打标签的业务指标。tenant 标签只取已注册的租户，请求头里的未知店铺统一记为 unknown，
+ * 避免任意 X-Shop-Id 撑爆指标基数。
+ * 缓存命中率：pharmacy.cache.requests{cache, result=hit|miss, tenant}
+ */
+@Component
+public class TenantMetrics {
+
+    public static final String UNKNOWN_TENANT = "unknown";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectProvider<MultiTenantDataSourceConfig> multiTenantConfig;
+
+    /** 当前线程租户对应的标签值 */
+    public String currentTenantTag() {
+        return tenantTag(TenantContext.getTenant());
+    }
+
+    public String tenantTag(String tenant) {
+        if (tenant == null || tenant.isBlank()) return TenantRegistry.DEFAULT_TENANT;
+        MultiTenantDataSourceConfig config = multiTenantConfig.getIfAvailable();
+        if (config != null && !config.getRegistry().contains(tenant)) return UNKNOWN_TENANT;
+        return tenant;
+    }
+
+    /** 记录一次缓存访问 */
+    public void cacheAccess(String cache, boolean hit) {
+        meterRegistry.counter("pharmacy.cache.requests", "cache", cache, "result", hit ? "hit" : "miss",
+                "tenant", currentTenantTag()).increment();
+    }
+}
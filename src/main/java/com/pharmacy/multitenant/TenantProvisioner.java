@@ -0,0 +1,99 @@
+package com.pharmacy.multitenant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 运行期门店上线/下线：登记数据源后由首次建池回调补齐表结构与初始账号，整个过程不需要重启，也不影响其它租户。
+ * 数据库地址只接受白名单内的协议与主机，不允许携带额外的驱动参数。
+ */
+@Component
+public class TenantProvisioner {
+
+    // jdbc:<协议>://<主机>[:端口]/<库名>[?参数]，不接受多主机、账号内嵌等写法
+    private static final Pattern JDBC_URL = Pattern.compile(
+            "jdbc:([a-z0-9]+)://([A-Za-z0-9.-]+)(?::(\\d{1,5}))?/([A-Za-z0-9_]+)(?:\\?(.*))?");
+    // 仅允许与配置文件中租户地址相同的编码/时区参数，其余驱动参数（如 allowLoadLocalInfile、autoDeserialize）一律拒绝
+    private static final Set<String> ALLOWED_PARAMS = Set.of("useUnicode", "characterEncoding", "serverTimezone");
+    private static final Pattern PARAM_VALUE = Pattern.compile("[A-Za-z0-9/_+-]{1,64}");
+
+    private final MultiTenantDataSourceConfig dataSourceConfig;
+    private final Set<String> allowedSchemes;
+    private final Set<String> allowedHosts;
+
+    public TenantProvisioner(MultiTenantDataSourceConfig dataSourceConfig,
+                             @Value("${tenant.admin.allowed-schemes:mysql}") String allowedSchemes,
+                             @Value("${tenant.admin.allowed-hosts:localhost}") String allowedHosts) {
+        this.dataSourceConfig = dataSourceConfig;
+        this.allowedSchemes = csv(allowedSchemes);
+        this.allowedHosts = csv(allowedHosts);
+    }
+
+    private static Set<String> csv(String value) {
+        return Arrays.stream(value == null ? new String[0] : value.split(","))
+                .map(s -> s.trim().toLowerCase(Locale.ROOT))
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * 新增租户并初始化，返回连接池状态与初始化结果
+     * @throws IllegalArgumentException 参数非法、地址不在白名单或租户已存在
+     * @throws IllegalStateException 数据库无法连接
+     */
+    public Map<String, Object> addTenant(String id, String url, String user, String pwd, Integer maxPoolSize, Integer minIdle) {
+        if (user == null || user.isBlank()) {
+            throw new IllegalArgumentException("租户数据库 username 不能为空");
+        }
+        checkUrl(url);
+        // 建表、补种、外键与发件箱恢复都挂在首次建池回调上，连通性校验时已按序执行
+        LazyTenantDataSource ds = dataSourceConfig.addTenant(id, url, user, pwd, maxPoolSize, minIdle);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("initialized", ds.isInitialized());
+        result.put("pool", ds.describe());
+        return result;
+    }
+
+    void checkUrl(String url) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("租户数据库 url 不能为空");
+        }
+        Matcher m = JDBC_URL.matcher(url.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("租户数据库 url 格式不支持: " + url);
+        }
+        if (!allowedSchemes.contains(m.group(1).toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("不允许的数据库类型: " + m.group(1));
+        }
+        if (!allowedHosts.contains(m.group(2).toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("数据库主机不在白名单内: " + m.group(2));
+        }
+        String query = m.group(5);
+        if (query == null || query.isEmpty()) return;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            if (!ALLOWED_PARAMS.contains(key) || !PARAM_VALUE.matcher(value).matches()) {
+                throw new IllegalArgumentException("不允许的数据库连接参数: " + key);
+            }
+        }
+    }
+
+    /**
+     * 下线租户并关闭其连接池，返回是否存在
+     */
+    public boolean removeTenant(String id) {
+        return dataSourceConfig.removeTenant(id);
+    }
+}
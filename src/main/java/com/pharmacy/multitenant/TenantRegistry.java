@@ -0,0 +1,51 @@
+package com.pharmacy.multitenant;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 运行期租户注册表：租户ID -> 数据源。
+ * {@link StoreRoutingDataSource} 每次取连接都从这里解析，增删租户立即生效，无需重建路由 Bean。
+ */
+public class TenantRegistry {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private final ConcurrentHashMap<String, DataSource> dataSources = new ConcurrentHashMap<>();
+
+    /** 注册租户，已存在时返回 false 且不覆盖 */
+    public boolean register(String tenantId, DataSource dataSource) {
+        return dataSources.putIfAbsent(tenantId, dataSource) == null;
+    }
+
+    /** 移除租户，返回被移除的数据源（不存在时为 null） */
+    public DataSource remove(String tenantId) {
+        return tenantId == null ? null : dataSources.remove(tenantId);
+    }
+
+    /** 仅当当前登记的仍是给定数据源时移除 */
+    public boolean remove(String tenantId, DataSource dataSource) {
+        return tenantId != null && dataSources.remove(tenantId, dataSource);
+    }
+
+    public DataSource get(String tenantId) {
+        return tenantId == null ? null : dataSources.get(tenantId);
+    }
+
+    public boolean contains(String tenantId) {
+        return tenantId != null && dataSources.containsKey(tenantId);
+    }
+
+    public Set<String> ids() {
+        return new LinkedHashSet<>(dataSources.keySet());
+    }
+
+    /** 只读实时视图 */
+    public Map<String, DataSource> view() {
+        return Collections.unmodifiableMap(dataSources);
+    }
+}
@@ -0,0 +1,148 @@
+package com.pharmacy.multitenant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 租户核心表结构读取与缓存：每个租户一次 information_schema.COLUMNS 查询取回全部核心表的列，
+ * 并按“表|列|类型”计算结构指纹。缓存按租户独立过期，某个租户读取失败时仍可返回其上一次的结果。
+ */
+@Component
+public class TenantSchemaInspector {
+
+    public static final List<String> CORE_TABLES = List.of("member", "category", "role", "employee", "medicine", "inventory",
+            "order", "order_item", "supplier", "stock_in", "stock_in_item");
+
+    private static final String COLUMNS_SQL_PREFIX = "SELECT TABLE_NAME, COLUMN_NAME, COLUMN_TYPE FROM information_schema.COLUMNS " +
+            "WHERE TABLE_SCHEMA = ? AND TABLE_NAME IN (";
+
+    /** 一个租户的核心表结构：表 -> (列 -> 类型)，缺失的表不出现 */
+    public record TenantSchema(String catalog, Map<String, Map<String, String>> columns, String fingerprint, LocalDateTime inspectedAt) {
+        public List<String> missingTables() {
+            return CORE_TABLES.stream().filter(t -> !columns.containsKey(t)).toList();
+        }
+    }
+
+    private record Cached(TenantSchema schema, long at) {}
+
+    @Value("${health.cache-ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${health.fanout.query-timeout-seconds:5}")
+    private int queryTimeoutSeconds;
+
+    private final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<>();
+
+    /** 缓存未过期时返回缓存，否则返回 null */
+    public TenantSchema fresh(String tenant) {
+        Cached c = cache.get(tenant);
+        return c != null && System.currentTimeMillis() - c.at() < ttlSeconds * 1000 ? c.schema() : null;
+    }
+
+    /** 最近一次成功读取的结果（可能已过期），没有则为 null */
+    public TenantSchema lastKnown(String tenant) {
+        Cached c = cache.get(tenant);
+        return c != null ? c.schema() : null;
+    }
+
+    /**
+     * 读取租户核心表结构并写入缓存。结构指纹未变化时沿用旧对象，调用方可据此复用基于它的比对结果
+     */
+    public TenantSchema inspect(String tenant, DataSource ds) throws SQLException {
+        TenantSchema schema;
+        try (Connection conn = ds.getConnection()) {
+            String catalog = conn.getCatalog();
+            Map<String, Map<String, String>> columns = new LinkedHashMap<>();
+            String sql = COLUMNS_SQL_PREFIX + String.join(", ", Collections.nCopies(CORE_TABLES.size(), "?")) +
+                    ") ORDER BY TABLE_NAME, ORDINAL_POSITION";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setQueryTimeout(queryTimeoutSeconds);
+                ps.setString(1, catalog);
+                for (int i = 0; i < CORE_TABLES.size(); i++) ps.setString(i + 2, CORE_TABLES.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        columns.computeIfAbsent(rs.getString(1), k -> new LinkedHashMap<>()).put(rs.getString(2), rs.getString(3));
+                    }
+                }
+            }
+            schema = new TenantSchema(catalog, columns, fingerprint(columns), LocalDateTime.now());
+        }
+        Cached previous = cache.get(tenant);
+        if (previous != null && previous.schema().fingerprint().equals(schema.fingerprint())
+                && previous.schema().catalog().equals(schema.catalog())) {
+            schema = previous.schema();
+        }
+        cache.put(tenant, new Cached(schema, System.currentTimeMillis()));
+        return schema;
+    }
+
+    public void evict(String tenant) {
+        if (tenant != null) cache.remove(tenant);
+    }
+
+    public void evictAll() {
+        cache.clear();
+    }
+
+    private static String fingerprint(Map<String, Map<String, String>> columns) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            columns.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(t ->
+                    t.getValue().entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(c ->
+                            md.update((t.getKey() + "|" + c.getKey() + "|" + c.getValue() + "\n").getBytes(StandardCharsets.UTF_8))));
+            return HexFormat.of().formatHex(md.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 比对时忽略大小写与 unsigned 修饰 */
+    public static String normalizeType(String t) {
+        if (t == null) return "";
+        return t.toLowerCase().replace(" unsigned", " ").trim();
+    }
+
+    /** 各表相对基准缺失的列与类型不一致的列 */
+    public static List<Map<String, Object>> diff(TenantSchema base, TenantSchema target, Collection<String> tables) {
+        List<Map<String, Object>> tableDiffs = new ArrayList<>();
+        for (String t : tables) {
+            Map<String, String> cols = target.columns().getOrDefault(t, Collections.emptyMap());
+            if (cols.isEmpty()) {
+                tableDiffs.add(Map.of("table", t, "status", "MISSING"));
+                continue;
+            }
+            List<String> missing = new ArrayList<>();
+            List<String> typeMismatch = new ArrayList<>();
+            for (var bc : base.columns().getOrDefault(t, Collections.emptyMap()).entrySet()) {
+                String tType = cols.get(bc.getKey());
+                if (tType == null) missing.add(bc.getKey());
+                else if (!normalizeType(bc.getValue()).equals(normalizeType(tType))) typeMismatch.add(bc.getKey() + ":" + tType + "!=" + bc.getValue());
+            }
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("table", t);
+            one.put("missingColumns", missing);
+            one.put("typeMismatch", typeMismatch);
+            one.put("status", missing.isEmpty() && typeMismatch.isEmpty() ? "OK" : "DIFF");
+            tableDiffs.add(one);
+        }
+        return tableDiffs;
+    }
+}
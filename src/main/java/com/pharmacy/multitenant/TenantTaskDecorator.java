@@ -0,0 +1,13 @@
+package com.pharmacy.multitenant;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Spring 异步执行器的任务装饰：提交 @Async 等任务时带上当前租户，平台线程池与虚拟线程执行器通用。
+ */
+public class TenantTaskDecorator implements TaskDecorator {
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return TenantContext.wrap(runnable);
+    }
+}
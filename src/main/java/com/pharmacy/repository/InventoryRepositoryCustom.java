@@ -0,0 +1,37 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.dto.InventoryDTO;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 库存列表查询：关键词/分类/库存状态/效期状态/供应商过滤、排序与分页全部在数据库完成，
+ * 库存状态与效期状态由 SQL CASE 表达式计算（规则与 StockStatusUtil 一致），过滤时改写为等价的范围条件。
+ */
+public interface InventoryRepositoryCustom {
+
+    /**
+     * 筛选条件，null/空串表示不限制。stockStatus: OUT/CRITICAL/LOW/MEDIUM/HIGH，expiryStatus: EXPIRED/NEAR_EXPIRY/NORMAL
+     */
+    record ListCriteria(String keyword, Integer categoryId, String stockStatus, String expiryStatus,
+                        String supplier, LocalDate today) {}
+
+    /**
+     * 分页查询，sort 形如 expiryDate_asc（字段: expiryDate/stock/name/batchNo/updateTime），以库存ID兜底排序。
+     * afterId 非空时按键集分页取该行之后的 limit 行（忽略 offset）；按字段排序时还需 afterKey，
+     * 取上一页末行的 {@link #cursorKey(String, InventoryDTO)}。
+     * @throws IllegalArgumentException 按字段排序翻页缺少 afterKey 或其格式不正确
+     */
+    List<InventoryDTO> findListPage(ListCriteria criteria, String sort, Long afterId, String afterKey, int offset, int limit);
+
+    /**
+     * 该行在 sort 排序下的键集游标值（空值按 SQL 中的替换值给出）；仅按库存ID排序时返回 null
+     */
+    String cursorKey(String sort, InventoryDTO row);
+
+    /**
+     * 满足条件的库存批次数
+     */
+    long countList(ListCriteria criteria);
+}
@@ -0,0 +1,186 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.dto.InventoryDTO;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * {@link InventoryRepositoryCustom} 的原生 SQL 实现。
+ * 库存 JOIN 药品一次取出列表所需的全部字段（含分类、处方药标记），不再逐条回查；
+ * 过滤、排序、分页都在数据库完成，翻页优先走 (排序值, 库存ID) 键集，避免大 OFFSET 扫描。
+ */
+public class InventoryRepositoryCustomImpl implements InventoryRepositoryCustom {
+
+    // 与 StockStatusUtil.calcStockStatus 保持一致：安全库存缺省按 1 计，避免除 0
+    private static final String STOCK_STATUS_SQL = "CASE WHEN i.stock_quantity = 0 THEN 'OUT' " +
+            "WHEN i.stock_quantity * 1.0 / (CASE WHEN i.min_stock > 0 THEN i.min_stock ELSE 1 END) <= 0.10 THEN 'CRITICAL' " +
+            "WHEN i.stock_quantity * 1.0 / (CASE WHEN i.min_stock > 0 THEN i.min_stock ELSE 1 END) <= 0.30 THEN 'LOW' " +
+            "WHEN i.stock_quantity * 1.0 / (CASE WHEN i.min_stock > 0 THEN i.min_stock ELSE 1 END) <= 0.80 THEN 'MEDIUM' " +
+            "ELSE 'HIGH' END";
+
+    // 与 StockStatusUtil.calcExpiryStatus 保持一致：近效期 60 天
+    private static final String EXPIRY_STATUS_SQL = "CASE WHEN i.expiry_date IS NULL THEN NULL " +
+            "WHEN i.expiry_date < :today THEN 'EXPIRED' " +
+            "WHEN i.expiry_date < :nearExpiry THEN 'NEAR_EXPIRY' ELSE 'NORMAL' END";
+
+    private static final int NEAR_EXPIRY_DAYS = 60;
+
+    private static final String FROM_SQL = " FROM inventory i JOIN medicine m ON m.medicine_id = i.medicine_id";
+
+    private static final String SELECT_SQL = "SELECT i.inventory_id, i.batch_no, i.create_time, i.expiry_date, i.max_stock, " +
+            "i.medicine_id, i.min_stock, i.purchase_price, i.stock_quantity, i.supplier, i.update_time, " +
+            "m.generic_name, m.trade_name, m.spec, m.retail_price, m.category_id, m.is_rx, " +
+            STOCK_STATUS_SQL + " AS stock_status, " + EXPIRY_STATUS_SQL + " AS expiry_status";
+
+    private static final String MIN_STOCK_SQL = "(CASE WHEN i.min_stock > 0 THEN i.min_stock ELSE 1 END)";
+
+    // 状态过滤写成范围条件而不是对每行求 CASE：效期与缺货可直接走索引范围；
+    // 库存比值阈值两边同乘 10 * 安全库存，避免除法，结果与 STOCK_STATUS_SQL 一致
+    private static final Map<String, String> STOCK_STATUS_FILTERS = Map.of(
+            "OUT", "i.stock_quantity = 0",
+            "CRITICAL", "i.stock_quantity <> 0 AND i.stock_quantity * 10 <= " + MIN_STOCK_SQL,
+            "LOW", "i.stock_quantity * 10 > " + MIN_STOCK_SQL + " AND i.stock_quantity * 10 <= 3 * " + MIN_STOCK_SQL,
+            "MEDIUM", "i.stock_quantity * 10 > 3 * " + MIN_STOCK_SQL + " AND i.stock_quantity * 10 <= 8 * " + MIN_STOCK_SQL,
+            "HIGH", "i.stock_quantity * 10 > 8 * " + MIN_STOCK_SQL);
+
+    private static final Map<String, String> EXPIRY_STATUS_FILTERS = Map.of(
+            "EXPIRED", "i.expiry_date < :today",
+            "NEAR_EXPIRY", "i.expiry_date >= :today AND i.expiry_date < :nearExpiry",
+            "NORMAL", "i.expiry_date >= :nearExpiry");
+
+    private static final LocalDate NO_EXPIRY = LocalDate.of(9999, 12, 31);
+    private static final LocalDateTime NO_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    /** 排序键：SQL 表达式（空值已替换，排序与键集比较不会漏掉 NULL 行）、游标值解析、从结果行取游标值 */
+    private record SortKey(String expression, Function<String, Object> parser, Function<InventoryDTO, Object> extractor) {}
+
+    // 排序字段白名单，防止拼接注入；空有效期排在最后
+    private static final Map<String, SortKey> SORT_KEYS = Map.of(
+            "expiryDate", new SortKey("COALESCE(i.expiry_date, DATE '9999-12-31')", LocalDate::parse,
+                    r -> r.getExpiryDate() == null ? NO_EXPIRY : r.getExpiryDate()),
+            "stock", new SortKey("i.stock_quantity", Integer::valueOf, InventoryDTO::getStockQuantity),
+            "name", new SortKey("COALESCE(m.generic_name, '')", v -> v,
+                    r -> Objects.toString(r.getMedicineGenericName(), "")),
+            "batchNo", new SortKey("COALESCE(i.batch_no, '')", v -> v, r -> Objects.toString(r.getBatchNo(), "")),
+            "updateTime", new SortKey("COALESCE(i.update_time, i.create_time, TIMESTAMP '1970-01-01 00:00:00')", LocalDateTime::parse,
+                    r -> r.getUpdateTime() != null ? r.getUpdateTime() : (r.getCreateTime() != null ? r.getCreateTime() : NO_TIME)));
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public InventoryRepositoryCustomImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<InventoryDTO> findListPage(ListCriteria criteria, String sort, Long afterId, String afterKey, int offset, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(SELECT_SQL).append(FROM_SQL).append(where(criteria, params));
+        SortKey key = sortKey(sort);
+        boolean desc = key != null && sort.toLowerCase().endsWith("_desc");
+        if (afterId != null) {
+            String cmp = desc ? "<" : ">";
+            if (key == null) {
+                sql.append(" AND i.inventory_id ").append(cmp).append(" :afterId");
+            } else {
+                // 游标由客户端带回上一页末行的排序值，(排序值, 库存ID) 整体严格大于/小于游标
+                if (afterKey == null) throw new IllegalArgumentException("按 " + sort + " 键集翻页需要同时提供 afterKey");
+                String column = key.expression();
+                sql.append(" AND (").append(column).append(' ').append(cmp).append(" :afterKey")
+                        .append(" OR (").append(column).append(" = :afterKey AND i.inventory_id ").append(cmp).append(" :afterId))");
+                params.addValue("afterKey", parseKey(key, afterKey));
+            }
+            params.addValue("afterId", afterId);
+        }
+        String dir = desc ? " DESC" : " ASC";
+        sql.append(" ORDER BY ");
+        if (key != null) sql.append(key.expression()).append(dir).append(", ");
+        sql.append("i.inventory_id").append(dir);
+        sql.append(" LIMIT :limit");
+        params.addValue("limit", limit);
+        if (afterId == null) {
+            sql.append(" OFFSET :offset");
+            params.addValue("offset", offset);
+        }
+        return jdbc.query(sql.toString(), params, (rs, n) -> {
+            Integer minStock = rs.getObject("min_stock", Integer.class);
+            return new InventoryDTO(rs.getLong("inventory_id"), rs.getString("batch_no"),
+                    rs.getObject("create_time", LocalDateTime.class), rs.getObject("expiry_date", LocalDate.class),
+                    rs.getObject("max_stock", Integer.class), rs.getString("medicine_id"), minStock,
+                    rs.getBigDecimal("purchase_price"), rs.getObject("stock_quantity", Integer.class),
+                    rs.getString("supplier"), rs.getObject("update_time", LocalDateTime.class),
+                    rs.getString("generic_name"), rs.getString("trade_name"), rs.getString("spec"),
+                    rs.getObject("retail_price", BigDecimal.class),
+                    rs.getString("stock_status"), rs.getString("expiry_status"), null, minStock,
+                    rs.getObject("category_id", Integer.class), rs.getObject("is_rx", Boolean.class));
+        });
+    }
+
+    @Override
+    public String cursorKey(String sort, InventoryDTO row) {
+        SortKey key = sortKey(sort);
+        if (key == null || row == null) return null;
+        Object value = key.extractor().apply(row);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public long countList(ListCriteria criteria) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        Long total = jdbc.queryForObject("SELECT COUNT(*)" + FROM_SQL + where(criteria, params), params, Long.class);
+        return total == null ? 0 : total;
+    }
+
+    private String where(ListCriteria c, MapSqlParameterSource params) {
+        LocalDate today = c.today() == null ? LocalDate.now() : c.today();
+        params.addValue("today", today).addValue("nearExpiry", today.plusDays(NEAR_EXPIRY_DAYS));
+        StringBuilder sb = new StringBuilder(" WHERE 1=1");
+        if (c.keyword() != null && !c.keyword().isBlank()) {
+            sb.append(" AND (i.batch_no LIKE :kw OR m.generic_name LIKE :kw OR m.trade_name LIKE :kw OR m.spec LIKE :kw" +
+                    " OR m.manufacturer LIKE :kw OR m.barcode LIKE :kw OR m.approval_no LIKE :kw)");
+            params.addValue("kw", "%" + escapeLike(c.keyword().trim()) + "%");
+        }
+        if (c.categoryId() != null) {
+            sb.append(" AND m.category_id = :categoryId");
+            params.addValue("categoryId", c.categoryId());
+        }
+        if (c.supplier() != null && !c.supplier().isBlank()) {
+            sb.append(" AND i.supplier LIKE :supplier");
+            params.addValue("supplier", "%" + escapeLike(c.supplier().trim()) + "%");
+        }
+        if (c.stockStatus() != null && !c.stockStatus().isBlank()) {
+            // 未知状态值不匹配任何行
+            sb.append(" AND (").append(STOCK_STATUS_FILTERS.getOrDefault(c.stockStatus().trim().toUpperCase(), "1=0")).append(')');
+        }
+        if (c.expiryStatus() != null && !c.expiryStatus().isBlank()) {
+            sb.append(" AND (").append(EXPIRY_STATUS_FILTERS.getOrDefault(c.expiryStatus().trim().toUpperCase(), "1=0")).append(')');
+        }
+        return sb.toString();
+    }
+
+    // 排序键，null 表示仅按库存ID排序
+    private static SortKey sortKey(String sort) {
+        if (sort == null || sort.isBlank()) return null;
+        String[] parts = sort.split("_");
+        return parts.length == 2 ? SORT_KEYS.get(parts[0]) : null;
+    }
+
+    private static Object parseKey(SortKey key, String value) {
+        try {
+            return key.parser().apply(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("afterKey 格式不正确: " + value, e);
+        }
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,6 +1,7 @@
 package com.pharmacy.repository;
 
 import com.pharmacy.entity.Member;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,7 +12,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface MemberRepository extends JpaRepository<Member, String> {
+public interface MemberRepository extends JpaRepository<Member, String>, MemberRepositoryCustom {
 
     // 根据手机号查找会员
     Optional<Member> findByPhone(String phone);
@@ -53,4 +54,7 @@ public interface MemberRepository extends JpaRepository<Member, String> {
 
     // 根据姓名或手机号模糊搜索
     List<Member> findByNameContainingOrPhoneContaining(String name, String phone);
-}
\ No newline at end of file
+
+    // 键集分页：取主键大于 afterId 的下一页
+    List<Member> findByMemberIdGreaterThanOrderByMemberIdAsc(String afterId, Pageable pageable);
+}
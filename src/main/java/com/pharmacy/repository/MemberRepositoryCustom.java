@@ -0,0 +1,41 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.dto.MemberDTO;
+import com.pharmacy.entity.Member;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 会员高级筛选与导出：过滤/排序/分页与汇总指标全部在数据库完成，消费统计来自已支付订单聚合。
+ */
+public interface MemberRepositoryCustom {
+
+    /**
+     * 筛选条件，null/空串表示不限制。segment: vip / new30 / sleep / highPoints / all
+     */
+    record AdvancedCriteria(String segment, Integer pointsMin, Integer pointsMax,
+                            Integer consumptionMin, Integer consumptionMax,
+                            String name, String phone, LocalDateTime now) {}
+
+    /**
+     * 筛选结果汇总：总数、平均积分、近30天活跃数、超90天未消费(流失)数
+     */
+    record AdvancedSummary(long total, double avgPoints, long activeCount, long churnCount) {}
+
+    /**
+     * 按条件分页查询，sort 形如 points_desc（字段: createTime/points/consumption/level），结果已带消费次数与最近消费时间
+     */
+    List<MemberDTO> findAdvancedPage(AdvancedCriteria criteria, String sort, int offset, int limit);
+
+    /**
+     * 单条聚合 SQL 计算筛选结果的汇总指标
+     */
+    AdvancedSummary summarizeAdvanced(AdvancedCriteria criteria);
+
+    /**
+     * 按会员ID顺序以只进游标逐行回调全部会员（导出用），返回行数；回调拿到的是非托管对象，内存占用与会员总数无关
+     */
+    int forEachMember(Consumer<Member> consumer);
+}
@@ -0,0 +1,161 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.dto.MemberDTO;
+import com.pharmacy.entity.Member;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@link MemberRepositoryCustom} 的原生 SQL 实现。
+ * 会员表 LEFT JOIN 已支付订单按会员分组的聚合（走 order.idx_member），
+ * 条件、排序、LIMIT/OFFSET 与汇总都下推到数据库，不再把整表会员加载到内存。
+ */
+public class MemberRepositoryCustomImpl implements MemberRepositoryCustom {
+
+    private static final String FROM_SQL = " FROM `member` m " +
+            "LEFT JOIN (SELECT member_id, COUNT(*) AS consumption_count, MAX(order_time) AS last_consumption " +
+            "FROM `order` WHERE payment_status = 1 AND member_id IS NOT NULL GROUP BY member_id) c " +
+            "ON c.member_id = m.member_id";
+
+    private static final String SELECT_SQL = "SELECT m.member_id, m.name, m.phone, m.card_no, m.level, m.points, " +
+            "m.allergic_history, m.medical_card_no, m.create_time, " +
+            "COALESCE(c.consumption_count, 0) AS consumption_count, c.last_consumption";
+
+    private static final String SUMMARY_SQL = "SELECT COUNT(*) AS total, COALESCE(AVG(COALESCE(m.points, 0)), 0) AS avg_points, " +
+            "COALESCE(SUM(CASE WHEN c.last_consumption > :activeSince THEN 1 ELSE 0 END), 0) AS active_count, " +
+            "COALESCE(SUM(CASE WHEN c.last_consumption IS NULL OR c.last_consumption < :churnBefore THEN 1 ELSE 0 END), 0) AS churn_count";
+
+    private static final String EXPORT_SQL = "SELECT member_id, name, phone, card_no, level, points, allergic_history, " +
+            "medical_card_no, create_time FROM `member` ORDER BY member_id";
+
+    // 排序字段白名单，防止拼接注入
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "createTime", "m.create_time",
+            "points", "COALESCE(m.points, 0)",
+            "consumption", "COALESCE(c.consumption_count, 0)",
+            "level", "COALESCE(m.level, 0)");
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public MemberRepositoryCustomImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<MemberDTO> findAdvancedPage(AdvancedCriteria criteria, String sort, int offset, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = SELECT_SQL + FROM_SQL + where(criteria, params) + orderBy(sort) + " LIMIT :limit OFFSET :offset";
+        params.addValue("limit", limit).addValue("offset", offset);
+        return jdbc.query(sql, params, (rs, i) -> {
+            MemberDTO dto = new MemberDTO(rs.getString("member_id"), rs.getString("name"), rs.getString("phone"));
+            dto.setCardNo(rs.getString("card_no"));
+            dto.setLevel(rs.getObject("level", Integer.class));
+            dto.setPoints(rs.getObject("points", Integer.class));
+            dto.setAllergicHistory(rs.getString("allergic_history"));
+            dto.setMedicalCardNo(rs.getString("medical_card_no"));
+            dto.setCreateTime(rs.getObject("create_time", LocalDateTime.class));
+            dto.setLevelName(MemberDTO.getLevelName(dto.getLevel()));
+            dto.setConsumptionCount(rs.getInt("consumption_count"));
+            dto.setLastConsumptionDate(rs.getObject("last_consumption", LocalDateTime.class));
+            return dto;
+        });
+    }
+
+    @Override
+    public AdvancedSummary summarizeAdvanced(AdvancedCriteria criteria) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = SUMMARY_SQL + FROM_SQL + where(criteria, params);
+        params.addValue("activeSince", criteria.now().minusDays(30));
+        params.addValue("churnBefore", criteria.now().minusDays(90));
+        return jdbc.queryForObject(sql, params, (rs, i) -> new AdvancedSummary(
+                rs.getLong("total"), rs.getDouble("avg_points"), rs.getLong("active_count"), rs.getLong("churn_count")));
+    }
+
+    @Override
+    public int forEachMember(Consumer<Member> consumer) {
+        int[] count = {0};
+        jdbc.getJdbcTemplate().query(con -> {
+            PreparedStatement ps = con.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL 驱动只有 fetchSize=Integer.MIN_VALUE 时才逐行流式读取，其它驱动用普通批量抓取
+            boolean mysql = con.getMetaData().getDatabaseProductName().toLowerCase(java.util.Locale.ROOT).contains("mysql");
+            ps.setFetchSize(mysql ? Integer.MIN_VALUE : 500);
+            return ps;
+        }, rs -> {
+            Member m = new Member(rs.getString("member_id"), rs.getString("name"), rs.getString("phone"));
+            m.setCardNo(rs.getString("card_no"));
+            m.setLevel(rs.getObject("level", Integer.class));
+            m.setPoints(rs.getObject("points", Integer.class));
+            m.setAllergicHistory(rs.getString("allergic_history"));
+            m.setMedicalCardNo(rs.getString("medical_card_no"));
+            m.setCreateTime(rs.getObject("create_time", LocalDateTime.class));
+            consumer.accept(m);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private String where(AdvancedCriteria c, MapSqlParameterSource params) {
+        StringBuilder sb = new StringBuilder(" WHERE 1=1");
+        if (c.name() != null && !c.name().isBlank()) {
+            sb.append(" AND m.name LIKE :name");
+            params.addValue("name", "%" + escapeLike(c.name().trim()) + "%");
+        }
+        if (c.phone() != null && !c.phone().isBlank()) {
+            sb.append(" AND m.phone LIKE :phone");
+            params.addValue("phone", "%" + escapeLike(c.phone().trim()) + "%");
+        }
+        if (c.pointsMin() != null) {
+            sb.append(" AND m.points >= :pointsMin");
+            params.addValue("pointsMin", c.pointsMin());
+        }
+        if (c.pointsMax() != null) {
+            sb.append(" AND m.points <= :pointsMax");
+            params.addValue("pointsMax", c.pointsMax());
+        }
+        if (c.consumptionMin() != null) {
+            sb.append(" AND COALESCE(c.consumption_count, 0) >= :consumptionMin");
+            params.addValue("consumptionMin", c.consumptionMin());
+        }
+        if (c.consumptionMax() != null) {
+            sb.append(" AND COALESCE(c.consumption_count, 0) <= :consumptionMax");
+            params.addValue("consumptionMax", c.consumptionMax());
+        }
+        if (c.segment() != null) {
+            switch (c.segment()) {
+                case "vip" -> sb.append(" AND m.level >= 4");
+                case "new30" -> {
+                    sb.append(" AND m.create_time >= :newSince");
+                    params.addValue("newSince", c.now().minusDays(30));
+                }
+                case "sleep" -> {
+                    sb.append(" AND (c.last_consumption IS NULL OR c.last_consumption < :sleepBefore)");
+                    params.addValue("sleepBefore", c.now().minusDays(90));
+                }
+                case "highPoints" -> sb.append(" AND m.points >= 1000");
+                default -> { } // all
+            }
+        }
+        return sb.toString();
+    }
+
+    private String orderBy(String sort) {
+        // 始终以主键兜底，保证翻页稳定
+        if (sort == null || sort.isBlank()) return " ORDER BY m.member_id";
+        String[] parts = sort.split("_");
+        String column = parts.length == 2 ? SORT_COLUMNS.get(parts[0]) : null;
+        if (column == null) return " ORDER BY m.member_id";
+        String dir = "desc".equalsIgnoreCase(parts[1]) ? " DESC" : " ASC";
+        return " ORDER BY " + column + dir + ", m.member_id" + dir;
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
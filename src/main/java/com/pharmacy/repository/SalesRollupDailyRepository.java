@@ -0,0 +1,19 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.entity.SalesRollupDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface SalesRollupDailyRepository extends JpaRepository<SalesRollupDaily, LocalDate> {
+
+    // 闭区间 [start, end] 内的日汇总
+    List<SalesRollupDaily> findByBucketDateBetweenOrderByBucketDate(LocalDate start, LocalDate end);
+
+    @Query("SELECT MIN(d.bucketDate) FROM SalesRollupDaily d")
+    LocalDate findEarliestBucketDate();
+}
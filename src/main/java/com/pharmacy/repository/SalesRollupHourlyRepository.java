@@ -0,0 +1,15 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.entity.SalesRollupHourly;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SalesRollupHourlyRepository extends JpaRepository<SalesRollupHourly, LocalDateTime> {
+
+    // 区间 [start, end) 内的小时汇总
+    List<SalesRollupHourly> findByBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(LocalDateTime start, LocalDateTime end);
+}
@@ -1,5 +1,6 @@
 package com.pharmacy.scheduler;
 
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.service.impl.MemberConsumptionUpdater;
 import com.pharmacy.repository.OrderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -103,6 +104,13 @@ public class MemberStatsScheduler {
 
     public void batchRefresh(){
         if(updater==null) return;
+        // 逐个有缓存的租户刷新，查询落在各自门店库
+        for(String tenant: updater.cachedTenants()){
+            TenantContext.runAs(tenant, () -> refreshTenant(tenant));
+        }
+    }
+
+    private void refreshTenant(String tenant){
         try {
             Set<String> recent = updater.snapshotRecentActive(200);
             java.util.List<String> todayMembers = orderRepository.getTodayActiveMembers();
@@ -114,10 +122,10 @@ public class MemberStatsScheduler {
             }
             if(!recent.isEmpty()){
                 updater.refreshMembersBatch(recent);
-                System.out.println("[MemberStatsScheduler] 批量刷新会员消费统计 size="+recent.size());
+                System.out.println("[MemberStatsScheduler] 批量刷新会员消费统计 tenant="+tenant+" size="+recent.size());
             }
         } catch(Exception e){
-            System.err.println("[MemberStatsScheduler] 批量刷新失败:"+e.getMessage());
+            System.err.println("[MemberStatsScheduler] 批量刷新失败 tenant="+tenant+": "+e.getMessage());
         }
     }
 }
@@ -0,0 +1,70 @@
+package com.pharmacy.scheduler;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.service.impl.OutboxServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 发件箱定时任务：
+ * 1. 启动后检查已连接租户是否有上次未处理完的事件，其余租户在首次建池后异步检查
+ * 2. 定期回收超时认领、清理已处理事件，并补处理到期的重试与队列满时丢弃的信号
+ */
+@Component
+public class OutboxScheduler implements ApplicationRunner {
+
+    @Autowired
+    private OutboxServiceImpl outboxService;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired(required = false)
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Environment env;
+
+    private ScheduledFuture<?> sweepFuture;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        outboxService.recover(liveTenants());
+        if (taskScheduler == null) {
+            System.out.println("[OutboxScheduler] 没有可用的 TaskScheduler，跳过发件箱清扫任务注册");
+            return;
+        }
+        if (multiTenantConfig != null) {
+            // 回调在建池锁内执行，恢复经路由数据源取连接，须放到其它线程
+            multiTenantConfig.onTenantPoolOpened((tenant, ds) ->
+                    taskScheduler.schedule(() -> outboxService.recover(Set.of(tenant)), Instant.now()));
+        }
+        long seconds = env.getProperty("outbox.sweep-interval-seconds", Long.class, 15L);
+        sweepFuture = taskScheduler.scheduleWithFixedDelay(outboxService::sweepActive, Duration.ofSeconds(seconds));
+        System.out.println("[OutboxScheduler] 注册发件箱清扫 interval=" + seconds + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweepFuture != null) sweepFuture.cancel(false);
+    }
+
+    /** 连接池已建立的租户，不为定时任务唤醒空闲或尚未访问的店铺 */
+    private Set<String> liveTenants() {
+        Set<String> tenants = new LinkedHashSet<>();
+        tenants.add("default");
+        if (multiTenantConfig != null) tenants.addAll(multiTenantConfig.getLiveTenantIds());
+        return tenants;
+    }
+}
@@ -0,0 +1,90 @@
+package com.pharmacy.scheduler;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.SalesRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 销售汇总定时任务：
+ * 1. 启动后为已连接的租户回填历史汇总（其余租户在首次读取时再回填）
+ * 2. 定期按订单表重建最近几天的汇总，修正绕过实体直接改库等导致的偏差
+ */
+@Component
+public class SalesRollupScheduler implements ApplicationRunner {
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired(required = false)
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Environment env;
+
+    private ScheduledFuture<?> rebuildFuture;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!env.getProperty("sales.rollup.enabled", Boolean.class, true)) return;
+        if (env.getProperty("sales.rollup.backfill-on-startup", Boolean.class, true)) {
+            for (String tenant : liveTenants()) {
+                runForTenant(tenant, salesRollupService::backfill, "回填");
+            }
+        }
+        if (taskScheduler == null) {
+            System.out.println("[SalesRollupScheduler] 没有可用的 TaskScheduler，跳过重建任务注册");
+            return;
+        }
+        long seconds = env.getProperty("sales.rollup.rebuild-interval-seconds", Long.class, 3600L);
+        // 启动时刚回填过，首次重建延后一个周期
+        rebuildFuture = taskScheduler.scheduleWithFixedDelay(this::rebuildRecent, Instant.now().plusSeconds(seconds), Duration.ofSeconds(seconds));
+        System.out.println("[SalesRollupScheduler] 注册销售汇总重建 interval=" + seconds + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (rebuildFuture != null) rebuildFuture.cancel(false);
+    }
+
+    /** 重建已连接租户最近 N 天（含今天）的汇总 */
+    public void rebuildRecent() {
+        int days = Math.max(1, env.getProperty("sales.rollup.rebuild-days", Integer.class, 2));
+        LocalDate today = LocalDate.now();
+        for (String tenant : liveTenants()) {
+            runForTenant(tenant, () -> salesRollupService.rebuild(today.minusDays(days - 1L), today), "重建");
+        }
+    }
+
+    /** 连接池已建立的租户，不为定时任务唤醒空闲或尚未访问的店铺 */
+    private Set<String> liveTenants() {
+        Set<String> tenants = new LinkedHashSet<>();
+        tenants.add("default");
+        if (multiTenantConfig != null) tenants.addAll(multiTenantConfig.getLiveTenantIds());
+        return tenants;
+    }
+
+    private void runForTenant(String tenant, Runnable task, String action) {
+        try {
+            TenantContext.runAs(tenant, task);
+        } catch (Exception e) {
+            System.err.println("[SalesRollupScheduler] 租户 " + tenant + " 汇总" + action + "失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.pharmacy.scheduler;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.impl.StockAlertEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 库存预警兜底扫描：预警平时由库存变动事件增量生成，这里低频全量扫描已连接的租户，
+ * 补上事件丢失或按日期自然进入近效期的批次。启动时不立即扫描，未处理的变动事件由发件箱恢复。
+ */
+@Component
+public class StockAlertScheduler implements ApplicationRunner {
+
+    @Autowired
+    private StockAlertEngine stockAlertEngine;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired(required = false)
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Environment env;
+
+    private ScheduledFuture<?> sweepFuture;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!env.getProperty("inventory.alert.enabled", Boolean.class, true)) return;
+        if (taskScheduler == null) {
+            System.out.println("[StockAlertScheduler] 没有可用的 TaskScheduler，跳过预警兜底扫描注册");
+            return;
+        }
+        Duration interval = Duration.ofSeconds(env.getProperty("inventory.alert.sweep-interval-seconds", Long.class, 3600L));
+        sweepFuture = taskScheduler.scheduleWithFixedDelay(this::sweepAll, Instant.now().plus(interval), interval);
+        System.out.println("[StockAlertScheduler] 注册库存预警兜底扫描 interval=" + interval.toSeconds() + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweepFuture != null) sweepFuture.cancel(false);
+    }
+
+    public void sweepAll() {
+        for (String tenant : liveTenants()) {
+            try {
+                TenantContext.runAs(tenant, stockAlertEngine::sweepCurrentTenant);
+            } catch (Exception e) {
+                System.err.println("[StockAlertScheduler] 租户 " + tenant + " 预警扫描失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /** 连接池已建立的租户，不为定时任务唤醒空闲或尚未访问的店铺 */
+    private Set<String> liveTenants() {
+        Set<String> tenants = new LinkedHashSet<>();
+        tenants.add("default");
+        if (multiTenantConfig != null) tenants.addAll(multiTenantConfig.getLiveTenantIds());
+        return tenants;
+    }
+}
@@ -0,0 +1,87 @@
+package com.pharmacy.scheduler;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.impl.StockLedger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 库存账本定时任务：
+ * 1. 启动后为已连接的租户预热账本（其余租户在首次读取时再按需预热）
+ * 2. 定期与 inventory 表对账，修正漏记或并发导致的偏差
+ */
+@Component
+public class StockLedgerScheduler implements ApplicationRunner {
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired(required = false)
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Environment env;
+
+    private ScheduledFuture<?> reconcileFuture;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!env.getProperty("inventory.ledger.enabled", Boolean.class, true)) return;
+        if (env.getProperty("inventory.ledger.warm-on-startup", Boolean.class, true)) {
+            for (String tenant : liveTenants()) {
+                runForTenant(tenant, stockLedger::warm, "预热");
+            }
+        }
+        if (taskScheduler == null) {
+            System.out.println("[StockLedgerScheduler] 没有可用的 TaskScheduler，跳过对账任务注册");
+            return;
+        }
+        long seconds = env.getProperty("inventory.ledger.reconcile-interval-seconds", Long.class, 300L);
+        reconcileFuture = taskScheduler.scheduleWithFixedDelay(this::reconcileAll, Duration.ofSeconds(seconds));
+        System.out.println("[StockLedgerScheduler] 注册库存账本对账 interval=" + seconds + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (reconcileFuture != null) reconcileFuture.cancel(false);
+    }
+
+    /** 仅对已预热且连接池仍在的租户对账，避免唤醒长期不活跃的店铺 */
+    public void reconcileAll() {
+        Set<String> live = liveTenants();
+        for (String tenant : stockLedger.warmedTenants()) {
+            if (!live.contains(tenant)) continue;
+            runForTenant(tenant, stockLedger::reconcile, "对账");
+        }
+    }
+
+    /** 连接池已建立的租户，不为定时任务唤醒空闲或尚未访问的店铺 */
+    private Set<String> liveTenants() {
+        Set<String> tenants = new LinkedHashSet<>();
+        tenants.add("default");
+        if (multiTenantConfig != null) tenants.addAll(multiTenantConfig.getLiveTenantIds());
+        return tenants;
+    }
+
+    private void runForTenant(String tenant, Runnable task, String action) {
+        try {
+            TenantContext.runAs(tenant, task);
+        } catch (Exception e) {
+            System.err.println("[StockLedgerScheduler] 租户 " + tenant + " 账本" + action + "失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.pharmacy.scheduler;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 租户连接池回收：定期关闭空闲超过 tenant.pool.idle-evict-seconds 的租户连接池，
+ * 使连接数随活跃门店而不是已配置门店增长。被回收的租户下次访问时重新建池。
+ */
+@Component
+public class TenantPoolScheduler implements ApplicationRunner {
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired(required = false)
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Environment env;
+
+    private ScheduledFuture<?> evictFuture;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (multiTenantConfig == null) return;
+        if (taskScheduler == null) {
+            System.out.println("[TenantPoolScheduler] 没有可用的 TaskScheduler，跳过连接池回收任务注册");
+            return;
+        }
+        long checkSeconds = env.getProperty("tenant.pool.evict-check-seconds", Long.class, 60L);
+        evictFuture = taskScheduler.scheduleWithFixedDelay(this::evictIdle, Duration.ofSeconds(checkSeconds));
+        System.out.println("[TenantPoolScheduler] 注册租户连接池回收 interval=" + checkSeconds + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (evictFuture != null) evictFuture.cancel(false);
+    }
+
+    public void evictIdle() {
+        long idleSeconds = env.getProperty("tenant.pool.idle-evict-seconds", Long.class, 600L);
+        try {
+            int evicted = multiTenantConfig.evictIdlePools(idleSeconds * 1000);
+            if (evicted > 0) System.out.println("[TenantPoolScheduler] 回收空闲租户连接池 " + evicted + " 个");
+        } catch (Exception e) {
+            System.err.println("[TenantPoolScheduler] 回收租户连接池失败: " + e.getMessage());
+        }
+    }
+}
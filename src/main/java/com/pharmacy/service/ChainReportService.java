@@ -0,0 +1,20 @@
+package com.pharmacy.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 连锁汇总报表：对所有门店并行执行销售统计与控制台指标查询，合并为总部视角的一份结果。
+ */
+public interface ChainReportService {
+
+    /**
+     * 区间内全部门店的销售合计、按日合并的销售额、合并后的商品排行前 topK 以及分门店明细。
+     * 合并结果按参数缓存；有门店失败或超时时结果标记为不完整，只做短时缓存。
+     * @param refresh 为 true 时忽略缓存重新查询
+     */
+    Map<String, Object> consolidated(LocalDateTime startDate, LocalDateTime endDate, int topK, boolean refresh);
+
+    /** 清空合并结果缓存（门店增减时调用） */
+    void evictCache();
+}
@@ -72,10 +72,15 @@ public interface DashboardService {
     Double getMemberChangePercent();
 
     /**
-     * 刷新控制台数据缓存
+     * 刷新控制台数据缓存（丢弃当前租户快照，下次请求重新计算）
      */
     void refreshDashboardCache();
 
+    /**
+     * 标记当前租户控制台快照过期（订单创建/退款后调用），下次读取返回旧快照并触发后台刷新
+     */
+    void markDashboardStale();
+
     /**
      * 获取导出报表数据
      */
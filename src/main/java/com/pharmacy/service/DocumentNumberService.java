@@ -0,0 +1,26 @@
+package com.pharmacy.service;
+
+/**
+ * 单据号生成：订单、入库单、挂单、药品、会员统一从这里取号，保证同一租户内不重复且单调递增。
+ * 单据号保留原有的可读前缀和日期格式，如 O20241027123456 后接节点号与秒内序号。
+ */
+public interface DocumentNumberService {
+
+    /** 销售订单号，如 O20241027123456010001 */
+    String nextOrderId();
+
+    /** 入库单号，前缀 SI */
+    String nextStockInNo();
+
+    /** 挂单号，前缀 H */
+    String nextHangOrderId();
+
+    /** 自动建档的药品ID，前缀 M */
+    String nextMedicineId();
+
+    /** 会员ID，沿用 M00001 递增格式 */
+    String nextMemberId();
+
+    /** 丢弃租户的取号状态（租户下线时调用） */
+    void evict(String tenant);
+}
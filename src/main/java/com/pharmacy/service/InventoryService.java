@@ -3,18 +3,38 @@ package com.pharmacy.service;
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.dto.InventoryDTO;
 import com.pharmacy.dto.CurrentStockDTO;
+import com.pharmacy.repository.InventoryRepositoryCustom;
 import org.springframework.data.domain.Page;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface InventoryService {
 
+    /** 药品维度的库存汇总：总库存、批号（按入库先后去重）、最早未过期效期、最小的正安全库存（没有则为 null） */
+    record StockSummary(int stockQuantity, List<String> batchNos, LocalDate earliestExpiryDate, Integer minStock) {}
+
     /**
      * 新增：返回带药品信息的 InventoryDTO 列表，避免懒加载问题
      * @return 带药品信息的 InventoryDTO 列表
      */
     List<InventoryDTO> findAllWithMedicineDTO();
 
+    /**
+     * 库存列表分页：过滤、状态计算、排序与分页在数据库完成
+     * @param afterId 非空时按键集分页，返回该库存ID之后的记录（忽略 offset）
+     * @param afterKey 按字段排序翻页时上一页末行的 {@link #pageCursorKey(String, InventoryDTO)}
+     */
+    List<InventoryDTO> pageInventory(InventoryRepositoryCustom.ListCriteria criteria, String sort, Long afterId, String afterKey, int offset, int limit);
+
+    /** 库存列表键集翻页游标中的排序值，仅按库存ID排序时为 null */
+    String pageCursorKey(String sort, InventoryDTO row);
+
+    /** 满足条件的库存批次总数 */
+    long countInventory(InventoryRepositoryCustom.ListCriteria criteria);
+
     /**
      * 为订单更新库存
      * @param medicineId 药品ID
@@ -24,6 +44,14 @@ public interface InventoryService {
      */
     boolean updateStockForOrder(String medicineId, Integer quantity, String orderId);
 
+    /**
+     * 批量扣减订单库存：一次查询加载所有药品批次，内存中按先进先出分配，JDBC 批量写回
+     * @param quantities 药品ID -> 扣减数量
+     * @param orderId 订单ID
+     * @return 库存不足的药品ID列表，为空表示全部扣减成功（存在不足时不做任何扣减）
+     */
+    List<String> deductStockForOrder(java.util.Map<String, Integer> quantities, String orderId);
+
     /**
      * 恢复库存（用于退单）
      * @param medicineId 药品ID
@@ -51,6 +79,9 @@ public interface InventoryService {
     /** 新增：批量获取多个药品ID的当前库存 */
     List<CurrentStockDTO> getCurrentStocks(List<String> medicineIds);
 
+    /** 一次查询汇总一页药品的库存信息，供药品列表/收银商品网格批量拼装；没有批次的药品不在结果中 */
+    Map<String, StockSummary> summarizeStock(Collection<String> medicineIds);
+
     /** 新增：分页获取所有激活药品的当前库存列表 */
     Page<CurrentStockDTO> pageCurrentStocks(int page, int size);
 
@@ -1,9 +1,19 @@
 package com.pharmacy.service;
 
+import com.pharmacy.dto.MemberDTO;
 import com.pharmacy.dto.MemberStatsDTO;
 import com.pharmacy.entity.Member;
+import com.pharmacy.multitenant.TenantMetrics;
 import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.repository.MemberRepositoryCustom;
+import com.pharmacy.service.impl.MemberSearchIndex;
+import com.pharmacy.util.TransactionHooks;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,7 +35,20 @@ public class MemberService {
     @Autowired
     private com.pharmacy.repository.OrderRepository orderRepository; // 新增: 用于消费聚合
 
+    @Autowired
+    private DocumentNumberService documentNumberService; // 会员号取号
+
+    @Autowired
+    private MemberSearchIndex memberSearchIndex; // 内存检索索引，收银台逐键搜索不再全表扫描
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    @Value("${member.search.top-k:50}")
+    private int searchTopK;
+
     // 改进的搜索方法 - 同时搜索所有条件并去重
+    @Timed(value = "pharmacy.operation", extraTags = {"op", "member_search"})
     public List<Member> searchMembers(String keyword) {
         try {
             System.out.println("=== 在MemberService中搜索会员 ===");
@@ -44,33 +67,42 @@ public class MemberService {
 
             // 新增: 部分手机号匹配(包含)
             if (trimmedKeyword.chars().allMatch(Character::isDigit) && trimmedKeyword.length() >= 4) {
-                List<Member> partialPhones = memberRepository.findAll().stream()
-                        .filter(m -> m.getPhone() != null && m.getPhone().contains(trimmedKeyword))
-                        .collect(Collectors.toList());
+                List<Member> partialPhones = indexedSearch(trimmedKeyword, java.util.EnumSet.of(MemberSearchIndex.Field.PHONE));
+                if (partialPhones == null) {
+                    partialPhones = memberRepository.findAll().stream()
+                            .filter(m -> m.getPhone() != null && m.getPhone().contains(trimmedKeyword))
+                            .collect(Collectors.toList());
+                }
                 if(!partialPhones.isEmpty()) {
                     System.out.println("手机号包含匹配数量: " + partialPhones.size());
                 }
                 results.addAll(partialPhones);
             }
 
-            // 2. 姓名 LIKE（数据库层面）
-            List<Member> nameDbMatches = memberRepository.findByNameContaining(trimmedKeyword);
-            if(!nameDbMatches.isEmpty()) {
-                System.out.println("数据库 LIKE 匹配姓名数量: " + nameDbMatches.size());
-                results.addAll(nameDbMatches);
+            // 2. 姓名：优先走内存索引（已做与 normalize 相同的清洗），不可用时数据库 LIKE
+            List<Member> nameIndexMatches = indexedSearch(trimmedKeyword, java.util.EnumSet.of(MemberSearchIndex.Field.NAME));
+            if (nameIndexMatches != null) {
+                if(!nameIndexMatches.isEmpty()) System.out.println("索引匹配姓名数量: " + nameIndexMatches.size());
+                results.addAll(nameIndexMatches);
             } else {
-                // Fallback：在已加载的全部列表中手动 contains（处理可能的编码 / 空格差异）
-                List<Member> manualNameMatches = memberRepository.findAll().stream()
-                        .filter(m -> {
-                            String n = normalize(m.getName());
-                            return !n.isEmpty() && n.contains(trimmedKeyword);
-                        })
-                        .collect(Collectors.toList());
-                if(!manualNameMatches.isEmpty()) {
-                    System.out.println("手动遍历姓名匹配数量: " + manualNameMatches.size());
-                    results.addAll(manualNameMatches);
+                List<Member> nameDbMatches = memberRepository.findByNameContaining(trimmedKeyword);
+                if(!nameDbMatches.isEmpty()) {
+                    System.out.println("数据库 LIKE 匹配姓名数量: " + nameDbMatches.size());
+                    results.addAll(nameDbMatches);
                 } else {
-                    System.out.println("姓名匹配为空（数据库+手动），关键词: " + trimmedKeyword);
+                    // Fallback：在已加载的全部列表中手动 contains（处理可能的编码 / 空格差异）
+                    List<Member> manualNameMatches = memberRepository.findAll().stream()
+                            .filter(m -> {
+                                String n = normalize(m.getName());
+                                return !n.isEmpty() && n.contains(trimmedKeyword);
+                            })
+                            .collect(Collectors.toList());
+                    if(!manualNameMatches.isEmpty()) {
+                        System.out.println("手动遍历姓名匹配数量: " + manualNameMatches.size());
+                        results.addAll(manualNameMatches);
+                    } else {
+                        System.out.println("姓名匹配为空（数据库+手动），关键词: " + trimmedKeyword);
+                    }
                 }
             }
 
@@ -89,10 +121,13 @@ public class MemberService {
         }
     }
 
-    // 新增: 更宽松的快速搜索(姓名包含 / 手机包含 / 卡号包含)
+    // 新增: 更宽松的快速搜索(姓名包含 / 手机包含 / 卡号包含)，索引可用时只回表取前 K 条
+    @Timed(value = "pharmacy.operation", extraTags = {"op", "member_search"})
     public List<Member> quickSearch(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) return new ArrayList<>();
         String k = keyword.trim();
+        List<Member> indexed = indexedSearch(k, MemberSearchIndex.ALL_FIELDS);
+        if (indexed != null) return indexed;
         return memberRepository.findAll().stream().filter(m -> {
             return (m.getName() != null && m.getName().contains(k)) ||
                     (m.getPhone() != null && m.getPhone().contains(k)) ||
@@ -109,7 +144,9 @@ public class MemberService {
 
         Member member = new Member(memberId, name, phone);
         member.setCreateTime(LocalDateTime.now());
-        return memberRepository.save(member);
+        Member saved = memberRepository.save(member);
+        reindexAfterCommit(saved);
+        return saved;
     }
 
     // 根据ID查找会员
@@ -127,12 +164,44 @@ public class MemberService {
         return memberRepository.findAll();
     }
 
+    // 分页获取会员（按会员ID排序，数据库分页）
+    @Transactional(readOnly = true)
+    public Page<Member> findPage(int page, int size) {
+        return memberRepository.findAll(PageRequest.of(page, size, Sort.by("memberId")));
+    }
+
+    // 键集分页：返回会员ID大于 afterId 的下一页，深翻页不再扫描 OFFSET
+    @Transactional(readOnly = true)
+    public List<Member> findPageAfter(String afterId, int size) {
+        return memberRepository.findByMemberIdGreaterThanOrderByMemberIdAsc(afterId, PageRequest.of(0, size));
+    }
+
+    // 高级筛选分页：过滤/排序/分页在数据库完成，结果已带消费统计
+    @Transactional(readOnly = true)
+    public List<MemberDTO> findAdvancedPage(MemberRepositoryCustom.AdvancedCriteria criteria, String sort, int offset, int limit) {
+        return memberRepository.findAdvancedPage(criteria, sort, offset, limit);
+    }
+
+    // 高级筛选汇总：总数 / 平均积分 / 活跃数 / 流失数
+    @Transactional(readOnly = true)
+    public MemberRepositoryCustom.AdvancedSummary summarizeAdvanced(MemberRepositoryCustom.AdvancedCriteria criteria) {
+        return memberRepository.summarizeAdvanced(criteria);
+    }
+
+    // 导出：只进游标逐行回调全部会员，返回行数
+    @Transactional(readOnly = true)
+    public int forEachMemberForExport(java.util.function.Consumer<Member> consumer) {
+        return memberRepository.forEachMember(consumer);
+    }
+
     // 更新会员信息
     public Member updateMember(Member member) {
         if (!memberRepository.existsById(member.getMemberId())) {
             throw new RuntimeException("会员不存在: " + member.getMemberId());
         }
-        return memberRepository.save(member);
+        Member saved = memberRepository.save(member);
+        reindexAfterCommit(saved);
+        return saved;
     }
 
     public Member updateMember(String id, Member memberDetails) {
@@ -145,12 +214,15 @@ public class MemberService {
         member.setAllergicHistory(memberDetails.getAllergicHistory());
         member.setMedicalCardNo(memberDetails.getMedicalCardNo());
 
-        return memberRepository.save(member);
+        Member saved = memberRepository.save(member);
+        reindexAfterCommit(saved);
+        return saved;
     }
 
     // 删除会员
     public void deleteMember(String memberId) {
         memberRepository.deleteById(memberId);
+        TransactionHooks.afterCommit(() -> memberSearchIndex.remove(memberId));
     }
 
 
@@ -198,23 +270,9 @@ public class MemberService {
         return memberRepository.findByPhone(phone).isPresent();
     }
 
-    // 生成下一个会员ID（简单实现）
+    // 生成下一个会员ID（M00001 递增格式，内存取号，不再每次加载全部会员）
     public String generateNextMemberId() {
-        // 这里可以根据业务规则实现更复杂的ID生成逻辑
-        List<Member> members = memberRepository.findAll();
-        if (members.isEmpty()) {
-            return "M00001";
-        }
-
-        // 获取最大的会员ID并递增
-        String maxId = members.stream()
-                .map(Member::getMemberId)
-                .max(String::compareTo)
-                .orElse("M00000");
-
-        // 提取数字部分并递增
-        int number = Integer.parseInt(maxId.substring(1)) + 1;
-        return String.format("M%05d", number);
+        return documentNumberService.nextMemberId();
     }
 
     // 在现有的 MemberService 类中添加以下方法：
@@ -250,37 +308,13 @@ public class MemberService {
             stats.setConsumptionGrowth(15.2);
             stats.setSleepingGrowth(-18);
 
-            // 计算附加指标：平均积分 / 活跃率 / 流失风险数量 (基于真实订单聚合)
-            List<Member> allMembers = memberRepository.findAll();
-            double sumPoints = 0.0; long totalCount = allMembers.size();
-            java.util.Set<String> allIds = allMembers.stream().map(Member::getMemberId).collect(java.util.stream.Collectors.toSet());
-            java.util.Map<String, java.time.LocalDateTime> lastMap = new java.util.HashMap<>();
-            try {
-                if(!allIds.isEmpty()){
-                    java.util.List<Object[]> rows = orderRepository.aggregateMemberConsumption(allIds); // [memberId, count, last]
-                    for(Object[] r: rows){
-                        String mid = (String) r[0];
-                        java.time.LocalDateTime last = (java.time.LocalDateTime) r[2];
-                        if(mid!=null) lastMap.put(mid,last);
-                    }
-                }
-            } catch(Exception ex){
-                System.err.println("订单聚合失败, 使用 createTime 近似: "+ex.getMessage());
-            }
-            int active = 0; int churn = 0; java.time.LocalDateTime now = java.time.LocalDateTime.now();
-            java.time.LocalDateTime activeThreshold = now.minusDays(30);
-            java.time.LocalDateTime churnThreshold = now.minusDays(90);
-            for(Member m: allMembers){
-                int pts = m.getPoints()!=null? m.getPoints():0; sumPoints += pts;
-                java.time.LocalDateTime last = lastMap.get(m.getMemberId());
-                if(last!=null && last.isAfter(activeThreshold)) active++;
-                if(last==null || last.isBefore(churnThreshold)) churn++;
-            }
-            double avg = totalCount==0?0.0: (sumPoints / totalCount);
-            double activeRate = totalCount==0?0.0: (active * 100.0 / totalCount);
-            stats.setAvgPoints(Math.round(avg*10.0)/10.0); // 一位小数
+            // 计算附加指标：平均积分 / 活跃率 / 流失风险数量 (单条聚合 SQL，基于真实订单)
+            MemberRepositoryCustom.AdvancedSummary summary = memberRepository.summarizeAdvanced(
+                    new MemberRepositoryCustom.AdvancedCriteria(null, null, null, null, null, null, null, LocalDateTime.now()));
+            double activeRate = summary.total()==0?0.0: (summary.activeCount() * 100.0 / summary.total());
+            stats.setAvgPoints(Math.round(summary.avgPoints()*10.0)/10.0); // 一位小数
             stats.setActiveRate(String.format(java.util.Locale.ROOT, "%.1f%%", activeRate));
-            stats.setChurnCount(churn);
+            stats.setChurnCount((int) summary.churnCount());
 
         } catch (Exception e) {
             System.err.println("获取会员统计数据失败: " + e.getMessage());
@@ -303,6 +337,8 @@ public class MemberService {
             for (String memberId : memberIds) {
                 memberRepository.deleteById(memberId);
             }
+            List<String> removed = new ArrayList<>(memberIds);
+            TransactionHooks.afterCommit(() -> removed.forEach(memberSearchIndex::remove));
             return true;
         } catch (Exception e) {
             System.err.println("批量删除会员失败: " + e.getMessage());
@@ -331,6 +367,29 @@ public class MemberService {
         }
     }
 
+    // 走内存索引取前 K 个会员并按索引排序回表；索引不可用时返回 null 由调用方回落原逻辑
+    private List<Member> indexedSearch(String keyword, Set<MemberSearchIndex.Field> fields) {
+        List<String> ids = memberSearchIndex.search(keyword, fields, searchTopK);
+        tenantMetrics.cacheAccess("member_search_index", ids != null);
+        if (ids == null) return null;
+        if (ids.isEmpty()) return new ArrayList<>();
+        java.util.Map<String, Member> byId = memberRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Member::getMemberId, m -> m));
+        List<Member> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Member m = byId.get(id);
+            if (m != null) ordered.add(m);
+        }
+        return ordered;
+    }
+
+    // 会员检索字段变化在提交后同步到索引
+    private void reindexAfterCommit(Member m) {
+        if (m == null) return;
+        String id = m.getMemberId(), name = m.getName(), phone = m.getPhone(), cardNo = m.getCardNo();
+        TransactionHooks.afterCommit(() -> memberSearchIndex.upsert(id, name, phone, cardNo));
+    }
+
     private String normalize(String s){
         if(s==null) return "";
         String trimmed = s.trim();
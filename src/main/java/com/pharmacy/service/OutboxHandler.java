@@ -0,0 +1,16 @@
+package com.pharmacy.service;
+
+import java.util.Set;
+
+/**
+ * 发件箱事件处理器。handle 运行在独立事务中，事件的“已处理”标记与处理器的数据库写入同时提交，
+ * 因此数据库内的副作用恰好执行一次；缓存刷新等非事务操作可能在重试时重复执行，需保持幂等。
+ */
+public interface OutboxHandler {
+
+    /** 关心的事件类型 */
+    Set<String> eventTypes();
+
+    /** 处理单个事件，抛出异常则整体回滚并稍后重试 */
+    void handle(OutboxService.Event event) throws Exception;
+}
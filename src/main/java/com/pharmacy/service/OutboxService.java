@@ -0,0 +1,38 @@
+package com.pharmacy.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 进程内事务发件箱：业务事务里把副作用事件写入 outbox_event 表，与核心数据一起提交或回滚；
+ * 提交后由有界、带租户上下文的工作线程分批取出交给 {@link OutboxHandler} 处理，失败按退避重试。
+ */
+public interface OutboxService {
+
+    String ORDER_PAID = "OrderPaid";
+    String ORDER_REFUNDED = "OrderRefunded";
+    String STOCK_CHANGED = "StockChanged";
+    String STOCK_IN_RECEIVED = "StockInReceived";
+    /** 订单影响销售汇总的字段变化，payload 为 before/after 快照 */
+    String ORDER_SALES_CHANGED = "OrderSalesChanged";
+
+    /** 已取出的事件，payload 为写入时的键值 */
+    record Event(long id, String tenant, String type, String aggregateId, Map<String, Object> payload,
+                 int attempts, LocalDateTime createTime) {}
+
+    /**
+     * 在当前事务中写入一条事件；没有事务时立即写入。事务提交后自动调度处理。
+     */
+    void publish(String type, String aggregateId, Map<String, Object> payload);
+
+    /**
+     * 同步处理当前租户已到期的待处理事件（调度线程与测试使用），返回成功处理的条数
+     */
+    int drainCurrentTenant();
+
+    /** 当前租户的积压情况：待处理/处理中/失败条数 */
+    Map<String, Object> stats();
+
+    /** 租户下线时停止为其调度 */
+    void evict(String tenant);
+}
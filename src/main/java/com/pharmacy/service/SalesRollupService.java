@@ -0,0 +1,48 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.Order;
+import com.pharmacy.entity.SalesRollupHourly;
+import com.pharmacy.entity.SalesRollupMetrics;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按租户维护的小时/日销售汇总，供趋势与 KPI 接口读取，避免反复扫描订单表。
+ */
+public interface SalesRollupService {
+
+    /**
+     * 订单变化（新建/状态变更/删除）时登记汇总差量，before/after 为空表示不存在。
+     * 只在当前事务写入发件箱事件，提交后异步应用到汇总表。
+     */
+    void onOrderChanged(String orderId, Order.SalesSnapshot before, Order.SalesSnapshot after);
+
+    /**
+     * 区间 [from, to) 内按天汇总（边界需为整点），按日期升序、无数据的日期补零。
+     * 整天直接取日汇总；首尾不完整的天由小时汇总相加，其会员数仅为近似值。
+     */
+    Map<LocalDate, SalesRollupMetrics> byDay(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * 指定日期 24 个小时桶（无数据补零）
+     */
+    List<SalesRollupHourly> hourly(LocalDate day);
+
+    /**
+     * 按订单表重建 [from, to] 日期范围内的汇总，返回重建天数
+     */
+    int rebuild(LocalDate from, LocalDate to);
+
+    /**
+     * 回填：汇总表早于最早订单缺失的部分全部重建，返回重建天数
+     */
+    int backfill();
+
+    /**
+     * 丢弃租户的回填/脏数据标记（租户下线时调用）
+     */
+    void evictTenant(String tenant);
+}
@@ -0,0 +1,24 @@
+package com.pharmacy.service;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 入库单批量导入：xlsx 走 SAX 事件模型、CSV 逐行读取，按块批量解析药品并批量写入明细与库存。
+ */
+public interface StockInImportService {
+
+    // 单行导入失败原因，row 为文件中的行号（从1开始）
+    record RowError(int row, String message) {}
+
+    // 导入结果汇总；importedRows 为 0 时整单回滚
+    record ImportResult(Long stockInId, String stockInNo, int totalRows, int importedRows,
+                        int createdMedicines, double totalAmount, int errorCount, List<RowError> errors) {}
+
+    // 导入文件（.xlsx / .xls / .csv / 纯文本），importId 非空时可通过 progress 查询进度
+    ImportResult importFile(InputStream in, String filename, Integer supplierId, String importId) throws Exception;
+
+    // 查询当前租户某次导入的进度，不存在返回 null
+    Map<String, Object> progress(String importId);
+}
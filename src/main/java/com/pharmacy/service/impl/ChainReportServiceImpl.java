@@ -0,0 +1,216 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantFanOut;
+import com.pharmacy.multitenant.TenantMetrics;
+import com.pharmacy.service.ChainReportService;
+import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.StatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class ChainReportServiceImpl implements ChainReportService {
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    @Autowired
+    private TenantFanOut tenantFanOut;
+
+    @Autowired
+    private MultiTenantDataSourceConfig multiTenantConfig;
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    @Value("${report.chain.tenant-timeout-ms:5000}")
+    private long tenantTimeoutMs;
+
+    @Value("${report.chain.cache-ttl-seconds:60}")
+    private long cacheTtlSeconds;
+
+    @Value("${report.chain.partial-cache-ttl-seconds:10}")
+    private long partialCacheTtlSeconds;
+
+    @Value("${report.chain.ranking-depth:200}")
+    private int rankingDepth;
+
+    private static final int MAX_CACHED_REPORTS = 64;
+    private static final List<String> DASHBOARD_SUM_KEYS = List.of("todaySales", "todayOrders", "memberConsumption", "lowStockCount");
+
+    /** 单个门店的查询结果 */
+    private record StoreReport(Map<String, Object> sales, List<Map<String, Object>> topProducts, Map<String, Object> dashboard) {}
+
+    private record CachedReport(Map<String, Object> report, long expiresAt) {}
+
+    private final ConcurrentHashMap<String, CachedReport> cache = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<String, Object> consolidated(LocalDateTime startDate, LocalDateTime endDate, int topK, boolean refresh) {
+        int k = Math.max(1, topK);
+        String key = startDate + "|" + endDate + "|" + k;
+        CachedReport cached = refresh ? null : cache.get(key);
+        boolean fresh = cached != null && System.currentTimeMillis() < cached.expiresAt();
+        if (!refresh) tenantMetrics.cacheAccess("chain_report", fresh);
+        if (fresh) {
+            Map<String, Object> hit = new LinkedHashMap<>(cached.report());
+            hit.put("cached", true);
+            return hit;
+        }
+
+        Map<String, String> stores = new LinkedHashMap<>();
+        for (String tenant : multiTenantConfig.getDataSourceMap().keySet()) stores.put(tenant, tenant);
+        int depth = Math.max(k, rankingDepth);
+        Map<String, TenantFanOut.Outcome<StoreReport>> outcomes = tenantFanOut.run(stores, (tenant, ignored) -> {
+            Map<String, Object> sales = statsService.getSalesStats(startDate, endDate);
+            Object top = statsService.getProductRanking(startDate, endDate, depth).get("topProducts");
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> topProducts = top instanceof List<?> l ? (List<Map<String, Object>>) l : List.of();
+            return new StoreReport(sales, topProducts, dashboardService.getDashboardStats());
+        }, Duration.ofMillis(tenantTimeoutMs));
+
+        Map<String, Object> report = merge(outcomes, k, depth);
+        report.put("timeRange", Map.of("start", startDate, "end", endDate));
+        report.put("generatedAt", LocalDateTime.now().toString());
+        // 不完整的结果只短暂缓存，避免门店故障期间每次请求都等满超时
+        long ttl = Boolean.TRUE.equals(report.get("complete")) ? cacheTtlSeconds : partialCacheTtlSeconds;
+        if (ttl > 0) {
+            if (cache.size() >= MAX_CACHED_REPORTS) cache.clear();
+            cache.put(key, new CachedReport(report, System.currentTimeMillis() + ttl * 1000));
+        }
+        Map<String, Object> out = new LinkedHashMap<>(report);
+        out.put("cached", false);
+        return out;
+    }
+
+    @Override
+    public void evictCache() {
+        cache.clear();
+    }
+
+    private Map<String, Object> merge(Map<String, TenantFanOut.Outcome<StoreReport>> outcomes, int k, int depth) {
+        BigDecimal totalSales = BigDecimal.ZERO;
+        long orderCount = 0;
+        Map<String, BigDecimal> daily = new TreeMap<>();
+        Map<String, double[]> dashboard = new LinkedHashMap<>();
+        for (String key : DASHBOARD_SUM_KEYS) dashboard.put(key, new double[1]);
+        Map<Object, Map<String, Object>> products = new LinkedHashMap<>();
+        boolean rankingExact = true;
+        List<Map<String, Object>> breakdown = new ArrayList<>();
+        // 未计入汇总的门店：失败、超时，以及控制台统计尚在首次计算的门店
+        List<String> missing = new ArrayList<>();
+
+        for (Map.Entry<String, TenantFanOut.Outcome<StoreReport>> e : outcomes.entrySet()) {
+            TenantFanOut.Outcome<StoreReport> o = e.getValue();
+            Map<String, Object> store = new LinkedHashMap<>();
+            store.put("tenant", e.getKey());
+            store.put("elapsedMs", o.elapsedMillis());
+            if (!o.ok()) {
+                missing.add(e.getKey());
+                store.put("status", o.timedOut() ? "TIMEOUT" : "ERROR");
+                store.put("error", o.error());
+                breakdown.add(store);
+                continue;
+            }
+            StoreReport r = o.value();
+            // 控制台统计只是加载中占位，按缺失门店处理，整张报表不计入该店，避免把占位当 0 汇总
+            if (Boolean.TRUE.equals(r.dashboard().get("loading"))) {
+                missing.add(e.getKey());
+                store.put("status", "LOADING");
+                breakdown.add(store);
+                continue;
+            }
+            BigDecimal storeSales = decimal(r.sales().get("totalSales"));
+            long storeOrders = number(r.sales().get("orderCount")).longValue();
+            totalSales = totalSales.add(storeSales);
+            orderCount += storeOrders;
+            Object days = r.sales().get("dailySales");
+            if (days instanceof List<?> list) {
+                for (Object d : list) {
+                    if (d instanceof Map<?, ?> m && m.get("date") != null) {
+                        daily.merge(String.valueOf(m.get("date")), decimal(m.get("sales")), BigDecimal::add);
+                    }
+                }
+            }
+            for (String key : DASHBOARD_SUM_KEYS) {
+                dashboard.get(key)[0] += number(r.dashboard().get(key)).doubleValue();
+            }
+            // 门店排行已截断时，合并后的前 K 名只是近似值
+            if (r.topProducts().size() >= depth) rankingExact = false;
+            for (Map<String, Object> p : r.topProducts()) {
+                Map<String, Object> merged = products.computeIfAbsent(p.get("productId"), id -> {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    m.put("productId", id);
+                    m.put("productName", p.get("productName"));
+                    m.put("totalQuantity", 0L);
+                    m.put("totalRevenue", BigDecimal.ZERO);
+                    m.put("storeCount", 0);
+                    return m;
+                });
+                merged.put("totalQuantity", (Long) merged.get("totalQuantity") + number(p.get("totalQuantity")).longValue());
+                merged.put("totalRevenue", ((BigDecimal) merged.get("totalRevenue")).add(decimal(p.get("totalRevenue"))));
+                merged.put("storeCount", (Integer) merged.get("storeCount") + 1);
+            }
+            store.put("status", "OK");
+            store.put("totalSales", storeSales);
+            store.put("orderCount", storeOrders);
+            store.put("todaySales", r.dashboard().get("todaySales"));
+            store.put("todayOrders", r.dashboard().get("todayOrders"));
+            store.put("lowStockCount", r.dashboard().get("lowStockCount"));
+            breakdown.add(store);
+        }
+
+        List<Map<String, Object>> topProducts = products.values().stream()
+                .sorted(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("totalQuantity")).reversed()
+                        .thenComparing(m -> (BigDecimal) m.get("totalRevenue"), Comparator.reverseOrder()))
+                .limit(k)
+                .toList();
+        List<Map<String, Object>> dailySales = new ArrayList<>();
+        daily.forEach((date, sales) -> dailySales.add(Map.of("date", date, "sales", sales)));
+        Map<String, Object> dashboardTotals = new LinkedHashMap<>();
+        dashboard.forEach((key, v) -> dashboardTotals.put(key, "todaySales".equals(key) ? (Object) v[0] : (Object) (long) v[0]));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("storeCount", outcomes.size());
+        report.put("failedStores", missing.size());
+        report.put("missingStores", missing);
+        report.put("complete", missing.isEmpty());
+        report.put("totalSales", totalSales);
+        report.put("orderCount", orderCount);
+        report.put("averageOrderValue", orderCount > 0
+                ? totalSales.divide(BigDecimal.valueOf(orderCount), 2, RoundingMode.HALF_UP) : BigDecimal.ZERO);
+        report.put("dailySales", dailySales);
+        report.put("dashboard", dashboardTotals);
+        report.put("topProducts", topProducts);
+        report.put("rankingExact", rankingExact);
+        report.put("stores", breakdown);
+        return report;
+    }
+
+    private static BigDecimal decimal(Object v) {
+        if (v instanceof BigDecimal b) return b;
+        if (v instanceof Number n) return BigDecimal.valueOf(n.doubleValue());
+        return BigDecimal.ZERO;
+    }
+
+    private static Number number(Object v) {
+        return v instanceof Number n ? n : 0;
+    }
+}
@@ -0,0 +1,187 @@
+package com.pharmacy.service.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 控制台报表序列化：JSON 用 Jackson 流式生成器逐板块写出，嵌套的 Map/List 保持原结构；
+ * XLSX 用 SXSSF 流式工作簿，每个板块一张工作表，内存中只保留滑动窗口内的行。两者都直接写入响应流。
+ */
+@Component
+public class DashboardReportWriter {
+
+    private static final int XLSX_WINDOW_ROWS = 200;
+    private static final Map<String, String> SHEET_TITLES = Map.of(
+            "stats", "概览",
+            "salesTrend", "销售趋势",
+            "categoryDistribution", "分类占比",
+            "stockAlerts", "库存预警",
+            "hotProducts", "热销药品",
+            "expiringMedicines", "近效期药品");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public void writeJson(Map<String, Object> report, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.useDefaultPrettyPrinter();
+            gen.writeStartObject();
+            for (Map.Entry<String, Object> e : report.entrySet()) {
+                gen.writeFieldName(e.getKey());
+                objectMapper.writeValue(gen, e.getValue());
+                gen.flush();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /** 顶层的标量字段写入“报表信息”表，其余每个板块一张表 */
+    public void writeXlsx(Map<String, Object> report, OutputStream out) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(XLSX_WINDOW_ROWS);
+        try {
+            CellStyle bold = wb.createCellStyle();
+            Font font = wb.createFont();
+            font.setBold(true);
+            bold.setFont(font);
+            Sheet info = wb.createSheet("报表信息");
+            int infoRow = 0;
+            for (Map.Entry<String, Object> e : report.entrySet()) {
+                if (isScalar(e.getValue())) {
+                    writeRow(info.createRow(infoRow++), Arrays.asList(e.getKey(), e.getValue()), null);
+                    continue;
+                }
+                Sheet sheet = wb.createSheet(SHEET_TITLES.getOrDefault(e.getKey(), e.getKey()));
+                writeBlock(sheet, 0, e.getValue(), bold);
+            }
+            wb.write(out);
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    /** 把一个板块写成表格，返回下一个空行号 */
+    private int writeBlock(Sheet sheet, int rowNum, Object data, CellStyle bold) {
+        List<Object> seq = asList(data);
+        if (seq != null) {
+            if (!seq.isEmpty() && seq.stream().allMatch(v -> v instanceof Map)) return writeTable(sheet, rowNum, seq, bold);
+            writeRow(sheet.createRow(rowNum++), seq, null);
+            return rowNum;
+        }
+        if (!(data instanceof Map<?, ?> map)) {
+            writeRow(sheet.createRow(rowNum++), List.of(data == null ? "" : data), null);
+            return rowNum;
+        }
+        if (map.values().stream().allMatch(DashboardReportWriter::isScalar)) {
+            for (Map.Entry<?, ?> e : map.entrySet()) writeRow(sheet.createRow(rowNum++), Arrays.asList(e.getKey(), e.getValue()), null);
+            return rowNum;
+        }
+        if (map.values().stream().allMatch(v -> isScalarList(asList(v)))) {
+            return writeColumns(sheet, rowNum, map, bold);
+        }
+        // 混合结构：每个子项先写标题行，子表之间空一行
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            writeRow(sheet.createRow(rowNum++), List.of(String.valueOf(e.getKey())), bold);
+            rowNum = writeBlock(sheet, rowNum, e.getValue(), bold) + 1;
+        }
+        return rowNum;
+    }
+
+    /** List<Map>：表头取所有行键的并集（按首次出现顺序） */
+    private int writeTable(Sheet sheet, int rowNum, List<Object> rows, CellStyle bold) {
+        Set<Object> header = new LinkedHashSet<>();
+        for (Object r : rows) header.addAll(((Map<?, ?>) r).keySet());
+        List<Object> columns = new ArrayList<>(header);
+        writeRow(sheet.createRow(rowNum++), columns, bold);
+        List<Object> values = new ArrayList<>(columns.size());
+        for (Object r : rows) {
+            Map<?, ?> m = (Map<?, ?>) r;
+            values.clear();
+            for (Object c : columns) values.add(m.get(c));
+            writeRow(sheet.createRow(rowNum++), values, null);
+        }
+        return rowNum;
+    }
+
+    /** 形如 {labels:[...], data:[...]} 的图表数据：每个键一列 */
+    private int writeColumns(Sheet sheet, int rowNum, Map<?, ?> map, CellStyle bold) {
+        List<Object> columns = new ArrayList<>(map.keySet());
+        List<List<Object>> lists = new ArrayList<>();
+        int height = 0;
+        for (Object c : columns) {
+            List<Object> l = asList(map.get(c));
+            lists.add(l);
+            height = Math.max(height, l.size());
+        }
+        writeRow(sheet.createRow(rowNum++), columns, bold);
+        List<Object> values = new ArrayList<>(columns.size());
+        for (int i = 0; i < height; i++) {
+            values.clear();
+            for (List<Object> l : lists) values.add(i < l.size() ? l.get(i) : null);
+            writeRow(sheet.createRow(rowNum++), values, null);
+        }
+        return rowNum;
+    }
+
+    private void writeRow(Row row, List<?> values, CellStyle style) {
+        for (int i = 0; i < values.size(); i++) {
+            Object v = values.get(i);
+            Cell cell = row.createCell(i);
+            if (v instanceof Number n) cell.setCellValue(n.doubleValue());
+            else if (v instanceof Boolean b) cell.setCellValue(b);
+            else if (v == null) cell.setBlank();
+            else if (isScalar(v)) cell.setCellValue(v.toString());
+            else cell.setCellValue(toJson(v));
+            if (style != null) cell.setCellStyle(style);
+        }
+    }
+
+    private String toJson(Object v) {
+        try {
+            return objectMapper.writeValueAsString(v);
+        } catch (IOException e) {
+            return String.valueOf(v);
+        }
+    }
+
+    private static boolean isScalar(Object v) {
+        return v == null || v instanceof CharSequence || v instanceof Number || v instanceof Boolean
+                || v instanceof Enum<?> || v instanceof java.time.temporal.Temporal;
+    }
+
+    private static boolean isScalarList(List<Object> l) {
+        return l != null && l.stream().allMatch(DashboardReportWriter::isScalar);
+    }
+
+    /** 集合与数组统一成 List，其它返回 null */
+    private static List<Object> asList(Object v) {
+        if (v instanceof Collection<?> c) return new ArrayList<>(c);
+        if (v != null && v.getClass().isArray()) {
+            int n = Array.getLength(v);
+            List<Object> l = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) l.add(Array.get(v, i));
+            return l;
+        }
+        return null;
+    }
+}
@@ -1,19 +1,41 @@
 package com.pharmacy.service.impl;
 
+import com.pharmacy.entity.SalesRollupHourly;
+import com.pharmacy.entity.SalesRollupMetrics;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantMetrics;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.InventoryRepository;
 import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.SalesRollupService;
 import com.pharmacy.service.StockAlertService;
+import io.micrometer.core.annotation.Timed;
+import com.pharmacy.util.WorkerThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
 public class DashboardServiceImpl implements DashboardService {
@@ -22,68 +44,170 @@ public class DashboardServiceImpl implements DashboardService {
     private final MedicineRepository medicineRepository;
     private final InventoryRepository inventoryRepository;
     private final StockAlertService stockAlertService;
+    private final StockLedger stockLedger;
+    private final SalesRollupService salesRollupService;
 
     public DashboardServiceImpl(OrderRepository orderRepository,
                                 MedicineRepository medicineRepository,
                                 InventoryRepository inventoryRepository,
-                                StockAlertService stockAlertService) {
+                                StockAlertService stockAlertService,
+                                StockLedger stockLedger,
+                                SalesRollupService salesRollupService) {
         this.orderRepository = orderRepository;
         this.medicineRepository = medicineRepository;
         this.inventoryRepository = inventoryRepository;
         this.stockAlertService = stockAlertService;
+        this.stockLedger = stockLedger;
+        this.salesRollupService = salesRollupService;
     }
 
-    // 缓存控制台数据
-    private Map<String, Object> dashboardCache = new HashMap<>();
-    private LocalDateTime lastCacheUpdate;
-    private static final long CACHE_DURATION_MINUTES = 5;
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    // 按租户缓存控制台统计快照：后台线程重算，同一租户的并发未命中合并为一次计算
+    private final ConcurrentHashMap<String, StatsSlot> statsCache = new ConcurrentHashMap<>();
+    @Value("${dashboard.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+    @Value("${dashboard.cache.cold-wait-seconds:10}")
+    private long coldWaitSeconds;
+    // 有界队列只有在队列满时才会扩到最大线程数，核心数与最大数一致，空闲线程超时回收
+    // 刷新池满时拒绝而不是由请求线程代算：请求直接返回旧快照或加载中标记
+    private ThreadPoolExecutor refreshPool;
+    // 报表导出时并行计算各板块
+    @Value("${dashboard.export.timeout-seconds:30}")
+    private long exportTimeoutSeconds;
+    private ThreadPoolExecutor exportPool;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @PostConstruct
+    public void init() {
+        refreshPool = workerPool("dashboard-refresh", 4, 64, new ThreadPoolExecutor.AbortPolicy());
+        // 导出是用户主动发起的一次性请求，队列满时由导出请求线程自己算，不持有任何锁
+        exportPool = workerPool("dashboard-export", 6, 32, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private ThreadPoolExecutor workerPool(String name, int threads, int queueCapacity, RejectedExecutionHandler rejection) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), WorkerThreads.factory(name, virtualThreads), rejection);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** 单租户缓存槽：快照 + 过期时间 + 进行中的计算 */
+    private static final class StatsSlot {
+        volatile Map<String, Object> snapshot;
+        volatile long expiresAt;
+        CompletableFuture<Map<String, Object>> inFlight; // guarded by this
+    }
 
     @Override
+    @Timed(value = "pharmacy.operation", extraTags = {"op", "dashboard"})
     public Map<String, Object> getDashboardStats() {
-        if (isCacheValid()) {
-            return dashboardCache;
+        String tenant = currentTenant();
+        StatsSlot slot = statsCache.computeIfAbsent(tenant, k -> new StatsSlot());
+        Map<String, Object> snapshot = slot.snapshot;
+        // 过期快照同样直接返回，计为命中
+        tenantMetrics.cacheAccess("dashboard_stats", snapshot != null);
+        if (snapshot != null) {
+            // 过期时先返回旧快照，后台刷新
+            if (System.currentTimeMillis() >= slot.expiresAt) refreshAsync(tenant, slot);
+            return new HashMap<>(snapshot);
         }
-        Map<String, Object> stats = new HashMap<>();
+        // 冷启动没有可返回的快照，等待（可能已由其他请求发起的）后台计算；刷新池已满时不等待
+        CompletableFuture<Map<String, Object>> future = refreshAsync(tenant, slot);
         try {
-            Double todaySales = getTodaySales();
-            // 使用区间查询获取昨日数据
-            LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime todayEnd = todayStart.plusDays(1);
-            LocalDateTime yStart = todayStart.minusDays(1);
-            LocalDateTime yEnd = todayStart;
-            Double yesterdaySales = orderRepository.getPaidSalesBetween(yStart, yEnd);
-            double salesChange = yesterdaySales != null && yesterdaySales > 0 ? ((todaySales - yesterdaySales) / yesterdaySales) * 100 : 0.0;
-            Integer todayOrders = getTodayOrders();
-            Long yesterdayOrders = orderRepository.countPaidOrdersBetween(yStart, yEnd);
-            double ordersChange = yesterdayOrders != null && yesterdayOrders > 0 ? ((todayOrders - yesterdayOrders) / (double) yesterdayOrders) * 100 : 0.0;
-            Integer memberConsumption = getMemberConsumption();
-            Integer yesterdayMembers = orderRepository.countDistinctMembersPaidBetween(yStart, yEnd);
-            double memberChange = yesterdayMembers != null && yesterdayMembers > 0 ? ((memberConsumption - yesterdayMembers) / (double) yesterdayMembers) * 100 : 0.0;
-            Integer lowStockCount = getLowStockCount();
-            stats.put("todaySales", todaySales);
-            stats.put("salesChange", Math.round(salesChange * 10) / 10.0);
-            stats.put("todayOrders", todayOrders);
-            stats.put("ordersChange", Math.round(ordersChange * 10) / 10.0);
-            stats.put("memberConsumption", memberConsumption);
-            stats.put("memberChange", Math.round(memberChange * 10) / 10.0);
-            stats.put("lowStockCount", lowStockCount);
-            stats.put("stockAlerts", lowStockCount);
-            dashboardCache = stats;
-            lastCacheUpdate = LocalDateTime.now();
+            if (future != null) return new HashMap<>(future.get(coldWaitSeconds, TimeUnit.SECONDS));
         } catch (Exception e) {
-            System.err.println("获取统计数据失败(返回空置0): " + e.getMessage());
-            stats.put("todaySales", 0.0);
-            stats.put("salesChange", 0.0);
-            stats.put("todayOrders", 0);
-            stats.put("ordersChange", 0.0);
-            stats.put("memberConsumption", 0);
-            stats.put("memberChange", 0.0);
-            stats.put("lowStockCount", 0);
-            stats.put("stockAlerts", 0);
+            System.err.println("获取统计数据未完成(返回加载中): " + e);
         }
+        // 期间其他请求可能已算出快照，优先返回；否则返回加载中标记，而不是全 0 的假数据
+        Map<String, Object> latest = slot.snapshot;
+        return latest != null ? new HashMap<>(latest) : loadingStats();
+    }
+
+    /** 发起（或复用进行中的）后台刷新；刷新池已满时返回 null，统计永远不在请求线程上计算 */
+    private CompletableFuture<Map<String, Object>> refreshAsync(String tenant, StatsSlot slot) {
+        synchronized (slot) {
+            if (slot.inFlight != null) return slot.inFlight;
+            CompletableFuture<Map<String, Object>> future;
+            try {
+                future = CompletableFuture.supplyAsync(
+                        () -> TenantContext.callAs(tenant, this::computeDashboardStats), refreshPool);
+            } catch (RejectedExecutionException e) {
+                System.err.println("[Dashboard] 刷新线程池已满，租户 " + tenant + " 本次不刷新");
+                return null;
+            }
+            slot.inFlight = future;
+            future.whenComplete((stats, ex) -> {
+                synchronized (slot) {
+                    if (ex == null && stats != null) {
+                        slot.snapshot = stats;
+                        slot.expiresAt = System.currentTimeMillis() + cacheTtlSeconds * 1000;
+                    } else if (ex != null) {
+                        System.err.println("[Dashboard] 租户 " + tenant + " 统计刷新失败: " + ex.getMessage());
+                    }
+                    slot.inFlight = null;
+                }
+            });
+            return future;
+        }
+    }
+
+    private Map<String, Object> computeDashboardStats() {
+        Map<String, Object> stats = new HashMap<>();
+        // 今日与昨日指标一次读取两条日汇总
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, SalesRollupMetrics> daily = salesRollupService.byDay(today.minusDays(1).atStartOfDay(), today.plusDays(1).atStartOfDay());
+        SalesRollupMetrics t = daily.get(today);
+        SalesRollupMetrics y = daily.get(today.minusDays(1));
+        Double todaySales = t.getPaidAmount();
+        double yesterdaySales = y.getPaidAmount();
+        double salesChange = yesterdaySales > 0 ? ((todaySales - yesterdaySales) / yesterdaySales) * 100 : 0.0;
+        Integer todayOrders = t.getPaidCount();
+        int yesterdayOrders = y.getPaidCount();
+        double ordersChange = yesterdayOrders > 0 ? ((todayOrders - yesterdayOrders) / (double) yesterdayOrders) * 100 : 0.0;
+        Integer memberConsumption = t.getMemberCount();
+        int yesterdayMembers = y.getMemberCount();
+        double memberChange = yesterdayMembers > 0 ? ((memberConsumption - yesterdayMembers) / (double) yesterdayMembers) * 100 : 0.0;
+        Integer lowStockCount = getLowStockCount();
+        stats.put("todaySales", todaySales);
+        stats.put("salesChange", Math.round(salesChange * 10) / 10.0);
+        stats.put("todayOrders", todayOrders);
+        stats.put("ordersChange", Math.round(ordersChange * 10) / 10.0);
+        stats.put("memberConsumption", memberConsumption);
+        stats.put("memberChange", Math.round(memberChange * 10) / 10.0);
+        stats.put("lowStockCount", lowStockCount);
+        stats.put("stockAlerts", lowStockCount);
         return stats;
     }
 
+    /** 尚无快照时的占位：指标为空（前端显示 --），loading=true 表示后台仍在计算，稍后重试即可 */
+    private Map<String, Object> loadingStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("todaySales", null);
+        stats.put("salesChange", null);
+        stats.put("todayOrders", null);
+        stats.put("ordersChange", null);
+        stats.put("memberConsumption", null);
+        stats.put("memberChange", null);
+        stats.put("lowStockCount", null);
+        stats.put("stockAlerts", null);
+        stats.put("loading", true);
+        return stats;
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshPool.shutdownNow();
+        exportPool.shutdownNow();
+    }
+
     @Override
     public Map<String, Object> getSalesTrend(String period) {
         Map<String, Object> trendData = new HashMap<>();
@@ -91,32 +215,25 @@ public class DashboardServiceImpl implements DashboardService {
             LocalDateTime now = LocalDateTime.now();
             switch (period) {
                 case "day" -> {
-                    LocalDateTime startDate = now.withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    LocalDateTime endDate = startDate.plusDays(1);
-                    // 直接拉取当天已支付订单，使用 Java 按小时聚合再映射 3 小时桶，避免 HOUR 函数方言差异
-                    java.util.List<com.pharmacy.entity.Order> orders = orderRepository.findByOrderTimeBetween(startDate, endDate);
-                    int[] buckets = new int[8];
-                    for (com.pharmacy.entity.Order o : orders) {
-                        if (o.getPaymentStatus() != null && o.getPaymentStatus() == 1 && o.getOrderTime() != null) {
-                            int hour = o.getOrderTime().getHour();
-                            int bucket = hour / 3; // 0..7
-                            double amt = o.getTotalAmount();
-                            buckets[bucket] += (int)Math.round(amt);
-                        }
+                    // 读取当天 24 条小时汇总（已支付 totalAmount），映射为 3 小时桶
+                    double[] sums = new double[8];
+                    for (SalesRollupHourly h : salesRollupService.hourly(now.toLocalDate())) {
+                        sums[h.getBucketStart().getHour() / 3] += h.getPaidTotal();
                     }
-                    Integer[] hours = java.util.Arrays.stream(buckets).boxed().toArray(Integer[]::new);
+                    Integer[] hours = new Integer[8];
+                    for (int i = 0; i < 8; i++) hours[i] = (int) Math.round(sums[i]);
                     trendData.put("labels", new String[]{"00:00", "03:00", "06:00", "09:00", "12:00", "15:00", "18:00", "21:00"});
                     trendData.put("data", hours);
                 }
                 case "month" -> {
                     LocalDateTime startDate = now.minusDays(29).withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    List<Object[]> salesData = orderRepository.getDailySales(startDate, now);
+                    List<Object[]> salesData = dailySalesFromRollup(startDate, now);
                     trendData.put("labels", new String[]{"第1周", "第2周", "第3周", "第4周"});
                     trendData.put("data", processMonthlySalesData(salesData));
                 }
                 default -> {
                     LocalDateTime startDate = now.minusDays(6).withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    List<Object[]> salesData = orderRepository.getDailySales(startDate, now);
+                    List<Object[]> salesData = dailySalesFromRollup(startDate, now);
                     trendData.put("labels", new String[]{"周一", "周二", "周三", "周四", "周五", "周六", "周日"});
                     trendData.put("data", processWeeklySalesData(salesData));
                 }
@@ -129,6 +246,18 @@ public class DashboardServiceImpl implements DashboardService {
         return trendData;
     }
 
+    /**
+     * 由日汇总构造与 getDailySales 相同形状的数据：[java.sql.Date, Double 全部订单金额]，仅含有订单的日期
+     */
+    private List<Object[]> dailySalesFromRollup(LocalDateTime startDate, LocalDateTime now) {
+        List<Object[]> rows = new ArrayList<>();
+        Map<LocalDate, SalesRollupMetrics> daily = salesRollupService.byDay(startDate, now.toLocalDate().plusDays(1).atStartOfDay());
+        daily.forEach((date, m) -> {
+            if (m.getOrderCount() > 0) rows.add(new Object[]{java.sql.Date.valueOf(date), m.getOrderAmount()});
+        });
+        return rows;
+    }
+
     /**
      * 处理周销售数据
      */
@@ -210,11 +339,15 @@ public class DashboardServiceImpl implements DashboardService {
             LocalDateTime end = start.plusDays(1);
             List<Object[]> hotProductData = orderRepository.getHotProductsBetween(start, end);
             if (hotProductData != null && !hotProductData.isEmpty()) {
-                List<Object[]> stockData = inventoryRepository.getCurrentStockByMedicine();
-                Map<String, Integer> stockMap = new HashMap<>();
-                if (stockData != null) {
-                    for (Object[] stock : stockData) {
-                        stockMap.put((String) stock[0], ((Long) stock[1]).intValue());
+                // 库存优先读内存账本，账本不可用时回落数据库聚合
+                Map<String, Integer> stockMap = stockLedger.getTotals();
+                if (stockMap == null) {
+                    stockMap = new HashMap<>();
+                    List<Object[]> stockData = inventoryRepository.getCurrentStockByMedicine();
+                    if (stockData != null) {
+                        for (Object[] stock : stockData) {
+                            stockMap.put((String) stock[0], ((Number) stock[1]).intValue());
+                        }
                     }
                 }
                 for (Object[] data : hotProductData) {
@@ -267,10 +400,7 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Double getTodaySales() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Double sales = orderRepository.getPaidSalesBetween(start, end);
-            return sales != null ? sales : 0.0;
+            return todayRollup().getPaidAmount();
         } catch (Exception e) {
             System.err.println("获取今日销售额失败: " + e.getMessage());
             return 0.0;
@@ -281,10 +411,7 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Integer getTodayOrders() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Long orders = orderRepository.countPaidOrdersBetween(start, end);
-            return orders != null ? orders.intValue() : 0;
+            return todayRollup().getPaidCount();
         } catch (Exception e) {
             System.err.println("获取今日订单数失败: " + e.getMessage());
             return 0;
@@ -294,16 +421,18 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Integer getMemberConsumption() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Integer members = orderRepository.countDistinctMembersPaidBetween(start, end);
-            return members != null ? members : 0;
+            return todayRollup().getMemberCount();
         } catch (Exception e) {
             System.err.println("获取会员消费人数失败: " + e.getMessage());
             return 0;
         }
     }
 
+    private SalesRollupMetrics todayRollup() {
+        LocalDate today = LocalDate.now();
+        return salesRollupService.byDay(today.atStartOfDay(), today.plusDays(1).atStartOfDay()).get(today);
+    }
+
     @Override
     public Integer getLowStockCount() {
         try {
@@ -356,52 +485,47 @@ public class DashboardServiceImpl implements DashboardService {
 
     @Override
     public void refreshDashboardCache() {
-        dashboardCache.clear();
-        lastCacheUpdate = null;
+        statsCache.remove(currentTenant());
     }
 
     @Override
-    public Map<String, Object> getExportData() {
-        Map<String, Object> exportData = new HashMap<>();
-
-        // 获取当前日期时间
-        LocalDateTime now = LocalDateTime.now();
-        String exportTime = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    public void markDashboardStale() {
+        StatsSlot slot = statsCache.get(currentTenant());
+        if (slot != null) slot.expiresAt = 0;
+    }
 
-        // 基本统计信息
-        exportData.put("exportTime", exportTime);
+    @Override
+    public Map<String, Object> getExportData() {
+        Map<String, Object> exportData = new LinkedHashMap<>();
+        exportData.put("exportTime", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         exportData.put("reportTitle", "药房控制台数据报表");
 
-        // 统计数据
-        exportData.put("stats", getDashboardStats());
-
-        // 销售趋势数据
-        exportData.put("salesTrend", getSalesTrend("week"));
-
-        // 分类占比数据
-        exportData.put("categoryDistribution", getCategoryDistribution());
-
-        // 库存预警数据
-        exportData.put("stockAlerts", getStockAlerts());
-
-        // 热销药品数据
-        exportData.put("hotProducts", getTodayHotProducts());
-
-        // 近效期药品
-        exportData.put("expiringMedicines", getExpiringMedicines());
-
+        // 各板块互不依赖，在导出线程池中并行计算（带上当前租户），按固定顺序组装
+        String tenant = currentTenant();
+        Map<String, CompletableFuture<Object>> sections = new LinkedHashMap<>();
+        sections.put("stats", exportSection(tenant, this::getDashboardStats));
+        sections.put("salesTrend", exportSection(tenant, () -> getSalesTrend("week")));
+        sections.put("categoryDistribution", exportSection(tenant, this::getCategoryDistribution));
+        sections.put("stockAlerts", exportSection(tenant, this::getStockAlerts));
+        sections.put("hotProducts", exportSection(tenant, this::getTodayHotProducts));
+        sections.put("expiringMedicines", exportSection(tenant, this::getExpiringMedicines));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(exportTimeoutSeconds);
+        for (Map.Entry<String, CompletableFuture<Object>> e : sections.entrySet()) {
+            try {
+                exportData.put(e.getKey(), e.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (Exception ex) {
+                e.getValue().cancel(true);
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                System.err.println("[Dashboard] 租户 " + tenant + " 导出板块 " + e.getKey() + " 失败: " + cause);
+                exportData.put(e.getKey(), Map.of("error", cause instanceof TimeoutException ? "计算超时" : String.valueOf(cause.getMessage())));
+            }
+        }
         return exportData;
     }
 
-    /**
-     * 检查缓存是否有效
-     */
-    private boolean isCacheValid() {
-        if (lastCacheUpdate == null || dashboardCache.isEmpty()) {
-            return false;
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        return lastCacheUpdate.plusMinutes(CACHE_DURATION_MINUTES).isAfter(now);
+    private CompletableFuture<Object> exportSection(String tenant, Supplier<?> section) {
+        // 队列满时由调用线程执行，callAs 会恢复调用线程原有的租户
+        return CompletableFuture.supplyAsync(() -> TenantContext.callAs(tenant, section), exportPool);
     }
 }
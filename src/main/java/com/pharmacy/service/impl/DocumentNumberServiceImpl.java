@@ -0,0 +1,219 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.LazyTenantDataSource;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantRegistry;
+import com.pharmacy.service.DocumentNumberService;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 无锁单据号生成器（雪花式）：前缀 + yyyyMMddHHmmss + 两位节点号 + 四位秒内序号，例如 O20241027123456010001。
+ * 每个 物理库+前缀 一个 AtomicLong，保存 “秒 * 10000 + 序号”，取号只是一次 CAS，不访问数据库；
+ * 同一秒超过 9999 个号时顺延借用下一秒，时钟回拨时沿用上次的秒，因此进程内严格单调。
+ * 按租户解析到的数据源（JDBC URL）分组，多个租户ID指向同一个库时共用一个序号，不会发出相同单号。
+ * 多节点部署时通过 docno.node-id（0-99）区分节点，避免不同节点同一秒取到相同号；未配置时按主机名推导，
+ * 开启 docno.require-node-id 的环境（多实例部署）未配置则启动失败。
+ * 会员ID保持 M00001 递增格式，从库内 doc_sequence 表行锁取号，多节点、重启后都不会重复。
+ */
+@Service
+public class DocumentNumberServiceImpl implements DocumentNumberService {
+
+    private static final int SEQ_PER_SECOND = 10000;
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final String MEMBER_SEQUENCE = "member";
+    private static final String MAX_MEMBER_ID_SQL = "SELECT member_id FROM `member` WHERE member_id LIKE 'M%' " +
+            "ORDER BY LENGTH(member_id) DESC, member_id DESC LIMIT 100";
+    private static final String LOCK_SEQUENCE_SQL = "SELECT seq_value FROM doc_sequence WHERE seq_name = ? FOR UPDATE";
+    private static final String UPDATE_SEQUENCE_SQL = "UPDATE doc_sequence SET seq_value = ? WHERE seq_name = ?";
+    private static final String INSERT_SEQUENCE_SQL = "INSERT INTO doc_sequence (seq_name, seq_value) VALUES (?, ?)";
+    private static final String MEMBER_EXISTS_SQL = "SELECT COUNT(*) FROM `member` WHERE member_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Value("${docno.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${docno.require-node-id:false}")
+    private boolean requireNodeId;
+
+    private int nodeId;
+
+    // 可替换的时钟（毫秒），测试中用来模拟同一秒与时钟回拨
+    LongSupplier clock = System::currentTimeMillis;
+
+    // 物理库:prefix -> 秒 * 10000 + 序号
+    private final ConcurrentHashMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    // tenant -> 解析到的物理库，租户移除后仍能找到要清理的序号
+    private final ConcurrentHashMap<String, String> databaseKeys = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        nodeId = resolveNodeId(configuredNodeId, requireNodeId, hostName());
+        System.out.println("[DocNo] 单据号节点号=" + String.format("%02d", nodeId)
+                + (configuredNodeId == null || configuredNodeId.isBlank() ? "（按主机名推导）" : ""));
+    }
+
+    /**
+     * 解析节点号：显式配置时必须在 0-99 之间；未配置时要求配置则失败，否则取主机名哈希对 100 取模。
+     * 主机名推导仍可能碰撞，多实例部署应为每个实例显式配置不同的值。
+     */
+    public static int resolveNodeId(String configured, boolean required, String host) {
+        if (configured != null && !configured.isBlank()) {
+            int id;
+            try {
+                id = Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("docno.node-id 必须是 0-99 的整数: " + configured);
+            }
+            if (id < 0 || id > 99) throw new IllegalStateException("docno.node-id 必须是 0-99 的整数: " + configured);
+            return id;
+        }
+        if (required) {
+            throw new IllegalStateException("多实例部署必须配置 docno.node-id（环境变量 DOCNO_NODE_ID），每个实例取不同值");
+        }
+        return Math.floorMod(host == null ? 0 : host.hashCode(), 100);
+    }
+
+    private static String hostName() {
+        String host = System.getenv("HOSTNAME");
+        if (host != null && !host.isBlank()) return host;
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+
+    @Override
+    public String nextOrderId() {
+        return next("O");
+    }
+
+    @Override
+    public String nextStockInNo() {
+        return next("SI");
+    }
+
+    @Override
+    public String nextHangOrderId() {
+        return next("H");
+    }
+
+    @Override
+    public String nextMedicineId() {
+        return next("M");
+    }
+
+    /**
+     * 独立短事务内锁住序号行取号，不跟随调用方事务，避免会员建档期间长时间持锁；
+     * 首次取号时以现有最大会员编号初始化，若号码已被导入等途径占用则从当前最大编号继续。
+     */
+    @Override
+    public String nextMemberId() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long number = tx.execute(status -> {
+            List<Long> locked = jdbcTemplate.queryForList(LOCK_SEQUENCE_SQL, Long.class, MEMBER_SEQUENCE);
+            if (locked.isEmpty()) {
+                long seeded = loadMaxMemberNumber() + 1;
+                try {
+                    jdbcTemplate.update(INSERT_SEQUENCE_SQL, MEMBER_SEQUENCE, seeded);
+                    return seeded;
+                } catch (DuplicateKeyException raced) {
+                    // 其他节点同时完成了初始化，改为锁行取号
+                    locked = jdbcTemplate.queryForList(LOCK_SEQUENCE_SQL, Long.class, MEMBER_SEQUENCE);
+                }
+            }
+            long candidate = locked.get(0) + 1;
+            if (memberExists(candidate)) candidate = Math.max(candidate, loadMaxMemberNumber() + 1);
+            jdbcTemplate.update(UPDATE_SEQUENCE_SQL, candidate, MEMBER_SEQUENCE);
+            return candidate;
+        });
+        return formatMemberId(number);
+    }
+
+    /** 丢弃租户的取号状态；会员序号在库内，不受影响 */
+    @Override
+    public void evict(String tenant) {
+        String database = databaseKeys.remove(tenantKey(tenant));
+        if (database == null || databaseKeys.containsValue(database)) return;
+        sequences.keySet().removeIf(k -> k.startsWith(database + ":"));
+    }
+
+    String next(String prefix) {
+        AtomicLong state = sequences.computeIfAbsent(currentDatabase() + ":" + prefix, k -> new AtomicLong());
+        long floor = clock.getAsLong() / 1000 * SEQ_PER_SECOND;
+        long prev;
+        long value;
+        do {
+            prev = state.get();
+            value = Math.max(prev + 1, floor);
+        } while (!state.compareAndSet(prev, value));
+        LocalDateTime stamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(value / SEQ_PER_SECOND), ZoneId.systemDefault());
+        return prefix + STAMP.format(stamp) + String.format("%02d%04d", nodeId, value % SEQ_PER_SECOND);
+    }
+
+    private boolean memberExists(long number) {
+        Integer n = jdbcTemplate.queryForObject(MEMBER_EXISTS_SQL, Integer.class, formatMemberId(number));
+        return n != null && n > 0;
+    }
+
+    private static String formatMemberId(long number) {
+        return String.format("M%05d", number);
+    }
+
+    private long loadMaxMemberNumber() {
+        List<String> ids = jdbcTemplate.queryForList(MAX_MEMBER_ID_SQL, String.class);
+        for (String id : ids) {
+            String digits = id.substring(1);
+            if (!digits.isEmpty() && digits.length() < 18 && digits.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(digits);
+            }
+        }
+        return 0;
+    }
+
+    /** 当前租户实际写入的库：优先用 JDBC URL，同一个库无论用哪个租户ID访问都落到同一组序号 */
+    private String currentDatabase() {
+        String tenant = tenantKey(TenantContext.getTenant());
+        return databaseKeys.computeIfAbsent(tenant, t -> {
+            DataSource ds = dataSourceConfig.getRegistry().get(t);
+            if (ds == null) throw new IllegalStateException("租户 " + t + " 未注册，无法取号");
+            if (ds instanceof LazyTenantDataSource lazy) return lazy.getJdbcUrl();
+            if (ds instanceof HikariDataSource hikari && hikari.getJdbcUrl() != null) return hikari.getJdbcUrl();
+            return "ds@" + System.identityHashCode(ds);
+        });
+    }
+
+    private static String tenantKey(String tenant) {
+        return tenant == null || tenant.isBlank() ? TenantRegistry.DEFAULT_TENANT : tenant;
+    }
+}
@@ -5,6 +5,7 @@ import com.pharmacy.entity.HangOrder;
 import com.pharmacy.entity.HangOrderItem;
 import com.pharmacy.repository.HangOrderRepository;
 import com.pharmacy.repository.HangOrderItemRepository;
+import com.pharmacy.service.DocumentNumberService;
 import com.pharmacy.service.HangOrderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -13,7 +14,6 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -25,6 +25,9 @@ public class HangOrderServiceImpl implements HangOrderService {
     @Autowired
     private HangOrderItemRepository hangOrderItemRepository;
 
+    @Autowired
+    private DocumentNumberService documentNumberService;
+
     @Override
     public List<HangOrder> findAll() {
         return hangOrderRepository.findAll();
@@ -49,7 +52,7 @@ public class HangOrderServiceImpl implements HangOrderService {
     @Transactional
     @SuppressWarnings("unchecked")  // 添加这个注解
     public HangOrder createHangOrder(Map<String, Object> hangOrderData) {
-        String hangId = "H" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8);
+        String hangId = documentNumberService.nextHangOrderId();
 
         HangOrder hangOrder = new HangOrder();
         hangOrder.setHangId(hangId);
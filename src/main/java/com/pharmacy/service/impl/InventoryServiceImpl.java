@@ -4,20 +4,31 @@ import com.pharmacy.entity.Inventory;
 import com.pharmacy.dto.InventoryDTO;
 import com.pharmacy.dto.CurrentStockDTO;
 import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.InventoryRepositoryCustom;
 import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.util.FifoBatchAllocator;
 import com.pharmacy.util.StockStatusUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 public class InventoryServiceImpl implements InventoryService {
@@ -28,6 +39,29 @@ public class InventoryServiceImpl implements InventoryService {
     @Autowired
     private MedicineRepository medicineRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    private static final String LOAD_BATCHES_SQL =
+            "SELECT inventory_id, medicine_id, batch_no, stock_quantity, expiry_date, create_time FROM inventory WHERE medicine_id IN (:ids)";
+    private static final String DEDUCT_BATCH_SQL =
+            "UPDATE inventory SET stock_quantity = stock_quantity - ?, update_time = ? WHERE inventory_id = ? AND stock_quantity >= ?";
+    private static final String RESTORE_BATCH_SQL =
+            "UPDATE inventory SET stock_quantity = stock_quantity + ?, update_time = ? WHERE inventory_id = ?";
+    private static final int MAX_DEDUCT_ATTEMPTS = 3; // 条件扣减冲突后的最大尝试次数
+
     @Override
     public Inventory findById(Long id) {
         try {
@@ -43,58 +77,16 @@ public class InventoryServiceImpl implements InventoryService {
     public boolean updateStockForOrder(String medicineId, Integer quantity, String orderId) {
         System.out.println("=== 开始更新库存 ===");
         System.out.println("药品ID: " + medicineId + ", 数量: " + quantity + ", 订单ID: " + orderId);
-
+        if (medicineId == null || quantity == null) return false;
         try {
-            // 1. 获取该药品的所有库存批次
-            List<Inventory> inventories = inventoryRepository.findByMedicineId(medicineId);
-            System.out.println("找到库存批次数量: " + inventories.size());
-
-            if (inventories.isEmpty()) {
-                System.err.println("❌ 没有找到药品 " + medicineId + " 的库存记录");
-                return false;
-            }
-
-            // 2. 按先进先出原则排序：先按过期日期（近的优先），再按创建时间
-            List<Inventory> sortedInventories = inventories.stream()
-                    .filter(inv -> inv.getStockQuantity() != null && inv.getStockQuantity() > 0)
-                    .sorted(Comparator
-                            .comparing(Inventory::getExpiryDate, Comparator.nullsFirst(Comparator.naturalOrder()))
-                            .thenComparing(Inventory::getCreateTime))
-                    .collect(Collectors.toList());
-
-            int remainingToDeduct = quantity;
-
-            // 3. 逐个批次扣减库存
-            for (Inventory inventory : sortedInventories) {
-                if (remainingToDeduct <= 0) break;
-
-                int availableInBatch = inventory.getStockQuantity();
-                int deductAmount = Math.min(remainingToDeduct, availableInBatch);
-
-                System.out.println("批次 " + inventory.getBatchNo() +
-                        " 当前库存: " + availableInBatch +
-                        ", 扣减: " + deductAmount);
-
-                // 扣减库存
-                inventory.setStockQuantity(availableInBatch - deductAmount);
-                inventoryRepository.save(inventory);
-
-                remainingToDeduct -= deductAmount;
-
-                System.out.println("扣减后库存: " + inventory.getStockQuantity() +
-                        ", 剩余需扣减: " + remainingToDeduct);
-            }
-
-            // 4. 检查是否完全扣减
-            if (remainingToDeduct > 0) {
-                System.err.println("❌ 库存不足，药品ID: " + medicineId +
-                        ", 需求: " + quantity + ", 实际扣减: " + (quantity - remainingToDeduct));
+            // 与批量结账共用条件扣减路径，避免读-改-写丢失更新
+            List<String> shortages = deductStockForOrder(Map.of(medicineId, quantity), orderId);
+            if (!shortages.isEmpty()) {
+                System.err.println("❌ 库存不足，药品ID: " + medicineId + ", 需求: " + quantity);
                 return false;
             }
-
             System.out.println("✅ 库存更新成功，药品ID: " + medicineId + ", 扣减数量: " + quantity);
             return true;
-
         } catch (Exception e) {
             System.err.println("❌ 更新库存失败: " + e.getMessage());
             e.printStackTrace();
@@ -102,6 +94,117 @@ public class InventoryServiceImpl implements InventoryService {
         }
     }
 
+    @Override
+    @Transactional
+    public List<String> deductStockForOrder(Map<String, Integer> quantities, String orderId) {
+        List<String> shortages = new ArrayList<>();
+        if (quantities == null || quantities.isEmpty()) return shortages;
+
+        Map<String, Integer> remaining = new LinkedHashMap<>();
+        quantities.forEach((mid, qty) -> { if (qty != null && qty > 0) remaining.put(mid, qty); });
+        List<Object[]> applied = new ArrayList<>(); // 已成功扣减的 {数量, 批次ID, 药品ID}，用于不足时补偿
+        String tenant = tenantTag();
+        meterRegistry.counter("inventory.deduct.requests", "tenant", tenant).increment();
+
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            // 1. 一次查询加载待扣减药品的所有批次；重试时加行锁读取最新已提交值
+            Map<String, List<Inventory>> batchesByMedicine = loadBatches(remaining.keySet(), attempt > 1);
+
+            // 2. 内存中按 FIFO 分配，任何一个药品不足则整体不扣减
+            List<FifoBatchAllocator.Allocation> plan = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : remaining.entrySet()) {
+                List<FifoBatchAllocator.Allocation> allocations = FifoBatchAllocator.allocate(batchesByMedicine.get(e.getKey()), e.getValue());
+                if (allocations == null) {
+                    shortages.add(e.getKey());
+                } else {
+                    plan.addAll(allocations);
+                }
+            }
+            if (!shortages.isEmpty()) {
+                compensate(applied);
+                meterRegistry.counter("inventory.deduct.shortages", "tenant", tenant).increment();
+                System.err.println("❌ 订单 " + orderId + " 库存不足药品: " + shortages);
+                return shortages;
+            }
+
+            // 3. 条件扣减：stock_quantity >= ? 保证并发下不超卖；按批次ID排序固定加锁顺序，避免结账间死锁
+            plan.sort(Comparator.comparing(a -> a.getBatch().getId()));
+            LocalDateTime now = LocalDateTime.now();
+            List<Object[]> args = new ArrayList<>(plan.size());
+            for (FifoBatchAllocator.Allocation a : plan) {
+                args.add(new Object[]{a.getQuantity(), now, a.getBatch().getId(), a.getQuantity()});
+            }
+            int[] counts = jdbcTemplate.batchUpdate(DEDUCT_BATCH_SQL, args);
+
+            // 4. 未命中的批次（被其他收银台抢先扣减）数量退回待扣减集合，下一轮重新分配
+            remaining.clear();
+            int conflicts = 0;
+            for (int i = 0; i < plan.size(); i++) {
+                FifoBatchAllocator.Allocation a = plan.get(i);
+                // SUCCESS_NO_INFO(-2) 表示驱动无法返回行数，视为成功
+                if (i < counts.length && counts[i] == 0) {
+                    remaining.merge(a.getBatch().getMedicineId(), a.getQuantity(), Integer::sum);
+                    conflicts++;
+                } else {
+                    applied.add(new Object[]{a.getQuantity(), a.getBatch().getId(), a.getBatch().getMedicineId()});
+                }
+            }
+            if (conflicts == 0) break;
+
+            meterRegistry.counter("inventory.deduct.conflicts", "tenant", tenant).increment(conflicts);
+            System.err.println("[Inventory] 订单 " + orderId + " 第 " + attempt + " 次扣减冲突批次 " + conflicts + " 个");
+            if (attempt >= MAX_DEDUCT_ATTEMPTS) {
+                compensate(applied);
+                meterRegistry.counter("inventory.deduct.exhausted", "tenant", tenant).increment();
+                System.err.println("❌ 订单 " + orderId + " 扣减重试耗尽，放弃: " + remaining.keySet());
+                return new ArrayList<>(remaining.keySet());
+            }
+            meterRegistry.counter("inventory.deduct.retries", "tenant", tenant).increment();
+        }
+        for (Object[] a : applied) {
+            stockLedger.recordDelta((String) a[2], (Long) a[1], -(Integer) a[0]);
+        }
+        System.out.println("✅ 订单 " + orderId + " 批量扣减库存: 药品 " + quantities.size() + " 种, 批次 " + applied.size() + " 个");
+        return shortages;
+    }
+
+    private static final String SUMMARY_SQL =
+            "SELECT medicine_id, batch_no, stock_quantity, expiry_date, min_stock FROM inventory WHERE medicine_id IN (:ids) ORDER BY inventory_id";
+
+    // JDBC 读取批次（不进入持久化上下文，避免与条件更新后的实体状态不一致）
+    private Map<String, List<Inventory>> loadBatches(java.util.Collection<String> medicineIds, boolean forUpdate) {
+        Map<String, List<Inventory>> result = new HashMap<>();
+        String sql = forUpdate ? LOAD_BATCHES_SQL + " FOR UPDATE" : LOAD_BATCHES_SQL;
+        namedJdbc.query(sql, Map.of("ids", medicineIds), rs -> {
+            Inventory inv = new Inventory();
+            inv.setId(rs.getLong("inventory_id"));
+            inv.setMedicineId(rs.getString("medicine_id"));
+            inv.setBatchNo(rs.getString("batch_no"));
+            inv.setStockQuantity(rs.getInt("stock_quantity"));
+            java.sql.Date expiry = rs.getDate("expiry_date");
+            inv.setExpiryDate(expiry != null ? expiry.toLocalDate() : null);
+            java.sql.Timestamp created = rs.getTimestamp("create_time");
+            inv.setCreateTime(created != null ? created.toLocalDateTime() : null);
+            result.computeIfAbsent(inv.getMedicineId(), k -> new ArrayList<>()).add(inv);
+        });
+        return result;
+    }
+
+    // 整单失败时退回本次已扣减的批次，保证“全部成功或全部不扣”
+    private void compensate(List<Object[]> applied) {
+        if (applied.isEmpty()) return;
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>(applied.size());
+        for (Object[] a : applied) args.add(new Object[]{a[0], now, a[1]});
+        jdbcTemplate.batchUpdate(RESTORE_BATCH_SQL, args);
+        applied.clear();
+    }
+
+    private String tenantTag() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+
     @Override
     public boolean checkStock(String medicineId, Integer quantity) {
         Integer currentStock = getCurrentStock(medicineId);
@@ -112,34 +215,14 @@ public class InventoryServiceImpl implements InventoryService {
         return sufficient;
     }
 
-    // 只保留一个 getCurrentStock 方法
+    // 只保留一个 getCurrentStock 方法：优先读内存账本，账本不可用时回落数据库汇总
     @Override
     public Integer getCurrentStock(String medicineId) {
         try {
-            System.out.println("=== InventoryService.getCurrentStock 被调用 ===");
-            System.out.println("药品ID: '" + medicineId + "'");
-
-            // 方法1: 使用修复后的Repository查询
+            Integer ledgerTotal = stockLedger.getTotal(medicineId);
+            if (ledgerTotal != null) return ledgerTotal;
             Integer totalStock = inventoryRepository.getTotalStockByMedicineId(medicineId);
-            System.out.println("Repository查询结果: " + totalStock);
-
-            // 方法2: 备用查询 - 直接使用findByMedicineId手动计算
-            List<Inventory> inventories = inventoryRepository.findByMedicineId(medicineId);
-            int manualSum = inventories.stream()
-                    .mapToInt(inv -> inv.getStockQuantity() == null ? 0 : inv.getStockQuantity())
-                    .sum();
-            System.out.println("手动计算库存: " + manualSum);
-            System.out.println("找到的库存记录数: " + inventories.size());
-
-            inventories.forEach(inv -> {
-                System.out.println("批次: " + inv.getBatchNo() + ", 数量: " + inv.getStockQuantity());
-            });
-
-            // 优先使用Repository结果，如果为null则使用手动计算
-            Integer result = totalStock != null ? totalStock : manualSum;
-            System.out.println("最终返回库存: " + result);
-
-            return result;
+            return totalStock != null ? totalStock : 0;
         } catch (Exception e) {
             System.err.println("查询库存失败: " + e.getMessage());
             e.printStackTrace();
@@ -147,6 +230,19 @@ public class InventoryServiceImpl implements InventoryService {
         }
     }
 
+    /** 当前租户所有药品总库存：账本优先，回落一次数据库聚合 */
+    private Map<String, Integer> currentStockMap() {
+        Map<String, Integer> totals = stockLedger.getTotals();
+        if (totals != null) return totals;
+        Map<String, Integer> stockMap = new HashMap<>();
+        for (Object[] row : inventoryRepository.getCurrentStockByMedicine()) {
+            if (row != null && row.length >= 2) {
+                stockMap.put(String.valueOf(row[0]), row[1] == null ? 0 : Integer.valueOf(String.valueOf(row[1])));
+            }
+        }
+        return stockMap;
+    }
+
     @Override
     public List<Inventory> getExpiringSoon() {
         LocalDate today = LocalDate.now();
@@ -178,7 +274,7 @@ public class InventoryServiceImpl implements InventoryService {
 
         try {
             // 1. 获取该药品的所有库存批次
-            List<Inventory> inventories = inventoryRepository.findByMedicineId(medicineId);
+            List<Inventory> inventories = loadBatches(List.of(medicineId), false).getOrDefault(medicineId, List.of());
             System.out.println("找到库存批次数量: " + inventories.size());
 
             if (inventories.isEmpty()) {
@@ -186,32 +282,13 @@ public class InventoryServiceImpl implements InventoryService {
                 return false;
             }
 
-            // 2. 按先进先出原则排序：优先选择过期日期较近的批次
-            List<Inventory> sortedInventories = inventories.stream()
-                    .sorted(Comparator
-                            .comparing(Inventory::getExpiryDate, Comparator.nullsFirst(Comparator.naturalOrder()))
-                            .thenComparing(Inventory::getCreateTime))
-                    .collect(Collectors.toList());
-
-            int remainingToRestore = quantity;
-
-            // 3. 逐个批次恢复库存
-            for (Inventory inventory : sortedInventories) {
-                if (remainingToRestore <= 0) break;
-
-                // 恢复库存到当前批次
-                int currentStock = inventory.getStockQuantity() == null ? 0 : inventory.getStockQuantity();
-                inventory.setStockQuantity(currentStock + remainingToRestore);
-                inventoryRepository.save(inventory);
+            // 2. 按先进先出原则选择过期日期最近的批次，全部数量恢复到该批次
+            Inventory target = inventories.stream().min(FifoBatchAllocator.FIFO_ORDER).get();
 
-                System.out.println("批次 " + inventory.getBatchNo() +
-                        " 原库存: " + currentStock +
-                        ", 恢复后: " + inventory.getStockQuantity());
-
-                remainingToRestore = 0; // 由于我们直接恢复所有数量到一个批次，所以剩余为0
-
-                System.out.println("恢复后库存: " + inventory.getStockQuantity());
-            }
+            // 3. 原子增量更新，避免与并发扣减互相覆盖
+            jdbcTemplate.update(RESTORE_BATCH_SQL, quantity, LocalDateTime.now(), target.getId());
+            stockLedger.recordDelta(medicineId, target.getId(), quantity);
+            System.out.println("批次 " + target.getBatchNo() + " 恢复数量: " + quantity);
 
             // 4. 记录库存变动（如果需要）
             // 这里可以调用库存变动记录服务
@@ -227,17 +304,56 @@ public class InventoryServiceImpl implements InventoryService {
 
     @Override
     public List<InventoryDTO> findDTOByMedicineId(String medicineId) {
-        return inventoryRepository.findDTOByMedicineId(medicineId);
+        List<InventoryDTO> list = inventoryRepository.findDTOByMedicineId(medicineId);
+        // 所有批次共享同一个“最早未过期效期”
+        LocalDate today = LocalDate.now();
+        LocalDate earliest = list.stream().map(InventoryDTO::getExpiryDate)
+                .filter(d -> d != null && !d.isBefore(today))
+                .min(LocalDate::compareTo).orElse(null);
+        list.forEach(dto -> dto.setEarliestExpiryDate(earliest));
+        return list;
+    }
+
+    @Override
+    public Map<String, StockSummary> summarizeStock(java.util.Collection<String> medicineIds) {
+        Map<String, StockSummary> result = new HashMap<>();
+        if (medicineIds == null || medicineIds.isEmpty()) return result;
+        LocalDate today = LocalDate.now();
+        Map<String, int[]> totals = new HashMap<>();
+        Map<String, java.util.LinkedHashSet<String>> batches = new HashMap<>();
+        Map<String, LocalDate> earliest = new HashMap<>();
+        Map<String, Integer> minStocks = new HashMap<>();
+        namedJdbc.query(SUMMARY_SQL, Map.of("ids", medicineIds), rs -> {
+            String mid = rs.getString("medicine_id");
+            totals.computeIfAbsent(mid, k -> new int[1])[0] += rs.getInt("stock_quantity");
+            java.util.LinkedHashSet<String> nos = batches.computeIfAbsent(mid, k -> new java.util.LinkedHashSet<>());
+            String batchNo = rs.getString("batch_no");
+            if (batchNo != null) nos.add(batchNo);
+            java.sql.Date expiry = rs.getDate("expiry_date");
+            if (expiry != null && !expiry.toLocalDate().isBefore(today)) {
+                earliest.merge(mid, expiry.toLocalDate(), (a, b) -> a.isBefore(b) ? a : b);
+            }
+            int minStock = rs.getInt("min_stock");
+            if (!rs.wasNull() && minStock > 0) minStocks.merge(mid, minStock, Math::min);
+        });
+        totals.forEach((mid, total) -> result.put(mid, new StockSummary(total[0], List.copyOf(batches.get(mid)),
+                earliest.get(mid), minStocks.get(mid))));
+        return result;
     }
 
     @Override
     public Inventory save(Inventory inventory) {
-        return inventoryRepository.save(inventory);
+        Inventory saved = inventoryRepository.save(inventory);
+        stockLedger.recordBatch(saved);
+        publishStockChanged(saved.getMedicineId());
+        return saved;
     }
 
     @Override
     public void deleteById(Long id) {
+        String medicineId = inventoryRepository.findById(id).map(Inventory::getMedicineId).orElse(null);
         inventoryRepository.deleteById(id);
+        stockLedger.removeBatch(medicineId, id);
     }
 
     @Override
@@ -252,15 +368,7 @@ public class InventoryServiceImpl implements InventoryService {
                 dto.setExpiryStatus(expiryStatus);
                 dto.setSafetyStock(dto.getMinStock());
                 dto.setEarliestExpiryDate(dto.getExpiryDate()); // 单批次默认等于自身
-                // 新增字段: 分类与是否处方药
-                if (dto.getMedicineId() != null) {
-                    inventoryRepository.findByMedicineId(dto.getMedicineId()).stream().findFirst().ifPresent(inv -> {
-                        if (inv.getMedicine() != null) {
-                            dto.setMedicineCategoryId(inv.getMedicine().getCategoryId());
-                            dto.setMedicineIsRx(inv.getMedicine().getIsRx());
-                        }
-                    });
-                }
+                // 分类与是否处方药已由投影查询带出，无需逐条回查
             }
             System.out.println("返回 InventoryDTO 数量: " + list.size());
             return list;
@@ -271,6 +379,21 @@ public class InventoryServiceImpl implements InventoryService {
         }
     }
 
+    @Override
+    public List<InventoryDTO> pageInventory(InventoryRepositoryCustom.ListCriteria criteria, String sort, Long afterId, String afterKey, int offset, int limit) {
+        return inventoryRepository.findListPage(criteria, sort, afterId, afterKey, Math.max(offset, 0), limit);
+    }
+
+    @Override
+    public String pageCursorKey(String sort, InventoryDTO row) {
+        return inventoryRepository.cursorKey(sort, row);
+    }
+
+    @Override
+    public long countInventory(InventoryRepositoryCustom.ListCriteria criteria) {
+        return inventoryRepository.countList(criteria);
+    }
+
     @Override
     public InventoryDTO findDTOById(Long inventoryId) {
         try {
@@ -294,14 +417,6 @@ public class InventoryServiceImpl implements InventoryService {
                 dto.setExpiryStatus(expiryStatus);
                 dto.setSafetyStock(dto.getMinStock());
                 earliest = com.pharmacy.util.StockStatusUtil.mergeEarliest(earliest, dto.getExpiryDate());
-                if (dto.getMedicineId() != null) {
-                    inventoryRepository.findByMedicineId(dto.getMedicineId()).stream().findFirst().ifPresent(inv -> {
-                        if (inv.getMedicine() != null) {
-                            dto.setMedicineCategoryId(inv.getMedicine().getCategoryId());
-                            dto.setMedicineIsRx(inv.getMedicine().getIsRx());
-                        }
-                    });
-                }
             }
             for (com.pharmacy.dto.InventoryDTO dto : list) {
                 dto.setEarliestExpiryDate(earliest);
@@ -325,7 +440,10 @@ public class InventoryServiceImpl implements InventoryService {
         inv.setPurchasePrice(purchasePrice);
         inv.setExpiryDate(expiryDate);
         inv.setSupplier(supplier);
-        return inventoryRepository.save(inv);
+        Inventory saved = inventoryRepository.save(inv);
+        stockLedger.recordBatch(saved);
+        publishStockChanged(medicineId);
+        return saved;
     }
 
     @Override
@@ -353,7 +471,16 @@ public class InventoryServiceImpl implements InventoryService {
         if (minStock != null) {
             target.setMinStock(minStock);
         }
-        return inventoryRepository.save(target);
+        Inventory saved = inventoryRepository.save(target);
+        stockLedger.recordBatch(saved);
+        publishStockChanged(medicineId);
+        return saved;
+    }
+
+    /** 批次数量、安全库存或有效期变化后，交由预警引擎只复核该药品 */
+    private void publishStockChanged(String medicineId) {
+        if (medicineId == null) return;
+        outboxService.publish(OutboxService.STOCK_CHANGED, medicineId, Map.of("medicineIds", List.of(medicineId)));
     }
 
     @Override
@@ -365,16 +492,8 @@ public class InventoryServiceImpl implements InventoryService {
     @Override
     public List<CurrentStockDTO> getCurrentStocks(List<String> medicineIds) {
         if (medicineIds == null || medicineIds.isEmpty()) return java.util.Collections.emptyList();
-        // 读取全部库存聚合一次减少 N+1
-        List<Object[]> aggregates = inventoryRepository.getCurrentStockByMedicine();
-        java.util.Map<String,Integer> stockMap = new java.util.HashMap<>();
-        for(Object[] row: aggregates){
-            if(row!=null && row.length>=2){
-                String mid = String.valueOf(row[0]);
-                Integer qty = row[1]==null?0:Integer.valueOf(String.valueOf(row[1]));
-                stockMap.put(mid, qty);
-            }
-        }
+        // 读取全部库存聚合一次减少 N+1（内存账本优先）
+        Map<String,Integer> stockMap = currentStockMap();
         List<com.pharmacy.entity.Medicine> meds = medicineRepository.findAllById(medicineIds);
         java.util.Map<String, com.pharmacy.entity.Medicine> medMap = new java.util.HashMap<>();
         for(com.pharmacy.entity.Medicine m : meds){ medMap.put(String.valueOf(m.getMedicineId()), m); }
@@ -393,16 +512,8 @@ public class InventoryServiceImpl implements InventoryService {
         if(page < 0) page = 0; if(size <= 0) size = 10; // 基本兜底
         var pageable = PageRequest.of(page, size);
         Page<com.pharmacy.entity.Medicine> medPage = medicineRepository.findAllActive(pageable);
-        // 预取聚合库存
-        List<Object[]> aggregates = inventoryRepository.getCurrentStockByMedicine();
-        java.util.Map<String,Integer> stockMap = new java.util.HashMap<>();
-        for(Object[] row: aggregates){
-            if(row!=null && row.length>=2){
-                String mid = String.valueOf(row[0]);
-                Integer qty = row[1]==null?0:Integer.valueOf(String.valueOf(row[1]));
-                stockMap.put(mid, qty);
-            }
-        }
+        // 预取聚合库存（内存账本优先）
+        Map<String,Integer> stockMap = currentStockMap();
         List<CurrentStockDTO> content = medPage.getContent().stream().map(m -> {
             Integer qty = stockMap.getOrDefault(String.valueOf(m.getMedicineId()),0);
             return new CurrentStockDTO(String.valueOf(m.getMedicineId()), m.getGenericName(), m.getTradeName(), qty);
@@ -0,0 +1,309 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.util.PinyinInitials;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按租户划分的药品搜索索引，替代通用名/商品名/说明/厂家/规格/条码六列 LIKE '%kw%' 全表扫描。
+ * 各字段按二元组(bigram)建倒排表，另为通用名、商品名生成拼音首字母字段，支持 "amxl" 这类简拼检索；
+ * 条码另有精确哈希表，扫码时直接命中。首次查询时只加载检索用的列，之后由 MedicineServiceImpl 在事务提交后增量维护。
+ */
+@Component
+public class MedicineSearchIndex {
+
+    // 字段顺序即同一匹配档位内的权重：名称 > 简拼 > 条码 > 规格/厂家 > 说明
+    private enum Field { GENERIC_NAME, TRADE_NAME, GENERIC_INITIALS, TRADE_INITIALS, BARCODE, SPEC, MANUFACTURER, DESCRIPTION }
+
+    private static final int[] FIELD_WEIGHT = {0, 0, 1, 1, 2, 3, 3, 4};
+    private static final int WEIGHT_LEVELS = 5;
+
+    /** 一页命中的药品ID（已按相关度排序）与命中总数 */
+    public record Hits(List<String> ids, int total) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${medicine.search.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${medicine.search.barcode-min-length:6}")
+    private int barcodeMinLength;
+
+    private static final String LOAD_ALL_SQL = "SELECT medicine_id, generic_name, trade_name, description, manufacturer, spec, barcode, deleted FROM medicine";
+
+    // tenant -> 索引；加载中的索引 ready=false，读取时返回 null 由调用方回落数据库
+    private final ConcurrentHashMap<String, TenantIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 按关键词分页检索：完全相等 > 前缀 > 包含，同档按字段权重，再按入索引顺序。
+     * 关键词与某个条码完全相等时只返回该条码的药品。索引不可用时返回 null。
+     */
+    public Hits search(String keyword, boolean includeDeleted, int offset, int limit) {
+        TenantIndex index = indexForRead();
+        if (index == null) return null;
+        String q = fold(keyword);
+        if (q.isEmpty() || limit <= 0) return new Hits(List.of(), 0);
+        return index.search(q, includeDeleted, Math.max(0, offset), limit, barcodeMinLength);
+    }
+
+    /** 新增或更新药品（事务提交后调用），软删除的药品同样保留在索引中并带删除标记 */
+    public void upsert(String medicineId, String genericName, String tradeName, String description,
+                       String manufacturer, String spec, String barcode, boolean deleted) {
+        if (medicineId == null) return;
+        TenantIndex index = indexes.get(currentTenant());
+        if (index != null) index.upsert(toDoc(medicineId, genericName, tradeName, description, manufacturer, spec, barcode, deleted));
+    }
+
+    /** 物理删除药品（事务提交后调用） */
+    public void remove(String medicineId) {
+        if (medicineId == null) return;
+        TenantIndex index = indexes.get(currentTenant());
+        if (index != null) index.remove(medicineId);
+    }
+
+    /** 丢弃租户索引（租户下线或需要整体重建时调用），下次查询重新加载 */
+    public void evict(String tenant) {
+        if (tenant != null) indexes.remove(tenant);
+    }
+
+    /** 已加载的租户及其药品数 */
+    public Map<String, Integer> describe() {
+        Map<String, Integer> out = new HashMap<>();
+        indexes.forEach((tenant, index) -> { if (index.ready) out.put(tenant, index.size()); });
+        return out;
+    }
+
+    private static String fold(String s) {
+        return MemberSearchIndex.normalize(s).toLowerCase(Locale.ROOT);
+    }
+
+    private static Doc toDoc(String id, String generic, String trade, String description, String manufacturer,
+                             String spec, String barcode, boolean deleted) {
+        String[] f = new String[Field.values().length];
+        f[Field.GENERIC_NAME.ordinal()] = fold(generic);
+        f[Field.TRADE_NAME.ordinal()] = fold(trade);
+        f[Field.GENERIC_INITIALS.ordinal()] = PinyinInitials.of(generic);
+        f[Field.TRADE_INITIALS.ordinal()] = PinyinInitials.of(trade);
+        f[Field.BARCODE.ordinal()] = fold(barcode);
+        f[Field.SPEC.ordinal()] = fold(spec);
+        f[Field.MANUFACTURER.ordinal()] = fold(manufacturer);
+        f[Field.DESCRIPTION.ordinal()] = fold(description);
+        return new Doc(id, f, deleted);
+    }
+
+    private TenantIndex indexForRead() {
+        if (!enabled) return null;
+        String tenant = currentTenant();
+        TenantIndex index = indexes.get(tenant);
+        if (index != null) return index.ready ? index : null;
+        TenantIndex fresh = new TenantIndex();
+        if (indexes.putIfAbsent(tenant, fresh) != null) return null; // 其它线程正在加载
+        try {
+            long start = System.currentTimeMillis();
+            jdbcTemplate.query(LOAD_ALL_SQL, rs -> {
+                fresh.load(toDoc(rs.getString("medicine_id"), rs.getString("generic_name"), rs.getString("trade_name"),
+                        rs.getString("description"), rs.getString("manufacturer"), rs.getString("spec"),
+                        rs.getString("barcode"), rs.getBoolean("deleted")));
+            });
+            fresh.markReady();
+            System.out.println("[MedicineSearchIndex] 租户 " + tenant + " 索引药品数=" + fresh.size()
+                    + " 耗时=" + (System.currentTimeMillis() - start) + "ms");
+            return fresh;
+        } catch (Exception e) {
+            indexes.remove(tenant, fresh);
+            System.err.println("[MedicineSearchIndex] 租户 " + tenant + " 索引加载失败，回落数据库: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+
+    /** 已清洗、转小写的药品检索字段，下标对应 Field */
+    private record Doc(String medicineId, String[] fields, boolean deleted) {}
+
+    /** 单租户索引：文档按追加顺序编号，删除只打墓碑，墓碑过多时整体压缩 */
+    private static final class TenantIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final ArrayList<Doc> docs = new ArrayList<>();
+        private final HashMap<String, Integer> docIdByMedicine = new HashMap<>();
+        private final HashMap<String, IntList> postings = new HashMap<>();
+        private final HashMap<String, IntList> byBarcode = new HashMap<>();
+        private int dead;
+        private volatile boolean ready;
+        // 加载期间发生的增量写入；加载到的旧行遇到这些药品直接跳过
+        private Set<String> touchedDuringLoad = new HashSet<>();
+
+        void load(Doc doc) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad.contains(doc.medicineId()) || docIdByMedicine.containsKey(doc.medicineId())) return;
+                add(doc);
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void markReady() {
+            lock.writeLock().lock();
+            try {
+                touchedDuringLoad = null;
+                ready = true;
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void upsert(Doc doc) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad != null) touchedDuringLoad.add(doc.medicineId());
+                removeInternal(doc.medicineId());
+                add(doc);
+                compactIfNeeded();
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void remove(String medicineId) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad != null) touchedDuringLoad.add(medicineId);
+                removeInternal(medicineId);
+                compactIfNeeded();
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try { return docIdByMedicine.size(); } finally { lock.readLock().unlock(); }
+        }
+
+        Hits search(String q, boolean includeDeleted, int offset, int limit, int barcodeMinLength) {
+            lock.readLock().lock();
+            try {
+                // 条码快速路径：扫码枪输入与条码完全相等
+                if (q.length() >= barcodeMinLength) {
+                    IntList exact = byBarcode.get(q);
+                    if (exact != null) {
+                        List<String> ids = new ArrayList<>(exact.size);
+                        for (int i = 0; i < exact.size; i++) {
+                            Doc doc = docs.get(exact.values[i]);
+                            if (doc != null && (includeDeleted || !doc.deleted())) ids.add(doc.medicineId());
+                        }
+                        if (!ids.isEmpty()) return new Hits(page(ids, offset, limit), ids.size());
+                    }
+                }
+                IntList candidates = q.length() < 2 ? null : smallestPosting(q);
+                if (q.length() >= 2 && candidates == null) return new Hits(List.of(), 0);
+                int n = candidates == null ? docs.size() : candidates.size;
+                // 高 32 位为相关度档位，低 32 位为文档编号，排序后即为展示顺序
+                long[] matched = new long[Math.min(n, 1024)];
+                int total = 0;
+                for (int i = 0; i < n; i++) {
+                    int docId = candidates == null ? i : candidates.values[i];
+                    Doc doc = docs.get(docId);
+                    if (doc == null || (!includeDeleted && doc.deleted())) continue;
+                    int rank = rank(doc, q);
+                    if (rank < 0) continue;
+                    if (total == matched.length) matched = Arrays.copyOf(matched, matched.length * 2);
+                    matched[total++] = ((long) rank << 32) | docId;
+                }
+                Arrays.sort(matched, 0, total);
+                List<String> ids = new ArrayList<>(Math.min(limit, Math.max(0, total - offset)));
+                for (int i = offset; i < total && ids.size() < limit; i++) {
+                    ids.add(docs.get((int) matched[i]).medicineId());
+                }
+                return new Hits(ids, total);
+            } finally { lock.readLock().unlock(); }
+        }
+
+        private static List<String> page(List<String> ids, int offset, int limit) {
+            if (offset >= ids.size()) return List.of();
+            return ids.subList(offset, Math.min(ids.size(), offset + limit));
+        }
+
+        // 0..14：匹配档位(完全相等/前缀/包含) * 权重级数 + 字段权重；-1 表示不匹配
+        private static int rank(Doc doc, String q) {
+            int best = -1;
+            String[] fields = doc.fields();
+            for (int f = 0; f < fields.length; f++) {
+                String v = fields[f];
+                if (v.isEmpty()) continue;
+                int match = v.equals(q) ? 0 : v.startsWith(q) ? 1 : v.contains(q) ? 2 : -1;
+                if (match < 0) continue;
+                int r = match * WEIGHT_LEVELS + FIELD_WEIGHT[f];
+                if (best < 0 || r < best) best = r;
+                if (best == 0) break;
+            }
+            return best;
+        }
+
+        // 取关键词各二元组中最短的倒排表作为候选集；任一二元组不存在则必然无结果
+        private IntList smallestPosting(String q) {
+            IntList smallest = null;
+            for (int i = 0; i + 2 <= q.length(); i++) {
+                IntList list = postings.get(q.substring(i, i + 2));
+                if (list == null) return null;
+                if (smallest == null || list.size < smallest.size) smallest = list;
+            }
+            return smallest;
+        }
+
+        private void add(Doc doc) {
+            int id = docs.size();
+            docs.add(doc);
+            docIdByMedicine.put(doc.medicineId(), id);
+            Set<String> grams = new LinkedHashSet<>();
+            for (String v : doc.fields()) {
+                for (int i = 0; i + 2 <= v.length(); i++) grams.add(v.substring(i, i + 2));
+            }
+            for (String g : grams) postings.computeIfAbsent(g, k -> new IntList()).add(id);
+            String barcode = doc.fields()[Field.BARCODE.ordinal()];
+            if (!barcode.isEmpty()) byBarcode.computeIfAbsent(barcode, k -> new IntList()).add(id);
+        }
+
+        private void removeInternal(String medicineId) {
+            Integer id = docIdByMedicine.remove(medicineId);
+            if (id == null) return;
+            docs.set(id, null);
+            dead++;
+        }
+
+        private void compactIfNeeded() {
+            if (dead < 1024 || dead * 4 < docs.size()) return;
+            List<Doc> live = new ArrayList<>(docIdByMedicine.size());
+            for (Doc d : docs) if (d != null) live.add(d);
+            docs.clear();
+            docIdByMedicine.clear();
+            postings.clear();
+            byBarcode.clear();
+            dead = 0;
+            for (Doc d : live) add(d);
+        }
+    }
+
+    /** 递增的文档编号列表，避免装箱 */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
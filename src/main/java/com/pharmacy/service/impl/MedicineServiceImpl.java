@@ -3,10 +3,12 @@ package com.pharmacy.service.impl;
 
 import com.pharmacy.dto.MedicineWithStockDTO;
 import com.pharmacy.entity.Medicine;
+import com.pharmacy.multitenant.TenantMetrics;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.service.MedicineService;
 import com.pharmacy.service.InventoryService;
 import com.pharmacy.util.StockStatusUtil;
+import com.pharmacy.util.TransactionHooks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -14,7 +16,9 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -27,6 +31,12 @@ public class MedicineServiceImpl implements MedicineService {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private MedicineSearchIndex medicineSearchIndex;
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
     // 基本 CRUD 方法
     @Override
     public Page<Medicine> findAll(Pageable pageable) {
@@ -40,26 +50,33 @@ public class MedicineServiceImpl implements MedicineService {
 
     @Override
     public Medicine save(Medicine medicine) {
-        return medicineRepository.save(medicine);
+        return reindexAfterCommit(medicineRepository.save(medicine));
     }
 
     @Override
     public void deleteById(String id) {
         // delegate to repository (repository deleteById expects String)
         medicineRepository.deleteById(id);
+        TransactionHooks.afterCommit(() -> medicineSearchIndex.remove(id));
     }
 
-    // 搜索方法
+    // 搜索方法：优先走内存索引（已排序、已分页），索引不可用时回落数据库 LIKE
     @Override
     public List<Medicine> searchMedicines(String keyword) {
+        Page<Medicine> indexed = indexedSearch(keyword, true, Pageable.unpaged());
+        if (indexed != null) return indexed.getContent();
         return medicineRepository.searchByKeyword(keyword);
     }
 
     @Override
     public Page<Medicine> searchMedicines(String keyword, Pageable pageable) {
-        // 简化实现，实际应该使用分页查询
+        Page<Medicine> indexed = indexedSearch(keyword, true, pageable);
+        if (indexed != null) return indexed;
         List<Medicine> medicines = medicineRepository.searchByKeyword(keyword);
-        return new PageImpl<>(medicines, pageable, medicines.size());
+        if (pageable.isUnpaged()) return new PageImpl<>(medicines);
+        int start = (int) Math.min(pageable.getOffset(), medicines.size());
+        int end = Math.min(start + pageable.getPageSize(), medicines.size());
+        return new PageImpl<>(medicines.subList(start, end), pageable, medicines.size());
     }
 
     // 新增：分页搜索方法（包含分类）
@@ -67,6 +84,9 @@ public class MedicineServiceImpl implements MedicineService {
     public Page<Medicine> searchMedicines(String keyword, String category, int page, int size) {
         Pageable pageable = PageRequest.of(page - 1, size);
         if (keyword != null && !keyword.trim().isEmpty()) {
+            // 分类过滤目前不生效，可直接使用索引分页结果
+            Page<Medicine> indexed = indexedSearch(keyword, false, pageable);
+            if (indexed != null) return indexed;
             List<Medicine> medicines = medicineRepository.searchActiveByKeyword(keyword);
 
             // 如果指定了分类，进行过滤
@@ -130,54 +150,7 @@ public class MedicineServiceImpl implements MedicineService {
 
         System.out.println("找到药品数量: " + medicinePage.getNumberOfElements());
 
-        List<MedicineWithStockDTO> dtos = medicinePage.getContent().stream()
-                .map(medicine -> {
-                    MedicineWithStockDTO dto = new MedicineWithStockDTO();
-                    // medicineId is String in entity and DTO
-                    dto.setMedicineId(medicine.getMedicineId());
-                    dto.setGenericName(medicine.getGenericName());
-                    dto.setTradeName(medicine.getTradeName());
-                    dto.setSpec(medicine.getSpec());
-                    dto.setManufacturer(medicine.getManufacturer());
-                    dto.setApprovalNo(medicine.getApprovalNo());
-                    dto.setBarcode(medicine.getBarcode());
-                    dto.setProductionDate(medicine.getProductionDate());
-                    dto.setExpiryDate(medicine.getExpiryDate());
-                    dto.setStatus(medicine.getStatus());
-                    dto.setRetailPrice(medicine.getRetailPrice());
-                    dto.setMemberPrice(medicine.getMemberPrice());
-                    dto.setIsRx(medicine.getIsRx());
-                    dto.setUnit(medicine.getUnit());
-                    dto.setDescription(medicine.getDescription());
-                    dto.setUsageDosage(medicine.getUsageDosage());
-                    dto.setContraindication(medicine.getContraindication());
-
-                    // 获取库存信息 - 添加详细调试
-                    System.out.println("正在查询药品 " + medicine.getMedicineId() + " 的库存...");
-                    Integer stockQuantity = inventoryService.getCurrentStock(medicine.getMedicineId());
-                    System.out.println("药品 " + medicine.getMedicineId() + " 的库存结果: " + stockQuantity);
-
-                    dto.setStockQuantity(stockQuantity);
-
-                    // 新增：批号与最早效期
-                    java.util.List<com.pharmacy.dto.InventoryDTO> invList = inventoryService.findDTOByMedicineId(medicine.getMedicineId());
-                    java.util.List<String> batchNos = invList.stream().map(com.pharmacy.dto.InventoryDTO::getBatchNo).filter(java.util.Objects::nonNull).distinct().toList();
-                    dto.setBatchNos(batchNos);
-                    java.time.LocalDate earliest = invList.stream().map(com.pharmacy.dto.InventoryDTO::getExpiryDate)
-                            .filter(d -> d != null && !d.isBefore(java.time.LocalDate.now()))
-                            .sorted().findFirst().orElse(null);
-                    dto.setEarliestExpiryDate(earliest);
-
-                    // 计算库存状态与效期状态
-                    Integer safeBase = invList.stream().map(com.pharmacy.dto.InventoryDTO::getMinStock).filter(ms->ms!=null && ms>0).sorted().findFirst().orElse(1);
-                    String stockStatus = StockStatusUtil.calcStockStatus(stockQuantity, safeBase);
-                    dto.setStockStatus(stockStatus);
-                    String expiryStatus = StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate());
-                    dto.setExpiryStatus(expiryStatus);
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        List<MedicineWithStockDTO> dtos = enrichWithStock(medicinePage.getContent());
 
         System.out.println("=== 搜索完成，返回 " + dtos.size() + " 个结果 ===");
         return new PageImpl<>(dtos, pageable, medicinePage.getTotalElements());
@@ -192,52 +165,7 @@ public class MedicineServiceImpl implements MedicineService {
 
         System.out.println("找到药品数量: " + medicinePage.getNumberOfElements());
 
-        List<MedicineWithStockDTO> dtos = medicinePage.getContent().stream()
-                .map(medicine -> {
-                    MedicineWithStockDTO dto = new MedicineWithStockDTO();
-                    dto.setMedicineId(medicine.getMedicineId());
-                    dto.setGenericName(medicine.getGenericName());
-                    dto.setTradeName(medicine.getTradeName());
-                    dto.setSpec(medicine.getSpec());
-                    dto.setManufacturer(medicine.getManufacturer());
-                    dto.setApprovalNo(medicine.getApprovalNo());
-                    dto.setBarcode(medicine.getBarcode());
-                    dto.setProductionDate(medicine.getProductionDate());
-                    dto.setExpiryDate(medicine.getExpiryDate());
-                    dto.setStatus(medicine.getStatus());
-                    dto.setRetailPrice(medicine.getRetailPrice());
-                    dto.setMemberPrice(medicine.getMemberPrice());
-                    dto.setIsRx(medicine.getIsRx());
-                    dto.setUnit(medicine.getUnit());
-                    dto.setDescription(medicine.getDescription());
-                    dto.setUsageDosage(medicine.getUsageDosage());
-                    dto.setContraindication(medicine.getContraindication());
-
-                    // 获取库存信息
-                    System.out.println("正在查询药品 " + medicine.getMedicineId() + " 的库存...");
-                    Integer stockQuantity = inventoryService.getCurrentStock(medicine.getMedicineId());
-                    System.out.println("药品 " + medicine.getMedicineId() + " 的库存结果: " + stockQuantity);
-
-                    dto.setStockQuantity(stockQuantity);
-
-                    java.util.List<com.pharmacy.dto.InventoryDTO> invList = inventoryService.findDTOByMedicineId(medicine.getMedicineId());
-                    java.util.List<String> batchNos = invList.stream().map(com.pharmacy.dto.InventoryDTO::getBatchNo).filter(java.util.Objects::nonNull).distinct().toList();
-                    dto.setBatchNos(batchNos);
-                    java.time.LocalDate earliest = invList.stream().map(com.pharmacy.dto.InventoryDTO::getExpiryDate)
-                            .filter(d -> d != null && !d.isBefore(java.time.LocalDate.now()))
-                            .sorted().findFirst().orElse(null);
-                    dto.setEarliestExpiryDate(earliest);
-
-                    // 计算库存与效期状态
-                    Integer safeBase2 = invList.stream().map(com.pharmacy.dto.InventoryDTO::getMinStock).filter(ms->ms!=null && ms>0).sorted().findFirst().orElse(1);
-                    String stockStatus2 = StockStatusUtil.calcStockStatus(stockQuantity, safeBase2);
-                    dto.setStockStatus(stockStatus2);
-                    String expiryStatus2 = StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate());
-                    dto.setExpiryStatus(expiryStatus2);
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        List<MedicineWithStockDTO> dtos = enrichWithStock(medicinePage.getContent());
 
         System.out.println("=== 获取完成，返回 " + dtos.size() + " 个结果 ===");
         return new PageImpl<>(dtos, pageable, medicinePage.getTotalElements());
@@ -251,7 +179,7 @@ public class MedicineServiceImpl implements MedicineService {
 
     @Override
     public Medicine createMedicine(Medicine medicine) {
-        return medicineRepository.save(medicine);
+        return reindexAfterCommit(medicineRepository.save(medicine));
     }
 
     @Override
@@ -274,7 +202,7 @@ public class MedicineServiceImpl implements MedicineService {
         if (existing == null) {
             medicine.setMedicineId(id);
             medicine.setDeleted(false);
-            return medicineRepository.save(medicine);
+            return reindexAfterCommit(medicineRepository.save(medicine));
         }
         if(Boolean.TRUE.equals(existing.getDeleted())) {
             // 不允许更新已软删除的记录
@@ -296,7 +224,7 @@ public class MedicineServiceImpl implements MedicineService {
         if (medicine.getProductionDate() != null) existing.setProductionDate(medicine.getProductionDate());
         if (medicine.getExpiryDate() != null) existing.setExpiryDate(medicine.getExpiryDate());
         if (medicine.getStatus() != null) existing.setStatus(medicine.getStatus());
-        return medicineRepository.save(existing);
+        return reindexAfterCommit(medicineRepository.save(existing));
     }
 
     @Override
@@ -305,7 +233,7 @@ public class MedicineServiceImpl implements MedicineService {
         if (existing != null) {
             existing.setDeleted(true);
             existing.setStatus("INACTIVE");
-            medicineRepository.save(existing);
+            reindexAfterCommit(medicineRepository.save(existing));
         }
     }
 
@@ -317,7 +245,79 @@ public class MedicineServiceImpl implements MedicineService {
             if (existing.getStatus() == null || existing.getStatus().equalsIgnoreCase("INACTIVE")) {
                 existing.setStatus("ACTIVE");
             }
-            medicineRepository.save(existing);
+            reindexAfterCommit(medicineRepository.save(existing));
+        }
+    }
+
+    /**
+     * 批量拼装库存信息：整页药品只查一次库存批次（总量、批号、最早未过期效期、安全库存），
+     * 药品列表、带库存搜索与收银商品网格共用。
+     */
+    private List<MedicineWithStockDTO> enrichWithStock(List<Medicine> medicines) {
+        if (medicines.isEmpty()) return new ArrayList<>();
+        List<String> ids = medicines.stream().map(Medicine::getMedicineId).toList();
+        Map<String, InventoryService.StockSummary> summaries = inventoryService.summarizeStock(ids);
+        List<MedicineWithStockDTO> dtos = new ArrayList<>(medicines.size());
+        for (Medicine medicine : medicines) {
+            MedicineWithStockDTO dto = new MedicineWithStockDTO();
+            dto.setMedicineId(medicine.getMedicineId());
+            dto.setGenericName(medicine.getGenericName());
+            dto.setTradeName(medicine.getTradeName());
+            dto.setSpec(medicine.getSpec());
+            dto.setManufacturer(medicine.getManufacturer());
+            dto.setApprovalNo(medicine.getApprovalNo());
+            dto.setBarcode(medicine.getBarcode());
+            dto.setProductionDate(medicine.getProductionDate());
+            dto.setExpiryDate(medicine.getExpiryDate());
+            dto.setStatus(medicine.getStatus());
+            dto.setRetailPrice(medicine.getRetailPrice());
+            dto.setMemberPrice(medicine.getMemberPrice());
+            dto.setIsRx(medicine.getIsRx());
+            dto.setUnit(medicine.getUnit());
+            dto.setDescription(medicine.getDescription());
+            dto.setUsageDosage(medicine.getUsageDosage());
+            dto.setContraindication(medicine.getContraindication());
+
+            InventoryService.StockSummary summary = summaries.get(medicine.getMedicineId());
+            int stockQuantity = summary == null ? 0 : summary.stockQuantity();
+            dto.setStockQuantity(stockQuantity);
+            dto.setBatchNos(summary == null ? List.of() : summary.batchNos());
+            dto.setEarliestExpiryDate(summary == null ? null : summary.earliestExpiryDate());
+
+            // 计算库存状态与效期状态
+            Integer safeBase = summary == null || summary.minStock() == null ? 1 : summary.minStock();
+            dto.setStockStatus(StockStatusUtil.calcStockStatus(stockQuantity, safeBase));
+            dto.setExpiryStatus(StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate()));
+            dtos.add(dto);
         }
+        return dtos;
+    }
+
+    private Page<Medicine> indexedSearch(String keyword, boolean includeDeleted, Pageable pageable) {
+        int offset = pageable.isPaged() ? (int) pageable.getOffset() : 0;
+        int limit = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+        MedicineSearchIndex.Hits hits = medicineSearchIndex.search(keyword, includeDeleted, offset, limit);
+        tenantMetrics.cacheAccess("medicine_search_index", hits != null);
+        if (hits == null) return null;
+        List<Medicine> ordered = new ArrayList<>(hits.ids().size());
+        if (!hits.ids().isEmpty()) {
+            Map<String, Medicine> byId = medicineRepository.findAllById(hits.ids()).stream()
+                    .collect(Collectors.toMap(Medicine::getMedicineId, m -> m));
+            for (String id : hits.ids()) {
+                Medicine m = byId.get(id);
+                if (m != null) ordered.add(m);
+            }
+        }
+        return pageable.isPaged() ? new PageImpl<>(ordered, pageable, hits.total()) : new PageImpl<>(ordered);
+    }
+
+    // 药品检索字段变化在提交后同步到索引
+    private Medicine reindexAfterCommit(Medicine m) {
+        if (m == null) return null;
+        String id = m.getMedicineId(), generic = m.getGenericName(), trade = m.getTradeName(), description = m.getDescription(),
+                manufacturer = m.getManufacturer(), spec = m.getSpec(), barcode = m.getBarcode();
+        boolean deleted = Boolean.TRUE.equals(m.getDeleted());
+        TransactionHooks.afterCommit(() -> medicineSearchIndex.upsert(id, generic, trade, description, manufacturer, spec, barcode, deleted));
+        return m;
     }
 }
@@ -1,22 +1,32 @@
 package com.pharmacy.service.impl;
 
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantMetrics;
 import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.util.TransactionHooks;
+import com.pharmacy.util.WorkerThreads;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
- * 会员消费统计增量刷新组件：避免每次接口全量聚合。
- * 若未来引入缓存，可在此写入缓存层；当前仅打印日志（聚合逻辑仍在查询端）。
+ * 会员消费统计缓存：按租户分区、容量受限的 LRU，避免每次接口全量聚合。
+ * 订单提交后异步刷新单个会员，刷新线程池有界并携带租户上下文，保证查询落在正确的门店库。
  */
 @Component
 public class MemberConsumptionUpdater {
@@ -24,18 +34,30 @@ public class MemberConsumptionUpdater {
     @Autowired
     private OrderRepository orderRepository;
 
-    // 替换固定线程池为可伸缩线程池，避免阻塞
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    @Autowired(required = false)
+    private TenantMetrics tenantMetrics;
 
-    // 简单内存缓存：memberId -> CacheEntry
-    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
-    private static final Duration TTL = Duration.ofMinutes(10); // 条目有效期
     @Value("${member.cache.ttl-minutes:10}")
     private int ttlMinutes;
-    private final ConcurrentLinkedQueue<String> recentActiveMembers = new ConcurrentLinkedQueue<>();
+    @Value("${member.cache.max-entries-per-tenant:20000}")
+    private int maxEntriesPerTenant;
+    @Value("${member.cache.recent-active-max:500}")
+    private int recentActiveMax;
+    @Value("${member.cache.refresh-threads:2}")
+    private int refreshThreads;
+    @Value("${member.cache.refresh-queue:256}")
+    private int refreshQueue;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // 有界刷新线程池：队列满时丢弃刷新并让缓存条目失效，读请求会按需补齐
+    private ThreadPoolExecutor pool;
+
+    // tenant -> 租户缓存
+    private final ConcurrentHashMap<String, TenantCache> tenants = new ConcurrentHashMap<>();
 
     // 缓存条目结构
-    private class CacheEntry {
+    private static final class CacheEntry {
         final int consumptionCount;
         final LocalDateTime lastConsumption;
         final long writeEpochMilli;
@@ -44,35 +66,104 @@ public class MemberConsumptionUpdater {
             this.lastConsumption = last;
             this.writeEpochMilli = System.currentTimeMillis();
         }
-        boolean isExpired(){
-            long customTTL = (ttlMinutes > 0 ? ttlMinutes : 10) * 60_000L;
-            return System.currentTimeMillis() - writeEpochMilli > customTTL;
+    }
+
+    /** 单租户缓存：访问顺序 LinkedHashMap 实现 LRU，最近活跃会员同样有上限；均以对象自身加锁 */
+    private final class TenantCache {
+        final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() <= Math.max(1, maxEntriesPerTenant)) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+        final LinkedHashMap<String, Boolean> recentActive = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > Math.max(1, recentActiveMax);
+            }
+        };
+        final Set<String> pending = ConcurrentHashMap.newKeySet(); // 已排队的单会员刷新，避免重复提交
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        synchronized CacheEntry get(String memberId) { return entries.get(memberId); }
+        synchronized void put(String memberId, CacheEntry entry) { entries.put(memberId, entry); }
+        synchronized void invalidate(String memberId) { entries.remove(memberId); }
+        synchronized int size() { return entries.size(); }
+        synchronized void markActive(String memberId) { recentActive.put(memberId, Boolean.TRUE); }
+
+        synchronized int evictExpired(long ttlMillis) {
+            long now = System.currentTimeMillis();
+            int before = entries.size();
+            entries.values().removeIf(e -> now - e.writeEpochMilli > ttlMillis);
+            return before - entries.size();
+        }
+
+        // 最近活跃的在前
+        synchronized List<String> recentActive(int max) {
+            List<String> ordered = new ArrayList<>(recentActive.keySet());
+            List<String> out = new ArrayList<>(Math.min(max, ordered.size()));
+            for (int i = ordered.size() - 1; i >= 0 && out.size() < max; i--) out.add(ordered.get(i));
+            return out;
         }
     }
 
-    /** 单会员异步刷新并更新缓存 */
+    @PostConstruct
+    public void init(){
+        int threads = Math.max(1, refreshThreads);
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, refreshQueue)),
+                WorkerThreads.factory("member-stats-refresh", virtualThreads), new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** 单会员异步刷新：事务提交后先让旧值失效，再排队刷新（同一会员排队中时不重复提交） */
     public void refreshSingleMember(String memberId){
         if(memberId==null || memberId.isBlank()) return;
-        CompletableFuture.runAsync(() -> doRefreshSingle(memberId), pool)
-            .exceptionally(e->{ System.err.println("[MemberStats] 异步刷新异常:"+e.getMessage()); return null;});
+        String tenant = currentTenant();
+        TransactionHooks.afterCommit(() -> submitRefresh(tenant, memberId));
+    }
+
+    private void submitRefresh(String tenant, String memberId){
+        TenantCache tc = cacheFor(tenant);
+        tc.invalidate(memberId);
+        tc.markActive(memberId);
+        if(!tc.pending.add(memberId)) return;
+        try {
+            pool.execute(() -> TenantContext.runAs(tenant, () -> {
+                try {
+                    doRefreshSingle(tc, memberId);
+                } finally {
+                    tc.pending.remove(memberId);
+                }
+            }));
+        } catch(RejectedExecutionException e){
+            tc.pending.remove(memberId);
+            tc.rejected.increment();
+        }
     }
 
-    private void doRefreshSingle(String memberId){
+    private void doRefreshSingle(TenantCache tc, String memberId){
         try {
             Long cnt = orderRepository.countPaidOrdersByMember(memberId);
             LocalDateTime last = orderRepository.findLastPaidOrderTime(memberId);
             int c = cnt==null?0:cnt.intValue();
-            cache.put(memberId, new CacheEntry(c,last));
-            recentActiveMembers.add(memberId);
-            System.out.println("[MemberStats] 刷新 member="+memberId+" count="+c+" last="+last);
+            tc.put(memberId, new CacheEntry(c,last));
+            System.out.println("[MemberStats] 刷新 tenant="+currentTenant()+" member="+memberId+" count="+c+" last="+last);
         } catch(Exception e){
             System.err.println("[MemberStats] 刷新失败 member="+memberId+" err="+e.getMessage());
         }
     }
 
-    /** 批量刷新（同步执行，可由定时任务调用） */
-    public void refreshMembersBatch(Set<String> memberIds){
-        if(memberIds==null || memberIds.isEmpty()) return;
+    /** 批量刷新当前租户（同步执行，可由定时任务调用），返回刷新后的快照 */
+    public Map<String, MemberStatsSnapshot> refreshMembersBatch(Set<String> memberIds){
+        Map<String, MemberStatsSnapshot> result = new HashMap<>();
+        if(memberIds==null || memberIds.isEmpty()) return result;
+        TenantCache tc = cacheFor(currentTenant());
         try {
             // 聚合查询
             java.util.List<Object[]> agg = orderRepository.aggregateMemberConsumption(memberIds);
@@ -84,21 +175,29 @@ public class MemberConsumptionUpdater {
                     count = ((Long)row[1]).intValue();
                     last = (LocalDateTime) row[2];
                 }
-                cache.put(mid, new CacheEntry(count,last));
+                tc.put(mid, new CacheEntry(count,last));
+                result.put(mid, new MemberStatsSnapshot(mid, count, last));
             }
-            memberIds.forEach(recentActiveMembers::add);
-            System.out.println("[MemberStats] 批量刷新完成 size="+memberIds.size());
+            System.out.println("[MemberStats] 批量刷新完成 tenant="+currentTenant()+" size="+memberIds.size());
         } catch(Exception e){
             System.err.println("[MemberStats] 批量刷新失败:"+e.getMessage());
         }
+        return result;
     }
 
-    /** 获取缓存值（可能为过期或不存在），过期立即返回 null 以便调用方补齐 */
+    /** 获取当前租户缓存值，过期或不存在返回 null 以便调用方补齐 */
     public MemberStatsSnapshot getCachedStats(String memberId){
         if(memberId==null) return null;
-        CacheEntry ce = cache.get(memberId);
-        if(ce==null) return null;
-        if(ce.isExpired()){ cache.remove(memberId); return null; }
+        TenantCache tc = cacheFor(currentTenant());
+        CacheEntry ce = tc.get(memberId);
+        if(ce==null || System.currentTimeMillis() - ce.writeEpochMilli > ttlMillis()){
+            if(ce!=null) tc.invalidate(memberId);
+            tc.misses.increment();
+            if(tenantMetrics!=null) tenantMetrics.cacheAccess("member_consumption", false);
+            return null;
+        }
+        tc.hits.increment();
+        if(tenantMetrics!=null) tenantMetrics.cacheAccess("member_consumption", true);
         return new MemberStatsSnapshot(memberId, ce.consumptionCount, ce.lastConsumption);
     }
 
@@ -114,28 +213,64 @@ public class MemberConsumptionUpdater {
         }
     }
 
-    /** 清理过期缓存（可由定时器调用） */
+    /** 清理所有租户的过期缓存（可由定时器调用） */
     public int evictExpired(){
         int removed = 0;
-        for(Map.Entry<String,CacheEntry> e: cache.entrySet()){
-            if(e.getValue().isExpired()){ cache.remove(e.getKey()); removed++; }
-        }
+        for(TenantCache tc: tenants.values()) removed += tc.evictExpired(ttlMillis());
         if(removed>0) System.out.println("[MemberStats] 过期条目清理: "+removed);
         return removed;
     }
 
-    // 提供获取最近活跃会员集合（截取最多 200 个去重）
+    /** 当前租户最近活跃的会员（最近的在前，最多 max 个） */
     public Set<String> snapshotRecentActive(int max){
-        java.util.Set<String> set = new java.util.LinkedHashSet<>();
-        for(String id: recentActiveMembers){
-            set.add(id);
-            if(set.size()>=max) break;
-        }
-        return set;
+        TenantCache tc = tenants.get(currentTenant());
+        return tc==null ? new LinkedHashSet<>() : new LinkedHashSet<>(tc.recentActive(max));
+    }
+
+    /** 有缓存数据的租户 */
+    public Set<String> cachedTenants(){
+        return Set.copyOf(tenants.keySet());
+    }
+
+    /** 丢弃租户缓存（租户下线时调用） */
+    public void evict(String tenant){
+        if(tenant!=null) tenants.remove(tenant);
+    }
+
+    /** 各租户缓存命中统计 */
+    public Map<String, Map<String, Object>> cacheStats(){
+        Map<String, Map<String, Object>> out = new LinkedHashMap<>();
+        tenants.forEach((tenant, tc) -> {
+            long hits = tc.hits.sum(), misses = tc.misses.sum();
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("size", tc.size());
+            one.put("maxSize", maxEntriesPerTenant);
+            one.put("hits", hits);
+            one.put("misses", misses);
+            one.put("hitRate", hits + misses == 0 ? 0.0 : Math.round(hits * 1000.0 / (hits + misses)) / 10.0);
+            one.put("evictions", tc.evictions.sum());
+            one.put("rejectedRefreshes", tc.rejected.sum());
+            out.put(tenant, one);
+        });
+        return out;
+    }
+
+    private TenantCache cacheFor(String tenant){
+        return tenants.computeIfAbsent(tenant, k -> new TenantCache());
+    }
+
+    private long ttlMillis(){
+        return (ttlMinutes > 0 ? ttlMinutes : 10) * 60_000L;
+    }
+
+    private static String currentTenant(){
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
     }
 
     @PreDestroy
     public void shutdown(){
+        if(pool==null) return;
         pool.shutdown();
         try {
             if (!pool.awaitTermination(3, TimeUnit.SECONDS)) {
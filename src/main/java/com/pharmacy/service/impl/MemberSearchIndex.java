@@ -0,0 +1,283 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按租户划分的会员搜索索引：姓名/手机号/卡号的二元组(bigram)倒排表，支持前缀与包含匹配。
+ * 首次查询时只加载 member 表的四列建索引，之后由 MemberService 在事务提交后增量维护；
+ * 查询在内存完成并返回排好序的前 K 个会员ID，调用方只按ID回表取这 K 行。
+ */
+@Component
+public class MemberSearchIndex {
+
+    public enum Field { NAME, PHONE, CARD_NO }
+
+    public static final Set<Field> ALL_FIELDS = Collections.unmodifiableSet(EnumSet.allOf(Field.class));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${member.search.index.enabled:true}")
+    private boolean enabled;
+
+    private static final String LOAD_ALL_SQL = "SELECT member_id, name, phone, card_no FROM `member`";
+
+    // tenant -> 索引；加载中的索引 ready=false，读取时返回 null 由调用方回落数据库
+    private final ConcurrentHashMap<String, TenantIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 按关键词查找会员ID：完全相等优先，其次前缀，最后包含；最多返回 limit 个。
+     * 索引不可用（关闭/加载中/加载失败）时返回 null。
+     */
+    public List<String> search(String keyword, Set<Field> fields, int limit) {
+        TenantIndex index = indexForRead();
+        if (index == null) return null;
+        String q = fold(keyword);
+        if (q.isEmpty() || limit <= 0) return List.of();
+        return index.search(q, fields, limit);
+    }
+
+    /** 新增或更新会员（事务提交后调用） */
+    public void upsert(String memberId, String name, String phone, String cardNo) {
+        if (memberId == null) return;
+        TenantIndex index = indexes.get(currentTenant());
+        if (index != null) index.upsert(new Doc(memberId, fold(name), fold(phone), fold(cardNo)));
+    }
+
+    /** 删除会员（事务提交后调用） */
+    public void remove(String memberId) {
+        if (memberId == null) return;
+        TenantIndex index = indexes.get(currentTenant());
+        if (index != null) index.remove(memberId);
+    }
+
+    /** 丢弃租户索引（租户下线或需要整体重建时调用），下次查询重新加载 */
+    public void evict(String tenant) {
+        if (tenant != null) indexes.remove(tenant);
+    }
+
+    /** 已加载的租户及其会员数 */
+    public Map<String, Integer> describe() {
+        Map<String, Integer> out = new HashMap<>();
+        indexes.forEach((tenant, index) -> { if (index.ready) out.put(tenant, index.size()); });
+        return out;
+    }
+
+    /** 与 MemberService 相同的清洗规则：全角空格、连续空白、零宽字符 */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        String trimmed = s.trim();
+        trimmed = trimmed.replace('\u3000', ' ').replaceAll("\\s+", " ");
+        trimmed = trimmed.replace("\u200B", "")
+                .replace("\u200C", "")
+                .replace("\u200D", "")
+                .replace("\uFEFF", "");
+        return trimmed;
+    }
+
+    private static String fold(String s) {
+        return normalize(s).toLowerCase(Locale.ROOT);
+    }
+
+    private TenantIndex indexForRead() {
+        if (!enabled) return null;
+        String tenant = currentTenant();
+        TenantIndex index = indexes.get(tenant);
+        if (index != null) return index.ready ? index : null;
+        TenantIndex fresh = new TenantIndex();
+        if (indexes.putIfAbsent(tenant, fresh) != null) return null; // 其它线程正在加载
+        try {
+            long start = System.currentTimeMillis();
+            jdbcTemplate.query(LOAD_ALL_SQL, rs -> {
+                fresh.load(new Doc(rs.getString("member_id"), fold(rs.getString("name")),
+                        fold(rs.getString("phone")), fold(rs.getString("card_no"))));
+            });
+            fresh.markReady();
+            System.out.println("[MemberSearchIndex] 租户 " + tenant + " 索引会员数=" + fresh.size()
+                    + " 耗时=" + (System.currentTimeMillis() - start) + "ms");
+            return fresh;
+        } catch (Exception e) {
+            indexes.remove(tenant, fresh);
+            System.err.println("[MemberSearchIndex] 租户 " + tenant + " 索引加载失败，回落数据库: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+
+    /** 已清洗、转小写的会员检索字段 */
+    private record Doc(String memberId, String name, String phone, String cardNo) {
+        String field(Field f) {
+            return switch (f) {
+                case NAME -> name;
+                case PHONE -> phone;
+                case CARD_NO -> cardNo;
+            };
+        }
+    }
+
+    /** 单租户索引：文档按追加顺序编号，删除只打墓碑，墓碑过多时整体压缩 */
+    private static final class TenantIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final ArrayList<Doc> docs = new ArrayList<>();
+        private final HashMap<String, Integer> docIdByMember = new HashMap<>();
+        private final HashMap<String, IntList> postings = new HashMap<>();
+        private int dead;
+        private volatile boolean ready;
+        // 加载期间发生的增量写入；加载到的旧行遇到这些会员直接跳过
+        private Set<String> touchedDuringLoad = new HashSet<>();
+
+        void load(Doc doc) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad.contains(doc.memberId()) || docIdByMember.containsKey(doc.memberId())) return;
+                add(doc);
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void markReady() {
+            lock.writeLock().lock();
+            try {
+                touchedDuringLoad = null;
+                ready = true;
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void upsert(Doc doc) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad != null) touchedDuringLoad.add(doc.memberId());
+                removeInternal(doc.memberId());
+                add(doc);
+                compactIfNeeded();
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        void remove(String memberId) {
+            lock.writeLock().lock();
+            try {
+                if (touchedDuringLoad != null) touchedDuringLoad.add(memberId);
+                removeInternal(memberId);
+                compactIfNeeded();
+            } finally { lock.writeLock().unlock(); }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try { return docIdByMember.size(); } finally { lock.readLock().unlock(); }
+        }
+
+        List<String> search(String q, Set<Field> fields, int limit) {
+            lock.readLock().lock();
+            try {
+                // 0=完全相等 1=前缀 2=包含，各档按文档顺序收集，够 limit 即可
+                List<List<String>> buckets = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+                IntList candidates = q.length() < 2 ? null : smallestPosting(q);
+                if (q.length() >= 2 && candidates == null) return List.of();
+                int n = candidates == null ? docs.size() : candidates.size;
+                for (int i = 0; i < n; i++) {
+                    Doc doc = docs.get(candidates == null ? i : candidates.values[i]);
+                    if (doc == null) continue;
+                    int rank = rank(doc, q, fields);
+                    if (rank < 0) continue;
+                    List<String> bucket = buckets.get(rank);
+                    if (bucket.size() < limit) bucket.add(doc.memberId());
+                    if (rank == 0 && bucket.size() >= limit) break;
+                }
+                List<String> out = new ArrayList<>(limit);
+                for (List<String> bucket : buckets) {
+                    for (String id : bucket) {
+                        if (out.size() >= limit) return out;
+                        out.add(id);
+                    }
+                }
+                return out;
+            } finally { lock.readLock().unlock(); }
+        }
+
+        private static int rank(Doc doc, String q, Set<Field> fields) {
+            int best = -1;
+            for (Field f : fields) {
+                String v = doc.field(f);
+                if (v.isEmpty()) continue;
+                int r = v.equals(q) ? 0 : v.startsWith(q) ? 1 : v.contains(q) ? 2 : -1;
+                if (r >= 0 && (best < 0 || r < best)) best = r;
+                if (best == 0) break;
+            }
+            return best;
+        }
+
+        // 取关键词各二元组中最短的倒排表作为候选集；任一二元组不存在则必然无结果
+        private IntList smallestPosting(String q) {
+            IntList smallest = null;
+            for (int i = 0; i + 2 <= q.length(); i++) {
+                IntList list = postings.get(q.substring(i, i + 2));
+                if (list == null) return null;
+                if (smallest == null || list.size < smallest.size) smallest = list;
+            }
+            return smallest;
+        }
+
+        private void add(Doc doc) {
+            int id = docs.size();
+            docs.add(doc);
+            docIdByMember.put(doc.memberId(), id);
+            Set<String> grams = new LinkedHashSet<>();
+            for (Field f : Field.values()) {
+                String v = doc.field(f);
+                for (int i = 0; i + 2 <= v.length(); i++) grams.add(v.substring(i, i + 2));
+            }
+            for (String g : grams) postings.computeIfAbsent(g, k -> new IntList()).add(id);
+        }
+
+        private void removeInternal(String memberId) {
+            Integer id = docIdByMember.remove(memberId);
+            if (id == null) return;
+            docs.set(id, null);
+            dead++;
+        }
+
+        private void compactIfNeeded() {
+            if (dead < 1024 || dead * 4 < docs.size()) return;
+            List<Doc> live = new ArrayList<>(docIdByMember.size());
+            for (Doc d : docs) if (d != null) live.add(d);
+            docs.clear();
+            docIdByMember.clear();
+            postings.clear();
+            dead = 0;
+            for (Doc d : live) add(d);
+        }
+    }
+
+    /** 递增的文档编号列表，避免装箱 */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
@@ -12,20 +12,29 @@ import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.OrderItemRepository;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.EmployeeRepository;
+import com.pharmacy.service.DocumentNumberService;
 import com.pharmacy.service.OrderService;
+import com.pharmacy.service.OutboxService;
 import com.pharmacy.service.InventoryService;
 import com.pharmacy.repository.MemberRepository;
 import com.pharmacy.entity.Member;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -43,16 +52,24 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private InventoryService inventoryService;
 
-    @Autowired(required = false)
-    private MemberConsumptionUpdater memberConsumptionUpdater; // 可选组件，不存在时日志提示
 
     @Autowired
     private EmployeeRepository employeeRepository; // 新增: 动态获取收银员
     @Autowired
     private MemberRepository memberRepository; // 新增: 校验会员是否存在
+    @Autowired
+    private JdbcTemplate jdbcTemplate; // 订单项批量写入
+    @Autowired
+    private DocumentNumberService documentNumberService; // 订单号：同一秒多笔收银也不冲突
+    @Autowired
+    private OutboxService outboxService; // 积分/会员统计/控制台等副作用在提交后异步处理
+
+    private static final String ORDER_ITEM_INSERT_SQL =
+            "INSERT INTO order_item (order_id, medicine_id, quantity, unit_price, subtotal, prescription_id) VALUES (?, ?, ?, ?, ?, ?)";
 
     @Override
     @Transactional
+    @Timed(value = "pharmacy.operation", extraTags = {"op", "checkout"})
     public OrderResponse createOrder(OrderRequest orderRequest) {
         System.out.println("=== 开始创建订单 ===");
         System.out.println("客户姓名: " + orderRequest.getCustomerName());
@@ -60,22 +77,29 @@ public class OrderServiceImpl implements OrderService {
         System.out.println("商品数量: " + orderRequest.getItems().size());
 
         try {
-            // 1. 检查库存是否充足
+            // 1. 汇总购物车数量（同一药品多行合并），药品信息一次性加载用于提示与响应组装
+            Map<String, Integer> quantities = new LinkedHashMap<>();
             for (OrderItemRequest item : orderRequest.getItems()) {
-                boolean stockAvailable = inventoryService.checkStock(item.getProductId(), item.getQuantity());
-                if (!stockAvailable) {
-                    String medicineName = medicineRepository.findById(item.getProductId())
-                            .map(Medicine::getGenericName)
-                            .orElse(String.valueOf(item.getProductId()));
-                    throw new RuntimeException("药品 " + medicineName + " 库存不足，需求: " + item.getQuantity());
-                }
+                quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            }
+            Map<String, Medicine> medicineMap = new HashMap<>();
+            for (Medicine m : medicineRepository.findAllById(quantities.keySet())) {
+                medicineMap.put(m.getMedicineId(), m);
             }
 
             // 2. 生成订单号
-            String orderId = generateOrderId();
+            String orderId = documentNumberService.nextOrderId();
             System.out.println("生成的订单号: " + orderId);
 
-            // 3. 计算订单总金额 - 使用前端传递的金额信息
+            // 3. 校验并扣减库存：一次查询全部批次 + 内存 FIFO 分配 + JDBC 批量更新
+            List<String> shortages = inventoryService.deductStockForOrder(quantities, orderId);
+            if (!shortages.isEmpty()) {
+                String shortId = shortages.get(0);
+                String medicineName = medicineMap.containsKey(shortId) ? medicineMap.get(shortId).getGenericName() : shortId;
+                throw new RuntimeException("药品 " + medicineName + " 库存不足，需求: " + quantities.get(shortId));
+            }
+
+            // 4. 计算订单总金额 - 使用前端传递的金额信息
             double totalAmount = orderRequest.getTotalAmount() != null ?
                     orderRequest.getTotalAmount().doubleValue() :
                     orderRequest.getItems().stream()
@@ -92,7 +116,7 @@ public class OrderServiceImpl implements OrderService {
             System.out.println("折扣金额: " + discountAmount);
             System.out.println("原始金额: " + originalAmount);
 
-            // 4. 创建订单实体
+            // 5. 创建订单实体
             Order order = new Order();
             order.setOrderId(orderId);
             // 动态解析收银员ID，避免外键失败
@@ -102,11 +126,12 @@ public class OrderServiceImpl implements OrderService {
             }
             order.setCashierId(cashierId);
 
-            // 设置会员ID（需要存在性校验）
+            // 设置会员ID（需要存在性校验），查到的会员实体复用于积分累计
+            Member member = null;
             if (orderRequest.getMemberId() != null && !orderRequest.getMemberId().trim().isEmpty()) {
                 String rawMemberId = orderRequest.getMemberId().trim();
-                boolean memberExists = memberRepository.findById(rawMemberId).isPresent();
-                if (memberExists) {
+                member = memberRepository.findById(rawMemberId).orElse(null);
+                if (member != null) {
                     order.setMemberId(rawMemberId);
                     System.out.println("设置会员ID: " + rawMemberId);
                 } else {
@@ -130,72 +155,38 @@ public class OrderServiceImpl implements OrderService {
             order.setOrderTime(LocalDateTime.now());
             order.setPayTime(LocalDateTime.now());
 
-            // 5. 保存订单
-            Order savedOrder = orderRepository.save(order);
-            System.out.println("订单保存成功，ID: " + savedOrder.getOrderId());
-            System.out.println("订单会员ID: " + savedOrder.getMemberId());
-
-            // 5.1 订单积分计算并累计到会员（按实付金额四舍五入为积分）
-            try {
-                double pay = savedOrder.getActualPayment() != null ? savedOrder.getActualPayment() : 0.0;
-                int createdPoints = (int) Math.round(pay);
-                if (createdPoints < 0) createdPoints = 0;
-                // 回写订单的获得积分
-                try {
-                    savedOrder.setCreatedPoints(createdPoints);
-                    savedOrder = orderRepository.save(savedOrder);
-                } catch (Exception e){ System.err.println("写入订单积分失败:"+e.getMessage()); }
-                // 累加到会员
-                String mid = savedOrder.getMemberId();
-                if (mid != null && !mid.isBlank() && createdPoints > 0) {
-                    try {
-                        Optional<Member> memOpt = memberRepository.findById(mid);
-                        if (memOpt.isPresent()) {
-                            Member mem = memOpt.get();
-                            mem.addPoints(createdPoints);
-                            memberRepository.save(mem);
-                            System.out.println("会员积分累计成功: memberId="+mid+" +"+createdPoints);
-                        } else {
-                            System.err.println("会员不存在，跳过积分累计: memberId="+mid);
-                        }
-                    } catch (Exception e){ System.err.println("会员积分累计失败:"+e.getMessage()); }
-                }
-            } catch (Exception e){ System.err.println("订单积分处理异常:"+e.getMessage()); }
+            // 订单积分（按实付金额四舍五入）在首次保存前写入，避免二次保存
+            int createdPoints = Math.max(0, (int) Math.round(totalAmount));
+            order.setCreatedPoints(createdPoints);
 
-            // 6. 创建订单项并更新库存
+            // 6. 保存订单并立即 flush，保证后续 JDBC 批量写入订单项时外键可见
+            Order savedOrder = orderRepository.saveAndFlush(order);
+            System.out.println("订单保存成功，ID: " + savedOrder.getOrderId() + "，会员ID: " + savedOrder.getMemberId());
+
+            // 7. 订单项 JDBC 批量写入
+            List<OrderItem> orderItems = new ArrayList<>(orderRequest.getItems().size());
             for (OrderItemRequest itemRequest : orderRequest.getItems()) {
                 OrderItem orderItem = new OrderItem();
                 orderItem.setOrderId(savedOrder.getOrderId());
-                // 确保商品ID为 String
-                String productId = String.valueOf(itemRequest.getProductId());
-                orderItem.setMedicineId(productId);
+                orderItem.setMedicineId(String.valueOf(itemRequest.getProductId()));
                 orderItem.setQuantity(itemRequest.getQuantity());
                 orderItem.setUnitPrice(itemRequest.getUnitPrice().doubleValue());
                 orderItem.setSubtotal(itemRequest.getUnitPrice().doubleValue() * itemRequest.getQuantity());
-
-                orderItemRepository.save(orderItem);
-                System.out.println("订单项保存成功: " + productId + " x " + itemRequest.getQuantity());
-
-                // 更新库存（使用 String 类型 medicineId）
-                boolean stockUpdated = inventoryService.updateStockForOrder(
-                        productId,
-                        itemRequest.getQuantity(),
-                        savedOrder.getOrderId()
-                );
-
-                if (!stockUpdated) {
-                    String medicineName = medicineRepository.findById(productId)
-                            .map(Medicine::getGenericName)
-                            .orElse(productId);
-                    throw new RuntimeException("库存更新失败: " + medicineName);
-                }
+                orderItems.add(orderItem);
             }
-
-            // 7. 构建响应
-            OrderResponse response = convertToOrderResponse(savedOrder);
-            // 新增：订单创建后异步刷新会员消费统计
-            triggerMemberStatsUpdate(savedOrder.getMemberId());
-            System.out.println("✅ 订单创建完成并触发会员消费统计刷新: " + response.getOrderNumber());
+            batchInsertOrderItems(orderItems);
+            System.out.println("订单项批量保存成功: " + orderItems.size() + " 行");
+
+            // 8. 直接由内存数据构建响应，无需回查订单项与药品
+            OrderResponse response = buildOrderResponse(savedOrder, orderItems, medicineMap);
+            // 9. 积分累计、会员消费统计刷新、控制台快照过期等副作用写入发件箱，随订单一起提交后异步处理
+            Map<String, Object> paid = new HashMap<>();
+            paid.put("memberId", savedOrder.getMemberId());
+            paid.put("points", member != null ? createdPoints : 0);
+            paid.put("amount", totalAmount);
+            outboxService.publish(OutboxService.ORDER_PAID, orderId, paid);
+            outboxService.publish(OutboxService.STOCK_CHANGED, orderId, Map.of("medicineIds", new ArrayList<>(quantities.keySet())));
+            System.out.println("✅ 订单创建完成: " + response.getOrderNumber());
             return response;
 
         } catch (Exception e) {
@@ -297,6 +288,7 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     @Transactional
+    @Timed(value = "pharmacy.operation", extraTags = {"op", "refund"})
     public OrderResponse refundOrder(String orderId, String reason) {
         Optional<Order> opt = orderRepository.findByOrderId(orderId);
         if(opt.isEmpty()) throw new RuntimeException("订单不存在: " + orderId);
@@ -315,7 +307,12 @@ public class OrderServiceImpl implements OrderService {
         order.setPaymentStatus(2); // 已退款
         order.setRefundTime(LocalDateTime.now());
         OrderResponse resp = convertToOrderResponse(orderRepository.save(order));
-        triggerMemberStatsUpdate(order.getMemberId());
+        Map<String, Object> refunded = new HashMap<>();
+        refunded.put("memberId", order.getMemberId());
+        refunded.put("amount", order.getActualPayment());
+        outboxService.publish(OutboxService.ORDER_REFUNDED, orderId, refunded);
+        outboxService.publish(OutboxService.STOCK_CHANGED, orderId,
+                Map.of("medicineIds", items.stream().map(OrderItem::getMedicineId).distinct().toList()));
         return resp;
     }
 
@@ -364,20 +361,6 @@ public class OrderServiceImpl implements OrderService {
         return orderRepository.findAll(spec, pageable);
     }
 
-    // 异步触发会员统计刷新
-    private void triggerMemberStatsUpdate(String memberId){
-        if(memberId==null || memberId.isBlank()) return;
-        try {
-            if(memberConsumptionUpdater!=null){
-                memberConsumptionUpdater.refreshSingleMember(memberId);
-            } else {
-                System.out.println("[MemberStats] 无成员消费刷新组件，跳过刷新，memberId="+memberId);
-            }
-        } catch(Exception e){
-            System.err.println("[MemberStats] 刷新会员消费统计失败:"+e.getMessage());
-        }
-    }
-
     // 辅助方法：获取支付状态文本
     private String getPaymentStatusText(Integer status) {
         if (status == null) return "未知";
@@ -391,13 +374,18 @@ public class OrderServiceImpl implements OrderService {
 
     // === 私有辅助方法 ===
 
-    private String generateOrderId() {
-        // 生成格式如: O20241027123456 的订单号
-        String timestamp = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        return "O" + timestamp;
+    private OrderResponse convertToOrderResponse(Order order) {
+        // 获取订单项，药品名称一次性批量查询
+        List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getOrderId());
+        Set<String> medicineIds = orderItems.stream().map(OrderItem::getMedicineId).collect(Collectors.toSet());
+        Map<String, Medicine> medicineMap = new HashMap<>();
+        for (Medicine m : medicineRepository.findAllById(medicineIds)) {
+            medicineMap.put(m.getMedicineId(), m);
+        }
+        return buildOrderResponse(order, orderItems, medicineMap);
     }
 
-    private OrderResponse convertToOrderResponse(Order order) {
+    private OrderResponse buildOrderResponse(Order order, List<OrderItem> orderItems, Map<String, Medicine> medicineMap) {
         OrderResponse response = new OrderResponse();
         response.setOrderNumber(order.getOrderId());
         response.setCustomerName(order.getCustomerName());
@@ -417,36 +405,34 @@ public class OrderServiceImpl implements OrderService {
             }
         } catch (Exception ignore) {}
 
-        // 获取订单项
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getOrderId());
         List<OrderItemResponse> itemResponses = orderItems.stream()
-                .map(this::convertToOrderItemResponse)
+                .map(item -> convertToOrderItemResponse(item, medicineMap.get(item.getMedicineId())))
                 .collect(Collectors.toList());
 
         response.setItems(itemResponses);
         return response;
     }
 
-    private OrderItemResponse convertToOrderItemResponse(OrderItem orderItem) {
+    private OrderItemResponse convertToOrderItemResponse(OrderItem orderItem, Medicine medicine) {
         OrderItemResponse response = new OrderItemResponse();
         response.setProductId(orderItem.getMedicineId());
-
-        // 获取药品信息
-        Optional<Medicine> medicineOpt = medicineRepository.findById(orderItem.getMedicineId());
-        if (medicineOpt.isPresent()) {
-            Medicine medicine = medicineOpt.get();
-            response.setProductName(medicine.getGenericName());
-        } else {
-            response.setProductName("未知药品");
-        }
-
+        response.setProductName(medicine != null ? medicine.getGenericName() : "未知药品");
         response.setQuantity(orderItem.getQuantity());
         response.setUnitPrice(java.math.BigDecimal.valueOf(orderItem.getUnitPrice()));
         response.setSubtotal(java.math.BigDecimal.valueOf(orderItem.getSubtotal()));
-
         return response;
     }
 
+    // JDBC 批量插入订单项（IDENTITY 主键下 Hibernate 无法批量插入）
+    private void batchInsertOrderItems(List<OrderItem> orderItems) {
+        if (orderItems.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(orderItems.size());
+        for (OrderItem it : orderItems) {
+            args.add(new Object[]{it.getOrderId(), it.getMedicineId(), it.getQuantity(), it.getUnitPrice(), it.getSubtotal(), it.getPrescriptionId()});
+        }
+        jdbcTemplate.batchUpdate(ORDER_ITEM_INSERT_SQL, args);
+    }
+
     private Integer resolveCashierId() {
         // 优先找活动员工
         return employeeRepository.findAllActive().stream()
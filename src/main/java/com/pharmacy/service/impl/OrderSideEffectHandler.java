@@ -0,0 +1,60 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.OutboxHandler;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.util.TransactionHooks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * 订单与入库的提交后副作用：累计会员积分、刷新会员消费统计、标记控制台快照过期。
+ * 积分写入与事件的已处理标记在同一事务内提交，重试不会重复加分；缓存刷新推迟到该事务提交之后。
+ */
+@Component
+public class OrderSideEffectHandler implements OutboxHandler {
+
+    private static final String ADD_POINTS_SQL = "UPDATE `member` SET points = COALESCE(points, 0) + ? WHERE member_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private MemberConsumptionUpdater memberConsumptionUpdater;
+
+    @Autowired(required = false)
+    private DashboardService dashboardService;
+
+    @Override
+    public Set<String> eventTypes() {
+        return Set.of(OutboxService.ORDER_PAID, OutboxService.ORDER_REFUNDED, OutboxService.STOCK_IN_RECEIVED);
+    }
+
+    @Override
+    public void handle(OutboxService.Event event) {
+        String memberId = stringOf(event.payload().get("memberId"));
+        if (OutboxService.ORDER_PAID.equals(event.type()) && memberId != null) {
+            int points = intOf(event.payload().get("points"));
+            if (points > 0 && jdbcTemplate.update(ADD_POINTS_SQL, points, memberId) == 0) {
+                System.err.println("[Outbox] 会员不存在，跳过积分累计 memberId=" + memberId + " order=" + event.aggregateId());
+            }
+        }
+        if (memberId != null && memberConsumptionUpdater != null) {
+            memberConsumptionUpdater.refreshSingleMember(memberId);
+        }
+        if (dashboardService != null) {
+            TransactionHooks.afterCommit(dashboardService::markDashboardStale);
+        }
+    }
+
+    private static String stringOf(Object v) {
+        return v == null || v.toString().isBlank() ? null : v.toString();
+    }
+
+    private static int intOf(Object v) {
+        return v instanceof Number n ? n.intValue() : 0;
+    }
+}
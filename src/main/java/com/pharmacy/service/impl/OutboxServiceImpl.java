@@ -0,0 +1,320 @@
+package com.pharmacy.service.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.OutboxHandler;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.util.TransactionHooks;
+import com.pharmacy.util.WorkerThreads;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OutboxService} 的 JDBC 实现。
+ * 写入：INSERT 与业务写入共用当前事务连接；提交后给租户发一个“有新事件”信号。
+ * 处理：每个租户同一时刻只有一个排干任务，按批（outbox.batch-size）认领——先用认领令牌把待处理行置为处理中，
+ * 再按令牌读出，多节点同时扫描也不会重复处理；每个事件在独立事务中调用处理器并标记已处理。
+ * 背压：线程池与队列都有界，队列满时丢弃信号，事件仍留在表中由定时清扫补处理，结账请求不会被阻塞。
+ */
+@Service
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final String INSERT_SQL = "INSERT INTO outbox_event (event_type, aggregate_id, payload, status, attempts, " +
+            "next_attempt_at, create_time) VALUES (?, ?, ?, 0, 0, ?, ?)";
+    private static final String DUE_SQL = "SELECT event_id FROM outbox_event WHERE status = 0 AND next_attempt_at <= ? " +
+            "ORDER BY event_id LIMIT ?";
+    private static final String CLAIM_SQL = "UPDATE outbox_event SET status = 3, claim_token = :token, claimed_at = :now " +
+            "WHERE event_id IN (:ids) AND status = 0";
+    private static final String CLAIMED_SQL = "SELECT event_id, event_type, aggregate_id, payload, attempts, create_time " +
+            "FROM outbox_event WHERE claim_token = ? AND status = 3 ORDER BY event_id";
+    private static final String DONE_SQL = "UPDATE outbox_event SET status = 1, attempts = attempts + 1, processed_time = ?, " +
+            "last_error = NULL WHERE event_id = ? AND status = 3 AND claim_token = ?";
+    private static final String RETRY_SQL = "UPDATE outbox_event SET status = ?, attempts = ?, next_attempt_at = ?, last_error = ?, " +
+            "claim_token = NULL WHERE event_id = ? AND status = 3 AND claim_token = ?";
+    private static final String RECOVER_SQL = "UPDATE outbox_event SET status = 0, claim_token = NULL WHERE status = 3 AND claimed_at < ?";
+    private static final String PURGE_SQL = "DELETE FROM outbox_event WHERE status = 1 AND processed_time < ? LIMIT 5000";
+    private static final String STATS_SQL = "SELECT status, COUNT(*) FROM outbox_event GROUP BY status";
+
+    private static final int STATUS_PENDING = 0, STATUS_DONE = 1, STATUS_FAILED = 2, STATUS_PROCESSING = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbc;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 处理器通常依赖订单/会员等服务，延迟获取避免循环依赖
+    @Autowired
+    private ObjectProvider<OutboxHandler> handlerProvider;
+
+    @Value("${outbox.worker-threads:2}")
+    private int workerThreads;
+    @Value("${outbox.queue-capacity:64}")
+    private int queueCapacity;
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+    @Value("${outbox.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${outbox.max-backoff-seconds:300}")
+    private int maxBackoffSeconds;
+    @Value("${outbox.stuck-seconds:300}")
+    private int stuckSeconds;
+    @Value("${outbox.retention-hours:24}")
+    private int retentionHours;
+
+    private ThreadPoolExecutor pool;
+    private volatile Map<String, List<OutboxHandler>> handlersByType;
+
+    // 已排队/执行中的租户排干任务，以及排干期间又收到信号的租户
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // 启动以来写过事件或有积压的租户，定时清扫只看这些租户，不唤醒长期不活跃的店铺
+    private final Set<String> activeTenants = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, workerThreads);
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                WorkerThreads.factory("outbox-worker", virtualThreads), new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public void publish(String type, String aggregateId, Map<String, Object> payload) {
+        String json;
+        try {
+            json = payload == null || payload.isEmpty() ? null : objectMapper.writeValueAsString(payload);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("发件箱事件序列化失败: " + type, e);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(INSERT_SQL, type, aggregateId, json, now, now);
+        published.increment();
+        String tenant = currentTenant();
+        TransactionHooks.afterCommit(() -> signal(tenant));
+    }
+
+    @Override
+    public int drainCurrentTenant() {
+        int done = 0;
+        while (true) {
+            String token = UUID.randomUUID().toString();
+            List<Event> batch = claimBatch(token);
+            for (Event e : batch) {
+                if (process(e, token)) done++;
+            }
+            if (batch.size() < Math.max(1, batchSize)) return done;
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long[] byStatus = new long[4];
+        jdbcTemplate.query(STATS_SQL, rs -> {
+            int s = rs.getInt(1);
+            if (s >= 0 && s < byStatus.length) byStatus[s] = rs.getLong(2);
+        });
+        out.put("tenant", currentTenant());
+        out.put("pending", byStatus[STATUS_PENDING]);
+        out.put("processing", byStatus[STATUS_PROCESSING]);
+        out.put("failed", byStatus[STATUS_FAILED]);
+        out.put("done", byStatus[STATUS_DONE]);
+        out.put("published", published.sum());
+        out.put("processed", processed.sum());
+        out.put("retried", retried.sum());
+        out.put("gaveUp", failed.sum());
+        out.put("rejectedSignals", rejected.sum());
+        out.put("queued", pool.getQueue().size());
+        return out;
+    }
+
+    @Override
+    public void evict(String tenant) {
+        activeTenants.remove(tenant);
+        dirty.remove(tenant);
+    }
+
+    /** 启动时检查租户是否有遗留事件，有则纳入定时清扫 */
+    public void recover(Collection<String> tenants) {
+        for (String tenant : tenants) {
+            runAs(tenant, () -> {
+                sweepCurrentTenant();
+                Integer pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event WHERE status = 0", Integer.class);
+                if (pending != null && pending > 0) signal(tenant);
+            });
+        }
+    }
+
+    /** 定时清扫：回收超时未完成的认领、清理过期的已处理事件，并补发信号处理到期的重试 */
+    public void sweepActive() {
+        for (String tenant : activeTenants) {
+            runAs(tenant, this::sweepCurrentTenant);
+            signal(tenant);
+        }
+    }
+
+    // ========== 调度 ==========
+
+    private void signal(String tenant) {
+        activeTenants.add(tenant);
+        dirty.add(tenant);
+        if (!scheduled.add(tenant)) return; // 正在排干，结束前会再看一次 dirty
+        try {
+            pool.execute(() -> drainLoop(tenant));
+        } catch (RejectedExecutionException e) {
+            scheduled.remove(tenant);
+            rejected.increment();
+        }
+    }
+
+    private void drainLoop(String tenant) {
+        try {
+            do {
+                dirty.remove(tenant);
+                runAs(tenant, this::drainCurrentTenant);
+            } while (dirty.contains(tenant));
+        } finally {
+            scheduled.remove(tenant);
+        }
+        if (dirty.contains(tenant)) signal(tenant);
+    }
+
+    private void runAs(String tenant, Runnable task) {
+        try {
+            TenantContext.runAs(tenant, task);
+        } catch (Exception e) {
+            System.err.println("[Outbox] 租户 " + tenant + " 处理发件箱失败: " + e.getMessage());
+        }
+    }
+
+    // ========== 处理 ==========
+
+    private List<Event> claimBatch(String token) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = jdbcTemplate.queryForList(DUE_SQL, Long.class, Timestamp.valueOf(now), Math.max(1, batchSize));
+        if (ids.isEmpty()) return List.of();
+        namedJdbc.update(CLAIM_SQL, new MapSqlParameterSource("token", token)
+                .addValue("now", Timestamp.valueOf(now)).addValue("ids", ids));
+        String tenant = currentTenant();
+        return jdbcTemplate.query(CLAIMED_SQL, (rs, i) -> new Event(rs.getLong("event_id"), tenant,
+                rs.getString("event_type"), rs.getString("aggregate_id"), parsePayload(rs.getString("payload")),
+                rs.getInt("attempts"), rs.getObject("create_time", LocalDateTime.class)), token);
+    }
+
+    private boolean process(Event event, String token) {
+        List<OutboxHandler> handlers = handlersByType().getOrDefault(event.type(), List.of());
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (OutboxHandler handler : handlers) {
+                    try {
+                        handler.handle(event);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+                int n = jdbcTemplate.update(DONE_SQL, Timestamp.valueOf(LocalDateTime.now()), event.id(), token);
+                // 认领已被超时回收并交给别的处理者，回滚本次处理
+                if (n != 1) throw new IllegalStateException("事件认领已失效");
+            });
+            processed.increment();
+            return true;
+        } catch (Exception e) {
+            int attempts = event.attempts() + 1;
+            boolean giveUp = attempts >= Math.max(1, maxAttempts);
+            long backoff = Math.min(Math.max(1, maxBackoffSeconds), 1L << Math.min(attempts, 20));
+            String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            if (message.length() > 500) message = message.substring(0, 500);
+            jdbcTemplate.update(RETRY_SQL, giveUp ? STATUS_FAILED : STATUS_PENDING, attempts,
+                    Timestamp.valueOf(LocalDateTime.now().plusSeconds(backoff)), message, event.id(), token);
+            if (giveUp) failed.increment(); else retried.increment();
+            System.err.println("[Outbox] 事件处理失败 tenant=" + event.tenant() + " id=" + event.id() + " type=" + event.type()
+                    + " attempts=" + attempts + (giveUp ? " 已放弃" : " " + backoff + "s 后重试") + ": " + message);
+            return false;
+        }
+    }
+
+    private void sweepCurrentTenant() {
+        LocalDateTime now = LocalDateTime.now();
+        int recovered = jdbcTemplate.update(RECOVER_SQL, Timestamp.valueOf(now.minusSeconds(Math.max(1, stuckSeconds))));
+        if (recovered > 0) System.out.println("[Outbox] 租户 " + currentTenant() + " 回收超时认领 " + recovered + " 条");
+        jdbcTemplate.update(PURGE_SQL, Timestamp.valueOf(now.minusHours(Math.max(1, retentionHours))));
+    }
+
+    private Map<String, List<OutboxHandler>> handlersByType() {
+        Map<String, List<OutboxHandler>> map = handlersByType;
+        if (map == null) {
+            Map<String, List<OutboxHandler>> built = new ConcurrentHashMap<>();
+            handlerProvider.orderedStream().forEach(h -> {
+                for (String type : h.eventTypes()) built.computeIfAbsent(type, t -> new ArrayList<>()).add(h);
+            });
+            handlersByType = map = built;
+        }
+        return map;
+    }
+
+    private Map<String, Object> parsePayload(String json) {
+        if (json == null || json.isBlank()) return Map.of();
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+        } catch (Exception e) {
+            System.err.println("[Outbox] 事件内容解析失败: " + e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+}
@@ -0,0 +1,486 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.entity.Order;
+import com.pharmacy.entity.SalesRollupDaily;
+import com.pharmacy.entity.SalesRollupHourly;
+import com.pharmacy.entity.SalesRollupMetrics;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.SalesRollupDailyRepository;
+import com.pharmacy.repository.SalesRollupHourlyRepository;
+import com.pharmacy.service.OutboxHandler;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.service.SalesRollupService;
+import com.pharmacy.util.TransactionHooks;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 销售汇总：
+ * 1. 订单 flush 时（OrderRollupListener）只把前后快照写入发件箱，结账事务不碰汇总行，并发结账不会在同一小时/日汇总行上排队
+ * 2. 提交后由发件箱处理线程应用差量，与事件的已处理标记同事务提交，失败整体回滚并重试，不会只写一半
+ * 3. 去重会员数通过 sales_rollup_member 记录桶内已出现的会员增量维护
+ * 4. 首次读取某租户时回填历史；重试耗尽的日期在下次读取前按订单表重建
+ * SQL 只用 UPDATE 后 INSERT（主键冲突再 UPDATE）的写法，MySQL 与 H2 通用。
+ */
+@Service
+public class SalesRollupServiceImpl implements SalesRollupService, OutboxHandler {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SalesRollupHourlyRepository hourlyRepository;
+
+    @Autowired
+    private SalesRollupDailyRepository dailyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 发件箱服务持有全部处理器（含本类），延迟获取避免循环依赖
+    @Autowired
+    private ObjectProvider<OutboxService> outboxService;
+
+    @Value("${outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${sales.rollup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sales.rollup.rebuild-chunk-days:31}")
+    private int rebuildChunkDays;
+
+    private static final String METRIC_COLUMNS = "order_count, order_amount, paid_count, paid_amount, paid_total, refund_count, refund_amount, member_count, update_time";
+    private static final String INSERT_TAIL = ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ADD_SET = " SET order_count = order_count + ?, order_amount = order_amount + ?, " +
+            "paid_count = paid_count + ?, paid_amount = paid_amount + ?, paid_total = paid_total + ?, " +
+            "refund_count = refund_count + ?, refund_amount = refund_amount + ?, member_count = member_count + ?, update_time = ?";
+    private static final String HOURLY_INSERT_SQL = "INSERT INTO sales_rollup_hourly (bucket_start, " + METRIC_COLUMNS + INSERT_TAIL;
+    private static final String DAILY_INSERT_SQL = "INSERT INTO sales_rollup_daily (bucket_date, " + METRIC_COLUMNS + INSERT_TAIL;
+    private static final String HOURLY_ADD_SQL = "UPDATE sales_rollup_hourly" + ADD_SET + " WHERE bucket_start = ?";
+    private static final String DAILY_ADD_SQL = "UPDATE sales_rollup_daily" + ADD_SET + " WHERE bucket_date = ?";
+
+    private static final String MEMBER_INSERT_SQL = "INSERT INTO sales_rollup_member (rollup_key, bucket_date) VALUES (?, ?)";
+    private static final String MEMBER_EXISTS_SQL = "SELECT COUNT(*) FROM sales_rollup_member WHERE rollup_key = ?";
+    private static final String MEMBER_DELETE_SQL = "DELETE FROM sales_rollup_member WHERE rollup_key = ?";
+    private static final String MEMBER_REMAINING_SQL = "SELECT COUNT(*) FROM `order` WHERE member_id = ? AND payment_status = 1 AND order_time >= ? AND order_time < ?";
+
+    // 重建：按订单时间、退款时间分别分组聚合
+    private static final String ORDER_AGG_COLUMNS = "COUNT(*), COALESCE(SUM(total_amount), 0), " +
+            "SUM(CASE WHEN payment_status = 1 THEN 1 ELSE 0 END), " +
+            "COALESCE(SUM(CASE WHEN payment_status = 1 THEN actual_payment ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN payment_status = 1 THEN total_amount ELSE 0 END), 0), " +
+            "COUNT(DISTINCT CASE WHEN payment_status = 1 THEN member_id END)";
+    private static final String HOURLY_ORDERS_SQL = "SELECT CAST(order_time AS DATE), HOUR(order_time), " + ORDER_AGG_COLUMNS +
+            " FROM `order` WHERE order_time >= ? AND order_time < ? GROUP BY CAST(order_time AS DATE), HOUR(order_time)";
+    private static final String DAILY_ORDERS_SQL = "SELECT CAST(order_time AS DATE), " + ORDER_AGG_COLUMNS +
+            " FROM `order` WHERE order_time >= ? AND order_time < ? GROUP BY CAST(order_time AS DATE)";
+    private static final String HOURLY_REFUNDS_SQL = "SELECT CAST(refund_time AS DATE), HOUR(refund_time), COUNT(*), COALESCE(SUM(actual_payment), 0)" +
+            " FROM `order` WHERE payment_status = 2 AND refund_time >= ? AND refund_time < ? GROUP BY CAST(refund_time AS DATE), HOUR(refund_time)";
+    private static final String MEMBER_KEYS_SQL = "SELECT DISTINCT CAST(order_time AS DATE), HOUR(order_time), member_id FROM `order`" +
+            " WHERE payment_status = 1 AND member_id IS NOT NULL AND order_time >= ? AND order_time < ?";
+    private static final String EARLIEST_ORDER_SQL = "SELECT MIN(order_time) FROM `order`";
+
+    // 已完成回填检查的租户
+    private final Set<String> readyTenants = ConcurrentHashMap.newKeySet();
+    // 差量重试耗尽、待重建的日期
+    private final ConcurrentHashMap<String, Set<LocalDate>> dirtyDays = new ConcurrentHashMap<>();
+
+    /** 单个桶的差量 */
+    private static final class Delta {
+        int orderCount;
+        double orderAmount;
+        int paidCount;
+        double paidAmount;
+        double paidTotal;
+        int refundCount;
+        double refundAmount;
+        int memberCount;
+
+        void addSales(Delta o) {
+            orderCount += o.orderCount;
+            orderAmount += o.orderAmount;
+            paidCount += o.paidCount;
+            paidAmount += o.paidAmount;
+            paidTotal += o.paidTotal;
+            refundCount += o.refundCount;
+            refundAmount += o.refundAmount;
+        }
+
+        boolean isZero() {
+            return orderCount == 0 && paidCount == 0 && refundCount == 0 && memberCount == 0
+                    && orderAmount == 0 && paidAmount == 0 && paidTotal == 0 && refundAmount == 0;
+        }
+    }
+
+    // ========== 增量 ==========
+
+    /** 在订单事务内只写一条发件箱事件（普通 INSERT，不锁汇总行），提交后异步应用 */
+    @Override
+    public void onOrderChanged(String orderId, Order.SalesSnapshot before, Order.SalesSnapshot after) {
+        if (!enabled || Objects.equals(before, after)) return;
+        Map<String, Object> payload = new LinkedHashMap<>();
+        if (before != null) payload.put("before", toPayload(before));
+        if (after != null) payload.put("after", toPayload(after));
+        outboxService.getObject().publish(OutboxService.ORDER_SALES_CHANGED, orderId, payload);
+    }
+
+    @Override
+    public Set<String> eventTypes() {
+        return Set.of(OutboxService.ORDER_SALES_CHANGED);
+    }
+
+    /**
+     * 应用一次订单变化。异常直接抛出，由发件箱整体回滚后重试；
+     * 最后一次尝试仍失败时不再抛出，登记日期在下次读取前按订单表重建（重建会覆盖本次可能写了一半的行）。
+     */
+    @Override
+    public void handle(OutboxService.Event event) {
+        Order.SalesSnapshot before = fromPayload(event.payload().get("before"));
+        Order.SalesSnapshot after = fromPayload(event.payload().get("after"));
+        try {
+            applyChange(before, after);
+        } catch (RuntimeException e) {
+            if (event.attempts() + 1 < Math.max(1, maxAttempts)) throw e;
+            Set<LocalDate> affected = new TreeSet<>();
+            for (Order.SalesSnapshot snap : Arrays.asList(before, after)) {
+                if (snap == null) continue;
+                if (snap.orderTime() != null) affected.add(snap.orderTime().toLocalDate());
+                if (snap.refundTime() != null) affected.add(snap.refundTime().toLocalDate());
+            }
+            String tenant = currentTenant();
+            System.err.println("[SalesRollup] 租户 " + tenant + " 汇总差量重试耗尽，待重建日期=" + affected + ": " + e.getMessage());
+            TransactionHooks.afterCommit(() -> dirtyDays.computeIfAbsent(tenant, k -> ConcurrentHashMap.newKeySet()).addAll(affected));
+        }
+    }
+
+    private void applyChange(Order.SalesSnapshot before, Order.SalesSnapshot after) {
+        Map<LocalDateTime, Delta> hours = new TreeMap<>();
+        if (before != null) contribute(before, -1, hours);
+        if (after != null) contribute(after, 1, hours);
+        Map<LocalDate, Delta> days = new TreeMap<>();
+        applyMembers(before, after, hours, days);
+        for (Map.Entry<LocalDateTime, Delta> e : hours.entrySet()) {
+            days.computeIfAbsent(e.getKey().toLocalDate(), k -> new Delta()).addSales(e.getValue());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<LocalDateTime, Delta> e : hours.entrySet()) {
+            if (!e.getValue().isZero()) addToBucket(HOURLY_ADD_SQL, HOURLY_INSERT_SQL, Timestamp.valueOf(e.getKey()), e.getValue(), now);
+        }
+        for (Map.Entry<LocalDate, Delta> e : days.entrySet()) {
+            if (!e.getValue().isZero()) addToBucket(DAILY_ADD_SQL, DAILY_INSERT_SQL, Date.valueOf(e.getKey()), e.getValue(), now);
+        }
+    }
+
+    /** 先累加已有行，没有再插入；并发插入撞主键时改回累加 */
+    private void addToBucket(String addSql, String insertSql, Object key, Delta d, LocalDateTime now) {
+        Object[] addArgs = {d.orderCount, d.orderAmount, d.paidCount, d.paidAmount, d.paidTotal,
+                d.refundCount, d.refundAmount, d.memberCount, Timestamp.valueOf(now), key};
+        if (jdbcTemplate.update(addSql, addArgs) > 0) return;
+        try {
+            jdbcTemplate.update(insertSql, upsertArgs(key, d, now));
+        } catch (DuplicateKeyException raced) {
+            jdbcTemplate.update(addSql, addArgs);
+        }
+    }
+
+    /** 桶内首次出现该会员时登记，返回是否新登记 */
+    private boolean enterMember(String key, LocalDate day) {
+        Integer n = jdbcTemplate.queryForObject(MEMBER_EXISTS_SQL, Integer.class, key);
+        if (n != null && n > 0) return false;
+        try {
+            return jdbcTemplate.update(MEMBER_INSERT_SQL, key, Date.valueOf(day)) > 0;
+        } catch (DuplicateKeyException raced) {
+            return false;
+        }
+    }
+
+    private static Map<String, Object> toPayload(Order.SalesSnapshot s) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("orderTime", s.orderTime() == null ? null : s.orderTime().toString());
+        m.put("refundTime", s.refundTime() == null ? null : s.refundTime().toString());
+        m.put("paymentStatus", s.paymentStatus());
+        m.put("totalAmount", s.totalAmount());
+        m.put("actualPayment", s.actualPayment());
+        m.put("memberId", s.memberId());
+        return m;
+    }
+
+    private static Order.SalesSnapshot fromPayload(Object value) {
+        if (!(value instanceof Map<?, ?> m)) return null;
+        return new Order.SalesSnapshot(timeOf(m.get("orderTime")), timeOf(m.get("refundTime")),
+                m.get("paymentStatus") instanceof Number n ? n.intValue() : 0,
+                m.get("totalAmount") instanceof Number n ? n.doubleValue() : 0.0,
+                m.get("actualPayment") instanceof Number n ? n.doubleValue() : 0.0,
+                m.get("memberId") == null ? null : m.get("memberId").toString());
+    }
+
+    private static LocalDateTime timeOf(Object v) {
+        return v == null ? null : LocalDateTime.parse(v.toString());
+    }
+
+    private static void contribute(Order.SalesSnapshot s, int sign, Map<LocalDateTime, Delta> hours) {
+        if (s.orderTime() != null) {
+            Delta d = hours.computeIfAbsent(hourOf(s.orderTime()), k -> new Delta());
+            d.orderCount += sign;
+            d.orderAmount += sign * s.totalAmount();
+            if (s.paymentStatus() == 1) {
+                d.paidCount += sign;
+                d.paidAmount += sign * s.actualPayment();
+                d.paidTotal += sign * s.totalAmount();
+            }
+        }
+        if (s.paymentStatus() == 2 && s.refundTime() != null) {
+            Delta d = hours.computeIfAbsent(hourOf(s.refundTime()), k -> new Delta());
+            d.refundCount += sign;
+            d.refundAmount += sign * s.actualPayment();
+        }
+    }
+
+    private void applyMembers(Order.SalesSnapshot before, Order.SalesSnapshot after,
+                              Map<LocalDateTime, Delta> hours, Map<LocalDate, Delta> days) {
+        boolean wasPaid = isPaidMember(before);
+        boolean isPaid = isPaidMember(after);
+        if (wasPaid && isPaid && before.memberId().equals(after.memberId())
+                && hourOf(before.orderTime()).equals(hourOf(after.orderTime()))) return;
+        if (wasPaid) {
+            LocalDateTime hour = hourOf(before.orderTime());
+            LocalDate day = hour.toLocalDate();
+            if (leaveMember(before.memberId(), hour, hour.plusHours(1), hourKey(hour, before.memberId())))
+                hours.computeIfAbsent(hour, k -> new Delta()).memberCount--;
+            if (leaveMember(before.memberId(), day.atStartOfDay(), day.plusDays(1).atStartOfDay(), dayKey(day, before.memberId())))
+                days.computeIfAbsent(day, k -> new Delta()).memberCount--;
+        }
+        if (isPaid) {
+            LocalDateTime hour = hourOf(after.orderTime());
+            LocalDate day = hour.toLocalDate();
+            if (enterMember(hourKey(hour, after.memberId()), day))
+                hours.computeIfAbsent(hour, k -> new Delta()).memberCount++;
+            if (enterMember(dayKey(day, after.memberId()), day))
+                days.computeIfAbsent(day, k -> new Delta()).memberCount++;
+        }
+    }
+
+    /** 会员在桶内已无其它已支付订单时移除，返回是否移除 */
+    private boolean leaveMember(String memberId, LocalDateTime start, LocalDateTime end, String key) {
+        Long remaining = jdbcTemplate.queryForObject(MEMBER_REMAINING_SQL, Long.class, memberId, Timestamp.valueOf(start), Timestamp.valueOf(end));
+        if (remaining != null && remaining > 0) return false;
+        return jdbcTemplate.update(MEMBER_DELETE_SQL, key) > 0;
+    }
+
+    private static boolean isPaidMember(Order.SalesSnapshot s) {
+        return s != null && s.paymentStatus() == 1 && s.orderTime() != null && s.memberId() != null;
+    }
+
+    // ========== 读取 ==========
+
+    @Override
+    public Map<LocalDate, SalesRollupMetrics> byDay(LocalDateTime from, LocalDateTime to) {
+        Map<LocalDate, SalesRollupMetrics> result = new LinkedHashMap<>();
+        if (from == null || to == null || !from.isBefore(to)) return result;
+        prepareRead();
+        LocalDate lastDay = to.minusNanos(1).toLocalDate();
+        for (LocalDate d = from.toLocalDate(); !d.isAfter(lastDay); d = d.plusDays(1)) {
+            result.put(d, new SalesRollupMetrics());
+        }
+        LocalDate firstWhole = from.toLocalTime().equals(LocalTime.MIDNIGHT) ? from.toLocalDate() : from.toLocalDate().plusDays(1);
+        LocalDate endWhole = to.toLocalDate();
+        if (firstWhole.isBefore(endWhole)) {
+            for (SalesRollupDaily d : dailyRepository.findByBucketDateBetweenOrderByBucketDate(firstWhole, endWhole.minusDays(1))) {
+                result.get(d.getBucketDate()).add(d);
+            }
+            addHours(result, from, firstWhole.atStartOfDay());
+            addHours(result, endWhole.atStartOfDay(), to);
+        } else {
+            addHours(result, from, to);
+        }
+        return result;
+    }
+
+    private void addHours(Map<LocalDate, SalesRollupMetrics> result, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) return;
+        for (SalesRollupHourly h : hourlyRepository.findByBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(from, to)) {
+            SalesRollupMetrics m = result.get(h.getBucketStart().toLocalDate());
+            if (m != null) m.add(h);
+        }
+    }
+
+    @Override
+    public List<SalesRollupHourly> hourly(LocalDate day) {
+        prepareRead();
+        LocalDateTime start = day.atStartOfDay();
+        SalesRollupHourly[] slots = new SalesRollupHourly[24];
+        for (SalesRollupHourly h : hourlyRepository.findByBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(start, start.plusDays(1))) {
+            slots[h.getBucketStart().getHour()] = h;
+        }
+        List<SalesRollupHourly> list = new ArrayList<>(24);
+        for (int i = 0; i < 24; i++) list.add(slots[i] != null ? slots[i] : new SalesRollupHourly(start.plusHours(i)));
+        return list;
+    }
+
+    /** 读取前：未检查过的租户先回填，再重建重试耗尽的日期 */
+    private void prepareRead() {
+        if (!enabled) return;
+        String tenant = currentTenant();
+        if (!readyTenants.contains(tenant)) {
+            synchronized (readyTenants) {
+                if (!readyTenants.contains(tenant)) {
+                    drainPending();
+                    backfill();
+                }
+            }
+        }
+        Set<LocalDate> dirty = dirtyDays.remove(tenant);
+        if (dirty != null) {
+            drainPending();
+            for (LocalDate d : new TreeSet<>(dirty)) rebuild(d, d);
+        }
+    }
+
+    // 重建按订单表全量计算，先把已提交但尚未应用的差量处理掉，缩小重建后再被重复累加的窗口
+    private void drainPending() {
+        try {
+            outboxService.getObject().drainCurrentTenant();
+        } catch (RuntimeException e) {
+            System.err.println("[SalesRollup] 租户 " + currentTenant() + " 重建前处理发件箱失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictTenant(String tenant) {
+        if (tenant == null) return;
+        readyTenants.remove(tenant);
+        dirtyDays.remove(tenant);
+    }
+
+    // ========== 重建 ==========
+
+    @Override
+    public int backfill() {
+        String tenant = currentTenant();
+        LocalDateTime earliest = jdbcTemplate.queryForObject(EARLIEST_ORDER_SQL, LocalDateTime.class);
+        int rebuilt = 0;
+        if (earliest != null) {
+            LocalDate rollupStart = dailyRepository.findEarliestBucketDate();
+            if (rollupStart == null || earliest.toLocalDate().isBefore(rollupStart)) {
+                rebuilt = rebuild(earliest.toLocalDate(), LocalDate.now());
+                System.out.println("[SalesRollup] 租户 " + tenant + " 汇总回填完成，天数=" + rebuilt);
+            }
+        }
+        readyTenants.add(tenant);
+        return rebuilt;
+    }
+
+    @Override
+    public int rebuild(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) return 0;
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int chunk = Math.max(1, rebuildChunkDays);
+        for (LocalDate start = from; !start.isAfter(to); start = start.plusDays(chunk)) {
+            LocalDate end = start.plusDays(chunk - 1).isAfter(to) ? to : start.plusDays(chunk - 1);
+            LocalDate chunkStart = start;
+            tx.executeWithoutResult(status -> rebuildChunk(chunkStart, end));
+        }
+        return (int) ChronoUnit.DAYS.between(from, to) + 1;
+    }
+
+    private void rebuildChunk(LocalDate from, LocalDate to) {
+        Timestamp start = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp end = Timestamp.valueOf(to.plusDays(1).atStartOfDay());
+        jdbcTemplate.update("DELETE FROM sales_rollup_hourly WHERE bucket_start >= ? AND bucket_start < ?", start, end);
+        jdbcTemplate.update("DELETE FROM sales_rollup_daily WHERE bucket_date >= ? AND bucket_date <= ?", Date.valueOf(from), Date.valueOf(to));
+        jdbcTemplate.update("DELETE FROM sales_rollup_member WHERE bucket_date >= ? AND bucket_date <= ?", Date.valueOf(from), Date.valueOf(to));
+
+        Map<LocalDateTime, Delta> hours = new TreeMap<>();
+        Map<LocalDate, Delta> days = new TreeMap<>();
+        jdbcTemplate.query(HOURLY_ORDERS_SQL, rs -> {
+            Delta d = hours.computeIfAbsent(rs.getDate(1).toLocalDate().atTime(rs.getInt(2), 0), k -> new Delta());
+            readOrderAgg(rs, 3, d);
+        }, start, end);
+        jdbcTemplate.query(DAILY_ORDERS_SQL, rs -> {
+            readOrderAgg(rs, 2, days.computeIfAbsent(rs.getDate(1).toLocalDate(), k -> new Delta()));
+        }, start, end);
+        jdbcTemplate.query(HOURLY_REFUNDS_SQL, rs -> {
+            LocalDateTime hour = rs.getDate(1).toLocalDate().atTime(rs.getInt(2), 0);
+            int count = rs.getInt(3);
+            double amount = rs.getDouble(4);
+            Delta h = hours.computeIfAbsent(hour, k -> new Delta());
+            h.refundCount += count;
+            h.refundAmount += amount;
+            Delta d = days.computeIfAbsent(hour.toLocalDate(), k -> new Delta());
+            d.refundCount += count;
+            d.refundAmount += amount;
+        }, start, end);
+
+        Set<String> memberKeys = new LinkedHashSet<>();
+        List<Object[]> memberRows = new ArrayList<>();
+        jdbcTemplate.query(MEMBER_KEYS_SQL, rs -> {
+            LocalDate day = rs.getDate(1).toLocalDate();
+            String memberId = rs.getString(3);
+            String hk = hourKey(day.atTime(rs.getInt(2), 0), memberId);
+            String dk = dayKey(day, memberId);
+            if (memberKeys.add(hk)) memberRows.add(new Object[]{hk, Date.valueOf(day)});
+            if (memberKeys.add(dk)) memberRows.add(new Object[]{dk, Date.valueOf(day)});
+        }, start, end);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> hourRows = new ArrayList<>(hours.size());
+        hours.forEach((h, d) -> hourRows.add(upsertArgs(Timestamp.valueOf(h), d, now)));
+        List<Object[]> dayRows = new ArrayList<>(days.size());
+        days.forEach((day, d) -> dayRows.add(upsertArgs(Date.valueOf(day), d, now)));
+        // 本区间的行刚删除，直接插入
+        if (!hourRows.isEmpty()) jdbcTemplate.batchUpdate(HOURLY_INSERT_SQL, hourRows);
+        if (!dayRows.isEmpty()) jdbcTemplate.batchUpdate(DAILY_INSERT_SQL, dayRows);
+        if (!memberRows.isEmpty()) jdbcTemplate.batchUpdate(MEMBER_INSERT_SQL, memberRows);
+    }
+
+    private static void readOrderAgg(java.sql.ResultSet rs, int col, Delta d) throws java.sql.SQLException {
+        d.orderCount += rs.getInt(col);
+        d.orderAmount += rs.getDouble(col + 1);
+        d.paidCount += rs.getInt(col + 2);
+        d.paidAmount += rs.getDouble(col + 3);
+        d.paidTotal += rs.getDouble(col + 4);
+        d.memberCount += rs.getInt(col + 5);
+    }
+
+    // ========== 工具 ==========
+
+    private static Object[] upsertArgs(Object key, Delta d, LocalDateTime now) {
+        return new Object[]{key, d.orderCount, d.orderAmount, d.paidCount, d.paidAmount, d.paidTotal,
+                d.refundCount, d.refundAmount, d.memberCount, Timestamp.valueOf(now)};
+    }
+
+    private static LocalDateTime hourOf(LocalDateTime t) {
+        return t.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private static String hourKey(LocalDateTime hour, String memberId) {
+        return "H|" + hour + "|" + memberId;
+    }
+
+    private static String dayKey(LocalDate day, String memberId) {
+        return "D|" + day + "|" + memberId;
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+}
@@ -1,14 +1,18 @@
 package com.pharmacy.service.impl;
 
 import com.pharmacy.entity.Order;
+import com.pharmacy.entity.SalesRollupMetrics;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.OrderItemRepository;
+import com.pharmacy.service.SalesRollupService;
 import com.pharmacy.service.StatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,8 +27,14 @@ public class StatsServiceImpl implements StatsService {
     @Autowired
     private OrderItemRepository orderItemRepository;
 
+    @Autowired
+    private SalesRollupService salesRollupService;
+
     @Override
     public Map<String, Object> getSalesStats(LocalDateTime startDate, LocalDateTime endDate) {
+        if (isWholeHour(startDate) && isWholeHour(endDate) && startDate.isBefore(endDate)) {
+            return getSalesStatsFromRollup(startDate, endDate);
+        }
         Map<String, Object> stats = new HashMap<>();
 
         // 总销售额 - 修复类型转换
@@ -60,6 +70,44 @@ public class StatsServiceImpl implements StatsService {
         return stats;
     }
 
+    /**
+     * 整点区间读取销售汇总：[start, end) 来自汇总表，BETWEEN 包含的 end 时刻单独补一次点查询，口径与原扫描一致
+     */
+    private Map<String, Object> getSalesStatsFromRollup(LocalDateTime startDate, LocalDateTime endDate) {
+        Map<LocalDate, SalesRollupMetrics> daily = salesRollupService.byDay(startDate, endDate);
+        Long endCount = orderRepository.countByOrderTimeBetween(endDate, endDate);
+        if (endCount != null && endCount > 0) {
+            SalesRollupMetrics edge = new SalesRollupMetrics();
+            edge.setOrderCount(endCount.intValue());
+            Double endSales = orderRepository.getTotalSalesByTimeRange(endDate, endDate);
+            edge.setOrderAmount(endSales != null ? endSales : 0.0);
+            daily.computeIfAbsent(endDate.toLocalDate(), k -> new SalesRollupMetrics()).add(edge);
+        }
+        long orderCount = 0;
+        double totalAmount = 0.0;
+        List<Map<String, Object>> dailySalesList = new ArrayList<>();
+        for (Map.Entry<LocalDate, SalesRollupMetrics> e : daily.entrySet()) {
+            SalesRollupMetrics m = e.getValue();
+            if (m.getOrderCount() <= 0) continue;
+            orderCount += m.getOrderCount();
+            totalAmount += m.getOrderAmount();
+            Map<String, Object> dailyData = new HashMap<>();
+            dailyData.put("date", java.sql.Date.valueOf(e.getKey()));
+            dailyData.put("sales", BigDecimal.valueOf(m.getOrderAmount()));
+            dailySalesList.add(dailyData);
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalSales", BigDecimal.valueOf(totalAmount));
+        stats.put("averageOrderValue", orderCount > 0 ? BigDecimal.valueOf(totalAmount / orderCount) : BigDecimal.ZERO);
+        stats.put("orderCount", orderCount);
+        stats.put("dailySales", dailySalesList);
+        return stats;
+    }
+
+    private static boolean isWholeHour(LocalDateTime t) {
+        return t != null && t.equals(t.truncatedTo(ChronoUnit.HOURS));
+    }
+
     @Override
     public Map<String, Object> getOrderStats(LocalDateTime startDate, LocalDateTime endDate) {
         Map<String, Object> stats = new HashMap<>();
@@ -0,0 +1,190 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.OutboxHandler;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.util.TransactionHooks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 事件驱动的库存预警：库存变动（收银、退款、入库、补货）提交后只对涉及的药品做阈值判断，
+ * 替代原先对全部低库存/近效期批次逐条查重再逐条保存的全量扫描。
+ * 未处理预警按租户缓存在内存索引（药品ID+预警类型），首次使用时加载一次；新预警批量插入。
+ * 全量扫描保留为低频兜底，同时用数据库重新校准索引。
+ */
+@Component
+public class StockAlertEngine implements OutboxHandler {
+
+    static final int TYPE_LOW_STOCK = 1;   // 库存不足
+    static final int TYPE_NEAR_EXPIRY = 2; // 近效期
+
+    private static final String LOAD_OPEN_SQL = "SELECT medicine_id, alert_type FROM stock_alert WHERE is_handled = false";
+    private static final String BATCHES_BY_MEDICINE_SQL = "SELECT medicine_id, stock_quantity, min_stock, expiry_date FROM inventory " +
+            "WHERE medicine_id IN (:ids) ORDER BY inventory_id";
+    private static final String SWEEP_SQL = "SELECT medicine_id, stock_quantity, min_stock, expiry_date FROM inventory " +
+            "WHERE (min_stock IS NOT NULL AND stock_quantity <= min_stock) OR expiry_date BETWEEN ? AND ? ORDER BY inventory_id";
+    private static final String INSERT_SQL = "INSERT INTO stock_alert (medicine_id, alert_type, current_stock, min_stock, expiry_date, " +
+            "alert_message, is_handled, create_time) VALUES (?, ?, ?, ?, ?, ?, false, ?)";
+    private static final int IN_CHUNK = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbc;
+
+    @Value("${inventory.alert.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.alert.expiry-warning-days:60}")
+    private int expiryWarningDays;
+
+    private record BatchRow(String medicineId, Integer stock, Integer minStock, LocalDate expiryDate) {}
+
+    /** 单个租户的未处理预警：键为 medicineId:alertType，值为未处理条数（兼容历史重复数据） */
+    private static final class OpenAlerts {
+        final Map<String, Integer> counts = new HashMap<>();
+        boolean loaded;
+    }
+
+    private final ConcurrentHashMap<String, OpenAlerts> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    public Set<String> eventTypes() {
+        return Set.of(OutboxService.STOCK_CHANGED);
+    }
+
+    @Override
+    public void handle(OutboxService.Event event) {
+        Object ids = event.payload().get("medicineIds");
+        if (!(ids instanceof Collection<?> list)) return;
+        Set<String> medicineIds = new LinkedHashSet<>();
+        for (Object id : list) {
+            if (id != null && !id.toString().isBlank()) medicineIds.add(id.toString());
+        }
+        evaluate(medicineIds);
+    }
+
+    /**
+     * 只对给定药品的批次判断低库存/近效期，已有未处理预警的跳过，返回新生成的预警条数
+     */
+    public int evaluate(Collection<String> medicineIds) {
+        if (!enabled || medicineIds == null || medicineIds.isEmpty()) return 0;
+        List<String> ids = new ArrayList<>(medicineIds);
+        String tenant = currentTenant();
+        OpenAlerts open = indexes.computeIfAbsent(tenant, t -> new OpenAlerts());
+        synchronized (open) {
+            ensureLoaded(open);
+            List<BatchRow> rows = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += IN_CHUNK) {
+                List<String> chunk = ids.subList(i, Math.min(ids.size(), i + IN_CHUNK));
+                rows.addAll(namedJdbc.query(BATCHES_BY_MEDICINE_SQL, Map.of("ids", chunk), StockAlertEngine::mapRow));
+            }
+            return insertNew(tenant, open, rows);
+        }
+    }
+
+    /**
+     * 兜底全量扫描：先按数据库重新加载未处理预警，再对所有低库存/近效期批次补生成预警
+     */
+    public int sweepCurrentTenant() {
+        if (!enabled) return 0;
+        String tenant = currentTenant();
+        OpenAlerts open = indexes.computeIfAbsent(tenant, t -> new OpenAlerts());
+        synchronized (open) {
+            open.loaded = false;
+            ensureLoaded(open);
+            LocalDate today = LocalDate.now();
+            List<BatchRow> rows = jdbcTemplate.query(SWEEP_SQL, StockAlertEngine::mapRow,
+                    Date.valueOf(today), Date.valueOf(today.plusDays(expiryWarningDays)));
+            return insertNew(tenant, open, rows);
+        }
+    }
+
+    /** 预警被标记为已处理（事务提交后调用），之后同类情况可再次生成 */
+    public void onHandled(String medicineId, Integer alertType) {
+        if (medicineId == null || alertType == null) return;
+        OpenAlerts open = indexes.get(currentTenant());
+        if (open == null) return;
+        synchronized (open) {
+            open.counts.computeIfPresent(key(medicineId, alertType), (k, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    /** 丢弃租户索引（租户下线时调用），下次使用时重新加载 */
+    public void evict(String tenant) {
+        if (tenant != null) indexes.remove(tenant);
+    }
+
+    private void ensureLoaded(OpenAlerts open) {
+        if (open.loaded) return;
+        open.counts.clear();
+        jdbcTemplate.query(LOAD_OPEN_SQL, rs -> {
+            open.counts.merge(key(rs.getString(1), rs.getInt(2)), 1, Integer::sum);
+        });
+        open.loaded = true;
+    }
+
+    private int insertNew(String tenant, OpenAlerts open, List<BatchRow> rows) {
+        LocalDate today = LocalDate.now();
+        LocalDate warningDate = today.plusDays(expiryWarningDays);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> inserts = new ArrayList<>();
+        for (BatchRow row : rows) {
+            if (row.minStock() != null && row.stock() != null && row.stock() <= row.minStock()
+                    && open.counts.putIfAbsent(key(row.medicineId(), TYPE_LOW_STOCK), 1) == null) {
+                inserts.add(new Object[]{row.medicineId(), TYPE_LOW_STOCK, row.stock(), row.minStock(), null, "药品库存低于安全库存", now});
+            }
+            if (row.expiryDate() != null && !row.expiryDate().isBefore(today) && !row.expiryDate().isAfter(warningDate)
+                    && open.counts.putIfAbsent(key(row.medicineId(), TYPE_NEAR_EXPIRY), 1) == null) {
+                inserts.add(new Object[]{row.medicineId(), TYPE_NEAR_EXPIRY, row.stock(), null,
+                        Timestamp.valueOf(row.expiryDate().atStartOfDay()), "药品即将过期", now});
+            }
+        }
+        if (inserts.isEmpty()) return 0;
+        // 索引已提前登记，事务回滚时整租户丢弃，下次使用重新加载
+        TransactionHooks.afterRollback(() -> indexes.remove(tenant, open));
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        } catch (RuntimeException e) {
+            indexes.remove(tenant, open);
+            throw e;
+        }
+        System.out.println("[StockAlert] 租户 " + tenant + " 新增预警 " + inserts.size() + " 条");
+        return inserts.size();
+    }
+
+    private static BatchRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Date expiry = rs.getDate("expiry_date");
+        return new BatchRow(rs.getString("medicine_id"), rs.getObject("stock_quantity", Integer.class),
+                rs.getObject("min_stock", Integer.class), expiry != null ? expiry.toLocalDate() : null);
+    }
+
+    private static String key(String medicineId, int alertType) {
+        return medicineId + ":" + alertType;
+    }
+
+    private static String currentTenant() {
+        String t = TenantContext.getTenant();
+        return t != null ? t : "default";
+    }
+}
@@ -8,6 +8,7 @@ import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.StockAlertRepository;
 import com.pharmacy.service.StockAlertService;
 import com.pharmacy.util.StockStatusUtil;
+import com.pharmacy.util.TransactionHooks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -31,6 +32,9 @@ public class StockAlertServiceImpl implements StockAlertService {
     @Autowired
     private StockAlertRepository stockAlertRepository;
 
+    @Autowired
+    private StockAlertEngine stockAlertEngine;
+
     private static final int EXPIRY_WARNING_DAYS = 60;
 
     @Override
@@ -52,8 +56,12 @@ public class StockAlertServiceImpl implements StockAlertService {
     public boolean handleAlert(Long alertId) {
         return stockAlertRepository.findById(alertId)
                 .map(alert -> {
+                    boolean wasOpen = !Boolean.TRUE.equals(alert.getIsHandled());
                     alert.setIsHandled(true);
                     stockAlertRepository.save(alert);
+                    if (wasOpen) {
+                        TransactionHooks.afterCommit(() -> stockAlertEngine.onHandled(alert.getMedicineId(), alert.getAlertType()));
+                    }
                     return true;
                 })
                 .orElse(false);
@@ -103,51 +111,9 @@ public class StockAlertServiceImpl implements StockAlertService {
 
     @Override
     public void checkAndGenerateAlerts() {
-        // 这里实现自动检查库存并生成预警的逻辑
-        // 由于时间关系，暂时简单实现
-
+        // 日常预警由库存变动事件增量生成（见 StockAlertEngine），这里只做全量兜底
         try {
-            // 检查低库存
-            List<Inventory> lowStockInventories = inventoryRepository.findLowStock();
-            for (Inventory inventory : lowStockInventories) {
-                // 检查是否已经存在未处理的相同预警
-                List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
-                        inventory.getMedicineId(), 1); // 1-库存不足
-
-                if (existingAlerts.isEmpty()) {
-                    StockAlert alert = new StockAlert();
-                    alert.setMedicineId(inventory.getMedicineId());
-                    alert.setAlertType(1); // 库存不足
-                    alert.setCurrentStock(inventory.getStockQuantity());
-                    alert.setMinStock(inventory.getMinStock());
-                    alert.setAlertMessage("药品库存低于安全库存");
-                    alert.setIsHandled(false);
-                    stockAlertRepository.save(alert);
-                }
-            }
-
-            // 检查近效期药品
-            LocalDate warningDate = LocalDate.now().plusDays(EXPIRY_WARNING_DAYS);
-            List<Inventory> expiringInventories = inventoryRepository.findExpiringSoon(LocalDate.now(), warningDate);
-
-            for (Inventory inventory : expiringInventories) {
-                if (inventory.getExpiryDate() != null) {
-                    List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
-                            inventory.getMedicineId(), 2); // 2-近效期
-
-                    if (existingAlerts.isEmpty()) {
-                        StockAlert alert = new StockAlert();
-                        alert.setMedicineId(inventory.getMedicineId());
-                        alert.setAlertType(2); // 近效期
-                        alert.setCurrentStock(inventory.getStockQuantity());
-                        alert.setExpiryDate(inventory.getExpiryDate().atStartOfDay());
-                        alert.setAlertMessage("药品即将过期");
-                        alert.setIsHandled(false);
-                        stockAlertRepository.save(alert);
-                    }
-                }
-            }
-
+            stockAlertEngine.sweepCurrentTenant();
         } catch (Exception e) {
             System.err.println("生成库存预警失败: " + e.getMessage());
         }
@@ -0,0 +1,672 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.StockIn;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.StockInRepository;
+import com.pharmacy.repository.SupplierRepository;
+import com.pharmacy.service.DocumentNumberService;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.service.StockInImportService;
+import com.pharmacy.util.TransactionHooks;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 入库批量导入：xlsx 通过 XSSFReader + SAX 逐行回调，CSV 通过 BufferedReader 逐行读取，内存中只保留一个数据块。
+ * 每块先用一条 IN 查询按 ID/条码/批准文号/通用名解析药品，缺失药品、入库明细、库存增减均以 JDBC 批量写入；
+ * 单行错误记录后跳过，不再让整单失败。.xls（BIFF）没有事件模型的行级接口，仍按 DOM 读取。
+ */
+@Service
+public class StockInImportServiceImpl implements StockInImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 500;
+    private static final long PROGRESS_RETAIN_MILLIS = 30 * 60_000L;
+
+    private static final String[] ID_ALIASES = {"medicineid", "medicine id", "medicine", "medid", "条码", "条形码", "barcode", "approvalno"};
+    private static final String[] HEADER_CANDIDATES = {"通用名", "generic", "genericname", "商品名", "trade", "tradename", "数量", "qty", "quantity",
+            "进货价", "unitprice", "price", "批号", "batch", "到期日期", "expiry", "expirydate", "条形码", "barcode", "批准文号", "approvalno",
+            "规格", "spec", "生产厂家", "manufacturer"};
+
+    @Autowired
+    private StockInRepository stockInRepository;
+
+    @Autowired
+    private SupplierRepository supplierRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbc;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private MedicineSearchIndex medicineSearchIndex;
+
+    @Autowired
+    private DocumentNumberService documentNumberService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Value("${stock-in.import.chunk-size:500}")
+    private int chunkSize;
+
+    // tenant:importId -> 进度
+    private final ConcurrentHashMap<String, Progress> progressMap = new ConcurrentHashMap<>();
+
+    private static final class Progress {
+        volatile String status = "RUNNING";
+        volatile int processedRows;
+        volatile int importedRows;
+        volatile int errorCount;
+        final long startedAt = System.currentTimeMillis();
+        volatile long finishedAt;
+    }
+
+    // 一行解析结果
+    private static final class ImportRow {
+        int rowNum;
+        String medicineId, genericName, tradeName, spec, manufacturer, approvalNo, barcode, unit, batchNumber;
+        int quantity;
+        double unitPrice, retailPrice, memberPrice;
+        LocalDate expiryDate;
+        String resolvedId;
+    }
+
+    /** 单次导入的状态：当前块、跨块复用的药品解析结果、汇总计数 */
+    private final class ImportJob {
+        final long startedMillis = System.currentTimeMillis();
+        final Progress progress;
+        final List<ImportRow> chunk = new ArrayList<>();
+        final List<RowError> errors = new ArrayList<>();
+        final Map<String, String> byId = new HashMap<>();
+        final Map<String, String> byBarcode = new HashMap<>();
+        final Map<String, String> byApproval = new HashMap<>();
+        final Map<String, String> byGeneric = new HashMap<>();
+        final Map<String, String> createdByRawId = new HashMap<>();
+        final Set<String> queriedKeys = new HashSet<>();
+        final Set<String> queriedGenerics = new HashSet<>();
+        final Set<String> stockedMedicines = new LinkedHashSet<>();
+        Map<String, Integer> header;
+        boolean headerChecked;
+        StockIn stockIn;
+        int totalRows, importedRows, createdMedicines, errorCount;
+        double totalAmount;
+
+        ImportJob(Progress progress) { this.progress = progress; }
+
+        void error(int row, String message) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(row, message));
+            if (progress != null) progress.errorCount = errorCount;
+        }
+
+        /** 处理一行原始单元格；首个非空行识别为表头时只记录列映射，否则按默认列位置解析 */
+        void accept(int rowNum, String[] cells) {
+            if (isBlankRow(cells)) return;
+            boolean first = !headerChecked;
+            headerChecked = true;
+            if (first && looksLikeHeader(cells)) {
+                header = new HashMap<>();
+                for (int i = 0; i < cells.length; i++) {
+                    if (cells[i] != null) header.put(cells[i].trim().toLowerCase(), i);
+                }
+                return;
+            }
+            totalRows++;
+            ImportRow r = parseRow(this, rowNum, cells);
+            if (r != null) chunk.add(r);
+            if (chunk.size() >= Math.max(1, chunkSize)) flushChunk(this);
+            if (progress != null) progress.processedRows = totalRows;
+        }
+    }
+
+    @Override
+    @Transactional
+    public ImportResult importFile(InputStream in, String filename, Integer supplierId, String importId) throws Exception {
+        String name = filename == null ? "" : filename.toLowerCase();
+        Progress progress = null;
+        if (importId != null && !importId.isBlank()) {
+            purgeOldProgress();
+            progress = new Progress();
+            progressMap.put(progressKey(importId), progress);
+        }
+        ImportJob job = new ImportJob(progress);
+        try {
+            job.stockIn = createHeader(supplierId);
+            if (name.endsWith(".xlsx")) {
+                readXlsx(in, job);
+            } else if (name.endsWith(".xls")) {
+                readXls(in, job);
+            } else {
+                readCsv(in, job);
+            }
+            flushChunk(job);
+
+            if (job.importedRows == 0) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            } else {
+                job.stockIn.setTotalAmount(round2(job.totalAmount));
+                List<String> medicineIds = new ArrayList<>(job.stockedMedicines);
+                outboxService.publish(OutboxService.STOCK_IN_RECEIVED, job.stockIn.getStockInNo(),
+                        Map.of("stockInId", job.stockIn.getStockInId(), "medicineIds", medicineIds));
+                outboxService.publish(OutboxService.STOCK_CHANGED, job.stockIn.getStockInNo(), Map.of("medicineIds", medicineIds));
+            }
+            System.out.println("[StockInImport] tenant=" + currentTenant() + " file=" + filename + " rows=" + job.totalRows
+                    + " imported=" + job.importedRows + " createdMedicines=" + job.createdMedicines + " errors=" + job.errorCount
+                    + " cost=" + (System.currentTimeMillis() - job.startedMillis) + "ms");
+            finish(progress, job, job.importedRows == 0 ? "FAILED" : "DONE");
+            boolean saved = job.importedRows > 0;
+            return new ImportResult(saved ? job.stockIn.getStockInId() : null, saved ? job.stockIn.getStockInNo() : null,
+                    job.totalRows, job.importedRows, saved ? job.createdMedicines : 0, round2(job.totalAmount),
+                    job.errorCount, job.errors);
+        } catch (Exception e) {
+            finish(progress, job, "FAILED");
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Object> progress(String importId) {
+        if (importId == null) return null;
+        Progress p = progressMap.get(progressKey(importId));
+        if (p == null) return null;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("importId", importId);
+        out.put("status", p.status);
+        out.put("processedRows", p.processedRows);
+        out.put("importedRows", p.importedRows);
+        out.put("errorCount", p.errorCount);
+        out.put("elapsedMs", (p.finishedAt > 0 ? p.finishedAt : System.currentTimeMillis()) - p.startedAt);
+        return out;
+    }
+
+    // ========== 读取 ==========
+
+    /** xlsx：落盘后以只读方式打开包，共享字符串只读表 + SAX 解析第一个工作表 */
+    private void readXlsx(InputStream in, ImportJob job) throws Exception {
+        Path tmp = Files.createTempFile("stockin-import-", ".xlsx");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            try (OPCPackage pkg = OPCPackage.open(tmp.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                if (!sheets.hasNext()) throw new IllegalArgumentException("Excel 文件没有工作表");
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings,
+                            new RowCollector(job), new IsoDateFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** SAX 行回调：按单元格引用还原列位置，缺失单元格补空串 */
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final ImportJob job;
+        private final List<String> cells = new ArrayList<>();
+        private int rowNum;
+
+        RowCollector(ImportJob job) { this.job = job; }
+
+        @Override
+        public void startRow(int rowNum) {
+            this.rowNum = rowNum;
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            job.accept(rowNum + 1, cells.toArray(new String[0]));
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference == null ? cells.size() : new CellReference(cellReference).getCol();
+            while (cells.size() < col) cells.add("");
+            if (cells.size() == col) cells.add(formattedValue);
+            else cells.set(col, formattedValue);
+        }
+    }
+
+    /** 日期单元格统一输出 yyyy-MM-dd，其余按 Excel 显示格式 */
+    private static final class IsoDateFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value, use1904Windowing).toLocalDate().toString();
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+        }
+    }
+
+    private void readXls(InputStream in, ImportJob job) throws Exception {
+        try (Workbook wb = WorkbookFactory.create(in)) {
+            if (wb.getNumberOfSheets() == 0) throw new IllegalArgumentException("Excel 文件没有工作表");
+            Sheet sheet = wb.getSheetAt(0);
+            for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); r++) {
+                Row row = sheet.getRow(r);
+                if (row == null || row.getLastCellNum() <= 0) continue;
+                String[] cells = new String[row.getLastCellNum()];
+                for (int c = 0; c < cells.length; c++) cells[c] = cellToString(row.getCell(c));
+                job.accept(r + 1, cells);
+            }
+        }
+    }
+
+    /** CSV：前 5 个非空行内找表头（表头之前的行视为说明文字），之后逐行处理 */
+    private void readCsv(InputStream in, ImportJob job) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Object[]> head = new ArrayList<>(5);
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (lineNo == 1 && line.startsWith("\uFEFF")) line = line.substring(1);
+            if (line.trim().isEmpty()) continue;
+            String[] cells = splitCsvLine(line);
+            if (head != null) {
+                head.add(new Object[]{lineNo, cells});
+                if (head.size() == 5) {
+                    acceptHead(job, head);
+                    head = null;
+                }
+                continue;
+            }
+            job.accept(lineNo, cells);
+        }
+        if (head != null) acceptHead(job, head);
+    }
+
+    private void acceptHead(ImportJob job, List<Object[]> head) {
+        int headerIdx = 0;
+        for (int i = 0; i < head.size(); i++) {
+            if (looksLikeHeader((String[]) head.get(i)[1])) { headerIdx = i; break; }
+        }
+        for (int i = headerIdx; i < head.size(); i++) job.accept((Integer) head.get(i)[0], (String[]) head.get(i)[1]);
+    }
+
+    // ========== 行解析 ==========
+
+    private ImportRow parseRow(ImportJob job, int rowNum, String[] cells) {
+        Map<String, Integer> hdr = job.header;
+        ImportRow r = new ImportRow();
+        r.rowNum = rowNum;
+        r.medicineId = column(cells, hdr, 0, ID_ALIASES);
+        String qtyS = column(cells, hdr, 1, "数量", "qty", "quantity");
+        String priceS = column(cells, hdr, 2, "进货价", "unitprice", "price", "cost");
+        r.batchNumber = column(cells, hdr, 3, "批号", "batch");
+        String expiry = column(cells, hdr, 4, "到期日期", "expiry", "expirydate");
+        r.genericName = column(cells, hdr, -1, "通用名", "generic", "genericname");
+        r.tradeName = column(cells, hdr, -1, "商品名", "trade", "tradename");
+        r.spec = column(cells, hdr, -1, "规格", "spec");
+        r.manufacturer = column(cells, hdr, -1, "生产厂家", "manufacturer");
+        r.approvalNo = column(cells, hdr, -1, "批准文号", "approvalno");
+        r.barcode = column(cells, hdr, -1, "条形码", "barcode");
+        r.unit = column(cells, hdr, -1, "单位", "unit");
+        String retailS = column(cells, hdr, -1, "零售价", "retail", "retailprice");
+        String memberS = column(cells, hdr, -1, "会员价", "memberprice");
+        try {
+            r.quantity = isBlank(qtyS) ? 0 : (int) Math.round(Double.parseDouble(qtyS));
+            r.unitPrice = isBlank(priceS) ? 0.0 : Double.parseDouble(priceS);
+            r.retailPrice = isBlank(retailS) ? 0.0 : Double.parseDouble(retailS);
+            r.memberPrice = isBlank(memberS) ? 0.0 : Double.parseDouble(memberS);
+        } catch (NumberFormatException e) {
+            job.error(rowNum, "数量或价格不是有效数字");
+            return null;
+        }
+        if (r.quantity <= 0) {
+            job.error(rowNum, "数量必须大于0");
+            return null;
+        }
+        if (!isBlank(expiry)) {
+            try { r.expiryDate = LocalDate.parse(expiry.length() > 10 ? expiry.substring(0, 10) : expiry); } catch (Exception ignored) { /* 保持为空 */ }
+        }
+        if (isBlank(r.batchNumber)) r.batchNumber = "DEFAULT_BATCH";
+        if (isBlank(r.unit)) r.unit = "盒";
+        return r;
+    }
+
+    private static String column(String[] cells, Map<String, Integer> hdr, int defaultIdx, String... aliases) {
+        Integer idx = null;
+        if (hdr != null) {
+            for (String a : aliases) {
+                idx = hdr.get(a.toLowerCase());
+                if (idx != null) break;
+            }
+        }
+        if (idx == null) idx = defaultIdx >= 0 ? defaultIdx : null;
+        if (idx == null || idx >= cells.length || cells[idx] == null) return null;
+        String v = cells[idx].trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    // ========== 分块写入 ==========
+
+    private void flushChunk(ImportJob job) {
+        if (job.chunk.isEmpty()) return;
+        List<ImportRow> rows = new ArrayList<>(job.chunk);
+        job.chunk.clear();
+
+        resolveMedicines(job, rows);
+
+        List<ImportRow> valid = new ArrayList<>(rows.size());
+        List<Object[]> newMedicines = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (ImportRow r : rows) {
+            String mid = lookup(job, r);
+            if (mid == null) {
+                if (isBlank(r.genericName) && isBlank(r.medicineId)) {
+                    job.error(r.rowNum, "药品不存在且缺少可用的通用名或ID");
+                    continue;
+                }
+                mid = newMedicine(job, r, newMedicines, now);
+            }
+            r.resolvedId = mid;
+            valid.add(r);
+        }
+
+        if (!newMedicines.isEmpty()) {
+            List<Object[]> created = newMedicines;
+            TransactionHooks.afterCommit(() -> {
+                for (Object[] m : created) {
+                    medicineSearchIndex.upsert((String) m[0], (String) m[1], (String) m[2], null, (String) m[6], (String) m[3], (String) m[11], false);
+                }
+            });
+            jdbcTemplate.batchUpdate("INSERT INTO medicine (medicine_id, generic_name, trade_name, spec, approval_no, category_id, manufacturer, "
+                    + "retail_price, member_price, is_rx, unit, barcode, status, deleted, create_time, update_time) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", newMedicines);
+        }
+        if (valid.isEmpty()) return;
+
+        Long stockInId = job.stockIn.getStockInId();
+        List<Object[]> items = new ArrayList<>(valid.size());
+        for (ImportRow r : valid) {
+            job.stockedMedicines.add(r.resolvedId);
+            items.add(new Object[]{stockInId, r.resolvedId, r.quantity, r.unitPrice, r.batchNumber,
+                    r.expiryDate == null ? null : Date.valueOf(r.expiryDate)});
+            job.totalAmount += r.quantity * r.unitPrice;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO stock_in_item (stock_in_id, medicine_id, quantity, unit_price, batch_number, expiry_date) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", items);
+
+        upsertInventory(valid, now);
+
+        job.importedRows += valid.size();
+        if (job.progress != null) job.progress.importedRows = job.importedRows;
+    }
+
+    /** 一条 IN 查询解析本块内尚未见过的 ID/条码/批准文号/通用名 */
+    private void resolveMedicines(ImportJob job, List<ImportRow> rows) {
+        Set<String> keys = new HashSet<>();
+        Set<String> generics = new HashSet<>();
+        for (ImportRow r : rows) {
+            for (String k : new String[]{r.medicineId, r.barcode, r.approvalNo}) {
+                if (!isBlank(k) && job.queriedKeys.add(k)) keys.add(k);
+            }
+            if (!isBlank(r.genericName) && job.queriedGenerics.add(r.genericName)) generics.add(r.genericName);
+        }
+        if (keys.isEmpty() && generics.isEmpty()) return;
+
+        StringBuilder sql = new StringBuilder("SELECT medicine_id, barcode, approval_no, generic_name, spec, manufacturer FROM medicine WHERE ");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (!keys.isEmpty()) {
+            sql.append("(medicine_id IN (:keys) OR barcode IN (:keys) OR approval_no IN (:keys))");
+            params.addValue("keys", keys);
+        }
+        if (!generics.isEmpty()) {
+            if (!keys.isEmpty()) sql.append(" OR ");
+            sql.append("generic_name IN (:generics)");
+            params.addValue("generics", generics);
+        }
+        namedJdbc.query(sql.toString(), params, rs -> {
+            String id = rs.getString(1);
+            job.byId.put(id, id);
+            String barcode = rs.getString(2);
+            if (barcode != null) job.byBarcode.putIfAbsent(barcode, id);
+            String approval = rs.getString(3);
+            if (approval != null) job.byApproval.putIfAbsent(approval, id);
+            String generic = rs.getString(4);
+            if (generic != null) job.byGeneric.putIfAbsent(genericKey(generic, rs.getString(5), rs.getString(6)), id);
+        });
+    }
+
+    private String lookup(ImportJob job, ImportRow r) {
+        String mid = null;
+        if (!isBlank(r.medicineId)) {
+            mid = job.byId.get(r.medicineId);
+            if (mid == null) mid = job.byBarcode.get(r.medicineId);
+            if (mid == null) mid = job.byApproval.get(r.medicineId);
+        }
+        if (mid == null && !isBlank(r.barcode)) mid = job.byBarcode.get(r.barcode);
+        if (mid == null && !isBlank(r.approvalNo)) mid = job.byApproval.get(r.approvalNo);
+        if (mid == null && !isBlank(r.genericName)) mid = job.byGeneric.get(genericKey(r.genericName, r.spec, r.manufacturer));
+        if (mid == null && !isBlank(r.medicineId)) mid = job.createdByRawId.get(r.medicineId);
+        return mid;
+    }
+
+    /** 生成自动建档的药品行，并登记到解析表，同一文件后续行直接复用 */
+    private String newMedicine(ImportJob job, ImportRow r, List<Object[]> out, Timestamp now) {
+        String id = documentNumberService.nextMedicineId();
+        String generic = !isBlank(r.genericName) ? r.genericName : (!isBlank(r.tradeName) ? r.tradeName : id);
+        String approval = !isBlank(r.approvalNo) && !job.byApproval.containsKey(r.approvalNo)
+                ? r.approvalNo : "AUTO-" + id;
+        out.add(new Object[]{id, generic, r.tradeName, r.spec == null ? "" : r.spec, approval, 1, r.manufacturer,
+                r.retailPrice > 0 ? r.retailPrice : 0.0, r.memberPrice > 0 ? r.memberPrice : null, false, r.unit,
+                r.barcode, "ACTIVE", false, now, now});
+        job.createdMedicines++;
+        job.byId.put(id, id);
+        job.byApproval.put(approval, id);
+        if (!isBlank(r.barcode)) job.byBarcode.putIfAbsent(r.barcode, id);
+        if (!isBlank(r.genericName)) job.byGeneric.putIfAbsent(genericKey(r.genericName, r.spec, r.manufacturer), id);
+        if (!isBlank(r.medicineId)) job.createdByRawId.put(r.medicineId, id);
+        return id;
+    }
+
+    /** 同药品同批号合并后：已有批次批量累加，新批次批量插入；库存账本在提交后同步 */
+    private void upsertInventory(List<ImportRow> rows, Timestamp now) {
+        Map<String, ImportRow> merged = new LinkedHashMap<>();
+        Map<String, Integer> qtyByKey = new HashMap<>();
+        for (ImportRow r : rows) {
+            String key = r.resolvedId + "\u0001" + r.batchNumber;
+            merged.putIfAbsent(key, r);
+            qtyByKey.merge(key, r.quantity, Integer::sum);
+        }
+        Set<String> medicineIds = new HashSet<>();
+        for (ImportRow r : merged.values()) medicineIds.add(r.resolvedId);
+
+        Map<String, Long> existing = loadBatchIds(medicineIds);
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        for (Map.Entry<String, ImportRow> e : merged.entrySet()) {
+            ImportRow r = e.getValue();
+            int qty = qtyByKey.get(e.getKey());
+            Long invId = existing.get(e.getKey());
+            if (invId != null) {
+                updates.add(new Object[]{qty, now, invId});
+                stockLedger.recordDelta(r.resolvedId, invId, qty);
+            } else {
+                inserts.add(new Object[]{r.resolvedId, r.batchNumber, qty, r.expiryDate == null ? null : Date.valueOf(r.expiryDate),
+                        r.unitPrice, now, now});
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE inventory SET stock_quantity = stock_quantity + ?, update_time = ? WHERE inventory_id = ?", updates);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO inventory (medicine_id, batch_no, stock_quantity, expiry_date, purchase_price, create_time, update_time) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)", inserts);
+            Set<String> insertedMeds = new HashSet<>();
+            for (Object[] row : inserts) insertedMeds.add((String) row[0]);
+            Map<String, Long> ids = loadBatchIds(insertedMeds);
+            for (Object[] row : inserts) {
+                Long id = ids.get(row[0] + "\u0001" + row[1]);
+                if (id == null) continue;
+                Inventory inv = new Inventory((String) row[0], (String) row[1], (Integer) row[2], null);
+                inv.setId(id);
+                stockLedger.recordBatch(inv);
+            }
+        }
+    }
+
+    // medicineId + 批号 -> inventory_id（同批号多行时取最早的一行，与原逐行导入一致）
+    private Map<String, Long> loadBatchIds(Set<String> medicineIds) {
+        Map<String, Long> out = new HashMap<>();
+        if (medicineIds.isEmpty()) return out;
+        namedJdbc.query("SELECT inventory_id, medicine_id, batch_no FROM inventory WHERE medicine_id IN (:ids) ORDER BY inventory_id",
+                new MapSqlParameterSource("ids", medicineIds),
+                rs -> { out.putIfAbsent(rs.getString(2) + "\u0001" + rs.getString(3), rs.getLong(1)); });
+        return out;
+    }
+
+    // ========== 工具 ==========
+
+    private StockIn createHeader(Integer supplierId) {
+        StockIn stockIn = new StockIn();
+        supplierRepository.findById(supplierId != null ? supplierId : 1).ifPresent(stockIn::setSupplier);
+        stockIn.setStockInDate(LocalDateTime.now());
+        stockIn.setStockInNo(documentNumberService.nextStockInNo());
+        stockIn.setStatus(1);
+        stockIn.setTotalAmount(0.0);
+        // 先落库拿到主键，明细随后以 JDBC 批量写入
+        return stockInRepository.saveAndFlush(stockIn);
+    }
+
+    private boolean looksLikeHeader(String[] cells) {
+        String low = String.join(",", cells).toLowerCase();
+        int hits = 0;
+        for (String c : HEADER_CANDIDATES) {
+            if (low.contains(c)) hits++;
+        }
+        return hits >= 2;
+    }
+
+    private static boolean isBlankRow(String[] cells) {
+        for (String c : cells) {
+            if (c != null && !c.trim().isEmpty()) return false;
+        }
+        return true;
+    }
+
+    private static String genericKey(String generic, String spec, String manufacturer) {
+        return generic + "\u0001" + (spec == null ? "" : spec) + "\u0001" + (manufacturer == null ? "" : manufacturer);
+    }
+
+    private static String cellToString(Cell cell) {
+        if (cell == null) return "";
+        return switch (cell.getCellType()) {
+            case STRING -> cell.getStringCellValue();
+            case BOOLEAN -> String.valueOf(cell.getBooleanCellValue());
+            case NUMERIC -> DateUtil.isCellDateFormatted(cell)
+                    ? cell.getLocalDateTimeCellValue().toLocalDate().toString()
+                    : String.valueOf(cell.getNumericCellValue());
+            case FORMULA -> {
+                try { yield cell.getStringCellValue(); } catch (Exception ex) { yield String.valueOf(cell.getNumericCellValue()); }
+            }
+            default -> "";
+        };
+    }
+
+    // 简单 CSV 行分割，支持用双引号包裹含逗号字段
+    private static String[] splitCsvLine(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+                continue;
+            }
+            if (ch == ',' && !inQuotes) {
+                out.add(cur.toString());
+                cur.setLength(0);
+                continue;
+            }
+            cur.append(ch);
+        }
+        out.add(cur.toString());
+        return out.toArray(new String[0]);
+    }
+
+    private void finish(Progress progress, ImportJob job, String status) {
+        if (progress == null) return;
+        progress.processedRows = job.totalRows;
+        progress.importedRows = job.importedRows;
+        progress.errorCount = job.errorCount;
+        progress.status = status;
+        progress.finishedAt = System.currentTimeMillis();
+    }
+
+    private void purgeOldProgress() {
+        long now = System.currentTimeMillis();
+        progressMap.values().removeIf(p -> p.finishedAt > 0 && now - p.finishedAt > PROGRESS_RETAIN_MILLIS);
+    }
+
+    private static String progressKey(String importId) {
+        return currentTenant() + ":" + importId;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0;
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+}
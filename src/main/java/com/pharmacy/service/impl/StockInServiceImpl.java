@@ -5,6 +5,7 @@ import com.pharmacy.entity.StockInItem;
 import com.pharmacy.repository.StockInRepository;
 import com.pharmacy.repository.StockInItemRepository;
 import com.pharmacy.repository.SupplierRepository;
+import com.pharmacy.service.DocumentNumberService;
 import com.pharmacy.service.StockInService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -29,6 +30,9 @@ public class StockInServiceImpl implements StockInService {
     @Autowired
     private SupplierRepository supplierRepository;
 
+    @Autowired
+    private DocumentNumberService documentNumberService;
+
     @Override
     public Page<StockIn> findAll(Pageable pageable) {
         return stockInRepository.findAll(pageable);
@@ -189,6 +193,6 @@ public class StockInServiceImpl implements StockInService {
 
     @Override
     public String generateStockInNo() {
-        return "SI" + System.currentTimeMillis();
+        return documentNumberService.nextStockInNo();
     }
 }
\ No newline at end of file
@@ -0,0 +1,352 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.util.TransactionHooks;
+import com.pharmacy.util.WorkerThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 按租户划分的内存库存账本：medicineId -> (批次ID -> 数量)，批次用原始 long/int 数组保存，避免装箱。
+ * 启动时从 inventory 表预热，结账/退款/入库/补货在事务提交后同步更新，读请求直接内存返回。
+ * 数据库仍是唯一写入口（条件扣减依赖它），账本只做读侧缓存；漏掉的写路径由定时对账修正。
+ * 预热/对账按药品逐个比对版本替换：写事务在提交前登记、完成后注销，扫描期间有过写入或仍有
+ * 未完成事务的药品不用扫描结果覆盖，改为单独重读，避免提交后增量被覆盖丢失或重复叠加。
+ */
+@Component
+public class StockLedger {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${inventory.ledger.enabled:true}")
+    private boolean enabled;
+    @Value("${inventory.ledger.warm-retry-seconds:30}")
+    private long warmRetrySeconds;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private static final String LOAD_ALL_SQL = "SELECT inventory_id, medicine_id, stock_quantity FROM inventory";
+    private static final String LOAD_ONE_SQL = "SELECT inventory_id, stock_quantity FROM inventory WHERE medicine_id = ?";
+    private static final int SETTLE_ATTEMPTS = 3;
+
+    // tenant -> 账本；写路径会先建出未就绪的账本用于登记，预热完成前读取返回 null 由调用方回落数据库
+    private final ConcurrentHashMap<String, TenantLedger> ledgers = new ConcurrentHashMap<>();
+
+    // 首次读取触发的预热在后台执行，不占用请求线程
+    private ThreadPoolExecutor warmPool;
+
+    /** 单租户账本 */
+    private static final class TenantLedger {
+        final ConcurrentHashMap<String, MedicineStock> byMedicine = new ConcurrentHashMap<>();
+        final AtomicBoolean warming = new AtomicBoolean();
+        volatile boolean ready;
+        volatile long retryAfter;
+
+        MedicineStock stock(String medicineId) {
+            return byMedicine.computeIfAbsent(medicineId, k -> new MedicineStock());
+        }
+    }
+
+    /** 单药品的批次库存：批次数通常很少，线性查找即可 */
+    private static final class MedicineStock {
+        private long[] batchIds = new long[2];
+        private int[] quantities = new int[2];
+        private int size;
+        private volatile int total;
+        // 每次变更递增；pending 为已登记未完成的写事务数
+        private long version;
+        private int pending;
+        // 预热时未能与数据库对齐，读取回落数据库，下次对账再修正
+        private volatile boolean stale;
+
+        synchronized void begin() {
+            pending++;
+            version++;
+        }
+
+        synchronized void end() {
+            pending--;
+            version++;
+        }
+
+        synchronized void add(long batchId, int delta) {
+            int idx = indexOf(batchId);
+            if (idx < 0) idx = append(batchId);
+            quantities[idx] += delta;
+            total += delta;
+            version++;
+        }
+
+        synchronized void set(long batchId, int quantity) {
+            int idx = indexOf(batchId);
+            if (idx < 0) idx = append(batchId);
+            total += quantity - quantities[idx];
+            quantities[idx] = quantity;
+            version++;
+        }
+
+        synchronized void remove(long batchId) {
+            int idx = indexOf(batchId);
+            if (idx < 0) return;
+            total -= quantities[idx];
+            size--;
+            batchIds[idx] = batchIds[size];
+            quantities[idx] = quantities[size];
+            version++;
+        }
+
+        /** 没有未完成事务时返回当前版本，否则 -1 */
+        synchronized long stableVersion() {
+            return pending > 0 ? -1 : version;
+        }
+
+        /** 版本未变且没有未完成事务时用数据库结果整体替换 */
+        synchronized boolean replaceIf(long expectedVersion, MedicineStock fresh) {
+            if (expectedVersion < 0 || pending > 0 || version != expectedVersion) return false;
+            batchIds = Arrays.copyOf(fresh.batchIds, Math.max(2, fresh.size));
+            quantities = Arrays.copyOf(fresh.quantities, Math.max(2, fresh.size));
+            size = fresh.size;
+            total = fresh.total;
+            stale = false;
+            version++;
+            return true;
+        }
+
+        int total() { return total; }
+
+        private int indexOf(long batchId) {
+            for (int i = 0; i < size; i++) if (batchIds[i] == batchId) return i;
+            return -1;
+        }
+
+        private int append(long batchId) {
+            if (size == batchIds.length) {
+                batchIds = Arrays.copyOf(batchIds, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+            }
+            batchIds[size] = batchId;
+            quantities[size] = 0;
+            return size++;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        warmPool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(64),
+                WorkerThreads.factory("stock-ledger-warm", virtualThreads), new ThreadPoolExecutor.AbortPolicy());
+        warmPool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (warmPool != null) warmPool.shutdownNow();
+    }
+
+    // ========== 读取 ==========
+
+    /** 药品总库存；当前租户账本不可用时返回 null */
+    public Integer getTotal(String medicineId) {
+        TenantLedger ledger = ledgerForRead();
+        if (ledger == null || medicineId == null) return null;
+        MedicineStock ms = ledger.byMedicine.get(medicineId);
+        if (ms == null) return 0;
+        return ms.stale ? null : ms.total();
+    }
+
+    /** 当前租户所有药品的总库存快照；账本不可用时返回 null */
+    public Map<String, Integer> getTotals() {
+        TenantLedger ledger = ledgerForRead();
+        if (ledger == null) return null;
+        Map<String, Integer> result = new HashMap<>(ledger.byMedicine.size() * 2);
+        for (Map.Entry<String, MedicineStock> e : ledger.byMedicine.entrySet()) {
+            if (e.getValue().stale) return null;
+            result.put(e.getKey(), e.getValue().total());
+        }
+        return result;
+    }
+
+    // ========== 写入（事务内登记，提交后生效） ==========
+
+    /** 批次增量变化（扣减为负数） */
+    public void recordDelta(String medicineId, Long inventoryId, int delta) {
+        if (medicineId == null || inventoryId == null || delta == 0) return;
+        long id = inventoryId;
+        track(medicineId, ms -> ms.add(id, delta));
+    }
+
+    /** 批次保存后的绝对数量（入库、补货、手工编辑） */
+    public void recordBatch(Inventory inv) {
+        if (inv == null || inv.getId() == null || inv.getMedicineId() == null) return;
+        long id = inv.getId();
+        int qty = inv.getStockQuantity() == null ? 0 : inv.getStockQuantity();
+        track(inv.getMedicineId(), ms -> ms.set(id, qty));
+    }
+
+    /** 批次删除 */
+    public void removeBatch(String medicineId, Long inventoryId) {
+        if (medicineId == null || inventoryId == null) return;
+        long id = inventoryId;
+        track(medicineId, ms -> ms.remove(id));
+    }
+
+    /** 事务内登记药品有未完成写入，提交后应用变更，回滚时只注销 */
+    private void track(String medicineId, Consumer<MedicineStock> change) {
+        if (!enabled) return;
+        MedicineStock ms = ledgers.computeIfAbsent(currentTenant(), k -> new TenantLedger()).stock(medicineId);
+        ms.begin();
+        TransactionHooks.afterRollback(ms::end);
+        TransactionHooks.afterCommit(() -> {
+            try {
+                change.accept(ms);
+            } finally {
+                ms.end();
+            }
+        });
+    }
+
+    // ========== 预热与对账 ==========
+
+    /** 从数据库全量加载当前租户账本 */
+    public void warm() {
+        if (!enabled) return;
+        String tenant = currentTenant();
+        TenantLedger ledger = ledgers.computeIfAbsent(tenant, k -> new TenantLedger());
+        load(ledger);
+        System.out.println("[StockLedger] 租户 " + tenant + " 库存账本预热完成，药品数=" + ledger.byMedicine.size());
+    }
+
+    /**
+     * 与数据库对账：按药品比对并修正当前租户账本，返回总库存不一致的药品数。
+     */
+    public int reconcile() {
+        if (!enabled) return 0;
+        String tenant = currentTenant();
+        TenantLedger ledger = ledgers.computeIfAbsent(tenant, k -> new TenantLedger());
+        boolean wasReady = ledger.ready;
+        int drift = load(ledger);
+        if (!wasReady) return 0;
+        if (drift > 0) System.err.println("[StockLedger] 租户 " + tenant + " 对账修正药品数=" + drift);
+        return drift;
+    }
+
+    /** 已预热的租户 */
+    public Set<String> warmedTenants() {
+        Set<String> warmed = new HashSet<>();
+        ledgers.forEach((tenant, ledger) -> { if (ledger.ready) warmed.add(tenant); });
+        return warmed;
+    }
+
+    /** 丢弃租户账本（租户下线时调用） */
+    public void evict(String tenant) {
+        if (tenant != null) ledgers.remove(tenant);
+    }
+
+    /**
+     * 全量扫描后逐个药品替换：扫描前记下各药品版本，扫描期间版本变化或仍有未完成事务的药品单独重读；
+     * 重读仍对不上时，已就绪账本保留原值等下次对账，预热中的账本标记为过期让读取回落数据库。
+     */
+    private int load(TenantLedger ledger) {
+        synchronized (ledger) {
+            Map<String, Long> versions = new HashMap<>(ledger.byMedicine.size() * 2);
+            ledger.byMedicine.forEach((mid, ms) -> versions.put(mid, ms.stableVersion()));
+            Map<String, MedicineStock> fresh = new HashMap<>();
+            jdbcTemplate.query(LOAD_ALL_SQL, rs -> {
+                fresh.computeIfAbsent(rs.getString("medicine_id"), k -> new MedicineStock())
+                        .set(rs.getLong("inventory_id"), rs.getInt("stock_quantity"));
+            });
+            Set<String> medicineIds = new HashSet<>(fresh.keySet());
+            medicineIds.addAll(ledger.byMedicine.keySet());
+            int drift = 0;
+            for (String mid : medicineIds) {
+                MedicineStock loaded = fresh.getOrDefault(mid, new MedicineStock());
+                MedicineStock current = ledger.byMedicine.putIfAbsent(mid, loaded);
+                if (current == null) {
+                    if (loaded.total() != 0) drift++;
+                    continue;
+                }
+                int before = current.total();
+                boolean replaced = current.replaceIf(versions.getOrDefault(mid, -1L), loaded) || settle(mid, current);
+                if (!replaced) {
+                    if (!ledger.ready) current.stale = true;
+                } else if (before != current.total()) {
+                    drift++;
+                }
+            }
+            ledger.ready = true;
+            return drift;
+        }
+    }
+
+    /** 单个药品重读：读前后版本一致且期间没有未完成事务时替换 */
+    private boolean settle(String medicineId, MedicineStock current) {
+        for (int attempt = 1; attempt <= SETTLE_ATTEMPTS; attempt++) {
+            long version = current.stableVersion();
+            if (version >= 0) {
+                MedicineStock loaded = new MedicineStock();
+                jdbcTemplate.query(LOAD_ONE_SQL, rs -> {
+                    loaded.set(rs.getLong("inventory_id"), rs.getInt("stock_quantity"));
+                }, medicineId);
+                if (current.replaceIf(version, loaded)) return true;
+            }
+            try {
+                Thread.sleep(10L * attempt); // 等进行中的事务提交
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private TenantLedger ledgerForRead() {
+        if (!enabled) return null;
+        String tenant = currentTenant();
+        TenantLedger ledger = ledgers.computeIfAbsent(tenant, k -> new TenantLedger());
+        if (ledger.ready) return ledger;
+        // 首次访问的租户（例如运行期新增或延迟建池）后台预热，期间读取回落数据库
+        warmAsync(tenant, ledger);
+        return null;
+    }
+
+    private void warmAsync(String tenant, TenantLedger ledger) {
+        if (System.currentTimeMillis() < ledger.retryAfter || !ledger.warming.compareAndSet(false, true)) return;
+        try {
+            warmPool.execute(() -> TenantContext.runAs(tenant, () -> {
+                try {
+                    warm();
+                } catch (Exception e) {
+                    ledger.retryAfter = System.currentTimeMillis() + warmRetrySeconds * 1000;
+                    System.err.println("[StockLedger] 租户 " + tenant + " 账本预热失败，" + warmRetrySeconds + "s 内回落数据库: " + e.getMessage());
+                } finally {
+                    ledger.warming.set(false);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            ledger.warming.set(false);
+        }
+    }
+
+    private static String currentTenant() {
+        String tenant = TenantContext.getTenant();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
+}
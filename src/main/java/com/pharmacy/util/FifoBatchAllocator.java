@@ -0,0 +1,68 @@
+package com.pharmacy.util;
+
+import com.pharmacy.entity.Inventory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 先进先出(FIFO)批次分配：按过期日期（近的优先）、再按入库时间排序，依次从批次中扣减。
+ * 纯内存计算，不修改传入的 Inventory 实体，调用方据分配结果自行落库。
+ */
+public final class FifoBatchAllocator {
+    private FifoBatchAllocator() {}
+
+    public static final Comparator<Inventory> FIFO_ORDER = Comparator
+            .comparing(Inventory::getExpiryDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Inventory::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    /** 单个批次的扣减量 */
+    public static final class Allocation {
+        private final Inventory batch;
+        private final int quantity;
+
+        public Allocation(Inventory batch, int quantity) {
+            this.batch = batch;
+            this.quantity = quantity;
+        }
+
+        public Inventory getBatch() { return batch; }
+        public int getQuantity() { return quantity; }
+    }
+
+    /**
+     * 为需求数量分配批次。
+     * @param batches 该药品的全部库存批次
+     * @param quantity 需求数量
+     * @return 分配结果；库存不足时返回 null
+     */
+    public static List<Allocation> allocate(List<Inventory> batches, int quantity) {
+        List<Allocation> result = new ArrayList<>();
+        if (quantity <= 0) return result;
+        if (batches == null || batches.isEmpty()) return null;
+        List<Inventory> sorted = new ArrayList<>(batches.size());
+        for (Inventory inv : batches) {
+            if (inv.getStockQuantity() != null && inv.getStockQuantity() > 0) sorted.add(inv);
+        }
+        sorted.sort(FIFO_ORDER);
+        int remaining = quantity;
+        for (Inventory inv : sorted) {
+            if (remaining <= 0) break;
+            int take = Math.min(remaining, inv.getStockQuantity());
+            result.add(new Allocation(inv, take));
+            remaining -= take;
+        }
+        return remaining > 0 ? null : result;
+    }
+
+    /** 批次可用库存合计（空值按0计） */
+    public static int available(List<Inventory> batches) {
+        if (batches == null) return 0;
+        int sum = 0;
+        for (Inventory inv : batches) {
+            if (inv.getStockQuantity() != null && inv.getStockQuantity() > 0) sum += inv.getStockQuantity();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package com.pharmacy.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * 汉字拼音首字母（如 阿莫西林 -> amxl），用于药品检索的简拼匹配。
+ * 依据 GB2312 一级汉字按拼音排序的区位码区间计算，无需额外依赖；二级汉字与生僻字没有首字母，直接跳过。
+ */
+public final class PinyinInitials {
+    private PinyinInitials() {}
+
+    private static final int CJK_START = 0x4E00;
+    private static final int CJK_END = 0x9FA5;
+
+    // 各首字母在 GB2312 一级汉字中的起始区位码，最后一个为一级汉字上界
+    private static final int[] BOUNDARIES = {1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212, 3472,
+            3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590};
+    private static final char[] LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    // 常用汉字首字母表，类加载时一次性算好；0 表示没有
+    private static final char[] TABLE = buildTable();
+
+    /** 取字符串的首字母串：汉字转首字母，字母数字原样转小写，其它字符丢弃 */
+    public static String of(String s) {
+        if (s == null || s.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= CJK_START && c <= CJK_END) {
+                char initial = TABLE[c - CJK_START];
+                if (initial != 0) sb.append(initial);
+            } else if (Character.isLetterOrDigit(c) && c < 0x80) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static char[] buildTable() {
+        char[] table = new char[CJK_END - CJK_START + 1];
+        Charset gb2312;
+        try {
+            gb2312 = Charset.forName("GB2312");
+        } catch (Exception e) {
+            System.err.println("[PinyinInitials] 当前 JVM 不支持 GB2312，简拼检索不可用");
+            return table;
+        }
+        CharsetEncoder encoder = gb2312.newEncoder();
+        CharBuffer in = CharBuffer.allocate(1);
+        ByteBuffer out = ByteBuffer.allocate(4);
+        for (int c = CJK_START; c <= CJK_END; c++) {
+            in.clear();
+            in.put((char) c).flip();
+            out.clear();
+            encoder.reset();
+            if (encoder.encode(in, out, true).isError() || out.position() != 2) continue;
+            int code = ((out.get(0) & 0xFF) - 160) * 100 + ((out.get(1) & 0xFF) - 160);
+            if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) continue;
+            for (int i = LETTERS.length - 1; i >= 0; i--) {
+                if (code >= BOUNDARIES[i]) {
+                    table[c - CJK_START] = LETTERS[i];
+                    break;
+                }
+            }
+        }
+        return table;
+    }
+}
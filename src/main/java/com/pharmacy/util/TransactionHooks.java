@@ -0,0 +1,34 @@
+package com.pharmacy.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务钩子：把缓存失效、内存账本更新等副作用推迟到事务提交之后，避免读到未提交数据。
+ */
+public final class TransactionHooks {
+    private TransactionHooks() {}
+
+    /** 当前存在事务时在提交后执行，否则立即执行 */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { action.run(); }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /** 当前事务回滚时执行（用于撤销事务内提前登记的内存状态）；没有事务时不执行 */
+    public static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package com.pharmacy.util;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台工作线程工厂：开启 spring.threads.virtual.enabled 且运行在 JDK 21+ 时创建虚拟线程，
+ * 否则创建守护平台线程。虚拟线程只替换线程本身，调用方的有界队列与拒绝策略保持不变，
+ * 并发度仍受各租户连接池约束。
+ */
+public final class WorkerThreads {
+    private WorkerThreads() {}
+
+    public static boolean virtualThreadsSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    public static ThreadFactory factory(String name, boolean virtual) {
+        if (virtual && virtualThreadsSupported()) {
+            return new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory();
+        }
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
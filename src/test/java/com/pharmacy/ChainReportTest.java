@@ -0,0 +1,109 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Order;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.ChainReportService;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.StatsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ChainReportTest {
+
+    @Autowired
+    private ChainReportService chainReportService;
+    @Autowired
+    private StatsService statsService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OutboxService outboxService;
+
+    // 使用较早日期，避免与其它测试的订单互相影响
+    private final LocalDate day = LocalDate.now().minusDays(70);
+
+    private Order make(String id, int hour, double total) {
+        Order o = new Order();
+        o.setOrderId(id);
+        o.setCashierId(1);
+        o.setPaymentType(1);
+        o.setPaymentStatus(1);
+        o.setTotalAmount(total);
+        o.setActualPayment(total);
+        o.setOrderTime(day.atTime(hour, 0));
+        return o;
+    }
+
+    @Test
+    void testConsolidatedMatchesSingleStoreAndIsCached() {
+        orderRepository.save(make("CHAIN-1", 10, 30));
+        orderRepository.save(make("CHAIN-2", 11, 20));
+        // 汇总由发件箱异步应用，先排干再比对
+        outboxService.drainCurrentTenant();
+        LocalDateTime start = day.atStartOfDay();
+        LocalDateTime end = day.plusDays(1).atStartOfDay();
+
+        Map<String, Object> report = chainReportService.consolidated(start, end, 5, true);
+        assertEquals(false, report.get("cached"));
+        // 测试环境中配置的 MySQL 门店不可达：这些门店单独标记失败，其余门店照常汇总
+        List<?> stores = (List<?>) report.get("stores");
+        assertEquals(report.get("storeCount"), stores.size());
+        long ok = stores.stream().filter(s -> "OK".equals(((Map<?, ?>) s).get("status"))).count();
+        assertEquals(stores.size() - ok, ((Number) report.get("failedStores")).longValue());
+        assertEquals(ok == stores.size(), report.get("complete"));
+        Map<?, ?> local = stores.stream().map(s -> (Map<?, ?>) s).filter(s -> "default".equals(s.get("tenant"))).findFirst().orElseThrow();
+        assertEquals("OK", local.get("status"));
+
+        Map<String, Object> single = statsService.getSalesStats(start, end);
+        assertEquals(0, ((BigDecimal) single.get("totalSales")).compareTo((BigDecimal) report.get("totalSales")));
+        assertEquals(((Number) single.get("orderCount")).longValue(), report.get("orderCount"));
+        assertEquals(0, new BigDecimal("25.00").compareTo((BigDecimal) report.get("averageOrderValue")));
+
+        Map<String, Object> again = chainReportService.consolidated(start, end, 5, false);
+        assertEquals(true, again.get("cached"), "相同参数在有效期内直接返回合并结果");
+        assertEquals(report.get("totalSales"), again.get("totalSales"));
+        assertEquals(false, chainReportService.consolidated(start, end, 5, true).get("cached"));
+    }
+
+    @Test
+    void testLoadingDashboardCountsAsMissingStore() {
+        LocalDateTime start = day.minusDays(1).atStartOfDay();
+        LocalDateTime end = day.atStartOfDay();
+        Object target = AopTestUtils.getTargetObject(chainReportService);
+        Object original = ReflectionTestUtils.getField(target, "dashboardService");
+        Map<String, Object> loading = new HashMap<>();
+        loading.put("todaySales", null);
+        loading.put("loading", true);
+        DashboardService stub = (DashboardService) Proxy.newProxyInstance(DashboardService.class.getClassLoader(),
+                new Class<?>[]{DashboardService.class},
+                (proxy, method, args) -> "getDashboardStats".equals(method.getName()) ? new HashMap<>(loading) : null);
+        ReflectionTestUtils.setField(target, "dashboardService", stub);
+        try {
+            Map<String, Object> report = chainReportService.consolidated(start, end, 5, true);
+            Map<?, ?> local = ((List<?>) report.get("stores")).stream().map(s -> (Map<?, ?>) s)
+                    .filter(s -> "default".equals(s.get("tenant"))).findFirst().orElseThrow();
+            assertEquals("LOADING", local.get("status"));
+            assertTrue(((List<?>) report.get("missingStores")).contains("default"));
+            assertEquals(false, report.get("complete"));
+        } finally {
+            ReflectionTestUtils.setField(target, "dashboardService", original);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pharmacy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.impl.DashboardReportWriter;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class DashboardReportExportTest {
+
+    @Autowired
+    private DashboardService dashboardService;
+    @Autowired
+    private DashboardReportWriter reportWriter;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void testSaturatedRefreshPoolNeverComputesOnRequestThread() {
+        Object target = AopTestUtils.getTargetObject(dashboardService);
+        ThreadPoolExecutor original = (ThreadPoolExecutor) ReflectionTestUtils.getField(target, "refreshPool");
+        // 已关闭的池按 AbortPolicy 拒绝一切任务，等价于刷新池已满
+        ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                new ThreadPoolExecutor.AbortPolicy());
+        saturated.shutdown();
+        ReflectionTestUtils.setField(target, "refreshPool", saturated);
+        try {
+            dashboardService.refreshDashboardCache();
+            Map<String, Object> stats = dashboardService.getDashboardStats();
+            assertEquals(Boolean.TRUE, stats.get("loading"), "不在请求线程上计算，直接返回加载中");
+            assertNull(stats.get("todaySales"));
+        } finally {
+            ReflectionTestUtils.setField(target, "refreshPool", original);
+        }
+        assertNull(dashboardService.getDashboardStats().get("loading"));
+    }
+
+    @Test
+    void testExportDataHasAllSectionsInOrder() {
+        Map<String, Object> data = dashboardService.getExportData();
+        assertEquals(List.of("exportTime", "reportTitle", "stats", "salesTrend", "categoryDistribution",
+                "stockAlerts", "hotProducts", "expiringMedicines"), List.copyOf(data.keySet()));
+    }
+
+    @Test
+    void testJsonKeepsNestedStructure() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportWriter.writeJson(dashboardService.getExportData(), out);
+        JsonNode root = objectMapper.readTree(out.toByteArray());
+        assertTrue(root.get("stats").isObject(), "统计数据应为对象而不是 toString 字符串");
+        assertTrue(root.get("stockAlerts").get("lowStock").isArray());
+        assertTrue(root.get("salesTrend").get("labels").isArray());
+        assertTrue(root.get("hotProducts").isArray());
+    }
+
+    @Test
+    void testXlsxWritesOneSheetPerSection() throws Exception {
+        Map<String, Object> report = new java.util.LinkedHashMap<>();
+        report.put("reportTitle", "测试报表");
+        report.put("stats", Map.of("todaySales", 12.5));
+        report.put("salesTrend", Map.of("labels", new String[]{"周一", "周二"}, "data", List.of(1.0, 2.0)));
+        report.put("hotProducts", List.of(Map.of("name", "阿莫西林", "todaySales", 3)));
+        report.put("stockAlerts", Map.of("lowStock", List.of(Map.of("medicineId", "M1")), "expiry", List.of()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportWriter.writeXlsx(report, out);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(5, wb.getNumberOfSheets());
+            assertEquals("测试报表", wb.getSheet("报表信息").getRow(0).getCell(1).getStringCellValue());
+            assertEquals(12.5, wb.getSheet("概览").getRow(0).getCell(1).getNumericCellValue());
+            Sheet trend = wb.getSheet("销售趋势");
+            assertEquals(3, trend.getPhysicalNumberOfRows(), "表头 + 两行数据");
+            Sheet hot = wb.getSheet("热销药品");
+            int nameCol = "name".equals(hot.getRow(0).getCell(0).getStringCellValue()) ? 0 : 1;
+            assertEquals("阿莫西林", hot.getRow(1).getCell(nameCol).getStringCellValue());
+            assertNotNull(wb.getSheet("库存预警"));
+        }
+    }
+
+    @Test
+    void testXlsxWritesLoadingStatsAsBlankCells() throws Exception {
+        // 控制台统计首次计算未完成时指标为空，导出不能因空值失败
+        Map<String, Object> stats = new java.util.LinkedHashMap<>();
+        stats.put("todaySales", null);
+        stats.put("loading", true);
+        Map<String, Object> report = new java.util.LinkedHashMap<>();
+        report.put("stats", stats);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportWriter.writeXlsx(report, out);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = wb.getSheet("概览");
+            assertEquals(org.apache.poi.ss.usermodel.CellType.BLANK, sheet.getRow(0).getCell(1).getCellType());
+            assertTrue(sheet.getRow(1).getCell(1).getBooleanCellValue());
+        }
+    }
+}
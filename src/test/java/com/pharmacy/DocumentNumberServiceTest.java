@@ -0,0 +1,108 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.service.DocumentNumberService;
+import com.pharmacy.service.impl.DocumentNumberServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class DocumentNumberServiceTest {
+
+    @Autowired
+    private DocumentNumberService documentNumberService;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testConcurrentOrderIdsAreUniqueAndMonotonic() throws Exception {
+        int threads = 8, perThread = 5000;
+        Set<String> all = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    String prev = null;
+                    for (int i = 0; i < perThread; i++) {
+                        String id = documentNumberService.nextOrderId();
+                        assertTrue(id.matches("O\\d{14}\\d{2}\\d{4}"), id);
+                        // 同一前缀等长，字典序即取号顺序
+                        if (prev != null) assertTrue(id.compareTo(prev) > 0, prev + " -> " + id);
+                        prev = id;
+                        all.add(id);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(threads * perThread, all.size());
+        assertTrue(documentNumberService.nextStockInNo().startsWith("SI"));
+        assertTrue(documentNumberService.nextHangOrderId().length() <= 32);
+    }
+
+    @Test
+    void testNodeIdMustBeConfiguredWhenRequired() {
+        assertEquals(7, DocumentNumberServiceImpl.resolveNodeId("7", true, "host-a"));
+        assertThrows(IllegalStateException.class, () -> DocumentNumberServiceImpl.resolveNodeId("", true, "host-a"));
+        assertThrows(IllegalStateException.class, () -> DocumentNumberServiceImpl.resolveNodeId("100", false, "host-a"));
+        assertThrows(IllegalStateException.class, () -> DocumentNumberServiceImpl.resolveNodeId("x", false, "host-a"));
+        // 未配置时按主机名推导，同一主机稳定，结果在 0-99
+        int derived = DocumentNumberServiceImpl.resolveNodeId(null, false, "host-a");
+        assertEquals(derived, DocumentNumberServiceImpl.resolveNodeId(" ", false, "host-a"));
+        assertTrue(derived >= 0 && derived <= 99);
+    }
+
+    @Test
+    void testMemberIdContinuesFromMaxExisting() {
+        jdbcTemplate.update("DELETE FROM doc_sequence WHERE seq_name = 'member'");
+        memberRepository.save(new Member("M9900001", "取号会员", "13900009999"));
+        assertEquals("M9900002", documentNumberService.nextMemberId());
+        // 序号在库内：丢弃进程内状态（相当于重启或换节点）后继续递增，不会重发
+        documentNumberService.evict("default");
+        assertEquals("M9900003", documentNumberService.nextMemberId());
+        // 号码被导入等途径占用时跳到当前最大编号之后
+        memberRepository.save(new Member("M9900004", "导入会员", "13900009998"));
+        memberRepository.save(new Member("M9900010", "导入会员", "13900009997"));
+        assertEquals("M9900011", documentNumberService.nextMemberId());
+    }
+
+    @Test
+    void testConcurrentMemberIdsAreUnique() throws Exception {
+        Set<String> all = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 25; i++) assertTrue(all.add(documentNumberService.nextMemberId()));
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(100, all.size());
+    }
+}
@@ -0,0 +1,40 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.util.FifoBatchAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FifoBatchAllocatorTest {
+
+    private Inventory batch(long id, int qty, LocalDate expiry){
+        Inventory inv = new Inventory("M1", "B" + id, qty, expiry);
+        inv.setId(id);
+        return inv;
+    }
+
+    @Test
+    void testAllocatesEarliestExpiryFirst() {
+        Inventory late = batch(1, 10, LocalDate.now().plusDays(90));
+        Inventory early = batch(2, 4, LocalDate.now().plusDays(10));
+        List<FifoBatchAllocator.Allocation> plan = FifoBatchAllocator.allocate(List.of(late, early), 7);
+        assertNotNull(plan);
+        assertEquals(2, plan.size());
+        assertEquals(2L, plan.get(0).getBatch().getId());
+        assertEquals(4, plan.get(0).getQuantity());
+        assertEquals(3, plan.get(1).getQuantity());
+        // 分配过程不修改实体
+        assertEquals(4, early.getStockQuantity());
+    }
+
+    @Test
+    void testInsufficientReturnsNull() {
+        assertNull(FifoBatchAllocator.allocate(List.of(batch(1, 3, null)), 5));
+        assertNull(FifoBatchAllocator.allocate(List.of(), 1));
+        assertEquals(3, FifoBatchAllocator.available(List.of(batch(1, 3, null), batch(2, 0, null))));
+    }
+}
@@ -0,0 +1,158 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.service.InventoryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class InventoryDeductTest {
+
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private MedicineRepository medicineRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private void ensureMedicine(String id) {
+        if (medicineRepository.existsById(id)) return;
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName(id + "-GENERIC");
+        m.setApprovalNo(id + "-APP");
+        m.setCategoryId(1);
+        m.setRetailPrice(new BigDecimal("10.00"));
+        m.setIsRx(false);
+        m.setUnit("盒");
+        medicineRepository.save(m);
+    }
+
+    private Long batch(String medicineId, String batchNo, int qty, int expiryDays) {
+        ensureMedicine(medicineId);
+        return inventoryRepository.save(new Inventory(medicineId, batchNo, qty, LocalDate.now().plusDays(expiryDays))).getId();
+    }
+
+    private int qty(Long inventoryId) {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM inventory WHERE inventory_id = ?", Integer.class, inventoryId);
+    }
+
+    private double retries() {
+        return meterRegistry.counter("inventory.deduct.retries", "tenant", "default").count();
+    }
+
+    /** 在第一次条件扣减之前，由另一个连接抢先扣减并提交，模拟其他收银台并发结账 */
+    private List<String> deductWithConcurrentDecrement(Map<String, Integer> order, Long batchId, int stolen) {
+        Object target = AopTestUtils.getTargetObject(inventoryService);
+        JdbcTemplate original = (JdbcTemplate) ReflectionTestUtils.getField(target, "jdbcTemplate");
+        JdbcTemplate interfering = new JdbcTemplate(original.getDataSource()) {
+            private boolean fired;
+
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (!fired && sql.startsWith("UPDATE inventory SET stock_quantity = stock_quantity -")) {
+                    fired = true;
+                    Thread other = new Thread(() -> original.update(
+                            "UPDATE inventory SET stock_quantity = stock_quantity - ? WHERE inventory_id = ?", stolen, batchId));
+                    other.start();
+                    try {
+                        other.join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        ReflectionTestUtils.setField(target, "jdbcTemplate", interfering);
+        try {
+            return inventoryService.deductStockForOrder(order, "T-DEDUCT-RACE");
+        } finally {
+            ReflectionTestUtils.setField(target, "jdbcTemplate", original);
+        }
+    }
+
+    @Test
+    void testMultiBatchDeductionFollowsExpiryOrder() {
+        Long a1 = batch("DEDUCT-A", "A-LATE", 5, 120);
+        Long a2 = batch("DEDUCT-A", "A-EARLY", 3, 30);
+        Long b1 = batch("DEDUCT-B", "B-1", 4, 60);
+
+        Map<String, Integer> order = new LinkedHashMap<>();
+        order.put("DEDUCT-A", 6);
+        order.put("DEDUCT-B", 2);
+        assertTrue(inventoryService.deductStockForOrder(order, "T-DEDUCT-1").isEmpty());
+
+        // 先扣近效期批次，不足部分再扣下一批
+        assertEquals(0, qty(a2));
+        assertEquals(2, qty(a1));
+        assertEquals(2, qty(b1));
+    }
+
+    @Test
+    void testShortageLeavesEveryBatchUntouched() {
+        Long c1 = batch("DEDUCT-C", "C-1", 5, 60);
+        Long d1 = batch("DEDUCT-D", "D-1", 1, 60);
+
+        Map<String, Integer> order = new LinkedHashMap<>();
+        order.put("DEDUCT-C", 3);
+        order.put("DEDUCT-D", 2);
+        assertEquals(List.of("DEDUCT-D"), inventoryService.deductStockForOrder(order, "T-DEDUCT-2"));
+
+        assertEquals(5, qty(c1));
+        assertEquals(1, qty(d1));
+    }
+
+    @Test
+    void testConcurrentDecrementIsRetriedOnFreshBatches() {
+        Long e1 = batch("DEDUCT-E", "E-EARLY", 5, 30);
+        Long e2 = batch("DEDUCT-E", "E-LATE", 5, 90);
+        double retriesBefore = retries();
+
+        // 计划从 E-EARLY 扣 4，但另一收银台先扣走 3：首轮条件扣减未命中，重试时改为 E-EARLY 2 + E-LATE 2
+        List<String> shortages = deductWithConcurrentDecrement(Map.of("DEDUCT-E", 4), e1, 3);
+
+        assertTrue(shortages.isEmpty());
+        assertEquals(0, qty(e1));
+        assertEquals(3, qty(e2));
+        assertEquals(retriesBefore + 1, retries());
+    }
+
+    @Test
+    void testShortageAfterRetryCompensatesAppliedBatches() {
+        Long f1 = batch("DEDUCT-F", "F-1", 4, 30);
+        Long g1 = batch("DEDUCT-G", "G-1", 2, 30);
+
+        Map<String, Integer> order = new LinkedHashMap<>();
+        order.put("DEDUCT-F", 4);
+        order.put("DEDUCT-G", 2);
+        // 首轮 G 扣减成功、F 被抢先扣走 2 未命中；重试时 F 不足，已扣的 G 必须退回
+        List<String> shortages = deductWithConcurrentDecrement(order, f1, 2);
+
+        assertEquals(List.of("DEDUCT-F"), shortages);
+        assertEquals(2, qty(f1));
+        assertEquals(2, qty(g1));
+    }
+}
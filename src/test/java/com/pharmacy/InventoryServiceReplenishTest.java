@@ -3,10 +3,13 @@ package com.pharmacy;
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.service.InventoryService;
 import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.InventoryRepositoryCustom;
+import com.pharmacy.dto.InventoryDTO;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.entity.Medicine;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
@@ -76,4 +79,112 @@ class InventoryServiceReplenishTest {
             assertEquals(expectedEarliest, dto.getEarliestExpiryDate(), "Earliest expiry should propagate to all DTOs");
         }
     }
+
+    @Test
+    void testSummarizeStockForPage() {
+        ensureMedicine("TEST-MED-SUM1");
+        ensureMedicine("TEST-MED-SUM2");
+        ensureMedicine("TEST-MED-SUM3");
+        inventoryService.createBatch("TEST-MED-SUM1", "S-A", 10, 20, null, null, LocalDate.now().plusDays(40), null);
+        inventoryService.createBatch("TEST-MED-SUM1", "S-B", 5, 8, null, null, LocalDate.now().minusDays(1), null);
+        inventoryService.createBatch("TEST-MED-SUM2", "S-C", 7, 0, null, null, null, null);
+
+        var summaries = inventoryService.summarizeStock(List.of("TEST-MED-SUM1", "TEST-MED-SUM2", "TEST-MED-SUM3"));
+        var first = summaries.get("TEST-MED-SUM1");
+        assertEquals(15, first.stockQuantity());
+        assertEquals(List.of("S-A", "S-B"), first.batchNos());
+        assertEquals(LocalDate.now().plusDays(40), first.earliestExpiryDate(), "已过期批次不参与最早效期");
+        assertEquals(8, first.minStock());
+        assertEquals(7, summaries.get("TEST-MED-SUM2").stockQuantity());
+        assertNull(summaries.get("TEST-MED-SUM2").minStock());
+        assertFalse(summaries.containsKey("TEST-MED-SUM3"));
+    }
+
+    @Test
+    void testInventoryPageQueryFiltersAndKeysetPages() {
+        ensureMedicine("PGQ-MED-1");
+        ensureMedicine("PGQ-MED-2");
+        LocalDate today = LocalDate.now();
+        inventoryService.createBatch("PGQ-MED-1", "PGQ-B1", 0, 10, null, null, today.plusDays(400), "PGQ供应商");
+        inventoryService.createBatch("PGQ-MED-1", "PGQ-B2", 50, 10, null, null, today.plusDays(10), "PGQ供应商");
+        inventoryService.createBatch("PGQ-MED-2", "PGQ-B3", 2, 10, null, null, today.minusDays(1), "其它");
+        inventoryService.createBatch("PGQ-MED-2", "PGQ-B4", 5, 10, null, null, null, "其它");
+
+        InventoryRepositoryCustom.ListCriteria all = criteria("PGQ", null, null, null);
+        assertEquals(4, inventoryService.countInventory(all));
+        List<InventoryDTO> byExpiry = inventoryService.pageInventory(all, "expiryDate_asc", null, null, 0, 10);
+        assertEquals(List.of("PGQ-B3", "PGQ-B2", "PGQ-B1", "PGQ-B4"), byExpiry.stream().map(InventoryDTO::getBatchNo).toList(),
+                "无有效期排最后");
+        InventoryDTO first = byExpiry.get(0);
+        assertEquals("EXPIRED", first.getExpiryStatus());
+        assertEquals("LOW", first.getStockStatus());
+        assertEquals(1, first.getMedicineCategoryId());
+        assertEquals(Boolean.FALSE, first.getMedicineIsRx());
+
+        // 键集翻页与 offset 翻页结果一致
+        List<InventoryDTO> p1 = inventoryService.pageInventory(all, "expiryDate_asc", null, null, 0, 2);
+        List<InventoryDTO> p2 = inventoryService.pageInventory(all, "expiryDate_asc", p1.get(1).getInventoryId(),
+                inventoryService.pageCursorKey("expiryDate_asc", p1.get(1)), 0, 2);
+        assertEquals(List.of("PGQ-B1", "PGQ-B4"), p2.stream().map(InventoryDTO::getBatchNo).toList());
+
+        assertEquals(List.of("PGQ-B1"), batchNos(criteria("PGQ", "out", null, null)));
+        assertEquals(List.of("PGQ-B2"), batchNos(criteria("PGQ", null, "NEAR_EXPIRY", null)));
+        assertEquals(List.of("PGQ-B1", "PGQ-B2"), batchNos(criteria(null, null, null, "PGQ供应商")));
+        assertEquals(List.of("PGQ-B3", "PGQ-B4"), batchNos(criteria("PGQ-MED-2-GENERIC", null, null, null)));
+        assertTrue(batchNos(criteria("PGQ%", null, null, null)).isEmpty(), "通配符按字面匹配");
+    }
+
+    @Test
+    void testKeysetPagingWithClientCursorAndRangeStatusFilters() {
+        ensureMedicine("KSQ-MED-1");
+        LocalDate today = LocalDate.now();
+        // 数量/安全库存覆盖各状态边界：0、1/10、3/10、8/10 及以上
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B1", 0, 10, null, null, today.minusDays(3), null);
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B2", 1, 10, null, null, today, null);
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B3", 3, 10, null, null, today.plusDays(59), null);
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B4", 8, 10, null, null, today.plusDays(60), null);
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B5", 9, 10, null, null, null, null);
+        inventoryService.createBatch("KSQ-MED-1", "KSQ-B6", 4, 0, null, null, today.plusDays(5), null);
+
+        InventoryRepositoryCustom.ListCriteria all = criteria("KSQ", null, null, null);
+        List<String> expected = inventoryService.pageInventory(all, "batchNo_desc", null, null, 0, 50)
+                .stream().map(InventoryDTO::getBatchNo).toList();
+        assertEquals(6, expected.size());
+        // 每页 1 行，游标只用上一页末行的 (排序值, 库存ID)
+        List<String> paged = new java.util.ArrayList<>();
+        Long afterId = null;
+        String afterKey = null;
+        while (true) {
+            List<InventoryDTO> page = inventoryService.pageInventory(all, "batchNo_desc", afterId, afterKey, 0, 1);
+            if (page.isEmpty()) break;
+            paged.add(page.get(0).getBatchNo());
+            afterId = page.get(0).getInventoryId();
+            afterKey = inventoryService.pageCursorKey("batchNo_desc", page.get(0));
+        }
+        assertEquals(expected, paged);
+        Long firstId = inventoryService.pageInventory(all, "batchNo_desc", null, null, 0, 1).get(0).getInventoryId();
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> inventoryService.pageInventory(all, "batchNo_desc", firstId, null, 0, 1), "按字段排序翻页缺少 afterKey");
+
+        // 范围条件过滤与 SQL CASE 计算出的状态一致，且各状态互斥覆盖全部行
+        int covered = 0;
+        for (String status : List.of("OUT", "CRITICAL", "LOW", "MEDIUM", "HIGH")) {
+            List<InventoryDTO> rows = inventoryService.pageInventory(criteria("KSQ", status, null, null), null, null, null, 0, 50);
+            for (InventoryDTO row : rows) assertEquals(status, row.getStockStatus(), row.getBatchNo());
+            covered += rows.size();
+        }
+        assertEquals(6, covered);
+        assertEquals(List.of("KSQ-B1"), batchNos(criteria("KSQ", null, "EXPIRED", null)));
+        assertEquals(List.of("KSQ-B2", "KSQ-B3", "KSQ-B6"), batchNos(criteria("KSQ", null, "NEAR_EXPIRY", null)));
+        assertEquals(List.of("KSQ-B4"), batchNos(criteria("KSQ", null, "NORMAL", null)));
+        assertTrue(batchNos(criteria("KSQ", "UNKNOWN", null, null)).isEmpty());
+    }
+
+    private static InventoryRepositoryCustom.ListCriteria criteria(String keyword, String stockStatus, String expiryStatus, String supplier) {
+        return new InventoryRepositoryCustom.ListCriteria(keyword, null, stockStatus, expiryStatus, supplier, LocalDate.now());
+    }
+
+    private List<String> batchNos(InventoryRepositoryCustom.ListCriteria criteria) {
+        return inventoryService.pageInventory(criteria, "batchNo_asc", null, null, 0, 50).stream().map(InventoryDTO::getBatchNo).toList();
+    }
 }
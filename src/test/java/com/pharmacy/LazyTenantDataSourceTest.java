@@ -0,0 +1,76 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.LazyTenantDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyTenantDataSourceTest {
+
+    private LazyTenantDataSource ds;
+
+    private LazyTenantDataSource build(String db) {
+        HikariConfig cfg = new HikariConfig();
+        cfg.setJdbcUrl("jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1");
+        cfg.setUsername("sa");
+        cfg.setPassword("");
+        cfg.setMaximumPoolSize(2);
+        cfg.setMinimumIdle(0);
+        return new LazyTenantDataSource(db, cfg, 3, 30_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ds != null) ds.close();
+    }
+
+    @Test
+    void testInitializerRunsOnceBeforeFirstUse() {
+        ds = build("lazy_init");
+        AtomicInteger calls = new AtomicInteger();
+        ds.setPoolInitializer(raw -> {
+            calls.incrementAndGet();
+            new JdbcTemplate(raw).execute("CREATE TABLE IF NOT EXISTS t_init (id INT)");
+        });
+        assertFalse(ds.isPoolActive());
+        assertEquals(0, calls.get());
+
+        // 首次取连接前已建好表
+        assertEquals(0, new JdbcTemplate(ds).queryForObject("SELECT COUNT(*) FROM t_init", Integer.class));
+        assertTrue(ds.isPoolActive());
+        assertEquals(1, calls.get());
+
+        // 空闲回收后重建连接池不再重复初始化
+        assertTrue(ds.evictIfIdle(0));
+        assertFalse(ds.isPoolActive());
+        new JdbcTemplate(ds).queryForObject("SELECT COUNT(*) FROM t_init", Integer.class);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testFailedInitializerRetriesOnNextPool() {
+        ds = build("lazy_retry");
+        AtomicInteger calls = new AtomicInteger();
+        ds.setPoolInitializer(raw -> {
+            if (calls.incrementAndGet() == 1) throw new IllegalStateException("boom");
+        });
+        // 初始化失败不影响取连接
+        assertEquals(1, new JdbcTemplate(ds).queryForObject("SELECT 1", Integer.class));
+        assertTrue(ds.evictIfIdle(0));
+        new JdbcTemplate(ds).queryForObject("SELECT 1", Integer.class);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testCredentialOverrideNotSupported() {
+        ds = build("lazy_creds");
+        assertThrows(SQLFeatureNotSupportedException.class, () -> ds.getConnection("sa", ""));
+        assertFalse(ds.isPoolActive());
+    }
+}
@@ -0,0 +1,78 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.service.MedicineService;
+import com.pharmacy.util.PinyinInitials;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MedicineSearchIndexTest {
+
+    @Autowired
+    private MedicineService medicineService;
+
+    private void medicine(String id, String generic, String trade, String manufacturer, String barcode) {
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName(generic);
+        m.setTradeName(trade);
+        m.setManufacturer(manufacturer);
+        m.setBarcode(barcode);
+        m.setApprovalNo(id + "-APP");
+        m.setCategoryId(1);
+        m.setRetailPrice(new BigDecimal("10.00"));
+        m.setIsRx(false);
+        m.setUnit("盒");
+        medicineService.createMedicine(m);
+    }
+
+    private List<String> activeIds(String keyword) {
+        return medicineService.searchMedicines(keyword, null, 1, 20).getContent().stream()
+                .map(Medicine::getMedicineId).toList();
+    }
+
+    @Test
+    void testPinyinInitials() {
+        assertEquals("amxljn", PinyinInitials.of("阿莫西林胶囊"));
+        assertEquals("blf03g", PinyinInitials.of("布洛芬 0.3g"));
+    }
+
+    @Test
+    void testRankedSearchFollowsWrites() {
+        medicine("MSX01", "索引阿莫西林胶囊", "索引阿莫仙", "索引制药一厂", "6920000000011");
+        medicine("MSX02", "索引头孢克肟片", null, "索引阿莫制药", "6920000000022");
+        // 首次查询建索引，之后的写入走增量维护
+        assertEquals(List.of("MSX01", "MSX02"), activeIds("索引阿莫"), "名称前缀排在厂家包含之前");
+
+        medicine("MSX03", "索引阿莫西林颗粒", null, null, null);
+        assertEquals(List.of("MSX01", "MSX03"), activeIds("索引阿莫西林"));
+        assertEquals(List.of("MSX01", "MSX03"), activeIds("syamxl"), "拼音首字母");
+        assertEquals(List.of("MSX02"), activeIds("6920000000022"), "条码精确命中");
+
+        Page<Medicine> page = medicineService.searchMedicines("索引", null, 2, 2);
+        assertEquals(3, page.getTotalElements());
+        assertEquals(1, page.getContent().size());
+
+        Medicine change = new Medicine();
+        change.setGenericName("索引头孢呋辛片");
+        medicineService.updateMedicine("MSX02", change);
+        assertTrue(activeIds("头孢克肟").isEmpty(), "改名后旧名称不再命中");
+        assertEquals(List.of("MSX02"), activeIds("头孢呋辛"));
+
+        medicineService.deleteMedicine("MSX03");
+        assertEquals(List.of("MSX01"), activeIds("索引阿莫西林"), "软删除药品不出现在在售搜索中");
+        assertTrue(medicineService.searchMedicines("索引阿莫西林").stream()
+                .anyMatch(m -> "MSX03".equals(m.getMedicineId())), "全量搜索仍包含已删除药品");
+    }
+}
@@ -0,0 +1,101 @@
+package com.pharmacy;
+
+import com.pharmacy.dto.MemberDTO;
+import com.pharmacy.entity.Member;
+import com.pharmacy.entity.Order;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.repository.MemberRepositoryCustom;
+import com.pharmacy.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MemberAdvancedQueryTest {
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    private void member(String id, String name, String phone, int level, int points) {
+        Member m = new Member(id, name, phone);
+        m.setLevel(level);
+        m.setPoints(points);
+        m.setCreateTime(now.minusDays(200));
+        memberRepository.save(m);
+    }
+
+    private void paidOrder(String id, String memberId, LocalDateTime time) {
+        Order o = new Order();
+        o.setOrderId(id);
+        o.setCashierId(1);
+        o.setMemberId(memberId);
+        o.setPaymentType(1);
+        o.setPaymentStatus(1);
+        o.setTotalAmount(10.0);
+        o.setActualPayment(10.0);
+        o.setOrderTime(time);
+        orderRepository.save(o);
+    }
+
+    private MemberRepositoryCustom.AdvancedCriteria byName(String segment, Integer consumptionMin) {
+        return new MemberRepositoryCustom.AdvancedCriteria(segment, null, null, consumptionMin, null, "高级筛选", null, now);
+    }
+
+    @Test
+    void testFilterSortPageAndSummaryInDatabase() {
+        member("MAQ01", "高级筛选甲", "13900000001", 4, 1200);
+        member("MAQ02", "高级筛选乙", "13900000002", 1, 300);
+        member("MAQ03", "高级筛选丙", "13900000003", 0, 0);
+        paidOrder("OAQ01", "MAQ01", now.minusDays(2));
+        paidOrder("OAQ02", "MAQ01", now.minusDays(1));
+        paidOrder("OAQ03", "MAQ02", now.minusDays(120));
+
+        MemberRepositoryCustom.AdvancedSummary all = memberRepository.summarizeAdvanced(byName(null, null));
+        assertEquals(3, all.total());
+        assertEquals(500.0, all.avgPoints(), 0.001);
+        assertEquals(1, all.activeCount(), "只有甲在30天内消费");
+        assertEquals(2, all.churnCount(), "乙超过90天未消费，丙从未消费");
+
+        List<MemberDTO> byConsumption = memberRepository.findAdvancedPage(byName(null, null), "consumption_desc", 0, 2);
+        assertEquals(2, byConsumption.size());
+        assertEquals("MAQ01", byConsumption.get(0).getMemberId());
+        assertEquals(2, byConsumption.get(0).getConsumptionCount());
+        assertNotNull(byConsumption.get(0).getLastConsumptionDate());
+        assertEquals("MAQ02", byConsumption.get(1).getMemberId());
+
+        List<MemberDTO> secondPage = memberRepository.findAdvancedPage(byName(null, null), "consumption_desc", 2, 2);
+        assertEquals(1, secondPage.size());
+        assertEquals("MAQ03", secondPage.get(0).getMemberId());
+        assertEquals(0, secondPage.get(0).getConsumptionCount());
+
+        assertEquals(2, memberRepository.summarizeAdvanced(byName("sleep", null)).total());
+        assertEquals(1, memberRepository.summarizeAdvanced(byName("vip", null)).total());
+        assertEquals(1, memberRepository.summarizeAdvanced(byName(null, 2)).total());
+    }
+
+    @Test
+    void testForEachMemberStreamsInIdOrder() {
+        member("MAQ11", "导出测试甲", "13900000011", 0, 5);
+        member("MAQ10", "导出测试乙", "13900000010", 0, 6);
+
+        List<String> ids = new java.util.ArrayList<>();
+        int rows = memberRepository.forEachMember(m -> ids.add(m.getMemberId()));
+        assertEquals(memberRepository.count(), rows);
+        assertTrue(ids.indexOf("MAQ10") < ids.indexOf("MAQ11"));
+        List<String> sorted = new java.util.ArrayList<>(ids);
+        java.util.Collections.sort(sorted);
+        assertEquals(sorted, ids);
+    }
+}
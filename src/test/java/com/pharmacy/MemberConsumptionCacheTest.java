@@ -0,0 +1,85 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.impl.MemberConsumptionUpdater;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+class MemberConsumptionCacheTest {
+
+    private MemberConsumptionUpdater updater;
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = Mockito.mock(OrderRepository.class);
+        updater = new MemberConsumptionUpdater();
+        ReflectionTestUtils.setField(updater, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(updater, "ttlMinutes", 10);
+        ReflectionTestUtils.setField(updater, "maxEntriesPerTenant", 2);
+        ReflectionTestUtils.setField(updater, "recentActiveMax", 10);
+        ReflectionTestUtils.setField(updater, "refreshThreads", 1);
+        ReflectionTestUtils.setField(updater, "refreshQueue", 4);
+        updater.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+        updater.shutdown();
+    }
+
+    private void stubCount(long count) {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{"M00001", count, LocalDateTime.now()});
+        Mockito.when(orderRepository.aggregateMemberConsumption(anyCollection())).thenReturn(rows);
+    }
+
+    @Test
+    void testTenantsDoNotOverwriteEachOther() {
+        TenantContext.setTenant("bht");
+        stubCount(3);
+        updater.refreshMembersBatch(Set.of("M00001"));
+
+        TenantContext.setTenant("wx");
+        stubCount(7);
+        updater.refreshMembersBatch(Set.of("M00001"));
+        assertEquals(7, updater.getCachedStats("M00001").consumptionCount);
+
+        TenantContext.setTenant("bht");
+        assertEquals(3, updater.getCachedStats("M00001").consumptionCount);
+    }
+
+    @Test
+    void testSizeBoundAndHitMissMetrics() {
+        TenantContext.setTenant("bht");
+        Mockito.when(orderRepository.aggregateMemberConsumption(anyCollection())).thenReturn(new ArrayList<>());
+        updater.refreshMembersBatch(Set.of("A"));
+        updater.refreshMembersBatch(Set.of("B"));
+        assertNotNull(updater.getCachedStats("A")); // A 变为最近访问
+        updater.refreshMembersBatch(Set.of("C"));    // 超出容量淘汰最久未访问的 B
+
+        assertNull(updater.getCachedStats("B"));
+        assertNotNull(updater.getCachedStats("A"));
+        assertNotNull(updater.getCachedStats("C"));
+
+        Map<String, Object> stats = updater.cacheStats().get("bht");
+        assertEquals(2, stats.get("size"));
+        assertEquals(3L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(1L, stats.get("evictions"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.pharmacy;
+
+import com.pharmacy.controller.MemberController;
+import com.pharmacy.entity.Member;
+import com.pharmacy.repository.MemberRepository;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MemberExportTest {
+
+    @Autowired
+    private MemberController memberController;
+    @Autowired
+    private MemberRepository memberRepository;
+
+    private void formulaMember() {
+        if (memberRepository.existsById("MEXP01")) return;
+        Member m = new Member("MEXP01", "=HYPERLINK(\"http://x\",\"点我\")", "13900009999");
+        m.setAllergicHistory("@SUM(A1)");
+        memberRepository.save(m);
+    }
+
+    @Test
+    void testCsvEscapesFormulaPrefixes() throws Exception {
+        formulaMember();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        memberController.exportMembers("csv", response);
+        String line = response.getContentAsString(StandardCharsets.UTF_8).lines()
+                .filter(l -> l.startsWith("MEXP01,")).findFirst().orElseThrow();
+        assertTrue(line.contains(",\"'=HYPERLINK(\"\"http://x\"\",\"\"点我\"\")\","), line);
+        assertTrue(line.contains(",'@SUM(A1),"), line);
+        assertTrue(line.contains(",13900009999,"), "普通内容保持原样");
+    }
+
+    @Test
+    void testXlsxEscapesFormulaPrefixes() throws Exception {
+        formulaMember();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        memberController.exportMembers("xlsx", response);
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            Sheet sheet = wb.getSheetAt(0);
+            Row row = null;
+            for (Row r : sheet) {
+                if ("MEXP01".equals(r.getCell(0).getStringCellValue())) row = r;
+            }
+            assertNotNull(row);
+            assertEquals("'=HYPERLINK(\"http://x\",\"点我\")", row.getCell(1).getStringCellValue());
+            assertEquals("'@SUM(A1)", row.getCell(6).getStringCellValue());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.service.MemberService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MemberSearchIndexTest {
+
+    @Autowired
+    private MemberService memberService;
+
+    private List<String> quickIds(String keyword) {
+        return memberService.quickSearch(keyword).stream().map(Member::getMemberId).toList();
+    }
+
+    @Test
+    void testIndexFollowsCreateUpdateDelete() {
+        memberService.createMember("MSI01", "索引测试张三", "13712340001");
+        // 首次查询建索引，之后的写入走增量维护
+        assertEquals(List.of("MSI01"), quickIds("索引测试张"));
+
+        memberService.createMember("MSI02", "索引测试李四", "13712340002");
+        assertEquals(List.of("MSI01", "MSI02"), quickIds("索引测试"));
+        assertEquals(List.of("MSI02"), quickIds("340002"), "手机号中段匹配");
+
+        Member m = memberService.findById("MSI02").orElseThrow();
+        m.setName("索引测试王五");
+        m.setCardNo("CARD-MSI-9");
+        memberService.updateMember(m);
+        assertTrue(quickIds("索引测试李").isEmpty(), "改名后旧名称不再命中");
+        assertEquals(List.of("MSI02"), quickIds("card-msi"), "卡号不区分大小写");
+
+        // 完全相等优先于包含匹配
+        assertEquals("MSI01", quickIds("13712340001").get(0));
+        assertEquals(List.of("MSI02"), memberService.searchMembers("索引测试王").stream().map(Member::getMemberId).toList());
+
+        memberService.deleteMember("MSI01");
+        assertEquals(List.of("MSI02"), quickIds("索引测试"));
+    }
+}
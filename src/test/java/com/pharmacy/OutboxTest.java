@@ -0,0 +1,108 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.service.OutboxHandler;
+import com.pharmacy.service.OutboxService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class OutboxTest {
+
+    private static final String FAILING_TYPE = "TestAlwaysFails";
+
+    @TestConfiguration
+    static class FailingHandlerConfig {
+        @Bean
+        OutboxHandler failingHandler() {
+            return new OutboxHandler() {
+                @Override
+                public Set<String> eventTypes() { return Set.of(FAILING_TYPE); }
+
+                @Override
+                public void handle(OutboxService.Event event) { throw new IllegalStateException("下游不可用"); }
+            };
+        }
+    }
+
+    @Autowired
+    private OutboxService outboxService;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail(message);
+            Thread.sleep(20);
+        }
+    }
+
+    private int points(String memberId) {
+        return jdbcTemplate.queryForObject("SELECT points FROM `member` WHERE member_id = ?", Integer.class, memberId);
+    }
+
+    private Map<String, Object> row(String aggregateId) {
+        return jdbcTemplate.queryForMap("SELECT status, attempts, last_error FROM outbox_event WHERE aggregate_id = ?", aggregateId);
+    }
+
+    @Test
+    void testOrderPaidAwardsPointsOnceAfterCommit() throws Exception {
+        Member member = new Member("M-OUTBOX-1", "发件箱会员", "13800007777");
+        member.setPoints(5);
+        memberRepository.save(member);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(s ->
+                outboxService.publish(OutboxService.ORDER_PAID, "O-OUTBOX-1", Map.of("memberId", "M-OUTBOX-1", "points", 12)));
+        await(() -> points("M-OUTBOX-1") == 17, "提交后应异步累计积分");
+        await(() -> ((Number) row("O-OUTBOX-1").get("status")).intValue() == 1, "事件应标记为已处理");
+
+        assertEquals(0, outboxService.drainCurrentTenant());
+        assertEquals(17, points("M-OUTBOX-1"), "已处理事件不会重复加分");
+    }
+
+    @Test
+    void testRolledBackTransactionPublishesNothing() throws Exception {
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            outboxService.publish(OutboxService.ORDER_PAID, "O-OUTBOX-RB", Map.of("memberId", "M-NONE", "points", 3));
+            s.setRollbackOnly();
+        });
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event WHERE aggregate_id = 'O-OUTBOX-RB'", Integer.class);
+        assertEquals(0, count);
+    }
+
+    @Test
+    void testFailingHandlerBacksOffThenGivesUp() throws Exception {
+        outboxService.publish(FAILING_TYPE, "X-OUTBOX-FAIL", Map.of());
+        await(() -> ((Number) row("X-OUTBOX-FAIL").get("attempts")).intValue() == 1, "首次失败后应记录重试次数");
+        Map<String, Object> first = row("X-OUTBOX-FAIL");
+        assertEquals(0, ((Number) first.get("status")).intValue(), "退避期间仍为待处理");
+        assertEquals("下游不可用", first.get("last_error"));
+        assertEquals(0, outboxService.drainCurrentTenant(), "未到重试时间不会再次处理");
+
+        jdbcTemplate.update("UPDATE outbox_event SET attempts = 7, next_attempt_at = ? WHERE aggregate_id = 'X-OUTBOX-FAIL'",
+                java.sql.Timestamp.valueOf(java.time.LocalDateTime.now().minusSeconds(1)));
+        outboxService.drainCurrentTenant();
+        assertEquals(2, ((Number) row("X-OUTBOX-FAIL").get("status")).intValue(), "重试耗尽后标记失败");
+        assertTrue(((Number) outboxService.stats().get("failed")).longValue() >= 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Order;
+import com.pharmacy.entity.SalesRollupHourly;
+import com.pharmacy.entity.SalesRollupMetrics;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.OutboxService;
+import com.pharmacy.service.SalesRollupService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class SalesRollupTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    // 使用较早日期，避免与其它测试的当天订单互相影响
+    private final LocalDate day = LocalDate.now().minusDays(40);
+
+    private Order make(String id, String memberId, int hour, int minute, int status, double total, double paid) {
+        Order o = new Order();
+        o.setOrderId(id);
+        o.setCashierId(1);
+        o.setMemberId(memberId);
+        o.setPaymentType(1);
+        o.setPaymentStatus(status);
+        o.setTotalAmount(total);
+        o.setActualPayment(paid);
+        o.setOrderTime(day.atTime(hour, minute));
+        return o;
+    }
+
+    /** 汇总差量经发件箱在提交后应用，读取前等待本租户事件处理完 */
+    private void awaitRollups() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            outboxService.drainCurrentTenant();
+            Map<String, Object> stats = outboxService.stats();
+            if (((Number) stats.get("pending")).longValue() == 0 && ((Number) stats.get("processing")).longValue() == 0) return;
+            if (System.currentTimeMillis() > deadline) fail("汇总差量未在 5s 内处理完: " + stats);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testIncrementalRollupMatchesRebuild() throws Exception {
+        orderRepository.save(make("R1", "M1", 9, 10, 1, 100, 90));
+        orderRepository.save(make("R2", "M1", 9, 40, 1, 50, 50));
+        orderRepository.save(make("R3", null, 15, 0, 0, 20, 20)); // 未支付
+        awaitRollups();
+
+        SalesRollupHourly h9 = salesRollupService.hourly(day).get(9);
+        assertEquals(2, h9.getPaidCount());
+        assertEquals(140.0, h9.getPaidAmount(), 0.001);
+        assertEquals(150.0, h9.getPaidTotal(), 0.001);
+        assertEquals(1, h9.getMemberCount(), "同一会员同一小时只计一次");
+        SalesRollupMetrics d = dayMetrics();
+        assertEquals(3, d.getOrderCount());
+        assertEquals(170.0, d.getOrderAmount(), 0.001);
+        assertEquals(1, d.getMemberCount());
+
+        // 退款：原小时扣除已支付，退款时间所在小时计入退款
+        Order r1 = orderRepository.findById("R1").orElseThrow();
+        r1.setPaymentStatus(2);
+        r1.setRefundTime(day.atTime(16, 5));
+        orderRepository.save(r1);
+        awaitRollups();
+
+        List<SalesRollupHourly> hours = salesRollupService.hourly(day);
+        assertEquals(1, hours.get(9).getPaidCount());
+        assertEquals(50.0, hours.get(9).getPaidAmount(), 0.001);
+        assertEquals(1, hours.get(9).getMemberCount(), "R2 仍为已支付，会员保留");
+        assertEquals(1, hours.get(16).getRefundCount());
+        assertEquals(90.0, hours.get(16).getRefundAmount(), 0.001);
+        d = dayMetrics();
+        assertEquals(3, d.getOrderCount());
+        assertEquals(50.0, d.getPaidAmount(), 0.001);
+        assertEquals(90.0, d.getRefundAmount(), 0.001);
+
+        // 按订单表重建后结果应与增量结果一致
+        salesRollupService.rebuild(day, day);
+        SalesRollupMetrics rebuilt = dayMetrics();
+        assertEquals(d.getOrderCount(), rebuilt.getOrderCount());
+        assertEquals(d.getOrderAmount(), rebuilt.getOrderAmount(), 0.001);
+        assertEquals(d.getPaidCount(), rebuilt.getPaidCount());
+        assertEquals(d.getPaidAmount(), rebuilt.getPaidAmount(), 0.001);
+        assertEquals(d.getRefundAmount(), rebuilt.getRefundAmount(), 0.001);
+        assertEquals(d.getMemberCount(), rebuilt.getMemberCount());
+        SalesRollupHourly rebuilt9 = salesRollupService.hourly(day).get(9);
+        assertEquals(1, rebuilt9.getPaidCount());
+        assertEquals(1, rebuilt9.getMemberCount());
+    }
+
+    private SalesRollupMetrics dayMetrics() {
+        return salesRollupService.byDay(day.atStartOfDay(), day.plusDays(1).atStartOfDay()).get(day);
+    }
+}
@@ -0,0 +1,104 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.StockAlertService;
+import com.pharmacy.service.impl.StockAlertEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockAlertEngineTest {
+
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private StockAlertService stockAlertService;
+    @Autowired
+    private StockAlertEngine stockAlertEngine;
+    @Autowired
+    private MedicineRepository medicineRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private void ensureMedicine(String id) {
+        if (medicineRepository.existsById(id)) return;
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName(id + "-GENERIC");
+        m.setApprovalNo(id + "-APP");
+        m.setCategoryId(1);
+        m.setRetailPrice(new BigDecimal("10.00"));
+        m.setIsRx(false);
+        m.setUnit("盒");
+        medicineRepository.save(m);
+    }
+
+    private int openAlerts(String medicineId, int type) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stock_alert WHERE medicine_id = ? AND alert_type = ? AND is_handled = false",
+                Integer.class, medicineId, type);
+    }
+
+    /** 等待该药品的库存变动事件处理完（其它测试留下的退避事件不影响） */
+    private void settle(String medicineId) throws InterruptedException {
+        await(() -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event WHERE aggregate_id = ? AND status IN (0, 3)",
+                Integer.class, medicineId) == 0, "库存变动事件未在期限内处理完");
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail(message);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testStockChangeGeneratesAlertsOnceAndAgainAfterHandled() throws Exception {
+        String mid = "ALERT-MED-1";
+        ensureMedicine(mid);
+        inventoryService.createBatch(mid, "ALERT-B1", 3, 10, null, null, LocalDate.now().plusDays(20), null);
+        await(() -> openAlerts(mid, 1) == 1 && openAlerts(mid, 2) == 1, "新批次低于安全库存且近效期，应各生成一条预警");
+
+        inventoryService.replenish(mid, 1, "ALERT-B1");
+        settle(mid);
+        assertEquals(1, openAlerts(mid, 1), "已有未处理预警时不重复生成");
+        assertEquals(1, openAlerts(mid, 2));
+
+        Long alertId = jdbcTemplate.queryForObject("SELECT alert_id FROM stock_alert WHERE medicine_id = ? AND alert_type = 1", Long.class, mid);
+        assertTrue(stockAlertService.handleAlert(alertId));
+        inventoryService.replenish(mid, 1, "ALERT-B1");
+        await(() -> openAlerts(mid, 1) == 1, "处理后仍低于安全库存，下一次变动应重新生成");
+
+        inventoryService.replenish(mid, 100, "ALERT-B1");
+        settle(mid);
+        assertEquals(1, openAlerts(mid, 1), "库存恢复后不再新增低库存预警");
+    }
+
+    @Test
+    void testSweepCatchesChangesWithoutEvents() {
+        String mid = "ALERT-MED-2";
+        ensureMedicine(mid);
+        // 绕过服务层直接写库，模拟事件丢失
+        jdbcTemplate.update("INSERT INTO inventory (medicine_id, batch_no, stock_quantity, min_stock, create_time, update_time) " +
+                "VALUES (?, 'ALERT-B2', 0, 5, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", mid);
+        assertEquals(0, openAlerts(mid, 1));
+
+        assertTrue(stockAlertEngine.sweepCurrentTenant() >= 1);
+        assertEquals(1, openAlerts(mid, 1));
+        stockAlertService.checkAndGenerateAlerts();
+        assertEquals(1, openAlerts(mid, 1), "重复扫描不产生重复预警");
+        assertEquals(0, stockAlertEngine.evaluate(java.util.List.of(mid)));
+    }
+}
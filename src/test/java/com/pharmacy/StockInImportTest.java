@@ -0,0 +1,120 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.service.StockInImportService;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockInImportTest {
+
+    @Autowired
+    private StockInImportService importService;
+    @Autowired
+    private MedicineRepository medicineRepository;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    private void medicine(String id, String barcode) {
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName(id + "-GENERIC");
+        m.setApprovalNo(id + "-APP");
+        m.setBarcode(barcode);
+        m.setCategoryId(1);
+        m.setRetailPrice(new BigDecimal("10.00"));
+        m.setIsRx(false);
+        m.setUnit("盒");
+        medicineRepository.save(m);
+    }
+
+    private int stock(String medicineId, String batch) {
+        return inventoryRepository.findByMedicineId(medicineId).stream()
+                .filter(i -> batch.equals(i.getBatchNo()))
+                .mapToInt(Inventory::getStockQuantity).sum();
+    }
+
+    @Test
+    void testCsvImportResolvesInBulkAndReportsRowErrors() throws Exception {
+        medicine("IMP-MED-1", "690000000001");
+        String csv = "\uFEFF导入说明\n"
+                + "medicineid,数量,进货价,批号,到期日期,通用名\n"
+                + "IMP-MED-1,10,2.5,B1,2030-01-01,\n"
+                + "690000000001,5,2.5,B1,,\n"          // 条码命中同一药品同一批次，数量合并
+                + "IMP-MED-1,abc,2.5,B1,,\n"           // 数量非法
+                + ",3,1.0,B9,,\n"                      // 无ID无通用名
+                + ",4,1.0,B2,,导入新药\n"              // 自动建档
+                + ",6,1.0,B2,,导入新药\n";             // 复用同一自动建档
+        StockInImportService.ImportResult r = importService.importFile(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "list.csv", null, "csv-1");
+
+        assertEquals(6, r.totalRows());
+        assertEquals(4, r.importedRows());
+        assertEquals(1, r.createdMedicines());
+        assertEquals(List.of(5, 6), r.errors().stream().map(StockInImportService.RowError::row).toList());
+        assertEquals(47.5, r.totalAmount(), 0.001);
+        assertEquals(15, stock("IMP-MED-1", "B1"));
+
+        Medicine created = medicineRepository.findAll().stream()
+                .filter(m -> "导入新药".equals(m.getGenericName())).findFirst().orElseThrow();
+        assertEquals(10, stock(created.getMedicineId(), "B2"));
+        assertEquals("DONE", importService.progress("csv-1").get("status"));
+
+        // 再次导入同批次走累加
+        importService.importFile(new ByteArrayInputStream("IMP-MED-1,7,2.5,B1\n".getBytes(StandardCharsets.UTF_8)), "more.csv", null, null);
+        assertEquals(22, stock("IMP-MED-1", "B1"));
+    }
+
+    @Test
+    void testXlsxStreamingImport() throws Exception {
+        medicine("IMP-MED-X", null);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            XSSFSheet sheet = wb.createSheet();
+            XSSFRow h = sheet.createRow(0);
+            String[] header = {"medicineid", "数量", "进货价", "批号"};
+            for (int i = 0; i < header.length; i++) h.createCell(i).setCellValue(header[i]);
+            XSSFRow r1 = sheet.createRow(1);
+            r1.createCell(0).setCellValue("IMP-MED-X");
+            r1.createCell(1).setCellValue(8);
+            r1.createCell(2).setCellValue(1.5);
+            r1.createCell(3).setCellValue("BX");
+            XSSFRow r2 = sheet.createRow(3); // 中间空行
+            r2.createCell(0).setCellValue("IMP-MED-X");
+            r2.createCell(1).setCellValue(2);
+            r2.createCell(3).setCellValue("BX");
+            wb.write(bos);
+        }
+        StockInImportService.ImportResult r = importService.importFile(
+                new ByteArrayInputStream(bos.toByteArray()), "list.xlsx", null, null);
+        assertEquals(2, r.importedRows());
+        assertEquals(0, r.errorCount());
+        assertEquals(10, stock("IMP-MED-X", "BX"));
+    }
+
+    @Test
+    void testNothingImportedRollsBack() throws Exception {
+        StockInImportService.ImportResult r = importService.importFile(
+                new ByteArrayInputStream(",0,1.0\n".getBytes(StandardCharsets.UTF_8)), "bad.csv", null, null);
+        assertEquals(0, r.importedRows());
+        assertNull(r.stockInId());
+        assertEquals(1, r.errorCount());
+    }
+}
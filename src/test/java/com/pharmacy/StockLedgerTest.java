@@ -0,0 +1,125 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.service.impl.StockLedger;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockLedgerTest {
+
+    @Autowired
+    private StockLedger stockLedger;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private MedicineRepository medicineRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Inventory batch(String medicineId, int qty) {
+        if (!medicineRepository.existsById(medicineId)) {
+            Medicine m = new Medicine();
+            m.setMedicineId(medicineId);
+            m.setGenericName(medicineId + "-GENERIC");
+            m.setApprovalNo(medicineId + "-APP");
+            m.setCategoryId(1);
+            m.setRetailPrice(new BigDecimal("10.00"));
+            m.setIsRx(false);
+            m.setUnit("盒");
+            medicineRepository.save(m);
+        }
+        return inventoryRepository.save(new Inventory(medicineId, medicineId + "-B1", qty, LocalDate.now().plusDays(200)));
+    }
+
+    @Test
+    void testDeltaCommittedDuringReconcileIsNotAppliedTwice() throws Exception {
+        String mid = "LEDGER-RACE-1";
+        Inventory inv = batch(mid, 10);
+        stockLedger.reconcile();
+        assertEquals(10, stockLedger.getTotal(mid));
+
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            // 先于账本回调注册：数据库已提交、账本增量尚未应用时停住
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            jdbcTemplate.update("UPDATE inventory SET stock_quantity = stock_quantity - 2 WHERE inventory_id = ?", inv.getId());
+            stockLedger.recordDelta(mid, inv.getId(), -2);
+        }));
+        writer.start();
+        assertTrue(committed.await(5, TimeUnit.SECONDS));
+
+        // 对账看到数据库的 8，但该药品仍有未完成的登记，不能用扫描结果覆盖
+        stockLedger.reconcile();
+        assertEquals(10, stockLedger.getTotal(mid));
+
+        release.countDown();
+        writer.join(5000);
+        assertEquals(8, stockLedger.getTotal(mid));
+        stockLedger.reconcile();
+        assertEquals(8, stockLedger.getTotal(mid));
+    }
+
+    @Test
+    void testRolledBackWriteDoesNotBlockReconcile() {
+        String mid = "LEDGER-RACE-2";
+        Inventory inv = batch(mid, 5);
+        stockLedger.reconcile();
+        assertThrows(IllegalStateException.class, () -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            stockLedger.recordDelta(mid, inv.getId(), -5);
+            throw new IllegalStateException("rollback");
+        }));
+        assertEquals(5, stockLedger.getTotal(mid));
+
+        // 绕过账本直接改库，登记已注销，对账可以修正
+        jdbcTemplate.update("UPDATE inventory SET stock_quantity = 3 WHERE inventory_id = ?", inv.getId());
+        assertTrue(stockLedger.reconcile() >= 1);
+        assertEquals(3, stockLedger.getTotal(mid));
+    }
+
+    @Test
+    void testFirstReadWarmsInBackground() throws Exception {
+        String mid = "LEDGER-WARM-1";
+        batch(mid, 7);
+        stockLedger.evict("default");
+        // 读请求不在当前线程全量加载，先回落数据库
+        assertNull(stockLedger.getTotal(mid));
+        long deadline = System.currentTimeMillis() + 5000;
+        Integer total;
+        while ((total = stockLedger.getTotal(mid)) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(7, total);
+    }
+}
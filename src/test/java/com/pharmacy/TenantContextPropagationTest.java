@@ -0,0 +1,66 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class TenantContextPropagationTest {
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor applicationTaskExecutor;
+
+    @AfterEach
+    void cleanup() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void testAsyncExecutorCarriesSubmittingTenant() throws Exception {
+        TenantContext.setTenant("bht");
+        String seen = applicationTaskExecutor.submit(TenantContext::getTenant).get(5, TimeUnit.SECONDS);
+        assertEquals("bht", seen);
+
+        TenantContext.setTenant("wx");
+        assertEquals("wx", applicationTaskExecutor.submit(TenantContext::getTenant).get(5, TimeUnit.SECONDS),
+                "复用的池化线程不应残留上一个任务的租户");
+    }
+
+    @Test
+    void testWrapRestoresWorkerTenant() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(() -> TenantContext.setTenant("worker-own")).get();
+            TenantContext.setTenant("bht");
+            CompletableFuture.supplyAsync(TenantContext.wrap(TenantContext::getTenant), single)
+                    .thenAccept(t -> assertEquals("bht", t)).get(5, TimeUnit.SECONDS);
+            assertEquals("worker-own", single.submit(TenantContext::getTenant).get(), "执行完恢复线程原有租户");
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCallAsRestoresCallerTenant() {
+        TenantContext.setTenant("default");
+        assertEquals("bht", TenantContext.callAs("bht", TenantContext::getTenant));
+        assertEquals("default", TenantContext.getTenant());
+        TenantContext.clear();
+        TenantContext.runAs("wx", () -> assertEquals("wx", TenantContext.getTenant()));
+        assertNull(TenantContext.getTenant());
+    }
+}
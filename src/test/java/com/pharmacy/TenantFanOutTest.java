@@ -0,0 +1,66 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantFanOut;
+import com.pharmacy.multitenant.TenantSchemaInspector;
+import com.pharmacy.multitenant.TenantSchemaInspector.TenantSchema;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class TenantFanOutTest {
+
+    @Autowired
+    private TenantFanOut tenantFanOut;
+
+    @Test
+    void testSlowTenantTimesOutWithoutHoldingUpOthers() {
+        Map<String, Long> delays = new LinkedHashMap<>();
+        delays.put("slow", 2000L);
+        delays.put("a", 50L);
+        delays.put("b", 50L);
+        delays.put("broken", -1L);
+
+        long start = System.currentTimeMillis();
+        Map<String, TenantFanOut.Outcome<String>> out = tenantFanOut.run(delays, (tenant, delay) -> {
+            if (delay < 0) throw new IllegalStateException("连接被拒绝");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TenantContext.getTenant();
+        }, Duration.ofMillis(300));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(List.of("slow", "a", "b", "broken"), List.copyOf(out.keySet()), "按输入顺序返回");
+        assertTrue(out.get("slow").timedOut());
+        assertEquals("a", out.get("a").value(), "执行线程上带有对应租户");
+        assertEquals("b", out.get("b").value());
+        assertTrue(out.get("a").elapsedMillis() < 300);
+        assertEquals("连接被拒绝", out.get("broken").error());
+        assertTrue(elapsed < 1500, "慢租户不应拖慢整体: " + elapsed + "ms");
+    }
+
+    @Test
+    void testDiffReportsMissingColumnsAndTypeMismatch() {
+        TenantSchema base = new TenantSchema("rzt", Map.of("member", Map.of("member_id", "varchar(32)", "points", "int")), "x", LocalDateTime.now());
+        TenantSchema shop = new TenantSchema("bht", Map.of("member", Map.of("member_id", "VARCHAR(64)")), "y", LocalDateTime.now());
+        List<Map<String, Object>> diff = TenantSchemaInspector.diff(base, shop, List.of("member", "order"));
+        assertEquals("DIFF", diff.get(0).get("status"));
+        assertEquals(List.of("points"), diff.get(0).get("missingColumns"));
+        assertEquals(1, ((List<?>) diff.get(0).get("typeMismatch")).size());
+        assertEquals("MISSING", diff.get(1).get("status"));
+    }
+}
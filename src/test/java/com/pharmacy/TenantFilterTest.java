@@ -0,0 +1,54 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class TenantFilterTest {
+
+    @Autowired
+    private TenantFilter tenantFilter;
+
+    @Test
+    void testUnknownShopIsRejectedBeforeTheChain() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/members/quick-search");
+        request.addHeader("X-Shop-Id", "no-such-store");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        tenantFilter.doFilter(request, response, chain);
+
+        assertEquals(404, response.getStatus());
+        assertNull(chain.getRequest(), "未注册的店铺不应进入后续处理");
+        assertTrue(response.getContentAsString().contains("no-such-store"));
+        assertNull(TenantContext.getTenant());
+    }
+
+    @Test
+    void testRegisteredShopAndMissingHeaderPassThrough() throws Exception {
+        AtomicReference<String> seen = new AtomicReference<>("unset");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/members/quick-search");
+        request.addHeader("X-Shop-Id", "default");
+        tenantFilter.doFilter(request, new MockHttpServletResponse(), (req, resp) -> seen.set(TenantContext.getTenant()));
+        assertEquals("default", seen.get());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        tenantFilter.doFilter(new MockHttpServletRequest("GET", "/api/members/quick-search"), response,
+                (req, resp) -> seen.set(TenantContext.getTenant()));
+        assertEquals(200, response.getStatus());
+        assertNull(seen.get(), "未指定店铺时走默认库");
+        assertNull(TenantContext.getTenant());
+    }
+}
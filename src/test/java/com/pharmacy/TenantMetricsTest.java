@@ -0,0 +1,68 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantMetrics;
+import com.pharmacy.repository.MemberRepository;
+import com.pharmacy.service.MemberService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureObservability(tracing = false)
+class TenantMetricsTest {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PrometheusMeterRegistry prometheusRegistry;
+    @Autowired
+    private TenantMetrics tenantMetrics;
+    @Autowired
+    private MemberService memberService;
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Test
+    void testOperationAndRepositoryTimersTaggedByTenant() {
+        TenantContext.runAs("default", () -> memberService.quickSearch("张"));
+        Timer op = meterRegistry.find("pharmacy.operation")
+                .tags("op", "member_search", "tenant", "default").timer();
+        assertNotNull(op);
+        assertTrue(op.count() >= 1);
+
+        TenantContext.runAs("default", () -> memberRepository.count());
+        Timer repo = meterRegistry.find("spring.data.repository.invocations")
+                .tags("repository", "MemberRepository", "method", "count", "tenant", "default").timer();
+        assertNotNull(repo, "仓库方法调用应按租户记录");
+        assertTrue(repo.count() >= 1);
+
+        assertNotNull(meterRegistry.find("pharmacy.cache.requests").tags("cache", "member_search_index", "tenant", "default").counter());
+    }
+
+    @Test
+    void testUnregisteredTenantsCollapseToUnknown() {
+        assertEquals("default", tenantMetrics.tenantTag(null));
+        assertEquals("default", tenantMetrics.tenantTag("default"));
+        assertEquals(TenantMetrics.UNKNOWN_TENANT, tenantMetrics.tenantTag("no-such-store-" + System.nanoTime()));
+    }
+
+    @Test
+    void testPrometheusScrapeIncludesPoolAndCacheMetrics() {
+        TenantContext.runAs("default", () -> {
+            tenantMetrics.cacheAccess("metrics_test", true);
+            tenantMetrics.cacheAccess("metrics_test", false);
+        });
+        String scrape = prometheusRegistry.scrape();
+        assertTrue(scrape.contains("pharmacy_cache_requests_total{"), scrape);
+        assertTrue(scrape.matches("(?s).*hikaricp_connections_active\\{[^}]*tenant=\"default\".*"), "默认连接池应带 tenant 标签");
+    }
+}